@@ -18,10 +18,17 @@ import java.awt.event.*;
 class AwtEventTranslator implements MouseListener, MouseMotionListener, MouseWheelListener, KeyListener {
 
     private final Component mSource;
-    private final GHumanInputController mCont;
-
-    public AwtEventTranslator( Component source, GHumanInputController cont ) {
+    private final GEventController mEvents;
+    private volatile GHumanInputController mCont;
+
+    /**
+     * @param source    Component that produces AWT events.
+     * @param cont      Controller to receive input.
+     * @param optEvents Optional. If provided, input is stamped for {@link GInputLatency} when enabled.
+     */
+    public AwtEventTranslator( Component source, GHumanInputController cont, GEventController optEvents ) {
         mSource = source;
+        mEvents = optEvents;
         mCont   = cont;
 
         mSource.addMouseListener( this );
@@ -31,25 +38,38 @@ class AwtEventTranslator implements MouseListener, MouseMotionListener, MouseWhe
     }
 
 
+    public GHumanInputController controller() {
+        return mCont;
+    }
+
+
+    public void controller( GHumanInputController cont ) {
+        mCont = cont;
+    }
+
+
     public void mousePressed( MouseEvent e ) {
-        if( mCont.mousePressed( e.getWhen() * 1000L,
-                                modsFor( e ),
-                                e.getButton(),
-                                e.isPopupTrigger() ) )
-        {
+        long t = arrival( GInputRecord.MOUSE_PRESSED );
+        boolean consumed = mCont.mousePressed( e.getWhen() * 1000L,
+                                               modsFor( e ),
+                                               e.getButton(),
+                                               e.isPopupTrigger() );
+        handoff( GInputRecord.MOUSE_PRESSED, t );
+        if( consumed ) {
             e.consume();
         }
     }
 
 
     public void mouseReleased( MouseEvent e ) {
-        if( mCont.mouseReleased( e.getWhen() * 1000L,
-                                 modsFor( e ),
-                                 e.getButton(),
-                                 e.isPopupTrigger(),
-                                 true ) )
-
-        {
+        long t = arrival( GInputRecord.MOUSE_RELEASED );
+        boolean consumed = mCont.mouseReleased( e.getWhen() * 1000L,
+                                                modsFor( e ),
+                                                e.getButton(),
+                                                e.isPopupTrigger(),
+                                                true );
+        handoff( GInputRecord.MOUSE_RELEASED, t );
+        if( consumed ) {
             e.consume();
         }
     }
@@ -59,87 +79,105 @@ class AwtEventTranslator implements MouseListener, MouseMotionListener, MouseWhe
 
 
     public void mouseEntered( MouseEvent e ) {
-        if( mCont.mouseEntered( e.getWhen() * 1000L,
-                                modsFor( e ),
-                                e.getX(),
-                                mSource.getHeight() - e.getY() ) ) {
+        long t = arrival( GInputRecord.MOUSE_ENTERED );
+        boolean consumed = mCont.mouseEntered( e.getWhen() * 1000L,
+                                               modsFor( e ),
+                                               e.getX(),
+                                               mSource.getHeight() - e.getY() );
+        handoff( GInputRecord.MOUSE_ENTERED, t );
+        if( consumed ) {
             e.consume();
         }
     }
 
 
     public void mouseExited( MouseEvent e ) {
-        if( mCont.mouseExited( e.getWhen() * 1000L, modsFor( e ) ) ) {
+        long t = arrival( GInputRecord.MOUSE_EXITED );
+        boolean consumed = mCont.mouseExited( e.getWhen() * 1000L, modsFor( e ) );
+        handoff( GInputRecord.MOUSE_EXITED, t );
+        if( consumed ) {
             e.consume();
         }
     }
 
 
     public void mouseMoved( MouseEvent e ) {
-        if( mCont.mouseMoved( e.getWhen() * 1000L,
-                              modsFor( e ),
-                              e.getX(),
-                              mSource.getHeight() - e.getY() ) )
-        {
+        long t = arrival( GInputRecord.MOUSE_MOVED );
+        boolean consumed = mCont.mouseMoved( e.getWhen() * 1000L,
+                                             modsFor( e ),
+                                             e.getX(),
+                                             mSource.getHeight() - e.getY() );
+        handoff( GInputRecord.MOUSE_MOVED, t );
+        if( consumed ) {
             e.consume();
         }
     }
 
 
     public void mouseDragged( MouseEvent e ) {
-        if( mCont.mouseMoved( e.getWhen() * 1000L,
-                              modsFor( e ),
-                              e.getX(),
-                              mSource.getHeight() - e.getY() ) )
-        {
+        long t = arrival( GInputRecord.MOUSE_MOVED );
+        boolean consumed = mCont.mouseMoved( e.getWhen() * 1000L,
+                                             modsFor( e ),
+                                             e.getX(),
+                                             mSource.getHeight() - e.getY() );
+        handoff( GInputRecord.MOUSE_MOVED, t );
+        if( consumed ) {
             e.consume();
         }
     }
 
 
     public void mouseWheelMoved( MouseWheelEvent e ) {
-        if( mCont.mouseWheelMoved( e.getWhen() * 1000L,
-                                   modsFor( e ),
-                                   e.getScrollType(),
-                                   e.getScrollAmount(),
-                                   e.getWheelRotation() ) )
-        {
+        long t = arrival( GInputRecord.MOUSE_WHEEL_MOVED );
+        boolean consumed = mCont.mouseWheelMoved( e.getWhen() * 1000L,
+                                                  modsFor( e ),
+                                                  e.getScrollType(),
+                                                  e.getScrollAmount(),
+                                                  e.getWheelRotation() );
+        handoff( GInputRecord.MOUSE_WHEEL_MOVED, t );
+        if( consumed ) {
             e.consume();
         }
     }
 
 
     public void keyPressed( KeyEvent e ) {
-        if( mCont.keyPressed( e.getWhen() * 1000L,
-                              modsFor( e ),
-                              e.getKeyCode(),
-                              e.getKeyChar(),
-                              e.getKeyLocation() ) )
-        {
+        long t = arrival( GInputRecord.KEY_PRESSED );
+        boolean consumed = mCont.keyPressed( e.getWhen() * 1000L,
+                                             modsFor( e ),
+                                             e.getKeyCode(),
+                                             e.getKeyChar(),
+                                             e.getKeyLocation() );
+        handoff( GInputRecord.KEY_PRESSED, t );
+        if( consumed ) {
             e.consume();
         }
     }
 
 
     public void keyReleased( KeyEvent e ) {
-        if( mCont.keyReleased( e.getWhen() * 1000L,
-                               modsFor( e ),
-                               e.getKeyCode(),
-                               e.getKeyChar(),
-                               e.getKeyLocation() ) )
-        {
+        long t = arrival( GInputRecord.KEY_RELEASED );
+        boolean consumed = mCont.keyReleased( e.getWhen() * 1000L,
+                                              modsFor( e ),
+                                              e.getKeyCode(),
+                                              e.getKeyChar(),
+                                              e.getKeyLocation() );
+        handoff( GInputRecord.KEY_RELEASED, t );
+        if( consumed ) {
             e.consume();
         }
     }
 
 
     public void keyTyped( KeyEvent e ) {
-        if( mCont.keyTyped( e.getWhen() * 1000L,
-                            modsFor( e ),
-                            e.getKeyCode(),
-                            e.getKeyChar(),
-                            e.getKeyLocation() ) )
-        {
+        long t = arrival( GInputRecord.KEY_TYPED );
+        boolean consumed = mCont.keyTyped( e.getWhen() * 1000L,
+                                           modsFor( e ),
+                                           e.getKeyCode(),
+                                           e.getKeyChar(),
+                                           e.getKeyLocation() );
+        handoff( GInputRecord.KEY_TYPED, t );
+        if( consumed ) {
             e.consume();
         }
     }
@@ -152,6 +190,28 @@ class AwtEventTranslator implements MouseListener, MouseMotionListener, MouseWhe
     }
 
 
+    private long arrival( int inputType ) {
+        GInputLatency lat = mEvents == null ? null : mEvents.inputLatency();
+        if( lat == null ) {
+            return 0L;
+        }
+        long t = System.nanoTime();
+        lat.arrived( inputType, t );
+        return t;
+    }
+
+
+    private void handoff( int inputType, long arrivalNanos ) {
+        if( arrivalNanos == 0L ) {
+            return;
+        }
+        GInputLatency lat = mEvents.inputLatency();
+        if( lat != null ) {
+            lat.handedOff( inputType, arrivalNanos );
+        }
+    }
+
+
     private static int modsFor( InputEvent e ) {
         return e.getModifiers() | e.getModifiersEx();
     }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import bits.draw3d.Rect;
+
+
+/**
+ * Small set of disjoint rectangles that need to be repainted.
+ * Overlapping rectangles are merged as they are added, and once the
+ * maximum number of rectangles is reached, new rectangles are merged
+ * into whichever existing rectangle grows the least.
+ *
+ * @author Philip DeCamp
+ */
+final class DamageRegion {
+
+    private final Rect[] mRects;
+    private final Rect   mWork = new Rect();
+    private int mSize = 0;
+
+
+    DamageRegion( int maxRects ) {
+        mRects = new Rect[Math.max( 1, maxRects )];
+        for( int i = 0; i < mRects.length; i++ ) {
+            mRects[i] = new Rect();
+        }
+    }
+
+
+    public int size() {
+        return mSize;
+    }
+
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+
+    public Rect get( int i ) {
+        return mRects[i];
+    }
+
+
+    public void clear() {
+        mSize = 0;
+    }
+
+
+    public void add( Rect rect ) {
+        if( rect.x1 <= rect.x0 || rect.y1 <= rect.y0 ) {
+            return;
+        }
+
+        Rect r = mWork;
+        r.set( rect );
+
+        // Merge with everything r touches. Merging may cause r
+        // to overlap rects it didn't before, so repeat until stable.
+        boolean merged = true;
+        while( merged ) {
+            merged = false;
+            for( int i = 0; i < mSize; i++ ) {
+                if( mRects[i].intersects( r ) ) {
+                    r.union( mRects[i] );
+                    remove( i );
+                    merged = true;
+                    break;
+                }
+            }
+        }
+
+        if( mSize < mRects.length ) {
+            mRects[mSize++].set( r );
+            return;
+        }
+
+        // Full. Union into rect that requires least growth.
+        int best = 0;
+        long bestCost = Long.MAX_VALUE;
+        for( int i = 0; i < mSize; i++ ) {
+            Rect q = mRects[i];
+            long w = Math.max( q.x1, r.x1 ) - Math.min( q.x0, r.x0 );
+            long h = Math.max( q.y1, r.y1 ) - Math.min( q.y0, r.y0 );
+            long cost = w * h - (long)q.width() * q.height();
+            if( cost < bestCost ) {
+                bestCost = cost;
+                best = i;
+            }
+        }
+
+        r.union( mRects[best] );
+        remove( best );
+        // Grown rect may now overlap others.
+        add( r );
+    }
+
+
+    public boolean intersects( Rect rect ) {
+        for( int i = 0; i < mSize; i++ ) {
+            if( mRects[i].intersects( rect ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private void remove( int i ) {
+        mSize--;
+        Rect t = mRects[i];
+        mRects[i] = mRects[mSize];
+        mRects[mSize] = t;
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Future for a task submitted to an EventQueue. Blocking on an incomplete
+ * future from the dispatch thread would deadlock, as the task can only run
+ * on that thread, so doing so throws an IllegalStateException instead.
+ * On Java 9 and later, dependent stages, such as those returned by
+ * {@code thenApply}, are also DispatchFutures with the same check.
+ *
+ * @author Philip DeCamp
+ */
+final class DispatchFuture<T> extends CompletableFuture<T> {
+
+    private final EventQueue mOwner;
+
+
+    DispatchFuture( EventQueue owner ) {
+        mOwner = owner;
+    }
+
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        checkWait();
+        return super.get();
+    }
+
+    @Override
+    public T get( long timeout, TimeUnit unit ) throws InterruptedException, ExecutionException, TimeoutException {
+        checkWait();
+        return super.get( timeout, unit );
+    }
+
+    @Override
+    public T join() {
+        checkWait();
+        return super.join();
+    }
+
+
+    /**
+     * Creates the futures of dependent stages. Declared without {@code @Override}
+     * so that it compiles against Java 8, where CompletableFuture lacks it.
+     */
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        return new DispatchFuture<U>( mOwner );
+    }
+
+
+    private void checkWait() {
+        if( !isDone() && mOwner.isDispatchThread() ) {
+            throw new IllegalStateException( "Cannot wait for dispatched task on dispatch thread." );
+        }
+    }
+
+}
@@ -8,7 +8,9 @@ package bits.glui;
 
 import java.awt.Component;
 import java.awt.event.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import bits.draw3d.Rect;
 import bits.glui.event.*;
@@ -31,12 +33,16 @@ class EventProcessor implements GHumanInputController {
     private final GKeyboardFocusManager mFocusMan;
 
     private final ModifierState   mMods;
+    private final InputEventPool  mEventPool;
     private final KeyController   mKeyCont;
     private final MouseController mMouseCont;
 
     private final Stack<InputFrame> mInputStack = new Stack<InputFrame>();
     private       GComponent        mRoot       = null;
 
+    private volatile ForkJoinPool  mLayoutPool = null;
+    private volatile GInputLatency mLatency    = null;
+
 
     EventProcessor( Component awtOwner, GComponent owner, GKeyboardFocusManager focusMan ) {
         mAwtOwner = awtOwner;
@@ -45,8 +51,9 @@ class EventProcessor implements GHumanInputController {
         mFocusMan = focusMan;
 
         mMods = new ModifierState();
-        mKeyCont = new KeyController( owner, mFocusMan, mMods );
-        mMouseCont = new MouseController( mMods, owner );
+        mEventPool = new InputEventPool();
+        mKeyCont = new KeyController( owner, mFocusMan, mMods, mEventPool );
+        mMouseCont = new MouseController( mMods, owner, mEventPool );
     }
     
     
@@ -74,8 +81,39 @@ class EventProcessor implements GHumanInputController {
     }
     
     
+    public ForkJoinPool layoutPool() {
+        return mLayoutPool;
+    }
+
+
+    public void layoutPool( ForkJoinPool pool ) {
+        mLayoutPool = pool;
+    }
+
+
+    public InputEventPool eventPool() {
+        return mEventPool;
+    }
+
+
+    public GInputLatency latency() {
+        return mLatency;
+    }
+
+
+    public void latency( GInputLatency latency ) {
+        mLatency = latency;
+    }
+
+
     public void processLayout( GComponent source ) {
-        source.treeProcessLayout();
+        ForkJoinPool pool = mLayoutPool;
+        // Confined trees must only be touched by the dispatch thread.
+        if( pool == null || source instanceof GPanel && ((GPanel)source).confined() ) {
+            source.treeProcessLayout();
+        } else {
+            ParallelLayout.run( pool, source );
+        }
     }
 
 
@@ -153,6 +191,7 @@ class EventProcessor implements GHumanInputController {
 
     @Override
     public boolean keyTyped( long micros, int mods, int keyCode, char keyChar, int keyLoc ) {
+        dispatched( GInputRecord.KEY_TYPED );
         return mKeyCont.keyTyped( micros, mods, keyCode, keyChar, keyLoc );
     }
 
@@ -163,6 +202,7 @@ class EventProcessor implements GHumanInputController {
 
     @Override
     public boolean keyPressed( long micros, int mods, int keyCode, char keyChar, int keyLoc ) {
+        dispatched( GInputRecord.KEY_PRESSED );
         return mKeyCont.keyPressed( micros, mods, keyCode, keyChar, keyLoc );
     }
 
@@ -173,6 +213,7 @@ class EventProcessor implements GHumanInputController {
 
     @Override
     public boolean keyReleased( long micros, int mods, int keyCode, char keyChar, int keyLoc ) {
+        dispatched( GInputRecord.KEY_RELEASED );
         return mKeyCont.keyReleased( micros, mods, keyCode, keyChar, keyLoc );
     }
 
@@ -188,6 +229,7 @@ class EventProcessor implements GHumanInputController {
 
     @Override
     public boolean mousePressed( long micros, int mods, int button, boolean trigger ) {
+        dispatched( GInputRecord.MOUSE_PRESSED );
         return mMouseCont.mousePressed( micros, mods, button, trigger );
     }
 
@@ -198,6 +240,7 @@ class EventProcessor implements GHumanInputController {
 
     @Override
     public boolean mouseReleased( long micros, int mods, int button, boolean trigger, boolean genClick ) {
+        dispatched( GInputRecord.MOUSE_RELEASED );
         return mMouseCont.mouseReleased( micros, mods, button, trigger, genClick );
     }
 
@@ -208,6 +251,7 @@ class EventProcessor implements GHumanInputController {
 
     @Override
     public boolean mouseEntered( long micros, int mods, int x, int y ) {
+        dispatched( GInputRecord.MOUSE_ENTERED );
         return mMouseCont.mouseEntered( micros, mods, x, y );
     }
 
@@ -218,6 +262,7 @@ class EventProcessor implements GHumanInputController {
 
     @Override
     public boolean mouseExited( long micros, int mods ) {
+        dispatched( GInputRecord.MOUSE_EXITED );
         return mMouseCont.mouseExited( micros, mods );
     }
 
@@ -228,11 +273,13 @@ class EventProcessor implements GHumanInputController {
 
     @Override
     public boolean mouseMoved( long micros, int mods, int x, int y ) {
+        dispatched( GInputRecord.MOUSE_MOVED );
         return mMouseCont.mouseMoved( micros, mods, x, y );
     }
 
     @Override
     public boolean mouseWheelMoved( long micros, int mods, int scrollType, int scrollAmount, int wheelRotation ) {
+        dispatched( GInputRecord.MOUSE_WHEEL_MOVED );
         return mMouseCont.mouseWheelMoved( micros, mods, scrollType, scrollAmount, wheelRotation );
     }
 
@@ -242,6 +289,128 @@ class EventProcessor implements GHumanInputController {
     }
 
 
+    /**
+     * Processes all records in one pass, calling the key and mouse controllers
+     * directly. Modifier and mouse state are shared across the batch, so
+     * consecutive records with the same modifiers do not update modifier state.
+     */
+    @Override
+    public int processRecords( GInputRecord[] recs, int off, int len, BitSet optConsumed ) {
+        if( optConsumed != null ) {
+            optConsumed.clear( 0, len );
+        }
+        final GInputLatency lat = mLatency;
+        int count = 0;
+        for( int i = 0; i < len; i++ ) {
+            GInputRecord r = recs[off + i];
+            if( processRecord( lat, r.mType, r.mMods, r.mMicros, r.mA, r.mB, r.mC ) ) {
+                count++;
+                if( optConsumed != null ) {
+                    optConsumed.set( i );
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Like {@link #processRecords(GInputRecord[], int, int, BitSet)}, but reads
+     * fields directly from the buffer without copying them into records.
+     */
+    @Override
+    public int processRecords( ByteBuffer buf, BitSet optConsumed ) {
+        final int len = buf.remaining() / GInputRecord.BYTES;
+        if( optConsumed != null ) {
+            optConsumed.clear( 0, len );
+        }
+        final GInputLatency lat = mLatency;
+        int p = buf.position();
+        int count = 0;
+        try {
+            for( int i = 0; i < len; i++, p += GInputRecord.BYTES ) {
+                if( processRecord( lat,
+                                   buf.getInt( p ),
+                                   buf.getInt( p + 4 ),
+                                   buf.getLong( p + 8 ),
+                                   buf.getInt( p + 16 ),
+                                   buf.getInt( p + 20 ),
+                                   buf.getInt( p + 24 ) ) )
+                {
+                    count++;
+                    if( optConsumed != null ) {
+                        optConsumed.set( i );
+                    }
+                }
+            }
+        } finally {
+            buf.position( p );
+        }
+        return count;
+    }
+
+
+    private boolean processRecord( GInputLatency lat, int type, int mods, long micros, int a, int b, int c ) {
+        final MouseController mouse = mMouseCont;
+        final KeyController keys = mKeyCont;
+        final int base = type & GInputRecord.TYPE_MASK;
+        if( ( type & GInputRecord.FLAG_UNTIMED ) == 0 ) {
+            if( lat != null ) {
+                lat.dispatched( base );
+            }
+            switch( base ) {
+            case GInputRecord.MOUSE_MOVED:
+                return mouse.mouseMoved( micros, mods, a, b );
+            case GInputRecord.MOUSE_PRESSED:
+                return mouse.mousePressed( micros, mods, a, b != 0 );
+            case GInputRecord.MOUSE_RELEASED:
+                return mouse.mouseReleased( micros, mods, a, b != 0, c != 0 );
+            case GInputRecord.MOUSE_WHEEL_MOVED:
+                return mouse.mouseWheelMoved( micros, mods, a, b, c );
+            case GInputRecord.MOUSE_ENTERED:
+                return mouse.mouseEntered( micros, mods, a, b );
+            case GInputRecord.MOUSE_EXITED:
+                return mouse.mouseExited( micros, mods );
+            case GInputRecord.KEY_PRESSED:
+                return keys.keyPressed( micros, mods, a, (char)b, c );
+            case GInputRecord.KEY_RELEASED:
+                return keys.keyReleased( micros, mods, a, (char)b, c );
+            case GInputRecord.KEY_TYPED:
+                return keys.keyTyped( micros, mods, a, (char)b, c );
+            }
+        } else {
+            switch( base ) {
+            case GInputRecord.MOUSE_MOVED:
+                return mouse.mouseMoved( a, b );
+            case GInputRecord.MOUSE_PRESSED:
+                return mouse.mousePressed( a );
+            case GInputRecord.MOUSE_RELEASED:
+                return mouse.mouseReleased( a, c != 0 );
+            case GInputRecord.MOUSE_WHEEL_MOVED:
+                return mouse.mouseWheelMoved( a, b, c );
+            case GInputRecord.MOUSE_ENTERED:
+                return mouse.mouseEntered( a, b );
+            case GInputRecord.MOUSE_EXITED:
+                return mouse.mouseExited();
+            case GInputRecord.KEY_PRESSED:
+                return keys.keyPressed( a, (char)b, c );
+            case GInputRecord.KEY_RELEASED:
+                return keys.keyReleased( a, (char)b, c );
+            case GInputRecord.KEY_TYPED:
+                return keys.keyTyped( a, (char)b, c );
+            }
+        }
+        throw new IllegalStateException( "Unknown input record type: " + type );
+    }
+
+
+    private void dispatched( int inputType ) {
+        GInputLatency lat = mLatency;
+        if( lat != null ) {
+            lat.dispatched( inputType );
+        }
+    }
+
+
     private static class InputFrame {
         final GComponent mRoot;
         final GComponent mFocus;
@@ -280,8 +449,14 @@ class EventProcessor implements GHumanInputController {
         // The copy of mouse buttons currently down.
         private int mButtons = 0;
 
+        // Value of last call to setAll(), if state has not changed since.
+        // Lets consecutive input with the same modifiers skip updating state.
+        private boolean mAllValid = false;
+        private int     mAllMods  = 0;
+
 
         public int pressButton( int i ) {
+            mAllValid = false;
             int mask;
             switch( i ) {
             case 0:
@@ -303,6 +478,7 @@ class EventProcessor implements GHumanInputController {
 
 
         public int releaseButton( int i ) {
+            mAllValid = false;
             int mask;
             switch( i ) {
             case 0:
@@ -339,6 +515,7 @@ class EventProcessor implements GHumanInputController {
 
 
         public int pressKey( int code, int location ) {
+            mAllValid = false;
             // Ignore key locations beyond range.
             int loc = location & LOCATION_MASK;
             if( loc != location && loc == 0 ) {
@@ -370,6 +547,7 @@ class EventProcessor implements GHumanInputController {
 
 
         public int releaseKey( int code, int location ) {
+            mAllValid = false;
             // Ignore key locations beyond range.
             int loc = location & LOCATION_MASK;
             if( loc != location && loc == 0 ) {
@@ -417,6 +595,7 @@ class EventProcessor implements GHumanInputController {
 
 
         public void setKeyModifiers( int mods ) {
+            mAllValid = false;
             mKeys = mods & KEYS_MASK;
             mShifts  = 0;
             mCtrls   = 0;
@@ -426,13 +605,19 @@ class EventProcessor implements GHumanInputController {
 
 
         public void setMouseModifiers( int mods ) {
+            mAllValid = false;
             mButtons = mods & BUTTONS_MASK;
         }
 
 
         public void setAll( int mods ) {
+            if( mAllValid && mAllMods == mods ) {
+                return;
+            }
             setKeyModifiers( mods );
             setMouseModifiers( mods );
+            mAllValid = true;
+            mAllMods  = mods;
         }
 
     }
@@ -443,12 +628,14 @@ class EventProcessor implements GHumanInputController {
         private final GComponent mRoot;
         private final GKeyboardFocusManager mFocusCont;
         private final ModifierState mMods;
+        private final InputEventPool mPool;
 
 
-        public KeyController( GComponent root, GKeyboardFocusManager focusCont, ModifierState mods ) {
+        public KeyController( GComponent root, GKeyboardFocusManager focusCont, ModifierState mods, InputEventPool pool ) {
             mRoot = root;
             mFocusCont = focusCont;
             mMods = mods;
+            mPool = pool;
         }
 
 
@@ -460,8 +647,7 @@ class EventProcessor implements GHumanInputController {
             }
             long micros = System.currentTimeMillis() * 1000L;
             int id = GKeyEvent.KEY_PRESSED;
-            GKeyEvent ev = new GKeyEvent( focus, id, micros, mods, keyCode, keyChar, keyLoc );
-            return mFocusCont.dispatchKeyEvent( ev );
+            return dispatch( focus, id, micros, mods, keyCode, keyChar, keyLoc );
         }
 
 
@@ -472,8 +658,7 @@ class EventProcessor implements GHumanInputController {
                 focus = mRoot;
             }
             int id = GKeyEvent.KEY_PRESSED;
-            GKeyEvent ev = new GKeyEvent( focus, id, micros, mods, keyCode, keyChar, keyLoc );
-            return mFocusCont.dispatchKeyEvent( ev );
+            return dispatch( focus, id, micros, mods, keyCode, keyChar, keyLoc );
         }
 
 
@@ -485,8 +670,7 @@ class EventProcessor implements GHumanInputController {
             }
             long micros = System.currentTimeMillis() * 1000L;
             int id = GKeyEvent.KEY_RELEASED;
-            GKeyEvent ev = new GKeyEvent( focus, id, micros, mods, keyCode, keyChar, keyLoc );
-            return mFocusCont.dispatchKeyEvent( ev );
+            return dispatch( focus, id, micros, mods, keyCode, keyChar, keyLoc );
         }
 
 
@@ -498,8 +682,7 @@ class EventProcessor implements GHumanInputController {
             }
 
             int id = GKeyEvent.KEY_RELEASED;
-            GKeyEvent ev = new GKeyEvent( focus, id, micros, mods, keyCode, keyChar, keyLoc );
-            return mFocusCont.dispatchKeyEvent( ev );
+            return dispatch( focus, id, micros, mods, keyCode, keyChar, keyLoc );
         }
 
 
@@ -512,8 +695,7 @@ class EventProcessor implements GHumanInputController {
 
             long micros = System.currentTimeMillis() * 1000L;
             int id = GKeyEvent.KEY_TYPED;
-            GKeyEvent ev = new GKeyEvent( focus, id, micros, mods, keyCode, keyChar, keyLoc );
-            return mFocusCont.dispatchKeyEvent( ev );
+            return dispatch( focus, id, micros, mods, keyCode, keyChar, keyLoc );
         }
 
 
@@ -525,8 +707,17 @@ class EventProcessor implements GHumanInputController {
             }
 
             int id = GKeyEvent.KEY_TYPED;
-            GKeyEvent ev = new GKeyEvent( focus, id, micros, mods, keyCode, keyChar, keyLoc );
-            return mFocusCont.dispatchKeyEvent( ev );
+            return dispatch( focus, id, micros, mods, keyCode, keyChar, keyLoc );
+        }
+
+
+        private boolean dispatch( GComponent focus, int id, long micros, int mods, int keyCode, char keyChar, int keyLoc ) {
+            GKeyEvent ev = mPool.keyEvent( focus, id, micros, mods, keyCode, keyChar, keyLoc );
+            try {
+                return mFocusCont.dispatchKeyEvent( ev );
+            } finally {
+                mPool.release( ev );
+            }
         }
 
     }
@@ -567,6 +758,7 @@ class EventProcessor implements GHumanInputController {
     private static class MouseController {
 
         private final ModifierState mMods;
+        private final InputEventPool mPool;
         private final Rect mWorkRect = new Rect();
 
         private GComponent mRoot;
@@ -580,12 +772,18 @@ class EventProcessor implements GHumanInputController {
         private int mMouseX = Integer.MIN_VALUE;
         private int mMouseY = Integer.MIN_VALUE;
 
+        // Local mouse point within mPointComp, found while hit testing the current motion.
+        // Valid only until the motion is processed, and only if no listeners ran in between.
+        private GComponent mPointComp = null;
+        private long       mPoint     = 0L;
+
         private final ClickCounter mClicker = new ClickCounter();
 
 
-        public MouseController( ModifierState mods, GComponent root ) {
+        public MouseController( ModifierState mods, GComponent root, InputEventPool pool ) {
             mRoot = root;
             mMods = mods;
+            mPool = pool;
         }
 
 
@@ -830,20 +1028,22 @@ class EventProcessor implements GHumanInputController {
             GComponent prev = mMouseLocation;
             GComponent focus = null;
             Rect bounds = mWorkRect;
+            mPointComp = null;
 
             if( !fullCheck && prev != null ) {
-                prev.getAbsoluteBounds( bounds );
-                int relx = x - bounds.x0;
-                int rely = y - bounds.y0;
-                focus = prev.mouseFocusableComponentAt( relx, rely );
+                long p = GPanel.localPoint( prev, x, y, bounds );
+                focus = prev.mouseFocusableComponentAt( GPanel.originX( p ), GPanel.originY( p ) );
+                if( focus == prev ) {
+                    mPointComp = prev;
+                    mPoint     = p;
+                    return;
+                }
             }
 
             if( focus == null ) {
                 GComponent comp = mRoot;
-                comp.getAbsoluteBounds( bounds );
-                int relx = x - bounds.x0;
-                int rely = y - bounds.y0;
-                focus = comp.mouseFocusableComponentAt( relx, rely );
+                long p = GPanel.localPoint( comp, x, y, bounds );
+                focus = comp.mouseFocusableComponentAt( GPanel.originX( p ), GPanel.originY( p ) );
             }
 
             if( focus == prev ) {
@@ -867,37 +1067,43 @@ class EventProcessor implements GHumanInputController {
                                  int clickCount,
                                  boolean trigger )
         {
-            Rect rect = mWorkRect;
-            source.getAbsoluteBounds( rect );
-            GMouseEvent e = new GMouseEvent( source,
-                                             id,
-                                             micros,
-                                             mMods.mouseEventModifiers(),
-                                             mMouseX - rect.x(),
-                                             mMouseY - rect.y(),
-                                             clickCount,
-                                             trigger,
-                                             button );
-
-            source.processMouseEvent( e );
-            return e.isConsumed();
+            long p = GPanel.localPoint( source, mMouseX, mMouseY, mWorkRect );
+            GMouseEvent e = mPool.mouseEvent( source,
+                                              id,
+                                              micros,
+                                              mMods.mouseEventModifiers(),
+                                              GPanel.originX( p ),
+                                              GPanel.originY( p ),
+                                              clickCount,
+                                              trigger,
+                                              button );
+            try {
+                source.processMouseEvent( e );
+                return e.isConsumed();
+            } finally {
+                mPool.release( e );
+            }
         }
 
 
         private boolean processMotion( GComponent source, int id, long micros ) {
-            Rect rect = mWorkRect;
-            source.getAbsoluteBounds( mWorkRect );
-            GMouseEvent e = new GMouseEvent( source,
-                                             id,
-                                             micros,
-                                             mMods.mouseEventModifiers(),
-                                             mMouseX - rect.x(),
-                                             mMouseY - rect.y(),
-                                             mClicker.current(),
-                                             false,
-                                             0 );
-            source.processMouseMotionEvent( e );
-            return e.isConsumed();
+            long p = source == mPointComp ? mPoint : GPanel.localPoint( source, mMouseX, mMouseY, mWorkRect );
+            mPointComp = null;
+            GMouseEvent e = mPool.mouseEvent( source,
+                                              id,
+                                              micros,
+                                              mMods.mouseEventModifiers(),
+                                              GPanel.originX( p ),
+                                              GPanel.originY( p ),
+                                              mClicker.current(),
+                                              false,
+                                              0 );
+            try {
+                source.processMouseMotionEvent( e );
+                return e.isConsumed();
+            } finally {
+                mPool.release( e );
+            }
         }
 
 
@@ -907,21 +1113,22 @@ class EventProcessor implements GHumanInputController {
                                       int scrollAmount,
                                       int wheelRotation )
         {
-            Rect rect = mWorkRect;
-            source.getAbsoluteBounds( rect );
-            GMouseWheelEvent e = new GMouseWheelEvent( source,
-                                                       GMouseEvent.MOUSE_WHEEL,
-                                                       micros,
-                                                       mMods.mouseEventModifiers(),
-                                                       mMouseX - rect.x(),
-                                                       mMouseY - rect.y(),
-                                                       mClicker.current(),
-                                                       false,
-                                                       scrollType,
-                                                       scrollAmount,
-                                                       wheelRotation );
-            source.processMouseWheelEvent( e );
-            return e.isConsumed();
+            long p = GPanel.localPoint( source, mMouseX, mMouseY, mWorkRect );
+            GMouseWheelEvent e = mPool.wheelEvent( source,
+                                                   micros,
+                                                   mMods.mouseEventModifiers(),
+                                                   GPanel.originX( p ),
+                                                   GPanel.originY( p ),
+                                                   mClicker.current(),
+                                                   scrollType,
+                                                   scrollAmount,
+                                                   wheelRotation );
+            try {
+                source.processMouseWheelEvent( e );
+                return e.isConsumed();
+            } finally {
+                mPool.release( e );
+            }
         }
 
 
@@ -6,26 +6,108 @@
 
 package bits.glui;
 
+import bits.glui.GQueueMetrics.CallType;
 import bits.glui.event.*;
 
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.*;
+
+
+/**
+ * Lock-free implementation of GDispatcher. Any number of threads may fire events
+ * concurrently, but only a single thread may call {@link #processAllEvents}.
+ * <p>
+ * Each priority level is a multi-producer, single-consumer linked queue. Producers
+ * append items with a single atomic swap, and the consumer drains items without
+ * acquiring any locks. Paint and layout requests are coalesced so that at most one
+ * of each is pending at a time.
+ * <p>
+ * MOVED and RESIZED component and ancestor events are also coalesced per source
+ * and event id. While such an event is pending, further events of the same kind
+ * replace its payload rather than adding queue entries, so listeners receive only
+ * the most recent event, at the queue position of the first.
+ * <p>
+ * While damage is tracked, every component passed to {@link #firePaint} is also
+ * recorded as damaged, even when repaints are ignored, so that the painter may
+ * limit a frame to the damaged area. See {@link #trackDamage(boolean)} and
+ * {@link #drainDamage}.
+ * <p>
+ * General events are divided into lanes. Events fired directly on the queue go
+ * to a default lane, and additional lanes may be created with {@link #createLane}.
+ * See {@link GDispatchLane} for scheduling rules.
+ *
+ * @author decamp
+ */
+class EventQueue implements GDispatcher {
 
+    static final int PRIORITY_REPAINT = 0;
+    static final int PRIORITY_LAYOUT  = 1;
+    static final int PRIORITY_OTHER   = 2;
+    static final int PRIORITY_MAX     = 3;
+
+    // Longest lane deadline. Longer deadlines are saturated, so that deadlines may be compared
+    // by difference without overflow.
+    private static final long MAX_DEADLINE = Long.MAX_VALUE >> 2;
+
+    private static final int MAX_POOL_SIZE   = 128;
+    private static final int MAX_DAMAGE_SIZE = 256;
+
+    private static final int SLOT_COMPONENT_MOVED   = 0;
+    private static final int SLOT_COMPONENT_RESIZED = 1;
+    private static final int SLOT_ANCESTOR_MOVED    = 2;
+    private static final int SLOT_ANCESTOR_RESIZED  = 3;
+    private static final int SLOT_MAX               = 4;
 
-class EventQueue implements GDispatcher {
-    
-    private static final int PRIORITY_REPAINT = 0;
-    private static final int PRIORITY_LAYOUT  = 1;
-    private static final int PRIORITY_OTHER   = 2;
-    private static final int PRIORITY_MAX     = 3;
-    
     private final GComponent mRoot;
     private final Component mRepaintComp;
-    
+
     private final Queue[] mQueues = new Queue[PRIORITY_MAX];
-    
-    private Item mItemPool    = null;
-    private int mItemPoolSize = 0;
-    private boolean mIgnoreRepaints = false;
+
+    // True iff a paint item is currently queued.
+    private final AtomicBoolean mPaintQueued = new AtomicBoolean( false );
+    // Source of pending layout. Non-null iff a layout item is currently queued.
+    private final AtomicReference<GComponent> mLayoutSource = new AtomicReference<GComponent>();
+    // Coalescable events that are currently queued, by source.
+    private final ConcurrentMap<GComponent,Coalescer> mCoalescers = new ConcurrentHashMap<GComponent,Coalescer>();
+
+    // Any thread may push items onto pool, but only the thread
+    // holding mPoolLock may pop items.
+    private final AtomicReference<Item> mItemPool     = new AtomicReference<Item>();
+    private final AtomicBoolean         mItemPoolLock = new AtomicBoolean( false );
+    private final AtomicInteger         mItemPoolSize = new AtomicInteger( 0 );
+
+    // Components that have requested repaint since last drainDamage().
+    private final ConcurrentLinkedQueue<GComponent> mDamage = new ConcurrentLinkedQueue<GComponent>();
+    private final AtomicInteger mDamageSize = new AtomicInteger( 0 );
+    // Set when too many damaged components are queued to be worth tracking.
+    private volatile boolean mDamageOverflow = false;
+    // Set when a component in the tree stops being displayed.
+    private volatile boolean mHidden = false;
+
+    private volatile boolean mIgnoreRepaints = false;
+    private volatile boolean mTrackDamage    = false;
+    // Null when metrics are disabled.
+    private volatile GQueueMetrics mMetrics = null;
+    // Thread that most recently processed events.
+    private volatile Thread mDispatchThread = null;
+    // When true, components in tree do not take their locks.
+    private volatile boolean mConfined      = false;
+    private volatile boolean mCheckConfined = false;
+
+    private final Lane mDefaultLane;
+    // Copy-on-write. mLanes[0] is always the default lane.
+    private volatile Lane[] mLanes;
+    // True iff the last general event was taken from a lane only because its deadline passed.
+    // Accessed only by dispatch thread.
+    private boolean mPromoted = false;
 
 
     EventQueue( GComponent root, Component optRepaintComp ) {
@@ -34,10 +116,12 @@ class EventQueue implements GDispatcher {
             mQueues[i] = new Queue();
         }
         mRepaintComp = optRepaintComp;
+        mDefaultLane = new Lane( "default", GDispatchLane.PRIORITY_NORMAL, 0, mQueues[PRIORITY_OTHER] );
+        mLanes       = new Lane[]{ mDefaultLane };
     }
 
 
-    
+
     public boolean ignoreRepaints() {
         return mIgnoreRepaints;
     }
@@ -46,50 +130,42 @@ class EventQueue implements GDispatcher {
     public void ignoreRepaints( boolean ignoreRepaints ) {
         mIgnoreRepaints = ignoreRepaints;
     }
-    
-    
-    public synchronized void firePaint( GComponent source ) {
-        if( mIgnoreRepaints ) {
-            return;
-        }
 
-        if( mRepaintComp != null ) {
-            mRepaintComp.repaint();
-            return;
+
+    public void firePaint( GComponent source ) {
+        if( mTrackDamage ) {
+            addDamage( source );
         }
 
-        Queue q = mQueues[PRIORITY_REPAINT];
-        // Currently, all paint requests repaint entire screen.
-        // So there's no point in multiple repaint requests.
-        if( q.mHead != null ) {
+        if( mIgnoreRepaints ) {
             return;
         }
-        
-        Item item = getItem();
-        item.mSource = source;
-        item.mCall   = PROCESS_PAINT;
-        q.offer( item );
+
+        requestFrame( source );
     }
 
 
-    public synchronized void fireLayout( GComponent source ) {
-        Queue q = mQueues[PRIORITY_LAYOUT];
-        Item item = q.mHead;
-        if( item != null ) {
-            if( item.mSource != source ) {
-                item.mSource = mRoot;
+    public void fireLayout( GComponent source ) {
+        while( true ) {
+            GComponent pending = mLayoutSource.get();
+            if( pending == null ) {
+                if( mLayoutSource.compareAndSet( null, source ) ) {
+                    break;
+                }
+            } else if( pending == source || pending == mRoot ) {
+                return;
+            } else if( mLayoutSource.compareAndSet( pending, mRoot ) ) {
+                return;
             }
-            return;
         }
-        
-        item = getItem();
-        item.mSource = source;
-        item.mCall = PROCESS_APPLY_LAYOUT;
-        q.offer( item );
+
+        Item item = getItem();
+        item.mCall = mProcessApplyLayout;
+        mQueues[PRIORITY_LAYOUT].offer( item );
     }
 
 
-    public synchronized void fireRequestFocus( GComponent source ) {
+    public void fireRequestFocus( GComponent source ) {
         Item item    = getItem();
         item.mSource = source;
         item.mCall   = PROCESS_REQUEST_FOCUS;
@@ -97,7 +173,7 @@ class EventQueue implements GDispatcher {
     }
 
 
-    public synchronized void fireTransferFocusBackward( GComponent source ) {
+    public void fireTransferFocusBackward( GComponent source ) {
         Item item    = getItem();
         item.mSource = source;
         item.mCall   = PROCESS_TRANSFER_FOCUS_FORWARD;
@@ -105,7 +181,7 @@ class EventQueue implements GDispatcher {
     }
 
 
-    public synchronized void fireTransferFocusForward( GComponent source ) {
+    public void fireTransferFocusForward( GComponent source ) {
         Item item    = getItem();
         item.mSource = source;
         item.mCall   = PROCESS_TRANSFER_FOCUS_BACKWARD;
@@ -113,7 +189,7 @@ class EventQueue implements GDispatcher {
     }
 
 
-    public synchronized void firePushInputRoot( GComponent source ) {
+    public void firePushInputRoot( GComponent source ) {
         Item item    = getItem();
         item.mSource = source;
         item.mCall   = PROCESS_PUSH_INPUT_ROOT;
@@ -121,7 +197,7 @@ class EventQueue implements GDispatcher {
     }
 
 
-    public synchronized void firePopInputRoot( GComponent source ) {
+    public void firePopInputRoot( GComponent source ) {
         Item item    = getItem();
         item.mSource = source;
         item.mCall   = PROCESS_POP_INPUT_ROOT;
@@ -129,7 +205,16 @@ class EventQueue implements GDispatcher {
     }
 
 
-    public synchronized void fireComponentEvent( GComponentEvent event ) {
+    public void fireComponentEvent( GComponentEvent event ) {
+        switch( event.id() ) {
+        case GComponentEvent.COMPONENT_MOVED:
+            fireCoalesced( event.source(), SLOT_COMPONENT_MOVED, event );
+            return;
+        case GComponentEvent.COMPONENT_RESIZED:
+            fireCoalesced( event.source(), SLOT_COMPONENT_RESIZED, event );
+            return;
+        }
+
         Item item     = getItem();
         item.mObject1 = event;
         item.mCall    = PROCESS_COMPONENT_EVENT;
@@ -137,7 +222,16 @@ class EventQueue implements GDispatcher {
     }
 
 
-    public synchronized void fireAncestorEvent( GAncestorEvent event ) {
+    public void fireAncestorEvent( GAncestorEvent event ) {
+        switch( event.id() ) {
+        case GAncestorEvent.ANCESTOR_MOVED:
+            fireCoalesced( event.source(), SLOT_ANCESTOR_MOVED, event );
+            return;
+        case GAncestorEvent.ANCESTOR_RESIZED:
+            fireCoalesced( event.source(), SLOT_ANCESTOR_RESIZED, event );
+            return;
+        }
+
         Item item     = getItem();
         item.mObject1 = event;
         item.mCall    = PROCESS_ANCESTOR_EVENT;
@@ -145,7 +239,10 @@ class EventQueue implements GDispatcher {
     }
 
 
-    public synchronized void firePropertyChange( GComponent source, String prop, Object oldValue, Object newValue ) {
+    public void firePropertyChange( GComponent source, String prop, Object oldValue, Object newValue ) {
+        if( prop == GComponent.PROP_DISPLAYED && Boolean.FALSE.equals( newValue ) ) {
+            mHidden = true;
+        }
         Item item     = getItem();
         item.mSource  = source;
         item.mString  = prop;
@@ -156,194 +253,746 @@ class EventQueue implements GDispatcher {
     }
 
 
-    public synchronized void fireRunnable( Runnable r ) {
+    public void fireRunnable( Runnable r ) {
         Item item     = getItem();
         item.mObject1 = r;
         item.mCall    = PROCESS_RUN;
         mQueues[PRIORITY_OTHER].offer( item );
     }
 
-    
+
+    public <T> CompletableFuture<T> submit( Callable<T> task ) {
+        return mDefaultLane.submit( task );
+    }
+
+
+    public <T> List<CompletableFuture<T>> submitAll( Collection<? extends Callable<T>> tasks ) {
+        List<CompletableFuture<T>> ret = new ArrayList<CompletableFuture<T>>( tasks.size() );
+        Item first = null;
+        Item last  = null;
+        int count  = 0;
+
+        // Link items privately, then publish entire chain at once.
+        for( Callable<T> task: tasks ) {
+            DispatchFuture<T> future = new DispatchFuture<T>( this );
+            Item item     = getItem();
+            item.mObject1 = task;
+            item.mObject2 = future;
+            item.mCall    = PROCESS_CALL;
+            if( first == null ) {
+                first = item;
+            } else {
+                last.mNext = item;
+            }
+            last = item;
+            count++;
+            ret.add( future );
+        }
+
+        if( first != null ) {
+            mQueues[PRIORITY_OTHER].offerAll( first, last, count );
+        }
+        return ret;
+    }
+
+
+    public boolean isDispatchThread() {
+        return Thread.currentThread() == mDispatchThread;
+    }
+
+    /**
+     * Called by components before accessing their state.
+     *
+     * @return true iff tree is confined to dispatch thread and components may skip locking.
+     * @throws IllegalStateException if confinement checks are enabled and
+     *         caller is not the dispatch thread.
+     */
+    boolean confined() {
+        if( !mConfined ) {
+            return false;
+        }
+        if( mCheckConfined ) {
+            Thread t = mDispatchThread;
+            if( t != null && t != Thread.currentThread() ) {
+                throw new IllegalStateException( "Confined tree accessed from " +
+                                                 Thread.currentThread().getName() +
+                                                 ", not dispatch thread " + t.getName() );
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * @return true iff tree is confined. Unlike {@link #confined()}, never checks the calling thread.
+     */
+    boolean isConfined() {
+        return mConfined;
+    }
+
+
+    void confined( boolean confined ) {
+        mConfined = confined;
+    }
+
+
+    boolean checkConfined() {
+        return mCheckConfined;
+    }
+
+
+    void checkConfined( boolean check ) {
+        mCheckConfined = check;
+    }
+
+
+    public synchronized GDispatchLane createLane( String name, int priority, long deadlineNanos ) {
+        Lane lane = new Lane( name, priority, deadlineNanos, new Queue() );
+        Lane[] lanes = mLanes;
+        Lane[] next  = new Lane[lanes.length + 1];
+        System.arraycopy( lanes, 0, next, 0, lanes.length );
+        next[lanes.length] = lane;
+        mLanes = next;
+        return lane;
+    }
+
+    /**
+     * @return true iff repaint sources are recorded as damaged.
+     * @see #trackDamage(boolean)
+     */
+    boolean trackDamage() {
+        return mTrackDamage;
+    }
+
+    /**
+     * When enabled, repaint sources are recorded for {@link #drainDamage}, and
+     * components repaint their parents when they are moved, resized, hidden or
+     * removed, so that the area they covered is repaired.
+     */
+    void trackDamage( boolean enable ) {
+        mTrackDamage = enable;
+    }
+
+    /**
+     * Moves all components that have requested repaint since the last call
+     * into {@code out}. Should only be called by the painting thread.
+     *
+     * @return true if damage was not fully tracked and everything should be repainted.
+     */
+    boolean drainDamage( Collection<? super GComponent> out ) {
+        boolean overflow = mDamageOverflow;
+        mDamageOverflow = false;
+
+        GComponent c;
+        while( ( c = mDamage.poll() ) != null ) {
+            mDamageSize.decrementAndGet();
+            if( out != null ) {
+                out.add( c );
+            }
+        }
+
+        return overflow;
+    }
+
+    /**
+     * Should only be called by the painting thread.
+     *
+     * @return true if any component in the tree has stopped being displayed since the last call.
+     */
+    boolean drainHidden() {
+        if( !mHidden ) {
+            return false;
+        }
+        mHidden = false;
+        return true;
+    }
+
+    /**
+     * Processes all queued events, including any events that are queued
+     * while processing. May only be called by one thread at a time.
+     *
+     * @return true if any events were processed.
+     */
     boolean processAllEvents( EventProcessor processor ) {
-        Item item   = null;
+        mDispatchThread = Thread.currentThread();
+        final Queue[] queues = mQueues;
         boolean ret = false;
-        
+
         while( true ) {
-            synchronized( this ) {
-                // Return item first so there's only one sync block.
-                if( item != null ) {
-                    offerItem ( item );
-                    item = null;
-                }
-                for( int n = PRIORITY_MAX - 1; item == null && n >= 0; n-- ) {
-                    item = mQueues[n].remove();
-                }
+            Item item = pollGeneral();
+            for( int n = PRIORITY_LAYOUT; item == null && n >= 0; n-- ) {
+                item = queues[n].poll( this );
             }
-            
+
             if( item == null ) {
                 return ret;
             }
             ret = true;
-            
-            try {
-                item.mCall.call( processor, item );
-            } catch( Exception ex ) {
-                ex.printStackTrace();
+            dispatch( processor, item );
+        }
+    }
+
+    /**
+     * Processes queued events until {@code nanosBudget} has elapsed. Layout
+     * and paint events are always processed, even after the budget has expired,
+     * but all other events are left queued for the next call. If events remain,
+     * another frame is requested by repainting the repaint component or, if there
+     * is none, by queuing a paint event. May only be called by one thread at a time.
+     *
+     * @param nanosBudget Time allowed for processing general events.
+     * @return number of events that remain queued.
+     */
+    int processEvents( EventProcessor processor, long nanosBudget ) {
+        mDispatchThread = Thread.currentThread();
+        final Queue[] queues = mQueues;
+        final long deadline = System.nanoTime() + nanosBudget;
+        boolean expired = false;
+
+        while( true ) {
+            Item item = expired ? null : pollGeneral();
+            for( int n = PRIORITY_LAYOUT; item == null && n >= 0; n-- ) {
+                item = queues[n].poll( this );
+            }
+
+            if( item == null ) {
+                break;
+            }
+            dispatch( processor, item );
+
+            if( !expired && System.nanoTime() - deadline >= 0 ) {
+                expired = true;
+            }
+        }
+
+        int backlog = backlog();
+        if( backlog > 0 ) {
+            requestFrame( mRoot );
+        }
+        return backlog;
+    }
+
+    GQueueMetrics metrics() {
+        return mMetrics;
+    }
+
+
+    void metrics( GQueueMetrics metrics ) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * @return approximate number of events queued at given priority.
+     */
+    int depth( int priority ) {
+        return mQueues[priority].size();
+    }
+
+    /**
+     * @return approximate number of general events currently queued,
+     *         not including layout and paint events.
+     */
+    int backlog() {
+        int sum = 0;
+        for( Lane lane: mLanes ) {
+            sum += lane.mQueue.size();
+        }
+        return sum;
+    }
+
+    /**
+     * Takes the next general event from the lane with the highest priority, breaking
+     * ties by earliest deadline. A lane whose head is past its deadline is served
+     * first instead, but never twice in a row, so that lanes of higher priority
+     * keep at least half of all dispatches.
+     */
+    private Item pollGeneral() {
+        final Lane[] lanes = mLanes;
+        if( lanes.length == 1 ) {
+            return lanes[0].mQueue.poll( this );
+        }
+
+        final long now = System.nanoTime();
+        Lane best     = null;
+        long bestTime = 0L;
+        Lane due      = null;
+        long dueTime  = 0L;
+
+        for( Lane lane: lanes ) {
+            Item head = lane.mQueue.peek();
+            if( head == null ) {
+                continue;
+            }
+            long t = head.mDeadline;
+            boolean timed = lane.mDeadline > 0;
+
+            if( best == null || lane.mPriority > best.mPriority ||
+                lane.mPriority == best.mPriority && timed &&
+                ( best.mDeadline == 0 || t - bestTime < 0 ) )
+            {
+                best     = lane;
+                bestTime = t;
+            }
+            if( timed && now - t >= 0 && ( due == null || t - dueTime < 0 ) ) {
+                due     = lane;
+                dueTime = t;
             }
         }
+
+        if( due != null && due != best && !mPromoted ) {
+            mPromoted = true;
+            return due.mQueue.poll( this );
+        }
+        mPromoted = false;
+        return best == null ? null : best.mQueue.poll( this );
     }
 
-    
+
+    private void dispatch( EventProcessor processor, Item item ) {
+        GQueueMetrics metrics = mMetrics;
+        long t0 = metrics == null ? 0L : System.nanoTime();
+
+        try {
+            item.mCall.call( processor, item );
+        } catch( Exception ex ) {
+            ex.printStackTrace();
+        }
+
+        if( metrics != null ) {
+            metrics.recordDispatch( item.mCall.mType, item.mTimed, item.mEnqueueNanos, t0, System.nanoTime() );
+        }
+
+        // Item remains in queue as stub node until next poll.
+        // Clear payload now so it doesn't retain references.
+        item.clear();
+    }
+
+
+    /**
+     * Repaints the repaint component. Without one, queues a paint event instead,
+     * so that callers driving frames themselves see pending work.
+     */
+    private void requestFrame( GComponent source ) {
+        if( mRepaintComp != null ) {
+            mRepaintComp.repaint();
+            return;
+        }
+
+        // Damage is tracked separately, so one queued paint covers all requests.
+        if( !mPaintQueued.compareAndSet( false, true ) ) {
+            return;
+        }
+
+        Item item = getItem();
+        item.mSource = source;
+        item.mCall   = mProcessPaint;
+        mQueues[PRIORITY_REPAINT].offer( item );
+    }
+
+
+    private void addDamage( GComponent source ) {
+        if( mDamageSize.incrementAndGet() > MAX_DAMAGE_SIZE ) {
+            mDamageSize.decrementAndGet();
+            mDamageOverflow = true;
+            return;
+        }
+        mDamage.offer( source );
+    }
+
+
+    private void fireCoalesced( GComponent source, int slot, GEvent event ) {
+        Coalescer c = mCoalescers.get( source );
+        if( c == null ) {
+            c = new Coalescer( source );
+            Coalescer prev = mCoalescers.putIfAbsent( source, c );
+            if( prev != null ) {
+                c = prev;
+            }
+        }
+
+        // If slot was already occupied, the queued item will pick up the new event.
+        if( c.mSlots.getAndSet( slot, event ) != null ) {
+            return;
+        }
+
+        Item item     = getItem();
+        item.mObject1 = c;
+        item.mIndex   = slot;
+        item.mCall    = slot < SLOT_ANCESTOR_MOVED ? mProcessCoalescedComponent : mProcessCoalescedAncestor;
+        mQueues[PRIORITY_OTHER].offer( item );
+    }
+
+
     private Item getItem() {
-        if( mItemPool == null ) {
-            return new Item();
+        Item item = popItem();
+        GQueueMetrics metrics = mMetrics;
+        if( metrics != null ) {
+            metrics.recordPool( item != null );
+        }
+        if( item == null ) {
+            item = new Item();
         }
-        
-        Item ret = mItemPool;
-        mItemPool = mItemPool.mNext;
-        mItemPoolSize--;
+        if( metrics != null ) {
+            item.mTimed        = true;
+            item.mEnqueueNanos = System.nanoTime();
+        }
+        return item;
+    }
+
+    /**
+     * @return pooled item, or null if none available.
+     */
+    private Item popItem() {
+        // Only one thread may pop from pool at a time, which prevents ABA problems.
+        // Threads that fail to acquire the pool just allocate a new item.
+        if( !mItemPoolLock.compareAndSet( false, true ) ) {
+            return null;
+        }
+
+        Item ret;
+        try {
+            do {
+                ret = mItemPool.get();
+            } while( ret != null && !mItemPool.compareAndSet( ret, ret.mNext ) );
+        } finally {
+            mItemPoolLock.set( false );
+        }
+
+        if( ret == null ) {
+            return null;
+        }
+
+        mItemPoolSize.decrementAndGet();
         ret.mNext = null;
         return ret;
     }
-    
-    
+
+
     private void offerItem( Item item ) {
-        if( mItemPoolSize == 0 ) {
-            item.clear();
-            mItemPool = item;
-            mItemPoolSize = 1;
-        } else if( mItemPoolSize < 128 ) {
-            item.clear();
-            item.mNext = mItemPool;
-            mItemPoolSize++;
-        }
-    }
-    
-    
-    
+        if( mItemPoolSize.get() >= MAX_POOL_SIZE ) {
+            return;
+        }
+
+        item.clear();
+        mItemPoolSize.incrementAndGet();
+
+        Item head;
+        do {
+            head = mItemPool.get();
+            item.mNext = head;
+        } while( !mItemPool.compareAndSet( head, item ) );
+    }
+
+
+    private final Call mProcessPaint = new Call( CallType.PAINT ) {
+        public void call( EventProcessor processor, Item item ) {
+            mPaintQueued.set( false );
+            processor.processPaint( item.mSource );
+        }
+    };
+
+    private final Call mProcessApplyLayout = new Call( CallType.LAYOUT ) {
+        public void call( EventProcessor processor, Item item ) {
+            GComponent source = mLayoutSource.getAndSet( null );
+            if( source != null ) {
+                processor.processLayout( source );
+            }
+        }
+    };
+
+
+    private final Call mProcessCoalescedComponent = new CoalescedCall( CallType.COMPONENT_EVENT );
+    private final Call mProcessCoalescedAncestor  = new CoalescedCall( CallType.ANCESTOR_EVENT );
+
+
+    private final class CoalescedCall extends Call {
+        CoalescedCall( CallType type ) {
+            super( type );
+        }
+
+        public void call( EventProcessor processor, Item item ) {
+            Coalescer c = (Coalescer)item.mObject1;
+            GEvent e    = c.mSlots.getAndSet( item.mIndex, null );
+
+            // A producer may still hold a reference to a removed coalescer.
+            // That's fine: it will queue its own item that points directly
+            // to the coalescer, and a new coalescer will be created for
+            // subsequent events.
+            if( c.isEmpty() ) {
+                mCoalescers.remove( c.mSource, c );
+            }
+
+            if( e instanceof GAncestorEvent ) {
+                c.mSource.processAncestorEvent( (GAncestorEvent)e );
+            } else if( e != null ) {
+                c.mSource.processComponentEvent( (GComponentEvent)e );
+            }
+        }
+    };
+
+
     private static final class Item {
-        Item mNext;
+        volatile Item mNext;
 
         Call       mCall;
         GComponent mSource;
         String     mString;
         Object     mObject1;
         Object     mObject2;
-
+        int        mIndex;
+        // Time by which item should be dispatched. Only used for general events.
+        long       mDeadline = Long.MAX_VALUE;
+        // Time item was queued. Only valid if mTimed, which is set while metrics are enabled.
+        boolean    mTimed;
+        long       mEnqueueNanos;
+
+        /**
+         * Clears payload. Does NOT clear mNext, which may be written
+         * by a producer while this item is the stub of a queue.
+         */
         public void clear() {
-            mNext    = null;
+            mCall    = null;
             mSource  = null;
             mString  = null;
             mObject1 = null;
             mObject2 = null;
+            mDeadline = Long.MAX_VALUE;
+            mTimed    = false;
         }
     }
-    
-    
-    private static final class Queue {
-        Item mHead = null;
-        Item mTail = null;
-        
+
+
+    private final class Lane implements GDispatchLane {
+        final String mName;
+        final int    mPriority;
+        final long   mDeadline;
+        final Queue  mQueue;
+
+        Lane( String name, int priority, long deadlineNanos, Queue queue ) {
+            mName     = name;
+            mPriority = priority;
+            mDeadline = Math.max( 0, Math.min( MAX_DEADLINE, deadlineNanos ) );
+            mQueue    = queue;
+        }
+
+        public String name() {
+            return mName;
+        }
+
+        public int priority() {
+            return mPriority;
+        }
+
+        public long deadlineNanos() {
+            return mDeadline;
+        }
+
+        public void fireRunnable( Runnable r ) {
+            Item item     = getItem();
+            item.mObject1 = r;
+            item.mCall    = PROCESS_RUN;
+            offer( item );
+        }
+
+        public <T> CompletableFuture<T> submit( Callable<T> task ) {
+            DispatchFuture<T> ret = new DispatchFuture<T>( EventQueue.this );
+            Item item     = getItem();
+            item.mObject1 = task;
+            item.mObject2 = ret;
+            item.mCall    = PROCESS_CALL;
+            offer( item );
+            return ret;
+        }
+
+        public int backlog() {
+            return mQueue.size();
+        }
+
         void offer( Item item ) {
-            if( mHead == null ) {
-                mHead = mTail = item;
-                return;
+            if( mDeadline > 0 ) {
+                // Lane deadline is bounded so that the sum cannot overflow.
+                item.mDeadline = System.nanoTime() + mDeadline;
             }
-            
-            mTail.mNext = item;
-            mTail = item;
+            mQueue.offer( item );
         }
-        
-        Item remove() {
-            if( mHead == null )
-                return null;
-            
-            Item ret = mHead;
-            
-            if( mHead.mNext == null ) {
-                mHead = mTail = null;
-            } else {
-                mHead = mHead.mNext;
+
+        @Override
+        public String toString() {
+            return "GDispatchLane[" + mName + "]";
+        }
+    }
+
+    /**
+     * Holds most recent coalescable events of a single source.
+     */
+    private static final class Coalescer {
+        final GComponent                   mSource;
+        final AtomicReferenceArray<GEvent> mSlots = new AtomicReferenceArray<GEvent>( SLOT_MAX );
+
+        Coalescer( GComponent source ) {
+            mSource = source;
+        }
+
+        boolean isEmpty() {
+            for( int i = 0; i < SLOT_MAX; i++ ) {
+                if( mSlots.get( i ) != null ) {
+                    return false;
+                }
             }
-            
-            return ret;
+            return true;
         }
-        
     }
 
-    
-    private static interface Call {
-        void call( EventProcessor processor, Item item );
+    /**
+     * Intrusive multi-producer, single-consumer queue. The head is always a stub
+     * item whose payload has already been consumed. Producers only touch the tail.
+     */
+    private static final class Queue {
+        private final AtomicReference<Item> mTail;
+        private final AtomicInteger mSize = new AtomicInteger( 0 );
+        private Item mHead;
+
+        Queue() {
+            Item stub = new Item();
+            mHead = stub;
+            mTail = new AtomicReference<Item>( stub );
+        }
+
+        /**
+         * May be called by any thread.
+         */
+        void offer( Item item ) {
+            item.mNext = null;
+            mSize.incrementAndGet();
+            Item prev = mTail.getAndSet( item );
+            // Volatile write publishes payload of item to consumer.
+            prev.mNext = item;
+        }
+
+        /**
+         * Appends a chain of items that are already linked together.
+         * May be called by any thread.
+         */
+        void offerAll( Item first, Item last, int count ) {
+            last.mNext = null;
+            mSize.addAndGet( count );
+            Item prev = mTail.getAndSet( last );
+            prev.mNext = first;
+        }
+
+        /**
+         * May be called by any thread. Result may be stale.
+         */
+        int size() {
+            return Math.max( 0, mSize.get() );
+        }
+
+        /**
+         * May only be called by consumer thread.
+         */
+        Item peek() {
+            return mHead.mNext;
+        }
+
+        /**
+         * May only be called by consumer thread. Recycles the previous stub item.
+         */
+        Item poll( EventQueue owner ) {
+            Item stub = mHead;
+            Item next = stub.mNext;
+            if( next == null ) {
+                return null;
+            }
+            mHead = next;
+            mSize.decrementAndGet();
+            owner.offerItem( stub );
+            return next;
+        }
+
     }
 
-    
-    private static final Call PROCESS_PAINT = new Call() {
-        public void call( EventProcessor processor, Item item ) {
-            processor.processPaint( item.mSource );
+
+    private static abstract class Call {
+        final CallType mType;
+
+        Call( CallType type ) {
+            mType = type;
         }
-    };
-    
-    private static final Call PROCESS_APPLY_LAYOUT = new Call() {
+
+        abstract void call( EventProcessor processor, Item item );
+    }
+
+
+    private static final Call PROCESS_CALL = new Call( CallType.CALLABLE ) {
+        @SuppressWarnings( "unchecked" )
         public void call( EventProcessor processor, Item item ) {
-            processor.processLayout( item.mSource );
+            Callable<Object> task = (Callable<Object>)item.mObject1;
+            CompletableFuture<Object> future = (CompletableFuture<Object>)item.mObject2;
+            Object result;
+            try {
+                result = task.call();
+            } catch( Throwable t ) {
+                future.completeExceptionally( t );
+                return;
+            }
+            future.complete( result );
         }
     };
-    
-    private static final Call PROCESS_REQUEST_FOCUS = new Call() {
+
+    private static final Call PROCESS_REQUEST_FOCUS = new Call( CallType.FOCUS ) {
         public void call( EventProcessor processor, Item item ) {
             processor.processRequestFocus( item.mSource );
         }
     };
-    
-    private static final Call PROCESS_TRANSFER_FOCUS_BACKWARD = new Call() {
+
+    private static final Call PROCESS_TRANSFER_FOCUS_BACKWARD = new Call( CallType.FOCUS ) {
         public void call( EventProcessor processor, Item item ) {
             processor.processTransferFocusBackward( item.mSource );
         }
     };
-    
-    private static final Call PROCESS_TRANSFER_FOCUS_FORWARD = new Call() {
+
+    private static final Call PROCESS_TRANSFER_FOCUS_FORWARD = new Call( CallType.FOCUS ) {
         public void call( EventProcessor processor, Item item ) {
             processor.processTransferFocusForward( item.mSource );
         }
     };
-    
-    private static final Call PROCESS_PUSH_INPUT_ROOT = new Call() {
+
+    private static final Call PROCESS_PUSH_INPUT_ROOT = new Call( CallType.INPUT_ROOT ) {
         public void call( EventProcessor processor, Item item ) {
             processor.processPushInputRoot( item.mSource );
         }
     };
-    
-    private static final Call PROCESS_POP_INPUT_ROOT = new Call() {
+
+    private static final Call PROCESS_POP_INPUT_ROOT = new Call( CallType.INPUT_ROOT ) {
         public void call( EventProcessor processor, Item item ) {
             processor.processPopInputRoot( item.mSource );
         }
     };
- 
-    private static final Call PROCESS_PROPERTY_CHANGE = new Call() {
+
+    private static final Call PROCESS_PROPERTY_CHANGE = new Call( CallType.PROPERTY_CHANGE ) {
         public void call( EventProcessor processor, Item item ) {
             processor.processPropertyChange( item.mSource, item.mString, item.mObject1, item.mObject2 );
         }
     };
-    
-    private static final Call PROCESS_COMPONENT_EVENT = new Call() {
+
+    private static final Call PROCESS_COMPONENT_EVENT = new Call( CallType.COMPONENT_EVENT ) {
         public void call( EventProcessor processor, Item item ) {
             GComponentEvent e = (GComponentEvent)item.mObject1;
             e.source().processComponentEvent( e );
         }
     };
-    
-    private static final Call PROCESS_ANCESTOR_EVENT = new Call() {
+
+    private static final Call PROCESS_ANCESTOR_EVENT = new Call( CallType.ANCESTOR_EVENT ) {
         public void call( EventProcessor processor, Item item ) {
             GAncestorEvent e = (GAncestorEvent)item.mObject1;
             e.source().processAncestorEvent( e );
         }
     };
-    
-    private static final Call PROCESS_RUN = new Call() {
+
+    private static final Call PROCESS_RUN = new Call( CallType.RUNNABLE ) {
         public void call( EventProcessor processor, Item item ) {
             ((Runnable)item.mObject1).run();
         }
     };
-    
-    
-}
\ No newline at end of file
+
+
+}
@@ -125,6 +125,14 @@ public class GButton extends GLabel {
     }
 
 
+    @Override
+    boolean paintBatched( DrawEnv d, PaintBatch batch ) {
+        // paintLabel() records into the installed batch.
+        paintComponent( d );
+        return true;
+    }
+
+
     public boolean isMouseOver() {
         return mMouseOver;
     }
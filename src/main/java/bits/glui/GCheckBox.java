@@ -9,7 +9,6 @@ package bits.glui;
 import java.awt.event.*;
 import com.jogamp.opengl.*;
 
-import bits.draw3d.DrawStream;
 import bits.draw3d.DrawEnv;
 import bits.draw3d.text.FontTexture;
 
@@ -43,47 +42,23 @@ public class GCheckBox extends GButton implements GSelectable {
 
     @Override
     public void paintComponent( DrawEnv g ) {
-        final DrawStream s = g.drawStream();
         final bits.math3d.Vec4 v = g.mWorkVec4;
         final int w = width();
         final int h = height();
-        s.config( true, false, false );
+        final int margin = 2;
 
         if( getBackground( v ) ) {
-            s.beginTriStrip();
-            s.color( v );
-            s.tex( 0, 0 );
-            s.vert( 0, 0 );
-            s.tex( 1, 0 );
-            s.vert( w, 0 );
-            s.tex( 0, 1 );
-            s.vert( 0, h );
-            s.tex( 1, 1 );
-            s.vert( w, h );
-            s.end();
+            ShapeRenderer.fillRect( g, v, 0, 0, w, h );
         }
 
         getForeground( v );
-        g.mLineWidth.apply( 1f );
-        s.color( v );
-        s.beginLineLoop();
-        final int margin = 2;
-        s.beginLineLoop();
-        s.vert( margin, margin );
-        s.vert( h - margin, margin );
-        s.vert( h - margin, h - margin );
-        s.vert( margin, h - margin );
-        s.end();
-
+        ShapeRenderer.strokeRect( g, v, margin, margin, h - margin, h - margin );
         if( mSelected ) {
-            s.beginLines();
-            s.vert( margin * 2, margin * 2 );
-            s.vert( h - margin * 2, h - margin * 2 );
-            s.vert( margin * 2, h - margin * 2 );
-            s.vert( h - margin * 2, margin * 2 );
-            s.end();
+            ShapeRenderer.line( g, v, margin * 2, margin * 2, h - margin * 2, h - margin * 2 );
+            ShapeRenderer.line( g, v, margin * 2, h - margin * 2, h - margin * 2, margin * 2 );
         }
 
+        g.drawStream().color( v );
         FontTexture font = g.fontManager().getFontTexture( getFont(), GLContext.getCurrent() );
         font.beginRenderChars( g );
         float yy = Math.round( ( h - ( font.getAscent() - font.getDescent() ) ) * 0.5f );
@@ -91,6 +66,30 @@ public class GCheckBox extends GButton implements GSelectable {
         font.endRenderChars( g );
     }
 
+    @Override
+    boolean paintBatched( DrawEnv g, PaintBatch batch ) {
+        final bits.math3d.Vec4 v = g.mWorkVec4;
+        final int w = width();
+        final int h = height();
+        final int margin = 2;
+
+        if( getBackground( v ) ) {
+            batch.color( v );
+            batch.fillRect( 0, 0, w, h );
+        }
+        getForeground( v );
+        batch.color( v );
+        batch.strokeRect( margin, margin, h - margin, h - margin );
+        if( mSelected ) {
+            batch.line( margin * 2, margin * 2, h - margin * 2, h - margin * 2 );
+            batch.line( margin * 2, h - margin * 2, h - margin * 2, margin * 2 );
+        }
+        FontTexture font = g.fontManager().getFontTexture( getFont(), GLContext.getCurrent() );
+        float yy = Math.round( ( h - ( font.getAscent() - font.getDescent() ) ) * 0.5f );
+        batch.text( font, h, yy, text() );
+        return true;
+    }
+
 
     private final class ActionHandler implements ActionListener {
         public void actionPerformed( ActionEvent e ) {
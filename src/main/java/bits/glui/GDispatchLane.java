@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * A separately scheduled queue of tasks on a GDispatcher. Each lane has a
+ * priority and an optional deadline, where the deadline of a task is the time
+ * it was queued plus its lane's deadline. Whenever the dispatcher is ready for
+ * another general event, it takes the head of the lane with the highest
+ * priority. Among lanes of equal priority, the head with the earliest deadline
+ * is taken first, and lanes without a deadline come last.
+ * <p>
+ * A task that is past its deadline is taken ahead of lanes with higher priority,
+ * earliest deadline first, but at most every other event. A lane with a steady
+ * backlog of late tasks therefore cannot starve lanes of higher priority, and
+ * late tasks of lower priority still progress while higher lanes are busy.
+ * Deadlines longer than about 73 years are saturated.
+ * <p>
+ * Events fired directly on the GDispatcher are placed in a default lane with
+ * {@link #PRIORITY_NORMAL} and no deadline. Layout and paint events are always
+ * processed after all lanes are empty.
+ * <p>
+ * Lanes cannot be removed, so applications should create a fixed set of lanes
+ * at startup. Lanes may be used from any thread.
+ *
+ * @author Philip DeCamp
+ * @see GDispatcher#createLane
+ */
+public interface GDispatchLane {
+
+    public static final int PRIORITY_BACKGROUND = -10;
+    public static final int PRIORITY_NORMAL     = 0;
+    public static final int PRIORITY_INPUT      = 10;
+
+    public String name();
+    public int priority();
+
+    /**
+     * @return deadline of tasks in this lane, in nanoseconds after they are queued, or 0 if none.
+     */
+    public long deadlineNanos();
+
+    public void fireRunnable( Runnable run );
+    public <T> CompletableFuture<T> submit( Callable<T> task );
+
+    /**
+     * @return approximate number of tasks queued in this lane.
+     */
+    public int backlog();
+
+}
@@ -8,6 +8,14 @@ package bits.glui;
 
 import bits.glui.event.*;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
 public interface GDispatcher {
     public void fireLayout( GComponent source );
     public void firePaint( GComponent source );
@@ -23,6 +31,109 @@ public interface GDispatcher {
 
     public void fireRunnable( Runnable run );
 
+    /**
+     * Schedules a task to be run on the dispatch thread. Dependent stages attached
+     * to the returned future without an executor also run on the dispatch thread.
+     * The default implementation runs the task through {@link #fireRunnable}.
+     * Implementations that track their dispatch thread, such as the dispatcher of a
+     * GEventController, throw {@code IllegalStateException} when the future or its
+     * dependent stages are blocked on from the dispatch thread before completion.
+     */
+    public default <T> CompletableFuture<T> submit( final Callable<T> task ) {
+        final CompletableFuture<T> ret = new CompletableFuture<T>();
+        fireRunnable( new Runnable() {
+            public void run() {
+                try {
+                    ret.complete( task.call() );
+                } catch( Throwable t ) {
+                    ret.completeExceptionally( t );
+                }
+            }
+        } );
+        return ret;
+    }
+
+    /**
+     * Schedules several tasks in the default lane. Tasks are run in iteration
+     * order. The dispatcher of a GEventController queues them with a single
+     * queue operation, so that no other events of the default lane run between
+     * them, although tasks of other lanes may.
+     *
+     * @return futures for each task, in the same order as {@code tasks}.
+     */
+    public default <T> List<CompletableFuture<T>> submitAll( Collection<? extends Callable<T>> tasks ) {
+        List<CompletableFuture<T>> ret = new ArrayList<CompletableFuture<T>>( tasks.size() );
+        for( Callable<T> task: tasks ) {
+            ret.add( submit( task ) );
+        }
+        return ret;
+    }
+
+    /**
+     * Runs a task on the dispatch thread and waits for it to complete.
+     *
+     * @throws ExecutionException if {@code run} throws an exception.
+     * @throws IllegalStateException if called from the dispatch thread.
+     */
+    public default void invokeAndWait( Runnable run ) throws InterruptedException, ExecutionException {
+        if( isDispatchThread() ) {
+            throw new IllegalStateException( "invokeAndWait() called from dispatch thread." );
+        }
+        submit( Executors.callable( run ) ).get();
+    }
+
+    /**
+     * @return true iff the calling thread is the one that most recently processed events.
+     *         The default implementation cannot tell, and returns false.
+     */
+    public default boolean isDispatchThread() {
+        return false;
+    }
+
+    /**
+     * Creates a new lane for scheduling tasks. The default implementation returns
+     * a lane that has the given properties but passes tasks straight to
+     * {@link #fireRunnable}, without scheduling them separately.
+     *
+     * @param name          Name of lane, for debugging.
+     * @param priority      Priority of lane. See constants in {@link GDispatchLane}.
+     * @param deadlineNanos Time after queuing by which tasks in lane should be run, or 0 for none.
+     * @see GDispatchLane
+     */
+    public default GDispatchLane createLane( final String name, final int priority, final long deadlineNanos ) {
+        final GDispatcher owner = this;
+        return new GDispatchLane() {
+            public String name() {
+                return name;
+            }
+
+            public int priority() {
+                return priority;
+            }
+
+            public long deadlineNanos() {
+                return Math.max( 0, deadlineNanos );
+            }
+
+            public void fireRunnable( Runnable run ) {
+                owner.fireRunnable( run );
+            }
+
+            public <T> CompletableFuture<T> submit( Callable<T> task ) {
+                return owner.submit( task );
+            }
+
+            public int backlog() {
+                return 0;
+            }
+
+            @Override
+            public String toString() {
+                return "GDispatchLane[" + name + "]";
+            }
+        };
+    }
+
     public boolean ignoreRepaints();
     public void ignoreRepaints( boolean ignoreRepaints );
 
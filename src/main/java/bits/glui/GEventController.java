@@ -10,6 +10,9 @@ import bits.draw3d.DrawEnv;
 import bits.draw3d.Rect;
 import bits.math3d.Mat;
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import static com.jogamp.opengl.GL.*;
 
 
@@ -23,10 +26,33 @@ import static com.jogamp.opengl.GL.*;
  */
 public final class GEventController {
 
+    private static final int MAX_DAMAGE_RECTS = 8;
+
     private final GLayeredPanel  mRoot;
     private final EventQueue     mQueue;
     private final GKeyboardFocusManager mFocusMan;
     private final EventProcessor mProcessor;
+    private final InputCoalescer mInput;
+    private final InputRing      mRing;
+
+    private final PaintContext     mPaintContext  = new PaintContext();
+    private final LayerCache       mLayerCache    = new LayerCache();
+    private final GlyphRunCache    mGlyphRuns     = new GlyphRunCache();
+    private final ShapeRenderer    mShapes        = new ShapeRenderer();
+    private final PaintBatch       mBatch         = new PaintBatch( mShapes );
+    private final List<GComponent> mDamageSources = new ArrayList<GComponent>();
+    private final DamageRegion     mDamage        = new DamageRegion( MAX_DAMAGE_RECTS );
+    private final Rect             mWork          = new Rect();
+
+    private volatile boolean mDamageRepaint = false;
+    private volatile int mLastPainted = 0;
+    private volatile int mLastCulled  = 0;
+    private volatile int mLastDrawCalls = 0;
+    private volatile boolean mBatchPaint = false;
+    private volatile boolean mCacheGlyphRuns = false;
+    private PaintLayer mLayer = null;
+    // True iff input queueing was enabled only because the tree was confined.
+    private boolean mConfineForcedQueue = false;
 
 
     public GEventController( Component optParent, GLayeredPanel optRootPane ) {
@@ -34,6 +60,9 @@ public final class GEventController {
         mQueue     = new EventQueue( mRoot, optParent );
         mFocusMan  = new GKeyboardFocusManager( mRoot, optParent );
         mProcessor = new EventProcessor( optParent, mRoot, mFocusMan );
+        mInput     = new InputCoalescer( mProcessor, optParent );
+        mRing      = new InputRing( mInput, optParent );
+        mPaintContext.mLayers = mLayerCache;
         mRoot.treeProcessParentChanged( mQueue, null );
     }
 
@@ -49,10 +78,157 @@ public final class GEventController {
 
     /**
      * Any calls made to this class should be made on the same thread used
-     * to dispatch events.
+     * to dispatch events, unless {@link #queueInput(boolean)} is enabled.
      */
     public GHumanInputController humanInputController() {
-        return mProcessor;
+        return mRing;
+    }
+
+    /**
+     * @return true iff input is queued for the dispatch thread.
+     * @see #queueInput(boolean)
+     */
+    public boolean queueInput() {
+        return mRing.enabled();
+    }
+
+    /**
+     * When enabled, calls to the {@link #humanInputController()} only record the input
+     * in a lock-free ring buffer, and return false. The ring is drained on the
+     * dispatch thread at the start of {@link #processEvents()}, so all input is
+     * dispatched, and all component changes made by input listeners happen, on that
+     * thread. Input may then be produced from one other thread, such as the AWT event
+     * thread, without contending with painting. If input arrives faster than frames
+     * can drain it, excess mouse motion and wheel input is dropped; other input is
+     * held until it can be dispatched. Must be called on the dispatch thread.
+     * Disabled by default.
+     *
+     * @see #droppedInput()
+     */
+    public void queueInput( boolean enable ) {
+        mConfineForcedQueue = false;
+        mRing.enabled( enable );
+    }
+
+    /**
+     * @return number of motion and wheel inputs dropped because the input queue was full.
+     * @see #queueInput(boolean)
+     */
+    public long droppedInput() {
+        return mRing.dropped();
+    }
+
+    /**
+     * @return true iff mouse motion and wheel input is coalesced between frames.
+     * @see #coalesceInput(boolean)
+     */
+    public boolean coalesceInput() {
+        return mInput.enabled();
+    }
+
+    /**
+     * When enabled, mouse moves and drags received between frames are merged
+     * into the latest position, and wheel rotations are summed, so that each frame
+     * performs at most one hit-test and dispatch for them. The order of presses,
+     * releases, enter, exit and key events relative to motion is preserved.
+     * Disable for applications that need every motion event, such as drawing.
+     * Disabled by default.
+     */
+    public void coalesceInput( boolean enable ) {
+        mInput.enabled( enable );
+    }
+
+    /**
+     * @see #poolInputEvents(boolean)
+     */
+    public boolean poolInputEvents() {
+        return mProcessor.eventPool().enabled();
+    }
+
+    /**
+     * When enabled, mouse and key events are reused after dispatch instead of
+     * being allocated for each input. Listeners must not keep a reference to
+     * an input event after returning; they should keep a copy, made with the
+     * event's copy constructor, instead. Disabled by default.
+     *
+     * @see #debugInputEvents(boolean)
+     */
+    public void poolInputEvents( boolean enable ) {
+        mProcessor.eventPool().enabled( enable );
+    }
+
+    /**
+     * @see #debugInputEvents(boolean)
+     */
+    public boolean debugInputEvents() {
+        return mProcessor.eventPool().debug();
+    }
+
+    /**
+     * When enabled together with {@link #poolInputEvents(boolean)}, pooled
+     * events are expired after dispatch and never reused. Any listener that
+     * keeps and later uses an event then throws an IllegalStateException.
+     * This check allocates an event per input, so it is for debugging only.
+     */
+    public void debugInputEvents( boolean enable ) {
+        mProcessor.eventPool().debug( enable );
+    }
+
+
+    /**
+     * @return true iff tree is confined to the dispatch thread.
+     * @see #confineTree(boolean)
+     */
+    public boolean confineTree() {
+        return mQueue.isConfined();
+    }
+
+    /**
+     * When enabled, the component tree may only be accessed from the dispatch
+     * thread, and GPanels skip acquiring their locks for bounds, layout,
+     * painting, repaint requests and tree traversals. This makes paint and
+     * layout of large trees substantially cheaper. Other threads must use
+     * {@link #dispatcher()} to run code that touches the tree. Enabling this
+     * also enables {@link #queueInput(boolean)}, so that input from AWT
+     * is dispatched on the dispatch thread. Disabling it again also disables
+     * input queueing, unless queueing was enabled separately. Parallel layout is
+     * not used while the tree is confined. Should be called from the dispatch thread.
+     * Disabled by default.
+     *
+     * @see #checkConfinement(boolean)
+     */
+    public void confineTree( boolean enable ) {
+        if( enable == mQueue.isConfined() ) {
+            return;
+        }
+        if( enable ) {
+            boolean forced = !queueInput();
+            queueInput( true );
+            mConfineForcedQueue = forced;
+            mQueue.confined( true );
+        } else {
+            mQueue.confined( false );
+            if( mConfineForcedQueue ) {
+                queueInput( false );
+            }
+        }
+    }
+
+    /**
+     * @see #checkConfinement(boolean)
+     */
+    public boolean checkConfinement() {
+        return mQueue.checkConfined();
+    }
+
+    /**
+     * When enabled together with {@link #confineTree(boolean)}, components
+     * throw an IllegalStateException when accessed from a thread other than
+     * the one that most recently processed events. The check costs one
+     * thread comparison per access, and is meant for debugging.
+     */
+    public void checkConfinement( boolean enable ) {
+        mQueue.checkConfined( enable );
     }
 
 
@@ -67,12 +243,176 @@ public final class GEventController {
     }
 
 
+    /**
+     * Processes events, limiting time spent on general events to {@code nanosBudget},
+     * then paints. Layout and paint events are always processed.
+     *
+     * @return number of events left queued for the next frame.
+     * @see #processEvents(long)
+     */
+    public int processAll( DrawEnv graphics, long nanosBudget ) {
+        int backlog = processEvents( nanosBudget );
+        processPaint( graphics );
+        return backlog;
+    }
+
+
     public void processEvents() {
+        mRing.drain();
+        mInput.flush();
         mQueue.processAllEvents( mProcessor );
     }
 
+    /**
+     * Processes queued events until {@code nanosBudget} has elapsed. Layout and
+     * paint events are always processed, but any remaining general events
+     * (runnables, property changes, focus changes, etc.) remain queued and
+     * another frame is requested.
+     *
+     * @param nanosBudget Time allowed for processing general events, in nanoseconds.
+     * @return number of events left queued.
+     */
+    public int processEvents( long nanosBudget ) {
+        mRing.drain();
+        mInput.flush();
+        return mQueue.processEvents( mProcessor, nanosBudget );
+    }
+
+    /**
+     * @return pool used for parallel layout, or null if layout is serial.
+     */
+    public ForkJoinPool getLayoutPool() {
+        return mProcessor.layoutPool();
+    }
+
+    /**
+     * Enables parallel layout. When a pool is provided, each GPanel is laid out
+     * by its GLayout, and then the subtrees of its children are laid out in parallel
+     * on the pool. The dispatch thread waits until the entire layout pass completes,
+     * so all bounds, events and flags are committed before paint.
+     * <p>
+     * In parallel mode, {@link GLayout#layoutPane} runs on the pool's ForkJoin worker
+     * threads, not the dispatch thread, and must only read and modify the pane it is
+     * given and that pane's direct children.
+     * It must not touch siblings, ancestors, or any other shared state without its own
+     * synchronization. Components that override {@code treeProcessLayout()} are laid
+     * out serially within their subtree, also on a worker thread. Component and ancestor
+     * listeners are still notified on the dispatch thread, after layout completes.
+     *
+     * @param pool Pool for parallel layout, or null for serial layout (the default).
+     */
+    public void setLayoutPool( ForkJoinPool pool ) {
+        mProcessor.layoutPool( pool );
+    }
+
+    /**
+     * @return true iff queue metrics are being collected.
+     */
+    public boolean metricsEnabled() {
+        return mQueue.metrics() != null;
+    }
+
+    /**
+     * Enables or disables collection of queue metrics. Enabling metrics
+     * starts a new, empty {@link GQueueMetrics}. When disabled, the queue
+     * performs no timing or counting.
+     */
+    public void metricsEnabled( boolean enable ) {
+        if( enable == metricsEnabled() ) {
+            return;
+        }
+        mQueue.metrics( enable ? new GQueueMetrics( mQueue ) : null );
+    }
+
+    /**
+     * @return current queue metrics, or null if metrics are disabled.
+     */
+    public GQueueMetrics metrics() {
+        return mQueue.metrics();
+    }
+
+    /**
+     * @return true iff input latency is being measured.
+     */
+    public boolean inputLatencyEnabled() {
+        return mProcessor.latency() != null;
+    }
+
+    /**
+     * Enables or disables measurement of input latency, from arrival of AWT input
+     * to presentation of the following frame. Enabling starts a new, empty
+     * {@link GInputLatency}. Presentation is only measured if
+     * {@link #framePresented()} is called after each buffer swap, which
+     * GRootController does automatically.
+     */
+    public void inputLatencyEnabled( boolean enable ) {
+        if( enable == inputLatencyEnabled() ) {
+            return;
+        }
+        mProcessor.latency( enable ? new GInputLatency() : null );
+    }
+
+    /**
+     * @return current input latency measurements, or null if disabled.
+     */
+    public GInputLatency inputLatency() {
+        return mProcessor.latency();
+    }
+
+    /**
+     * Notifies controller that the frame last painted has been swapped to the screen.
+     * Only needed for input latency measurement, and only if not using GRootController.
+     */
+    public void framePresented() {
+        GInputLatency lat = mProcessor.latency();
+        if( lat != null ) {
+            lat.framePresented();
+        }
+    }
+
+    /**
+     * May be called from any thread.
+     *
+     * @return approximate number of general events waiting to be processed.
+     *         Applications may use this to shed load.
+     */
+    public int eventBacklog() {
+        return mQueue.backlog();
+    }
+
+
+    /**
+     * @return true iff damage repainting is enabled.
+     * @see #damageRepaint(boolean)
+     */
+    public boolean damageRepaint() {
+        return mDamageRepaint;
+    }
+
+    /**
+     * When enabled, the GUI is painted into a persistent offscreen buffer, and
+     * each frame only repaints components that intersect the areas of components
+     * that have called {@link GComponent#repaint()}, with scissoring limited to
+     * those areas. The buffer is then drawn to the screen. This makes small
+     * updates to large displays much cheaper, at the cost of one screen-sized
+     * texture. In this mode only, moving, resizing, hiding or removing a component
+     * repaints its parent, so that the area it covered is repaired.
+     * <p>
+     * Components must not paint outside their parent's bounds in this mode.
+     * Disabled by default.
+     */
+    public void damageRepaint( boolean enable ) {
+        mDamageRepaint = enable;
+        mQueue.trackDamage( enable );
+    }
+
 
     public void processPaint( DrawEnv d ) {
+        GInputLatency lat = mProcessor.latency();
+        if( lat != null ) {
+            lat.paintStarted();
+        }
+
         Rect bounds   = new Rect();
         mRoot.getAbsoluteBounds( bounds );
         Rect viewport = d.mContextViewport;
@@ -97,15 +437,269 @@ public final class GEventController {
         d.mViewport.push();
         d.mViewport.apply( xx, yy, ww, hh );
 
+        PaintContext prevContext = PaintContext.install( mPaintContext );
+        mPaintContext.resetCounts();
+        mPaintContext.mBatch = mBatchPaint ? mBatch : null;
+        mPaintContext.mGlyphRuns = mCacheGlyphRuns && mGlyphRuns.isSupported( d ) ? mGlyphRuns : null;
+        mLayerCache.beginFrame();
+        boolean damageAll = mQueue.drainDamage( mDamageSources );
+        boolean hidden    = mQueue.drainHidden();
+
         try {
-            mRoot.processPaint( d );
+            if( mDamageRepaint && ww > 0 && hh > 0 ) {
+                paintDamage( d, bounds, damageAll );
+            } else {
+                if( mLayer != null ) {
+                    mLayer.dispose( d );
+                    mLayer = null;
+                }
+                paintRoot( d, bounds, null );
+            }
+            mLayerCache.sweep( d );
+            if( mPaintContext.mGlyphRuns == null ) {
+                mGlyphRuns.dispose( d );
+            } else if( hidden ) {
+                mGlyphRuns.sweep( d );
+            }
         } finally {
+            mBatch.clear();
+            mLastPainted   = mPaintContext.mPainted;
+            mLastCulled    = mPaintContext.mCulled;
+            mLastDrawCalls = mPaintContext.mDrawCalls;
+            mDamageSources.clear();
+            PaintContext.install( prevContext );
             d.mViewport.pop();
             d.mScissorTest.pop();
             d.mBlend.pop();
             d.mStencilTest.pop();
             d.mDepthTest.pop();
         }
+
+        if( lat != null ) {
+            lat.paintFinished();
+        }
+    }
+
+    /**
+     * @return number of components painted by their parents during the last call
+     *         to {@link #processPaint}. With damage repaint, components painted
+     *         for several damaged areas are counted once per area.
+     */
+    public int paintedLastFrame() {
+        return mLastPainted;
+    }
+
+    /**
+     * Children that lie entirely outside their parent, any ancestor, or the
+     * area being repainted are skipped along with their entire subtree.
+     * Children that are painted are clipped only to their own bounds and the
+     * area being repainted, so they may partly overflow their parent.
+     *
+     * @return number of subtrees skipped during the last call to {@link #processPaint}.
+     */
+    public int culledLastFrame() {
+        return mLastCulled;
+    }
+
+    /**
+     * @return true iff components are painted through a batch.
+     * @see #batchPaint(boolean)
+     */
+    public boolean batchPaint() {
+        return mBatchPaint;
+    }
+
+    /**
+     * When enabled, the labels, buttons, check boxes and text fields in the tree
+     * record their quads, lines and glyphs into a per-frame batch instead of drawing
+     * them immediately. Primitives are clipped on the CPU and grouped by texture,
+     * reordering only primitives that do not overlap, so that a screen of many
+     * components is drawn with a few draw calls. With OpenGL 3.3, backgrounds,
+     * borders and axis-aligned lines are drawn as antialiased shapes in one
+     * instanced draw per group; otherwise they are drawn as triangles, as they
+     * are when components paint directly.
+     * Components with paint listeners, or that otherwise override how they paint,
+     * are drawn directly, in order, after drawing any batched primitives before them.
+     * Disabled by default.
+     *
+     * @see #drawCallsLastFrame()
+     */
+    public void batchPaint( boolean enable ) {
+        mBatchPaint = enable;
+    }
+
+    /**
+     * @return true iff labels draw their text from cached glyph runs.
+     * @see #cacheGlyphRuns(boolean)
+     */
+    public boolean cacheGlyphRuns() {
+        return mCacheGlyphRuns;
+    }
+
+    /**
+     * When enabled, labels and buttons that paint directly keep the glyph quads of
+     * their text in a static vertex buffer, and draw it with one draw call until
+     * their text or font changes. Runs are released when their labels are hidden
+     * or removed from the tree, and all runs are released when disabled. The runs
+     * are drawn with GLSL 330 shaders, so this setting is ignored, and labels
+     * generate their glyphs each paint, on contexts older than OpenGL 3.3.
+     * Independent of {@link #batchPaint(boolean)}. Takes effect on next paint.
+     * Disabled by default.
+     */
+    public void cacheGlyphRuns( boolean enable ) {
+        mCacheGlyphRuns = enable;
+    }
+
+    /**
+     * Counts draw calls made by batches, and counts each component that paints
+     * directly as one draw call, though it may make more.
+     *
+     * @return number of draw calls during the last call to {@link #processPaint}.
+     */
+    public int drawCallsLastFrame() {
+        return mLastDrawCalls;
+    }
+
+    /**
+     * @return maximum bytes of GPU memory used for layers of cached panels.
+     * @see #cacheBudget(long)
+     */
+    public long cacheBudget() {
+        return mLayerCache.budget();
+    }
+
+    /**
+     * Sets the maximum GPU memory used for layers of cached panels. When exceeded,
+     * the layers least recently painted are released, and are rendered again if
+     * needed. Layers painted in the same frame are never released for one another:
+     * cached panels whose layers do not fit alongside them are painted directly for
+     * that frame. Takes effect on next paint. Defaults to 64 MB.
+     *
+     * @see GPanel#setCached(boolean)
+     */
+    public void cacheBudget( long bytes ) {
+        mLayerCache.budget( bytes );
+    }
+
+    /**
+     * @return bytes of GPU memory currently used for layers of cached panels.
+     */
+    public long cachedBytes() {
+        return mLayerCache.bytes();
+    }
+
+    /**
+     * Releases any GL resources held by this controller.
+     * Must be called on the GL thread.
+     */
+    public void dispose( DrawEnv d ) {
+        if( mLayer != null ) {
+            mLayer.dispose( d );
+            mLayer = null;
+        }
+        mLayerCache.dispose( d );
+        mGlyphRuns.dispose( d );
+        mBatch.dispose( d );
+    }
+
+
+    private void paintRoot( DrawEnv d, Rect bounds, Rect optClip ) {
+        PaintBatch batch = mPaintContext.mBatch;
+        if( batch == null ) {
+            mRoot.processPaint( d );
+            return;
+        }
+        if( !GPanel.paintsTreeBatched( mRoot ) ) {
+            mPaintContext.mBatch = null;
+            try {
+                mRoot.processPaint( d );
+            } finally {
+                mPaintContext.mBatch = batch;
+            }
+            return;
+        }
+        batch.view( d, bounds, optClip );
+        mRoot.processPaint( d );
+        mPaintContext.mDrawCalls += batch.flush( d );
+    }
+
+
+    private void paintDamage( DrawEnv d, Rect bounds, boolean damageAll ) {
+        final int ww = bounds.width();
+        final int hh = bounds.height();
+
+        if( mLayer == null ) {
+            mLayer = new PaintLayer();
+        }
+
+        mDamage.clear();
+        if( mLayer.size( ww, hh ) || damageAll ) {
+            mDamage.add( bounds );
+        } else {
+            Rect r = mWork;
+            for( GComponent c: mDamageSources ) {
+                GPanel.paintedBounds( c, r );
+                // Rect.intersect() does not handle rects that start before bounds,
+                // such as composited panels sliding in from outside.
+                r.x0 = Math.max( r.x0, bounds.x0 );
+                r.y0 = Math.max( r.y0, bounds.y0 );
+                r.x1 = Math.min( r.x1, bounds.x1 );
+                r.y1 = Math.min( r.y1, bounds.y1 );
+                if( r.x0 < r.x1 && r.y0 < r.y1 ) {
+                    mDamage.add( r );
+                }
+            }
+        }
+
+        if( !mDamage.isEmpty() ) {
+            // Offset context viewport so that root is painted at origin of layer.
+            Rect viewport = d.mContextViewport;
+            int vx0 = viewport.x0;
+            int vy0 = viewport.y0;
+            int vx1 = viewport.x1;
+            int vy1 = viewport.y1;
+            viewport.set( bounds );
+
+            mLayer.pushDraw( d );
+            d.mViewport.push();
+            d.mScissorTest.push();
+            d.mGl.glClearColor( 0, 0, 0, 0 );
+
+            try {
+                for( int i = 0; i < mDamage.size(); i++ ) {
+                    Rect r = mDamage.get( i );
+                    d.mViewport.apply( 0, 0, ww, hh );
+                    d.mScissorTest.apply( true, r.x0 - bounds.x0, r.y0 - bounds.y0, r.width(), r.height() );
+                    d.mGl.glClear( GL_COLOR_BUFFER_BIT );
+
+                    Mat.identity( d.mProj.get() );
+                    d.mView.setOrtho( 0, ww, 0, hh, -1, 1 );
+                    mPaintContext.mClip = r;
+                    paintRoot( d, bounds, r );
+                }
+            } finally {
+                mPaintContext.mClip = null;
+                d.mScissorTest.pop();
+                d.mViewport.pop();
+                mLayer.popDraw( d );
+                viewport.x0 = vx0;
+                viewport.y0 = vy0;
+                viewport.x1 = vx1;
+                viewport.y1 = vy1;
+            }
+
+            // Components that requested repaint but lay outside the painted
+            // region would otherwise ignore future requests.
+            for( GComponent c: mDamageSources ) {
+                if( c instanceof GPanel ) {
+                    ((GPanel)c).clearNeedsPaint();
+                }
+            }
+        }
+
+        Mat.identity( d.mProj.get() );
+        d.mView.setOrtho( 0, ww, 0, hh, -1, 1 );
+        mLayer.composite( d, 0, 0, ww, hh, 1f );
     }
 
 }
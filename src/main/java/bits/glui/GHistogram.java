@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Histogram of non-negative long values, such as durations in nanoseconds,
+ * with power-of-two buckets. Bucket {@code i} holds values in
+ * {@code [2^(i-1), 2^i)}, and bucket 0 holds only zero.
+ * <p>
+ * Recording is cheap and allocation-free, but a histogram must only be written
+ * by one thread at a time. Any thread may read a histogram, though values
+ * may be slightly out of date with each other.
+ *
+ * @author Philip DeCamp
+ */
+public final class GHistogram {
+
+    public static final int BUCKET_NUM = 64;
+
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray( BUCKET_NUM );
+    private volatile long mCount = 0;
+    private volatile long mSum   = 0;
+    private volatile long mMax   = 0;
+
+
+    public GHistogram() {}
+
+
+    public void record( long value ) {
+        if( value < 0 ) {
+            value = 0;
+        }
+        int b = bucketFor( value );
+        mBuckets.lazySet( b, mBuckets.get( b ) + 1 );
+        mSum   += value;
+        mCount += 1;
+        if( value > mMax ) {
+            mMax = value;
+        }
+    }
+
+
+    public long count() {
+        return mCount;
+    }
+
+
+    public long sum() {
+        return mSum;
+    }
+
+
+    public long max() {
+        return mMax;
+    }
+
+
+    public double mean() {
+        long count = mCount;
+        return count == 0 ? 0.0 : (double)mSum / count;
+    }
+
+
+    public long bucketCount( int bucket ) {
+        return mBuckets.get( bucket );
+    }
+
+    /**
+     * @return approximate value at percentile {@code p}, where {@code 0 <= p <= 1}.
+     *         Returns the upper bound of the bucket containing that percentile.
+     */
+    public long percentile( double p ) {
+        long total = 0;
+        long[] counts = new long[BUCKET_NUM];
+        for( int i = 0; i < BUCKET_NUM; i++ ) {
+            counts[i] = mBuckets.get( i );
+            total += counts[i];
+        }
+        if( total == 0 ) {
+            return 0;
+        }
+
+        long target = (long)Math.ceil( Math.max( 0.0, Math.min( 1.0, p ) ) * total );
+        long acc = 0;
+        for( int i = 0; i < BUCKET_NUM; i++ ) {
+            acc += counts[i];
+            if( acc >= target && counts[i] > 0 ) {
+                return Math.min( bucketMax( i ), mMax );
+            }
+        }
+        return mMax;
+    }
+
+    /**
+     * Clears histogram. Should be called by the writing thread, or while no thread is writing.
+     */
+    public void reset() {
+        for( int i = 0; i < BUCKET_NUM; i++ ) {
+            mBuckets.set( i, 0 );
+        }
+        mCount = 0;
+        mSum   = 0;
+        mMax   = 0;
+    }
+
+    /**
+     * @return smallest value that falls in bucket.
+     */
+    public static long bucketMin( int bucket ) {
+        return bucket == 0 ? 0 : 1L << ( bucket - 1 );
+    }
+
+    /**
+     * @return largest value that falls in bucket.
+     */
+    public static long bucketMax( int bucket ) {
+        return bucket == 0 ? 0 : bucket == BUCKET_NUM - 1 ? Long.MAX_VALUE : ( 1L << bucket ) - 1;
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format( "count: %d  mean: %.0f  p50: %d  p99: %d  max: %d",
+                              count(), mean(), percentile( 0.5 ), percentile( 0.99 ), max() );
+    }
+
+
+    private static int bucketFor( long value ) {
+        return Math.min( BUCKET_NUM - 1, 64 - Long.numberOfLeadingZeros( value ) );
+    }
+
+}
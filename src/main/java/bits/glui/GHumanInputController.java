@@ -6,6 +6,9 @@
 
 package bits.glui;
 
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
 
 /**
  * Interface for feeding human input into windowing system.
@@ -34,4 +37,60 @@ public interface GHumanInputController {
     public boolean mouseMoved( long micros, int mods, int x, int y );
     public boolean mouseWheelMoved( int scrollType, int scrollAmount, int wheelRotation );
     public boolean mouseWheelMoved( long micros, int mods, int scrollType, int scrollAmount, int wheelRotation );
+
+    /**
+     * Processes a batch of input in one call, for sources that produce input
+     * at high rates. Implementations may override this to process the batch
+     * more efficiently than one call per record.
+     *
+     * @param recs        Records to process.
+     * @param off         Index of first record.
+     * @param len         Number of records.
+     * @param optConsumed Optional. On return, bit {@code i} is set iff record {@code off + i} was consumed.
+     * @return number of records consumed.
+     */
+    public default int processRecords( GInputRecord[] recs, int off, int len, BitSet optConsumed ) {
+        if( optConsumed != null ) {
+            optConsumed.clear( 0, len );
+        }
+        int count = 0;
+        for( int i = 0; i < len; i++ ) {
+            if( recs[off + i].dispatch( this ) ) {
+                count++;
+                if( optConsumed != null ) {
+                    optConsumed.set( i );
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Processes a batch of input stored in {@link GInputRecord} binary layout, in the byte
+     * order of the buffer. Reads every complete record between the buffer's position
+     * and limit, and advances the position past them.
+     *
+     * @param buf         Buffer holding records.
+     * @param optConsumed Optional. On return, bit {@code i} is set iff the {@code i}th record read was consumed.
+     * @return number of records consumed.
+     */
+    public default int processRecords( ByteBuffer buf, BitSet optConsumed ) {
+        int len = buf.remaining() / GInputRecord.BYTES;
+        if( optConsumed != null ) {
+            optConsumed.clear( 0, len );
+        }
+        GInputRecord rec = new GInputRecord();
+        int count = 0;
+        for( int i = 0; i < len; i++ ) {
+            rec.read( buf );
+            if( rec.dispatch( this ) ) {
+                count++;
+                if( optConsumed != null ) {
+                    optConsumed.set( i );
+                }
+            }
+        }
+        return count;
+    }
+
 }
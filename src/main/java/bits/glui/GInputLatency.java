@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.Arrays;
+
+
+/**
+ * End-to-end input latency measurements for a GEventController. Collected only
+ * while enabled with {@link GEventController#inputLatencyEnabled(boolean)}.
+ * <p>
+ * Each input is stamped with {@link System#nanoTime()} when it arrives from AWT,
+ * and latency is measured from that stamp to each later {@link Stage}. Latencies
+ * are recorded per input type, using the type constants of {@link GInputRecord},
+ * in nanoseconds. Only input that arrives through an AWT component attached to
+ * a GRootController is measured.
+ * <p>
+ * Pending inputs of each type are matched to dispatches in arrival order. Inputs
+ * merged by input coalescing are all matched to the dispatch of the merged input,
+ * and each keeps its own arrival time.
+ * <p>
+ * An input is considered part of the first frame painted after it was dispatched,
+ * whether or not it caused a repaint. Damage repainting tracks which components
+ * requested a repaint, but not which input led to the request, so frames cannot
+ * be attributed to the inputs that caused them.
+ * <p>
+ * Histograms may be read from any thread.
+ *
+ * @author Philip DeCamp
+ */
+public final class GInputLatency {
+
+    public static enum Stage {
+        /**
+         * Input controller has returned from handling the input, either after queueing
+         * it for the dispatch thread or, if input is not queued, after dispatching it.
+         */
+        HANDOFF,
+        /** Input begins dispatch to components. */
+        DISPATCH,
+        /** Frame following dispatch has been painted. */
+        FRAME,
+        /** Frame following dispatch has been swapped to the screen. */
+        PRESENT
+    }
+
+
+    private static final int TYPE_NUM    = GInputRecord.MOUSE_WHEEL_MOVED + 1;
+    private static final int STAGE_NUM   = Stage.values().length;
+    private static final int MAX_PENDING = 1024;
+
+    private final GHistogram[] mHists = new GHistogram[TYPE_NUM * STAGE_NUM];
+
+    // Arrival times of inputs waiting for dispatch, in a circular FIFO per type.
+    private final long[][] mArrived     = new long[TYPE_NUM][MAX_PENDING];
+    private final int[]    mArrivedHead = new int[TYPE_NUM];
+    private final int[]    mArrivedSize = new int[TYPE_NUM];
+    // Number of pending inputs per type merged into a later input by coalescing.
+    private final int[]    mMerged      = new int[TYPE_NUM];
+
+    // Inputs waiting for the next frame to be painted, then presented.
+    private final Samples mAwaitFrame   = new Samples();
+    private final Samples mAwaitPresent = new Samples();
+    private int  mFrameMark = 0;
+    private long mDropped   = 0;
+
+
+    GInputLatency() {
+        for( int i = 0; i < mHists.length; i++ ) {
+            mHists[i] = new GHistogram();
+        }
+    }
+
+
+    /**
+     * @param inputType A type from GInputRecord, such as {@link GInputRecord#MOUSE_MOVED}.
+     * @param stage     Stage to which latency is measured.
+     * @return histogram of latencies from AWT arrival to {@code stage}, in nanoseconds.
+     */
+    public GHistogram latency( int inputType, Stage stage ) {
+        if( inputType <= 0 || inputType >= TYPE_NUM ) {
+            throw new IllegalArgumentException( "Invalid input type: " + inputType );
+        }
+        return mHists[ inputType * STAGE_NUM + stage.ordinal() ];
+    }
+
+    /**
+     * @return number of inputs that were not fully measured because too many inputs were pending.
+     */
+    public synchronized long dropped() {
+        return mDropped;
+    }
+
+
+    public synchronized void reset() {
+        for( GHistogram h: mHists ) {
+            h.reset();
+        }
+        Arrays.fill( mArrivedHead, 0 );
+        Arrays.fill( mArrivedSize, 0 );
+        Arrays.fill( mMerged, 0 );
+        mAwaitFrame.mSize   = 0;
+        mAwaitPresent.mSize = 0;
+        mFrameMark = 0;
+        mDropped   = 0;
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder( "GInputLatency[" );
+        for( int type = 1; type < TYPE_NUM; type++ ) {
+            GHistogram h = latency( type, Stage.PRESENT );
+            GHistogram d = latency( type, Stage.DISPATCH );
+            if( d.count() == 0 ) {
+                continue;
+            }
+            s.append( String.format( "%n  type %d: dispatch p50=%dus p99=%dus, present p50=%dus p99=%dus (n=%d)",
+                                     type,
+                                     d.percentile( 0.5 ) / 1000,
+                                     d.percentile( 0.99 ) / 1000,
+                                     h.percentile( 0.5 ) / 1000,
+                                     h.percentile( 0.99 ) / 1000,
+                                     h.count() ) );
+        }
+        return s.append( "]" ).toString();
+    }
+
+
+    /**
+     * Called by translator as input arrives, before it is handed to the input controller.
+     */
+    synchronized void arrived( int type, long arrivalNanos ) {
+        int n = mArrivedSize[type];
+        if( n == MAX_PENDING ) {
+            mDropped++;
+            return;
+        }
+        mArrived[type][( mArrivedHead[type] + n ) % MAX_PENDING] = arrivalNanos;
+        mArrivedSize[type] = n + 1;
+    }
+
+    /**
+     * Called by translator after the input controller returns.
+     */
+    synchronized void handedOff( int type, long arrivalNanos ) {
+        record( type, Stage.HANDOFF, System.nanoTime() - arrivalNanos );
+    }
+
+    /**
+     * Called when the oldest pending input of a type is merged into a later one
+     * instead of being dispatched.
+     */
+    synchronized void merged( int type ) {
+        mMerged[type]++;
+    }
+
+    /**
+     * Called as input of a given type is dispatched. Matches the oldest pending input
+     * of that type, along with any pending inputs merged into it.
+     */
+    synchronized void dispatched( int type ) {
+        int n = Math.min( mArrivedSize[type], mMerged[type] + 1 );
+        mMerged[type] = 0;
+        if( n == 0 ) {
+            return;
+        }
+        long now = System.nanoTime();
+        long[] arr = mArrived[type];
+        int head = mArrivedHead[type];
+        for( int i = 0; i < n; i++ ) {
+            long t = arr[head];
+            head = ( head + 1 ) % MAX_PENDING;
+            record( type, Stage.DISPATCH, now - t );
+            if( !mAwaitFrame.add( type, t ) ) {
+                mDropped++;
+            }
+        }
+        mArrivedHead[type] = head;
+        mArrivedSize[type] -= n;
+    }
+
+    /**
+     * Marks inputs dispatched so far as belonging to the frame about to be painted.
+     */
+    synchronized void paintStarted() {
+        mFrameMark = mAwaitFrame.mSize;
+    }
+
+
+    synchronized void paintFinished() {
+        long now = System.nanoTime();
+        Samples frame = mAwaitFrame;
+        int n = Math.min( mFrameMark, frame.mSize );
+
+        // Anything from the previous frame that was never presented is discarded.
+        mAwaitPresent.mSize = 0;
+        for( int i = 0; i < n; i++ ) {
+            record( frame.mTypes[i], Stage.FRAME, now - frame.mNanos[i] );
+            mAwaitPresent.add( frame.mTypes[i], frame.mNanos[i] );
+        }
+
+        frame.removeFirst( n );
+        mFrameMark = 0;
+    }
+
+
+    synchronized void framePresented() {
+        long now = System.nanoTime();
+        Samples s = mAwaitPresent;
+        for( int i = 0; i < s.mSize; i++ ) {
+            record( s.mTypes[i], Stage.PRESENT, now - s.mNanos[i] );
+        }
+        s.mSize = 0;
+    }
+
+
+    private void record( int type, Stage stage, long nanos ) {
+        mHists[ type * STAGE_NUM + stage.ordinal() ].record( nanos );
+    }
+
+
+
+    private static final class Samples {
+        final int[]  mTypes = new int[MAX_PENDING];
+        final long[] mNanos = new long[MAX_PENDING];
+        int mSize = 0;
+
+        boolean add( int type, long nanos ) {
+            if( mSize == MAX_PENDING ) {
+                return false;
+            }
+            mTypes[mSize] = type;
+            mNanos[mSize] = nanos;
+            mSize++;
+            return true;
+        }
+
+        void removeFirst( int n ) {
+            int rem = mSize - n;
+            System.arraycopy( mTypes, n, mTypes, 0, rem );
+            System.arraycopy( mNanos, n, mNanos, 0, rem );
+            mSize = rem;
+        }
+    }
+
+}
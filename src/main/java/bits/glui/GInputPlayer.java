@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Reads input journals written by {@link GInputRecorder} and replays them
+ * into a GEventController. A controller created without a parent component,
+ * {@code new GEventController( null, pane )}, needs no display, so journals
+ * may be replayed offline as deterministic load tests.
+ *
+ * @author Philip DeCamp
+ */
+public final class GInputPlayer implements Closeable {
+
+    private final FileChannel      mChannel;
+    private final MappedByteBuffer mMap;
+    private final int mCount;
+    private int mPos = 0;
+
+
+    public GInputPlayer( File file ) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try {
+            mChannel = raf.getChannel();
+            long size = mChannel.size();
+            if( size < GInputRecorder.HEADER_BYTES ) {
+                throw new IOException( "File too short to be input journal." );
+            }
+            if( size > Integer.MAX_VALUE ) {
+                throw new IOException( "Input journal too large." );
+            }
+
+            mMap = mChannel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+            mMap.order( ByteOrder.LITTLE_ENDIAN );
+            if( mMap.getLong( 0 ) != GInputRecorder.MAGIC ) {
+                throw new IOException( "Not an input journal." );
+            }
+            int version = mMap.getInt( 8 );
+            if( version != GInputRecorder.VERSION ) {
+                throw new IOException( "Unsupported input journal version: " + version );
+            }
+            if( mMap.getInt( 12 ) != GInputRecord.BYTES ) {
+                throw new IOException( "Unsupported input journal record size: " + mMap.getInt( 12 ) );
+            }
+
+            mCount = (int)( ( size - GInputRecorder.HEADER_BYTES ) / GInputRecord.BYTES );
+        } catch( IOException ex ) {
+            raf.close();
+            throw ex;
+        }
+    }
+
+
+
+    public int recordCount() {
+        return mCount;
+    }
+
+    /**
+     * @return index of next record to be read.
+     */
+    public int position() {
+        return mPos;
+    }
+
+
+    public void position( int record ) {
+        if( record < 0 || record > mCount ) {
+            throw new IndexOutOfBoundsException( "Record index out of bounds: " + record );
+        }
+        mPos = record;
+    }
+
+    /**
+     * Reads next record.
+     *
+     * @return true if record read, false if at end of journal.
+     */
+    public boolean next( GInputRecord out ) {
+        if( mPos >= mCount ) {
+            return false;
+        }
+        mMap.position( GInputRecorder.HEADER_BYTES + mPos * GInputRecord.BYTES );
+        out.read( mMap );
+        mPos++;
+        return true;
+    }
+
+    /**
+     * Plays all remaining records into {@code cont}, processing events after each one.
+     * Paint is not processed.
+     *
+     * @param cont     Controller to receive input. Must be called on its dispatch thread.
+     * @param realTime If true, waits between records to reproduce the original timing.
+     *                 If false, plays records as fast as possible.
+     * @return number of records played.
+     */
+    public int play( GEventController cont, boolean realTime ) throws InterruptedException {
+        GHumanInputController input = cont.humanInputController();
+        GInputRecord rec = new GInputRecord();
+        long startMicros = Long.MIN_VALUE;
+        long startNanos  = 0;
+        int count = 0;
+
+        while( next( rec ) ) {
+            if( realTime && rec.isTimed() ) {
+                if( startMicros == Long.MIN_VALUE ) {
+                    startMicros = rec.mMicros;
+                    startNanos  = System.nanoTime();
+                } else {
+                    long wait = startNanos + ( rec.mMicros - startMicros ) * 1000L - System.nanoTime();
+                    if( wait > 0 ) {
+                        Thread.sleep( wait / 1000000L, (int)( wait % 1000000L ) );
+                    }
+                }
+            }
+
+            rec.dispatch( input );
+            cont.processEvents();
+            count++;
+        }
+
+        return count;
+    }
+
+
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+}
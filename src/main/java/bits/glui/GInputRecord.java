@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * A single call to a GHumanInputController, stored in a fixed-size binary
+ * form. Used for input journals and for passing input between threads without
+ * allocation. Records are mutable and meant to be reused.
+ * <p>
+ * Binary layout, {@link #BYTES} bytes, in the byte order of the buffer: <br>
+ * {@code int type, int mods, long micros, int a, int b, int c, int d}
+ * <p>
+ * Meaning of the {@code a..d} arguments depends on type: <br>
+ * KEY_*: keyCode, keyChar, keyLoc <br>
+ * MOUSE_PRESSED: button, triggerPopup <br>
+ * MOUSE_RELEASED: button, triggerPopup, genClick <br>
+ * MOUSE_ENTERED, MOUSE_MOVED: x, y <br>
+ * MOUSE_WHEEL_MOVED: scrollType, scrollAmount, wheelRotation <br>
+ * Booleans are stored as 0 or 1. Records with {@link #FLAG_UNTIMED} set in type
+ * came from methods without timestamps, and {@code mods} and {@code micros}
+ * are unused.
+ *
+ * @author Philip DeCamp
+ */
+public final class GInputRecord {
+
+    public static final int BYTES = 32;
+
+    public static final int KEY_PRESSED       = 1;
+    public static final int KEY_RELEASED      = 2;
+    public static final int KEY_TYPED         = 3;
+    public static final int MOUSE_PRESSED     = 4;
+    public static final int MOUSE_RELEASED    = 5;
+    public static final int MOUSE_ENTERED     = 6;
+    public static final int MOUSE_EXITED      = 7;
+    public static final int MOUSE_MOVED       = 8;
+    public static final int MOUSE_WHEEL_MOVED = 9;
+
+    public static final int FLAG_UNTIMED = 0x100;
+    public static final int TYPE_MASK    = 0xFF;
+
+
+    public int  mType;
+    public int  mMods;
+    public long mMicros;
+    public int  mA;
+    public int  mB;
+    public int  mC;
+    public int  mD;
+
+
+    public GInputRecord() {}
+
+
+    public GInputRecord( GInputRecord copy ) {
+        set( copy );
+    }
+
+
+
+    public GInputRecord set( int type, int mods, long micros, int a, int b, int c, int d ) {
+        mType   = type;
+        mMods   = mods;
+        mMicros = micros;
+        mA      = a;
+        mB      = b;
+        mC      = c;
+        mD      = d;
+        return this;
+    }
+
+
+    public GInputRecord set( GInputRecord copy ) {
+        return set( copy.mType, copy.mMods, copy.mMicros, copy.mA, copy.mB, copy.mC, copy.mD );
+    }
+
+    /**
+     * @return type without flags.
+     */
+    public int baseType() {
+        return mType & TYPE_MASK;
+    }
+
+
+    public boolean isTimed() {
+        return ( mType & FLAG_UNTIMED ) == 0;
+    }
+
+
+    public boolean isMouse() {
+        int t = baseType();
+        return t >= MOUSE_PRESSED && t <= MOUSE_WHEEL_MOVED;
+    }
+
+
+    public void write( ByteBuffer out ) {
+        out.putInt( mType );
+        out.putInt( mMods );
+        out.putLong( mMicros );
+        out.putInt( mA );
+        out.putInt( mB );
+        out.putInt( mC );
+        out.putInt( mD );
+    }
+
+
+    public void read( ByteBuffer in ) {
+        mType   = in.getInt();
+        mMods   = in.getInt();
+        mMicros = in.getLong();
+        mA      = in.getInt();
+        mB      = in.getInt();
+        mC      = in.getInt();
+        mD      = in.getInt();
+    }
+
+    /**
+     * Makes the call described by this record.
+     *
+     * @return value returned by {@code cont}.
+     * @throws IllegalStateException if record has unknown type.
+     */
+    public boolean dispatch( GHumanInputController cont ) {
+        final boolean timed = isTimed();
+
+        switch( baseType() ) {
+        case KEY_PRESSED:
+            return timed ? cont.keyPressed( mMicros, mMods, mA, (char)mB, mC ) :
+                           cont.keyPressed( mA, (char)mB, mC );
+        case KEY_RELEASED:
+            return timed ? cont.keyReleased( mMicros, mMods, mA, (char)mB, mC ) :
+                           cont.keyReleased( mA, (char)mB, mC );
+        case KEY_TYPED:
+            return timed ? cont.keyTyped( mMicros, mMods, mA, (char)mB, mC ) :
+                           cont.keyTyped( mA, (char)mB, mC );
+        case MOUSE_PRESSED:
+            return timed ? cont.mousePressed( mMicros, mMods, mA, mB != 0 ) :
+                           cont.mousePressed( mA );
+        case MOUSE_RELEASED:
+            return timed ? cont.mouseReleased( mMicros, mMods, mA, mB != 0, mC != 0 ) :
+                           cont.mouseReleased( mA, mC != 0 );
+        case MOUSE_ENTERED:
+            return timed ? cont.mouseEntered( mMicros, mMods, mA, mB ) :
+                           cont.mouseEntered( mA, mB );
+        case MOUSE_EXITED:
+            return timed ? cont.mouseExited( mMicros, mMods ) :
+                           cont.mouseExited();
+        case MOUSE_MOVED:
+            return timed ? cont.mouseMoved( mMicros, mMods, mA, mB ) :
+                           cont.mouseMoved( mA, mB );
+        case MOUSE_WHEEL_MOVED:
+            return timed ? cont.mouseWheelMoved( mMicros, mMods, mA, mB, mC ) :
+                           cont.mouseWheelMoved( mA, mB, mC );
+        default:
+            throw new IllegalStateException( "Unknown input record type: " + mType );
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format( "GInputRecord[type=%d, mods=%d, micros=%d, args=%d,%d,%d,%d]",
+                              mType, mMods, mMicros, mA, mB, mC, mD );
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Records every call to a GHumanInputController into a binary journal, then
+ * passes the call on to the target controller. Install in place of the controller
+ * normally used, for example with {@link GRootController#setHumanInputController}.
+ * Journals can be replayed with {@link GInputPlayer}.
+ * <p>
+ * The journal is an append-only, memory-mapped file. It begins with a
+ * {@link #HEADER_BYTES} header: a long {@link #MAGIC}, an int {@link #VERSION},
+ * and an int record size. Then come records in {@link GInputRecord} layout.
+ * All values are little-endian.
+ * <p>
+ * If writing fails, recording stops but calls are still passed to the target.
+ * The error is thrown from {@link #flush()} or {@link #close()}.
+ *
+ * @author Philip DeCamp
+ */
+public final class GInputRecorder implements GHumanInputController, Closeable {
+
+    public static final long MAGIC        = 0x474C55494A524E4CL; // "GLUIJRNL"
+    public static final int  VERSION      = 1;
+    public static final int  HEADER_BYTES = 32;
+
+    // Must be multiple of record size.
+    private static final int CHUNK_BYTES = 1 << 20;
+
+
+    private final GHumanInputController mTarget;
+    private final FileChannel  mChannel;
+    private final GInputRecord mWork = new GInputRecord();
+
+    private MappedByteBuffer mMap;
+    private long mMapPos;
+    private long mSize   = 0;
+    private long mCount  = 0;
+    private IOException mError  = null;
+    private boolean     mClosed = false;
+
+
+    public GInputRecorder( File file, GHumanInputController target ) throws IOException {
+        mTarget = target;
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        try {
+            raf.setLength( 0 );
+            mChannel = raf.getChannel();
+            map( 0 );
+        } catch( IOException ex ) {
+            raf.close();
+            throw ex;
+        }
+
+        mMap.putLong( MAGIC );
+        mMap.putInt( VERSION );
+        mMap.putInt( GInputRecord.BYTES );
+        mMap.position( HEADER_BYTES );
+        mSize = HEADER_BYTES;
+    }
+
+
+
+    public GHumanInputController target() {
+        return mTarget;
+    }
+
+    /**
+     * @return number of records written.
+     */
+    public synchronized long recordCount() {
+        return mCount;
+    }
+
+    /**
+     * Forces written records to storage.
+     *
+     * @throws IOException if any write has failed.
+     */
+    public synchronized void flush() throws IOException {
+        if( mError != null ) {
+            throw mError;
+        }
+        if( mMap != null ) {
+            mMap.force();
+        }
+    }
+
+    /**
+     * Stops recording and closes journal. Calls are still passed to target afterward.
+     *
+     * @throws IOException if any write has failed.
+     */
+    public synchronized void close() throws IOException {
+        if( mClosed ) {
+            return;
+        }
+        mClosed = true;
+
+        try {
+            if( mMap != null ) {
+                mMap.force();
+                mMap = null;
+            }
+            if( mError == null ) {
+                mChannel.truncate( mSize );
+            }
+        } finally {
+            mChannel.close();
+        }
+
+        if( mError != null ) {
+            throw mError;
+        }
+    }
+
+
+
+    @Override
+    public boolean keyPressed( int keyCode, char keyChar, int keyLoc ) {
+        record( GInputRecord.KEY_PRESSED | GInputRecord.FLAG_UNTIMED, 0, 0, keyCode, keyChar, keyLoc, 0 );
+        return mTarget.keyPressed( keyCode, keyChar, keyLoc );
+    }
+
+    @Override
+    public boolean keyPressed( long micros, int mods, int keyCode, char keyChar, int keyLoc ) {
+        record( GInputRecord.KEY_PRESSED, mods, micros, keyCode, keyChar, keyLoc, 0 );
+        return mTarget.keyPressed( micros, mods, keyCode, keyChar, keyLoc );
+    }
+
+    @Override
+    public boolean keyReleased( int keyCode, char keyChar, int keyLoc ) {
+        record( GInputRecord.KEY_RELEASED | GInputRecord.FLAG_UNTIMED, 0, 0, keyCode, keyChar, keyLoc, 0 );
+        return mTarget.keyReleased( keyCode, keyChar, keyLoc );
+    }
+
+    @Override
+    public boolean keyReleased( long micros, int mods, int keyCode, char keyChar, int keyLoc ) {
+        record( GInputRecord.KEY_RELEASED, mods, micros, keyCode, keyChar, keyLoc, 0 );
+        return mTarget.keyReleased( micros, mods, keyCode, keyChar, keyLoc );
+    }
+
+    @Override
+    public boolean keyTyped( int keyCode, char keyChar, int keyLoc ) {
+        record( GInputRecord.KEY_TYPED | GInputRecord.FLAG_UNTIMED, 0, 0, keyCode, keyChar, keyLoc, 0 );
+        return mTarget.keyTyped( keyCode, keyChar, keyLoc );
+    }
+
+    @Override
+    public boolean keyTyped( long micros, int mods, int keyCode, char keyChar, int keyLoc ) {
+        record( GInputRecord.KEY_TYPED, mods, micros, keyCode, keyChar, keyLoc, 0 );
+        return mTarget.keyTyped( micros, mods, keyCode, keyChar, keyLoc );
+    }
+
+    @Override
+    public boolean mousePressed( int button ) {
+        record( GInputRecord.MOUSE_PRESSED | GInputRecord.FLAG_UNTIMED, 0, 0, button, 0, 0, 0 );
+        return mTarget.mousePressed( button );
+    }
+
+    @Override
+    public boolean mousePressed( long micros, int mods, int button, boolean triggerPopup ) {
+        record( GInputRecord.MOUSE_PRESSED, mods, micros, button, triggerPopup ? 1 : 0, 0, 0 );
+        return mTarget.mousePressed( micros, mods, button, triggerPopup );
+    }
+
+    @Override
+    public boolean mouseReleased( int button, boolean genClick ) {
+        record( GInputRecord.MOUSE_RELEASED | GInputRecord.FLAG_UNTIMED, 0, 0, button, 0, genClick ? 1 : 0, 0 );
+        return mTarget.mouseReleased( button, genClick );
+    }
+
+    @Override
+    public boolean mouseReleased( long micros, int mods, int button, boolean triggerPopup, boolean genClick ) {
+        record( GInputRecord.MOUSE_RELEASED, mods, micros, button, triggerPopup ? 1 : 0, genClick ? 1 : 0, 0 );
+        return mTarget.mouseReleased( micros, mods, button, triggerPopup, genClick );
+    }
+
+    @Override
+    public boolean mouseEntered( int x, int y ) {
+        record( GInputRecord.MOUSE_ENTERED | GInputRecord.FLAG_UNTIMED, 0, 0, x, y, 0, 0 );
+        return mTarget.mouseEntered( x, y );
+    }
+
+    @Override
+    public boolean mouseEntered( long micros, int mods, int x, int y ) {
+        record( GInputRecord.MOUSE_ENTERED, mods, micros, x, y, 0, 0 );
+        return mTarget.mouseEntered( micros, mods, x, y );
+    }
+
+    @Override
+    public boolean mouseExited() {
+        record( GInputRecord.MOUSE_EXITED | GInputRecord.FLAG_UNTIMED, 0, 0, 0, 0, 0, 0 );
+        return mTarget.mouseExited();
+    }
+
+    @Override
+    public boolean mouseExited( long micros, int mods ) {
+        record( GInputRecord.MOUSE_EXITED, mods, micros, 0, 0, 0, 0 );
+        return mTarget.mouseExited( micros, mods );
+    }
+
+    @Override
+    public boolean mouseMoved( int x, int y ) {
+        record( GInputRecord.MOUSE_MOVED | GInputRecord.FLAG_UNTIMED, 0, 0, x, y, 0, 0 );
+        return mTarget.mouseMoved( x, y );
+    }
+
+    @Override
+    public boolean mouseMoved( long micros, int mods, int x, int y ) {
+        record( GInputRecord.MOUSE_MOVED, mods, micros, x, y, 0, 0 );
+        return mTarget.mouseMoved( micros, mods, x, y );
+    }
+
+    @Override
+    public boolean mouseWheelMoved( int scrollType, int scrollAmount, int wheelRotation ) {
+        record( GInputRecord.MOUSE_WHEEL_MOVED | GInputRecord.FLAG_UNTIMED, 0, 0, scrollType, scrollAmount, wheelRotation, 0 );
+        return mTarget.mouseWheelMoved( scrollType, scrollAmount, wheelRotation );
+    }
+
+    @Override
+    public boolean mouseWheelMoved( long micros, int mods, int scrollType, int scrollAmount, int wheelRotation ) {
+        record( GInputRecord.MOUSE_WHEEL_MOVED, mods, micros, scrollType, scrollAmount, wheelRotation, 0 );
+        return mTarget.mouseWheelMoved( micros, mods, scrollType, scrollAmount, wheelRotation );
+    }
+
+
+
+    private synchronized void record( int type, int mods, long micros, int a, int b, int c, int d ) {
+        if( mClosed || mError != null ) {
+            return;
+        }
+
+        try {
+            if( mMap.remaining() < GInputRecord.BYTES ) {
+                map( mMapPos + mMap.position() );
+            }
+        } catch( IOException ex ) {
+            mError = ex;
+            mMap   = null;
+            return;
+        }
+
+        mWork.set( type, mods, micros, a, b, c, d ).write( mMap );
+        mSize += GInputRecord.BYTES;
+        mCount++;
+    }
+
+
+    private void map( long pos ) throws IOException {
+        if( mMap != null ) {
+            mMap.force();
+        }
+        mMap = mChannel.map( FileChannel.MapMode.READ_WRITE, pos, CHUNK_BYTES );
+        mMap.order( ByteOrder.LITTLE_ENDIAN );
+        mMapPos = pos;
+    }
+
+}
@@ -80,22 +80,32 @@ public class GLabel extends GPanel {
     }
 
 
+    @Override
+    boolean paintBatched( DrawEnv d, PaintBatch batch ) {
+        // paintLabel() records into the installed batch.
+        paintComponent( d );
+        return true;
+    }
+
+
     protected void paintLabel( DrawEnv d, Vec4 background, Vec4 foreground, int offX, int offY ) {
+        PaintBatch batch = PaintBatch.current();
         DrawStream s = d.drawStream();
-        s.config( true, false, false );
+        if( batch == null ) {
+            s.config( true, false, false );
+        }
 
         int w = width();
         int h = height();
 
         if( background != null ) {
-            s.config( true, false, false );
-            s.beginTriStrip();
-            s.color( background );
-            s.vert( 0, 0 );
-            s.vert( w, 0 );
-            s.vert( 0, h );
-            s.vert( w, h );
-            s.end();
+            if( batch != null ) {
+                batch.color( background );
+                batch.fillRect( 0, 0, w, h );
+            } else {
+                ShapeRenderer.fillRect( d, background, 0, 0, w, h );
+                s.config( true, false, false );
+            }
         }
 
         if( foreground == null ) {
@@ -114,9 +124,21 @@ public class GLabel extends GPanel {
             mLabelY = ( font.getAscent() + font.getDescent() ) * mVertSrc - font.getDescent();
         }
 
-        s.color( foreground );
         float x = Math.round( w * mHorDst - mLabelX )  + offX;
         float y = Math.round( h * mVertDst - mLabelY ) + offY;
+        if( batch != null ) {
+            batch.color( foreground );
+            batch.text( font, x, y, text );
+            return;
+        }
+
+        PaintContext pc = PaintContext.current();
+        if( pc != null && pc.mGlyphRuns != null ) {
+            pc.mGlyphRuns.draw( d, this, font, foreground, x, y, text );
+            return;
+        }
+
+        s.color( foreground );
         font.beginRenderChars( d );
         font.renderChars( d, x, y, 0, text );
         font.endRenderChars( d );
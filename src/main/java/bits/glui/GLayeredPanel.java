@@ -21,6 +21,10 @@ public class GLayeredPanel extends GPanel {
     
     private final List<GComponent> mChildren;
     private final List<Integer> mLayers;
+
+    // Layer of topmost child that has a mouse focusable component, used with hit index.
+    private boolean mTopMouseLayerValid = false;
+    private Integer mTopMouseLayer      = null;
     
     
     public GLayeredPanel() {
@@ -54,6 +58,8 @@ public class GLayeredPanel extends GPanel {
         
         mChildren.add( idx, child );
         mLayers.add( idx, layer );
+        mTopMouseLayerValid = false;
+        publishChildren();
         childAdded( child );
     }
     
@@ -65,6 +71,8 @@ public class GLayeredPanel extends GPanel {
         
         child = mChildren.remove( idx );
         mLayers.remove( idx );
+        mTopMouseLayerValid = false;
+        publishChildren();
         childRemoved( child );
     }
     
@@ -79,32 +87,71 @@ public class GLayeredPanel extends GPanel {
         
         mChildren.clear();
         mLayers.clear();
+        mTopMouseLayerValid = false;
+        publishChildren();
+    }
+
+    @Override
+    public void treeValidateHasMouseFocusable() {
+        super.treeValidateHasMouseFocusable();
+        if( confined() ) {
+            mTopMouseLayerValid = false;
+            return;
+        }
+        synchronized( this ) {
+            mTopMouseLayerValid = false;
+        }
     }
 
     @Override
-    public synchronized GComponent mouseFocusableComponentAt( int x, int y ) {
+    public GComponent mouseFocusableComponentAt( int x, int y ) {
         if( !hasMouseFocusableComponent() || !contains( x, y ) ) {
             return null;
         }
 
-        int size = mChildren.size();
-        Integer topLayer = null;
+        HitGrid grid = hitGrid();
+        if( grid != null ) {
+            Integer topLayer;
+            if( confined() ) {
+                topLayer = topMouseLayer();
+            } else {
+                synchronized( this ) {
+                    topLayer = topMouseLayer();
+                }
+            }
+            if( topLayer != null ) {
+                GComponent ret = indexedChildAt( grid, x, y, HIT_MOUSE_FOCUSABLE, topLayer );
+                if( ret != null ) {
+                    return ret;
+                }
+            }
+            return GToolkit.isMouseFocusable( this ) ? this : null;
+        }
+
+        ChildArray kids  = childArray();
+        GComponent[] arr = kids.mItems;
+        int[] layers     = kids.mLayers;
+        int size         = arr.length;
+        boolean found    = false;
+        int topLayer     = 0;
 
         while( size-- > 0 ) {
-            GComponent child = mChildren.get( size );
-            Integer    layer = mLayers.get( size );
+            GComponent child = arr[size];
+            int layer        = layers[size];
 
-            if( topLayer == null ) {
+            if( !found ) {
                 if( child.hasMouseFocusableComponent() ) {
+                    found    = true;
                     topLayer = layer;
                 } else {
                     continue;
                 }
-            } else if( layer.intValue() != topLayer.intValue() ) {
+            } else if( layer != topLayer ) {
                 break;
             }
 
-            GComponent ret = child.mouseFocusableComponentAt( x - child.x(), y - child.y() );
+            long p         = childPoint( child, x, y );
+            GComponent ret = child.mouseFocusableComponentAt( originX( p ), originY( p ) );
             if( ret != null ) {
                 return ret;
             }
@@ -113,4 +160,39 @@ public class GLayeredPanel extends GPanel {
         return GToolkit.isMouseFocusable( this ) ? this : null;
     }
 
+
+    @Override
+    int[] childLayers() {
+        int[] ret = new int[mLayers.size()];
+        for( int i = 0; i < ret.length; i++ ) {
+            ret[i] = mLayers.get( i );
+        }
+        return ret;
+    }
+
+
+    @Override
+    int childLayer( GComponent child ) {
+        int idx = mChildren.indexOf( child );
+        return idx < 0 ? 0 : mLayers.get( idx );
+    }
+
+    /**
+     * Only children in the topmost layer that has a mouse focusable
+     * component receive mouse focus. Must hold lock unless confined.
+     */
+    private Integer topMouseLayer() {
+        if( !mTopMouseLayerValid ) {
+            mTopMouseLayer = null;
+            for( int i = mChildren.size() - 1; i >= 0; i-- ) {
+                if( mChildren.get( i ).hasMouseFocusableComponent() ) {
+                    mTopMouseLayer = mLayers.get( i );
+                    break;
+                }
+            }
+            mTopMouseLayerValid = true;
+        }
+        return mTopMouseLayer;
+    }
+
 }
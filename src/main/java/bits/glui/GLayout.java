@@ -7,6 +7,11 @@
 package bits.glui;
 
 /**
+ * Positions the children of a pane. Layouts are normally run on the dispatch
+ * thread, but run concurrently on the ForkJoinPool worker threads when parallel
+ * layout is enabled; see {@link GEventController#setLayoutPool}. In either case, a layout
+ * should only read and modify the pane it is given and that pane's children.
+ *
  * @author decamp
  */
 public interface GLayout {
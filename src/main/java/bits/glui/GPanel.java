@@ -9,6 +9,7 @@ package bits.glui;
 import java.awt.Font;
 import java.awt.event.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import bits.draw3d.DrawEnv;
 import bits.draw3d.Rect;
@@ -16,10 +17,30 @@ import bits.glui.event.*;
 import bits.math3d.Vec;
 import bits.math3d.Vec4;
 
+import static com.jogamp.opengl.GL.GL_COLOR_BUFFER_BIT;
+
 /**
- * TODO: fix potential threading issue with adding/removing children.
- * Even mSafeChildren will give up a concurrent modification exception
- * if iterated during add/remove event.
+ * Children are kept in a mutable list guarded by the panel's lock, and are
+ * also published as an immutable snapshot whenever they change. Painting,
+ * hit-testing and tree traversals iterate the snapshot, so they never
+ * throw ConcurrentModificationException and do not hold the panel's lock
+ * while descending into children. Adding and removing children copies the
+ * child array.
+ * <p>
+ * When the tree is confined to the dispatch thread with
+ * {@link GEventController#confineTree(boolean)}, bounds, layout, paint,
+ * repaint and tree traversal methods skip the panel's lock.
+ * <p>
+ * Each panel counts the components in its subtree that have ancestor listeners,
+ * and ancestor move and resize traversals skip subtrees with none. Subclasses that
+ * override {@link #treeProcessAncestorMoved} or {@link #treeProcessAncestorResized}
+ * are always visited.
+ * <p>
+ * A panel may be {@link #setCached(boolean) cached}, in which case its subtree is
+ * rendered into an offscreen layer and composited as a single quad until the
+ * subtree changes. A panel may also be given a {@link #setCompositeTransform composite
+ * transform} and {@link #setCompositeOpacity opacity}, which are applied when its layer
+ * is composited, so that it can be animated without moving or repainting its subtree.
  *
  * @author decamp
  */
@@ -27,20 +48,81 @@ public class GPanel implements GComponent {
 
     private static final Font DEFAULT_FONT = new Font( "Verdana", Font.PLAIN, 12 );
 
+    private static final AtomicIntegerFieldUpdater<GPanel> TREE_ANCESTOR_LISTENERS =
+            AtomicIntegerFieldUpdater.newUpdater( GPanel.class, "mTreeAncestorListeners" );
+
+    private static final ClassValue<Boolean> OVERRIDES_ANCESTOR = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue( Class<?> clazz ) {
+            try {
+                return clazz.getMethod( "treeProcessAncestorMoved", GComponent.class ).getDeclaringClass() != GPanel.class ||
+                       clazz.getMethod( "treeProcessAncestorResized", GComponent.class ).getDeclaringClass() != GPanel.class;
+            } catch( NoSuchMethodException ex ) {
+                return true;
+            }
+        }
+    };
+
+    // True iff paintBatched() of class covers all of its painting, because it is declared
+    // no further up the hierarchy than paintComponent() and, for labels, paintLabel().
+    private static final ClassValue<Boolean> PAINTS_BATCHED = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue( Class<?> clazz ) {
+            Class<?> hook = declaringClass( clazz, "paintBatched", DrawEnv.class, PaintBatch.class );
+            if( hook == null || hook.getPackage() != GPanel.class.getPackage() ) {
+                return false;
+            }
+            Class<?> paint = declaringClass( clazz, "paintComponent", DrawEnv.class );
+            Class<?> label = declaringClass( clazz, "paintLabel", DrawEnv.class, Vec4.class, Vec4.class, int.class, int.class );
+            return paint.isAssignableFrom( hook ) && ( label == null || label.isAssignableFrom( hook ) );
+        }
+    };
+
+    // True iff class leaves the traversal of its subtree to GPanel, so that children are
+    // painted and have their views prepared where the batch expects.
+    private static final ClassValue<Boolean> PAINTS_TREE_BATCHED = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue( Class<?> clazz ) {
+            return GPanel.class.isAssignableFrom( clazz ) &&
+                   declaringClass( clazz, "processPaint", DrawEnv.class ) == GPanel.class &&
+                   declaringClass( clazz, "paintChildren", DrawEnv.class ) == GPanel.class &&
+                   declaringClass( clazz, "prepareView", DrawEnv.class, GComponent.class ) == GPanel.class;
+        }
+    };
+
+    static final int HIT_ANY             = 0;
+    static final int HIT_DISPLAYED       = 1;
+    static final int HIT_MOUSE_FOCUSABLE = 2;
+
     private GDispatcher mDispatcher = null;
     private GComponent  mParent     = null;
     private final List<GComponent> mChildren;
-    private final List<GComponent> mSafeChildren;
+    private volatile ChildArray    mChildArray = ChildArray.EMPTY;
 
     private GLayout mLayout = null;
 
+    private volatile HitGrid mHitGrid = null;
+    private HitGrid.Result   mHits    = null;
+
     private int mX = 0;
     private int mY = 0;
     private int mW = 1;
     private int mH = 1;
 
-    private final Rect    mAbsoluteBounds    = Rect.fromBounds( 0, 0, 1, 1 );
-    private       boolean mHasAbsoluteBounds = false;
+    // Incremented whenever bounds or parent change.
+    private volatile long mBoundsGen = 0;
+
+    // Cached absolute origin, packed with packOrigin(), and size. Published as a
+    // seqlock: mAbsSeq is odd while the cache is being written, and advances on
+    // every write, so children can tell whether their own caches are stale.
+    private volatile long mAbsSeq    = 0;
+    private volatile long mAbsOrigin = 0;
+    private volatile int  mAbsW      = 0;
+    private volatile int  mAbsH      = 0;
+    // What the cache was computed from.
+    private volatile GComponent mAbsParent    = null;
+    private volatile long       mAbsParentSeq = -1;
+    private volatile long       mAbsBoundsGen = -1;
 
     private       boolean mHasForeground = true;
     private final Vec4    mForeground    = new Vec4( 1, 1, 1, 1 );
@@ -56,6 +138,13 @@ public class GPanel implements GComponent {
     private boolean mNeedsPaint           = false;
     private boolean mNeedsLayout          = false;
 
+    private volatile boolean mCached      = false;
+    // Set before rendering layer and cleared by any change to subtree,
+    // so changes made while rendering are not lost.
+    private volatile boolean mCacheValid  = false;
+    // Null when untransformed and opaque.
+    private volatile Composite mComposite = null;
+
     private GComponentListener   mComponentCaster   = null;
     private GAncestorListener    mAncestorCaster    = null;
     private GFocusListener       mFocusCaster       = null;
@@ -65,15 +154,22 @@ public class GPanel implements GComponent {
     private GMouseWheelListener  mMouseWheelCaster  = null;
     private GKeyListener         mKeyCaster         = null;
 
+    // Number of components in subtree, including this one, that need ancestor move
+    // and resize events. May overcount while the tree is modified concurrently, never under.
+    private volatile int mTreeAncestorListeners;
+
 
     public GPanel() {
         this( new ArrayList<GComponent>() );
     }
 
 
+    /**
+     * @param children Empty list to hold children. Only modified by GPanel.
+     */
     protected GPanel( List<GComponent> children ) {
         mChildren = children;
-        mSafeChildren = Collections.unmodifiableList( mChildren );
+        mTreeAncestorListeners = OVERRIDES_ANCESTOR.get( getClass() ) ? 1 : 0;
     }
 
 
@@ -84,12 +180,14 @@ public class GPanel implements GComponent {
         }
         
         mChildren.add( child );
+        publishChildren();
         childAdded( child );
     }
     
     @Override
     public synchronized void removeChild( GComponent child ) {
         if( mChildren.remove( child ) ) {
+            publishChildren();
             childRemoved( child );
         }
     }
@@ -105,11 +203,16 @@ public class GPanel implements GComponent {
         }
         
         mChildren.clear();
+        publishChildren();
     }
-    
+
+    /**
+     * @return unmodifiable snapshot of children. Later changes to children
+     *         are not reflected in the returned list.
+     */
     @Override
     public List<GComponent> children() {
-        return mSafeChildren;
+        return mChildArray;
     }
 
     @Override
@@ -124,11 +227,14 @@ public class GPanel implements GComponent {
     
     
     @Override
-    public synchronized void getBounds( Rect out ) {
-        out.x0 = mX;
-        out.y0 = mY;
-        out.x1 = mX + mW;
-        out.y1 = mY + mH;
+    public void getBounds( Rect out ) {
+        if( confined() ) {
+            readBounds( out );
+            return;
+        }
+        synchronized( this ) {
+            readBounds( out );
+        }
     }
 
     @Override
@@ -138,36 +244,23 @@ public class GPanel implements GComponent {
 
     @Override
     public void getAbsoluteBounds( Rect out ) {
-        synchronized( this ) {
-            if( mHasAbsoluteBounds ) {
-                out.set( mAbsoluteBounds );
-                return;
-            }
-        }
-
-        Rect rect = null;
-        GComponent parent = mParent;
-        if( parent != null ) {
-            rect = new Rect();
-            parent.getAbsoluteBounds( rect );
-        }
-
-        synchronized( this ) {
-            Rect abs = mAbsoluteBounds;
-
-            if( rect != null ) {
-                abs.x0 = rect.x0 + mX;
-                abs.x1 = abs.x0 + mW;
-                abs.y0 = rect.y0 + mY;
-                abs.y1 = abs.y0 + mH;
-            } else {
-                abs.x0 = mX;
-                abs.y0 = mY;
-                abs.x1 = mX + mW;
-                abs.y1 = mY + mH;
-            }
-            out.set( abs );
-        }
+        long origin;
+        int w;
+        int h;
+        long seq;
+        do {
+            seq    = validAbsoluteSeq();
+            origin = mAbsOrigin;
+            w      = mAbsW;
+            h      = mAbsH;
+        } while( mAbsSeq != seq );
+
+        int x = originX( origin );
+        int y = originY( origin );
+        out.x0 = x;
+        out.y0 = y;
+        out.x1 = x + w;
+        out.y1 = y + h;
     }
 
     @Override
@@ -213,17 +306,46 @@ public class GPanel implements GComponent {
     }
     
     @Override
-    public synchronized GComponent setBounds( int x, int y, int w, int h ) {
+    public GComponent setBounds( int x, int y, int w, int h ) {
+        if( confined() ) {
+            doSetBounds( x, y, w, h );
+        } else {
+            synchronized( this ) {
+                doSetBounds( x, y, w, h );
+            }
+        }
+        return this;
+    }
+
+
+    private void doSetBounds( int x, int y, int w, int h ) {
         boolean moved   = x != mX || y != mY;
         boolean resized = w != mW || h != mH;
         
         if( moved || resized ) {
+            damageParent();
             mX = x;
             mY = y;
             mW = w;
             mH = h;
-
-            mHasAbsoluteBounds = false;
+            // Descendants see moves through mAbsSeq on next access.
+            mBoundsGen++;
+
+            GComponent parent = mParent;
+            if( parent instanceof GPanel ) {
+                Composite c = mComposite;
+                if( c == null ) {
+                    ((GPanel)parent).childBoundsChanged( this, x, y, w, h );
+                } else {
+                    Rect r = new Rect( x, y, x + w, y + h );
+                    c.transform( r );
+                    ((GPanel)parent).childBoundsChanged( this, r.x0, r.y0, r.width(), r.height() );
+                }
+            }
+            HitGrid grid = mHitGrid;
+            if( resized && grid != null ) {
+                grid.resize( w, h );
+            }
             if( moved ) {
                 treeProcessAncestorMoved( this );
             }
@@ -232,8 +354,6 @@ public class GPanel implements GComponent {
                 applyLayout();
             }
         }
-        
-        return this;
     }
     
     @Override
@@ -242,6 +362,9 @@ public class GPanel implements GComponent {
             return;
         }
 
+        if( !visible ) {
+            damageParent();
+        }
         mVisible = visible;
         if( visible ) {
             treeProcessParentShown();
@@ -367,12 +490,20 @@ public class GPanel implements GComponent {
     
     @Override
     public synchronized void addAncestorListener( GAncestorListener listener ) {
+        boolean had = mAncestorCaster != null;
         mAncestorCaster = GluiMulticaster.add( mAncestorCaster, listener );
+        if( !had && mAncestorCaster != null ) {
+            addTreeAncestorListeners( 1 );
+        }
     }
     
     @Override
     public synchronized void removeAncestorListener( GAncestorListener listener ) {
+        boolean had = mAncestorCaster != null;
         mAncestorCaster = GluiMulticaster.remove( mAncestorCaster, listener );
+        if( had && mAncestorCaster == null ) {
+            addTreeAncestorListeners( -1 );
+        }
     }
     
     @Override
@@ -529,16 +660,23 @@ public class GPanel implements GComponent {
     
     
     @Override
-    public synchronized GComponent componentAt( int x, int y ) {
+    public GComponent componentAt( int x, int y ) {
         if( !contains( x, y ) ) {
             return null;
         }
 
-        int size = mChildren.size();
+        HitGrid grid = mHitGrid;
+        if( grid != null ) {
+            GComponent ret = indexedChildAt( grid, x, y, HIT_ANY, Integer.MIN_VALUE );
+            return ret != null ? ret : this;
+        }
 
+        GComponent[] arr = mChildArray.mItems;
+        int size = arr.length;
         while( size-- > 0 ) {
-            GComponent child = mChildren.get( size );
-            GComponent ret = child.componentAt( x - child.x(), y - child.y() );
+            GComponent child = arr[size];
+            long p           = childPoint( child, x, y );
+            GComponent ret   = child.componentAt( originX( p ), originY( p ) );
             if( ret != null ) {
                 return ret;
             }
@@ -548,15 +686,23 @@ public class GPanel implements GComponent {
     }
     
     @Override
-    public synchronized GComponent displayedComponentAt( int x, int y ) {
+    public GComponent displayedComponentAt( int x, int y ) {
         if( !mDisplayed || !contains( x, y ) ) {
             return null;
         }
 
-        int size = mChildren.size();
+        HitGrid grid = mHitGrid;
+        if( grid != null ) {
+            GComponent ret = indexedChildAt( grid, x, y, HIT_DISPLAYED, Integer.MIN_VALUE );
+            return ret != null ? ret : this;
+        }
+
+        GComponent[] arr = mChildArray.mItems;
+        int size = arr.length;
         while( size-- > 0 ) {
-            GComponent child = mChildren.get( size );
-            GComponent ret   = child.displayedComponentAt( x - child.x(), y - child.y() );
+            GComponent child = arr[size];
+            long p           = childPoint( child, x, y );
+            GComponent ret   = child.displayedComponentAt( originX( p ), originY( p ) );
             if( ret != null ) {
                 return ret;
             }
@@ -566,15 +712,26 @@ public class GPanel implements GComponent {
     }
     
     @Override
-    public synchronized GComponent mouseFocusableComponentAt( int x, int y ) {
+    public GComponent mouseFocusableComponentAt( int x, int y ) {
         if( !mTreeIsMouseFocusable || !contains( x, y ) ) {
             return null;
         }
-        
-        int size = mChildren.size();
+
+        HitGrid grid = mHitGrid;
+        if( grid != null ) {
+            GComponent ret = indexedChildAt( grid, x, y, HIT_MOUSE_FOCUSABLE, Integer.MIN_VALUE );
+            if( ret != null ) {
+                return ret;
+            }
+            return GToolkit.isMouseFocusable( this ) ? this : null;
+        }
+
+        GComponent[] arr = mChildArray.mItems;
+        int size = arr.length;
         while( size-- > 0 ) {
-            GComponent child = mChildren.get( size );
-            GComponent ret   = child.mouseFocusableComponentAt( x - child.x(), y - child.y() );
+            GComponent child = arr[size];
+            long p           = childPoint( child, x, y );
+            GComponent ret   = child.mouseFocusableComponentAt( originX( p ), originY( p ) );
             if( ret != null ) {
                 return ret;
             }
@@ -588,14 +745,68 @@ public class GPanel implements GComponent {
         return mTreeIsMouseFocusable;
     }
 
+    /**
+     * Enables or disables a spatial index of this panel's children, which
+     * makes {@link #componentAt}, {@link #displayedComponentAt} and
+     * {@link #mouseFocusableComponentAt} take time roughly proportional to the
+     * number of children near the point instead of the total number of children.
+     * Worthwhile for panels with hundreds of children or more.
+     * <p>
+     * The index is kept up to date as children are added, removed, moved and
+     * resized. Children that are not GPanels cannot report changes to their
+     * bounds, so they are not indexed by bounds and are tested for every point.
+     *
+     * @param cellSize Size of grid cells in pixels, about the size of a typical child,
+     *                 or {@code 0} to disable the index.
+     */
+    public synchronized void setHitIndex( int cellSize ) {
+        if( cellSize <= 0 ) {
+            mHitGrid = null;
+            mHits    = null;
+            return;
+        }
+
+        HitGrid grid = mHitGrid;
+        if( grid != null && grid.cellSize() == cellSize ) {
+            return;
+        }
+
+        mHitGrid = buildHitGrid( cellSize );
+    }
+
+    /**
+     * Enables spatial index with default cell size.
+     *
+     * @see #setHitIndex(int)
+     */
+    public void setHitIndex( boolean enable ) {
+        setHitIndex( enable ? HitGrid.DEFAULT_CELL_SIZE : 0 );
+    }
+
+
+    public boolean hasHitIndex() {
+        return mHitGrid != null;
+    }
+
     @Override
-    public synchronized void applyLayout() {
-        if( mNeedsLayout || mLayout == null && mChildren.isEmpty() ) {
+    public void applyLayout() {
+        if( confined() ) {
+            doApplyLayout();
             return;
         }
-        
+        synchronized( this ) {
+            doApplyLayout();
+        }
+    }
+
+
+    private void doApplyLayout() {
+        if( mNeedsLayout || mLayout == null && mChildArray.mItems.length == 0 ) {
+            return;
+        }
+
         mNeedsLayout = true;
-        
+
         if( mDispatcher != null ) {
             mDispatcher.fireLayout( this );
         }
@@ -607,8 +818,25 @@ public class GPanel implements GComponent {
     }
 
     @Override
-    public synchronized void repaint() {
-        if( mNeedsPaint || mDispatcher == null ) {
+    public void repaint() {
+        if( confined() ) {
+            doRepaint();
+            return;
+        }
+        synchronized( this ) {
+            doRepaint();
+        }
+    }
+
+
+    private void doRepaint() {
+        if( mDispatcher == null ) {
+            return;
+        }
+        // Invalidate even if a paint is pending, as a cached ancestor
+        // may be rendering its layer concurrently.
+        invalidateCache( this );
+        if( mNeedsPaint ) {
             return;
         }
         mNeedsPaint = true;
@@ -620,147 +848,268 @@ public class GPanel implements GComponent {
         return mNeedsPaint;
     }
 
+    /**
+     * @return true iff this panel's subtree is cached.
+     * @see #setCached(boolean)
+     */
+    public boolean isCached() {
+        return mCached;
+    }
+
+    /**
+     * When enabled, this panel and its descendants are rendered once into an
+     * offscreen layer, and then composited as a single quad each frame until
+     * a component in the subtree calls {@link #repaint()}, changes bounds, is
+     * shown or hidden, or gains or loses children. Moving the panel itself
+     * does not invalidate the layer.
+     * <p>
+     * Suitable for subtrees that rarely change, such as toolbars, legends and
+     * labels. Descendants must not paint anything that changes without calling
+     * {@code repaint()}. Layers are kept within the memory budget set with
+     * {@link GEventController#cacheBudget(long)}, and panels whose layers do
+     * not fit are painted directly. Only applies when painted by a GEventController.
+     * Disabled by default.
+     */
+    public void setCached( boolean cached ) {
+        if( cached == mCached ) {
+            return;
+        }
+        mCacheValid = false;
+        mCached     = cached;
+        repaint();
+    }
+
+    /**
+     * Sets a transform applied to this panel and its descendants when they are
+     * composited onto the parent. The panel's content is rendered into an offscreen
+     * layer at its normal bounds, as with {@link #setCached(boolean)}, and the layer
+     * is drawn scaled by {@code sx, sy} about the panel's origin and then translated
+     * by {@code tx, ty}.
+     * <p>
+     * The transform does not change the panel's bounds, and does not cause layout,
+     * component or ancestor events, or repainting of the subtree, so it is cheap to
+     * change every frame. Hit-testing and mouse event coordinates honor the transform.
+     * Content outside the parent's bounds is clipped. If the layer does not fit in
+     * the memory budget, the panel is painted without the transform.
+     *
+     * @param tx Translation in pixels.
+     * @param ty Translation in pixels.
+     * @param sx Horizontal scale. Must be positive.
+     * @param sy Vertical scale. Must be positive.
+     */
+    public void setCompositeTransform( float tx, float ty, float sx, float sy ) {
+        Composite c = mComposite;
+        setComposite( tx, ty, sx, sy, c == null ? 1f : c.mAlpha );
+    }
+
+    /**
+     * Sets opacity applied to this panel and its descendants when they are composited
+     * onto the parent. Like {@link #setCompositeTransform}, this does not repaint
+     * the subtree.
+     *
+     * @param alpha Opacity between 0 and 1.
+     */
+    public void setCompositeOpacity( float alpha ) {
+        Composite c = mComposite;
+        alpha = Math.max( 0f, Math.min( 1f, alpha ) );
+        if( c == null ) {
+            setComposite( 0f, 0f, 1f, 1f, alpha );
+        } else {
+            setComposite( c.mTx, c.mTy, c.mSx, c.mSy, alpha );
+        }
+    }
+
+
+    public float compositeX() {
+        Composite c = mComposite;
+        return c == null ? 0f : c.mTx;
+    }
+
+
+    public float compositeY() {
+        Composite c = mComposite;
+        return c == null ? 0f : c.mTy;
+    }
+
+
+    public float compositeScaleX() {
+        Composite c = mComposite;
+        return c == null ? 1f : c.mSx;
+    }
+
+
+    public float compositeScaleY() {
+        Composite c = mComposite;
+        return c == null ? 1f : c.mSy;
+    }
+
+
+    public float compositeOpacity() {
+        Composite c = mComposite;
+        return c == null ? 1f : c.mAlpha;
+    }
+
     @Override
     public GDispatcher dispatcher() {
         return mDispatcher;
     }
 
     @Override
-    public synchronized void treeProcessParentChanged( GDispatcher dispatcher, GComponent parent ) {
-        if( dispatcher == mDispatcher && parent == mParent ) {
-            return;
-        }
-        GDispatcher out = dispatcher != null ? dispatcher : mDispatcher;
-        mDispatcher     = dispatcher;
-        mParent         = parent;
-        mHasAbsoluteBounds = false;
+    public void treeProcessParentChanged( GDispatcher dispatcher, GComponent parent ) {
+        synchronized( this ) {
+            if( dispatcher == mDispatcher && parent == mParent ) {
+                return;
+            }
+            GDispatcher out = dispatcher != null ? dispatcher : mDispatcher;
+            mDispatcher     = dispatcher;
+            mParent         = parent;
+            mBoundsGen++;
+
+            // Notify ancestor has changed.
+            if( out != null && mAncestorCaster != null ) {
+                GAncestorEvent e = new GAncestorEvent( this, GAncestorEvent.ANCESTOR_CHANGED, parent );
+                out.fireAncestorEvent( e );
+            }
 
-        // Notify ancestor has changed.
-        if( out != null && mAncestorCaster != null ) {
-            GAncestorEvent e = new GAncestorEvent( this, GAncestorEvent.ANCESTOR_CHANGED, parent );
-            out.fireAncestorEvent( e );
-        }
-        
-        updateDisplayed( out );
-        mNeedsLayout = false;
-        mNeedsPaint  = false;
-        applyLayout();
+            updateDisplayed( out );
+            mNeedsLayout = false;
+            mNeedsPaint  = false;
+            applyLayout();
 
-        if( mDisplayed ) {
-            repaint();
-        }
-        
-        mDispatcher = dispatcher;
-        if( !mChildren.isEmpty() ) {
-            for( GComponent c: mChildren ) {
-                c.treeProcessParentChanged( dispatcher, this );
+            if( mDisplayed ) {
+                repaint();
             }
+
+            mDispatcher = dispatcher;
+        }
+
+        for( GComponent c: mChildArray.mItems ) {
+            c.treeProcessParentChanged( dispatcher, this );
         }
     }
     
     @Override
-    public synchronized void treeProcessAncestorMoved( GComponent source ) {
-        mHasAbsoluteBounds = false;
-    
-        if( mDispatcher != null ) {
-            if( source == this ) {
-                if( mComponentCaster != null ) {
-                    GComponentEvent e = new GComponentEvent( this, GComponentEvent.COMPONENT_MOVED );
-                    mDispatcher.fireComponentEvent( e );
-                }
-            } else if( mAncestorCaster != null ) {
-                GAncestorEvent e = new GAncestorEvent( this, GAncestorEvent.ANCESTOR_MOVED, source );
-                mDispatcher.fireAncestorEvent( e );
+    public void treeProcessAncestorMoved( GComponent source ) {
+        if( confined() ) {
+            fireMoved( source );
+        } else {
+            synchronized( this ) {
+                fireMoved( source );
             }
         }
         
-        if( !mChildren.isEmpty() ) {
-            for( GComponent c: mChildren ) {
+        for( GComponent c: mChildArray.mItems ) {
+            if( needsAncestorEvents( c ) ) {
                 c.treeProcessAncestorMoved( source );
             }
         }
     }
     
     @Override
-    public synchronized void treeProcessAncestorResized( GComponent source ) {
-        mHasAbsoluteBounds = false;
-        
-        if( mDispatcher != null ) {
-            if( source == this ) {
-                if( mComponentCaster != null ) {
-                    GComponentEvent e = new GComponentEvent( this, GComponentEvent.COMPONENT_RESIZED );
-                    mDispatcher.fireComponentEvent( e );
-                }
-            } else if( mAncestorCaster != null ) {
-                GAncestorEvent e = new GAncestorEvent( this, GAncestorEvent.ANCESTOR_RESIZED, source );
-                mDispatcher.fireAncestorEvent( e );
+    public void treeProcessAncestorResized( GComponent source ) {
+        if( confined() ) {
+            fireResized( source );
+        } else {
+            synchronized( this ) {
+                fireResized( source );
             }
-        } 
+        }
         
-        if( !mChildren.isEmpty() ) {
-            for( GComponent c: mChildren ) {
+        for( GComponent c: mChildArray.mItems ) {
+            if( needsAncestorEvents( c ) ) {
                 c.treeProcessAncestorResized( source );
             }
         }
     }
     
     @Override
-    public synchronized void treeProcessParentShown() {
-        if( updateDisplayed() && !mChildren.isEmpty() ) {
-            for( GComponent c: mChildren ) {
+    public void treeProcessParentShown() {
+        if( updateDisplayed() ) {
+            for( GComponent c: mChildArray.mItems ) {
                 c.treeProcessParentShown();
             }
         }
     }
     
     @Override
-    public synchronized void treeProcessParentHidden() {
-        if( updateDisplayed() && !mChildren.isEmpty() ) { 
-            for( GComponent c: mChildren ) {
+    public void treeProcessParentHidden() {
+        if( updateDisplayed() ) {
+            for( GComponent c: mChildArray.mItems ) {
                 c.treeProcessParentHidden();
             }
         }
     }
 
     @Override
-    public synchronized void treeValidateHasMouseFocusable() {
-        mTreeIsMouseFocusable = GToolkit.isMouseFocusable( this );
-        for( GComponent c: mChildren ) {
+    public void treeValidateHasMouseFocusable() {
+        boolean focusable = GToolkit.isMouseFocusable( this );
+        for( GComponent c: mChildArray.mItems ) {
             c.treeValidateHasMouseFocusable();
-            mTreeIsMouseFocusable = mTreeIsMouseFocusable || c.hasMouseFocusableComponent();
+            focusable = focusable || c.hasMouseFocusableComponent();
+        }
+        if( confined() ) {
+            mTreeIsMouseFocusable = focusable;
+        } else {
+            synchronized( this ) {
+                mTreeIsMouseFocusable = focusable;
+            }
         }
     }
 
     @Override
     public void treeProcessLayout() {
-        GLayout m;
-        
-        synchronized( this ) {
-            m = mLayout;
-            mNeedsLayout = false;
-        }
-        
+        GLayout m = takeLayout();
         if( m != null ) {
             m.layoutPane( this );
         }
         
-        synchronized( this ) {
-            for( GComponent p: mChildren ) {
-                p.treeProcessLayout();
-            }
+        for( GComponent p: mChildArray.mItems ) {
+            p.treeProcessLayout();
+        }
+    }
+
+    /**
+     * Lays out this panel only, without descending into children.
+     * Used for parallel layout, which handles descendants itself.
+     * Unlike {@link #treeProcessLayout()}, the panel's lock is not held
+     * while its children are being laid out.
+     *
+     * @return snapshot of children at end of layout. Must not be modified.
+     */
+    GComponent[] layoutSelf() {
+        GLayout m = takeLayout();
+        if( m != null ) {
+            m.layoutPane( this );
         }
+
+        return mChildArray.mItems;
     }
 
 
 
 
     @Override
-    public synchronized void processPaint( DrawEnv g ) {
-        if( !mDisplayed ) {
+    public void processPaint( DrawEnv g ) {
+        if( usesLayer() && paintCached( g ) ) {
             return;
         }
-        mNeedsPaint = false;
-        paintComponent( g );
+        paintTree( g );
+    }
+
+
+    private void paintTree( DrawEnv g ) {
+        // Lock is held only while painting this panel, not its children.
+        if( confined() ) {
+            if( !paintSelf( g ) ) {
+                return;
+            }
+        } else {
+            synchronized( this ) {
+                if( !paintSelf( g ) ) {
+                    return;
+                }
+            }
+        }
         paintChildren( g );
     }
     
@@ -919,16 +1268,80 @@ public class GPanel implements GComponent {
     }
 
 
+    /**
+     * Records this component into {@code batch} in place of {@link #paintComponent},
+     * while painting is batched and no paint listeners are attached. Called only if
+     * this method is overridden in the same class as, or a subclass of, the classes
+     * that declare {@code paintComponent(DrawEnv)} and, for labels,
+     * {@code paintLabel}, so subclasses that change how they paint are drawn
+     * directly unless they also override this method. Must record nothing if it
+     * returns false.
+     *
+     * @return true if component was recorded, false if it must be painted directly.
+     */
+    boolean paintBatched( DrawEnv g, PaintBatch batch ) {
+        // Panels draw nothing themselves besides paint listeners.
+        return true;
+    }
+
+
     protected void paintChildren( DrawEnv g ) {
-        if( mChildren.isEmpty() ) {
+        GComponent[] arr = mChildArray.mItems;
+        if( arr.length == 0 ) {
             return;
         }
-        
-        for( GComponent p : mChildren ) {
-            if( p.isDisplayed() ) {
+
+        PaintContext pc = PaintContext.current();
+        if( pc == null ) {
+            for( GComponent p : arr ) {
+                if( p.isDisplayed() ) {
+                    prepareView( g, p );
+                    p.processPaint( g );
+                }
+            }
+            return;
+        }
+
+        // Skip children that lie entirely outside this panel or the area being
+        // painted. Children that are painted are not clipped to this panel.
+        Rect work = g.mWorkRect;
+        getAbsoluteBounds( work );
+        Rect clip = pc.pushClip( work );
+        try {
+            for( GComponent p : arr ) {
+                if( !p.isDisplayed() ) {
+                    continue;
+                }
+                p.getAbsoluteBounds( work );
+                if( p instanceof GPanel ) {
+                    Composite c = ((GPanel)p).mComposite;
+                    if( c != null ) {
+                        c.transform( work );
+                    }
+                }
+                if( !clip.intersects( work ) ) {
+                    pc.mCulled++;
+                    continue;
+                }
+                pc.mPainted++;
                 prepareView( g, p );
-                p.processPaint( g );
+                PaintBatch batch = pc.mBatch;
+                if( batch == null || paintsTreeBatched( p ) ) {
+                    p.processPaint( g );
+                    continue;
+                }
+                // Subtree paints directly, so batched primitives must be drawn first.
+                pc.mDrawCalls += batch.flush( g ) + 1;
+                batch.applyView( g );
+                pc.mBatch = null;
+                try {
+                    p.processPaint( g );
+                } finally {
+                    pc.mBatch = batch;
+                }
             }
+        } finally {
+            pc.popClip();
         }
     }
 
@@ -936,6 +1349,14 @@ public class GPanel implements GComponent {
     protected void prepareView( DrawEnv g, GComponent p ) {
         Rect b = g.mWorkRect;
         p.getAbsoluteBounds( b );
+
+        PaintContext pc = PaintContext.current();
+        if( pc != null && pc.mBatch != null ) {
+            // Applied to GL only if component does not paint through batch.
+            pc.mBatch.view( g, b, pc.paintClip() );
+            return;
+        }
+
         Rect viewport = g.mContextViewport;
 
         int x = b.x0 - viewport.x0;
@@ -946,24 +1367,776 @@ public class GPanel implements GComponent {
         g.mProj.setOrtho( 0, w, 0, h, -1, 1 );
         g.mView.identity();
         g.mViewport.apply( x, y, w, h );
-        g.mScissorTest.apply( true, x, y, w, h );
+
+        Rect clip = pc == null ? null : pc.paintClip();
+        if( clip == null ) {
+            g.mScissorTest.apply( true, x, y, w, h );
+        } else {
+            int x0 = Math.max( b.x0, clip.x0 ) - viewport.x0;
+            int y0 = Math.max( b.y0, clip.y0 ) - viewport.y0;
+            int x1 = Math.min( b.x1, clip.x1 ) - viewport.x0;
+            int y1 = Math.min( b.y1, clip.y1 ) - viewport.y0;
+            g.mScissorTest.apply( true, x0, y0, Math.max( 0, x1 - x0 ), Math.max( 0, y1 - y0 ) );
+        }
+    }
+
+    /**
+     * Called for components that requested a repaint but were outside the
+     * area painted, so that future repaint requests are not ignored.
+     */
+    void clearNeedsPaint() {
+        if( confined() ) {
+            mNeedsPaint = false;
+            return;
+        }
+        synchronized( this ) {
+            mNeedsPaint = false;
+        }
     }
 
 
     protected void childAdded( GComponent child ) {
+        invalidateCache( this );
         child.treeProcessParentChanged( mDispatcher, this );
+        int n = treeAncestorListeners( child );
+        if( n != 0 ) {
+            addTreeAncestorListeners( n );
+        }
+        HitGrid grid = mHitGrid;
+        if( grid != null ) {
+            // The grid orders children in a layer by insertion, so a child
+            // inserted beneath siblings requires a rebuild.
+            int idx = mChildren.indexOf( child );
+            int layer = childLayer( child );
+            if( idx + 1 < mChildren.size() && childLayer( mChildren.get( idx + 1 ) ) <= layer ) {
+                rebuildHitIndex();
+            } else {
+                addToHitGrid( grid, child, layer, new Rect() );
+            }
+        }
         applyLayout();        
     }
 
 
     protected void childRemoved( GComponent child ) {
+        invalidateCache( this );
+        HitGrid grid = mHitGrid;
+        if( grid != null ) {
+            grid.remove( child );
+        }
         child.treeProcessParentChanged( null, null );
+        int n = treeAncestorListeners( child );
+        if( n != 0 ) {
+            addTreeAncestorListeners( -n );
+        }
         applyLayout();
+        if( tracksDamage() ) {
+            repaint();
+        }
     }
     
     
-    private synchronized boolean updateDisplayed() {
-        return updateDisplayed( mDispatcher );
+    /**
+     * @return layer used to order child in hit index. Children in higher layers are above
+     *         children in lower layers, and otherwise are ordered by insertion.
+     *         Subclasses that reorder children must call {@link #rebuildHitIndex()}.
+     */
+    int childLayer( GComponent child ) {
+        return 0;
+    }
+
+    /**
+     * Called by children when their bounds change. Does not acquire this panel's lock.
+     */
+    void childBoundsChanged( GComponent child, int x, int y, int w, int h ) {
+        HitGrid grid = mHitGrid;
+        if( grid != null ) {
+            grid.update( child, x, y, w, h );
+        }
+    }
+
+
+    HitGrid hitGrid() {
+        return mHitGrid;
+    }
+
+    /**
+     * Rebuilds the hit index, if enabled, in the current order of children.
+     * Must be called with lock held after any change to the order of children
+     * other than appending a child to the top of its layer.
+     */
+    void rebuildHitIndex() {
+        HitGrid grid = mHitGrid;
+        if( grid != null ) {
+            mHitGrid = buildHitGrid( grid.cellSize() );
+        }
+    }
+
+
+    private HitGrid buildHitGrid( int cellSize ) {
+        HitGrid grid = new HitGrid( cellSize, mW, mH );
+        Rect r = new Rect();
+        for( GComponent c: mChildren ) {
+            addToHitGrid( grid, c, childLayer( c ), r );
+        }
+        return grid;
+    }
+
+    /**
+     * Only GPanels report changes to their bounds, so other children are
+     * added without bounds and tested for every point.
+     */
+    private static void addToHitGrid( HitGrid grid, GComponent child, int layer, Rect work ) {
+        if( child instanceof GPanel ) {
+            hitBounds( child, work );
+            grid.add( child, layer, work.x0, work.y0, work.width(), work.height() );
+        } else {
+            grid.add( child, layer );
+        }
+    }
+
+    /**
+     * Finds topmost child containing a point using the hit index.
+     *
+     * @param mode     Which test to apply to children.
+     * @param minLayer Children below this layer are not tested.
+     */
+    GComponent indexedChildAt( HitGrid grid, int x, int y, int mode, int minLayer ) {
+        // Take buffer so that concurrent queries do not share it.
+        HitGrid.Result hits;
+        final boolean confined = confined();
+        if( confined ) {
+            hits  = mHits;
+            mHits = null;
+        } else {
+            synchronized( this ) {
+                hits  = mHits;
+                mHits = null;
+            }
+        }
+        if( hits == null ) {
+            hits = new HitGrid.Result();
+        }
+
+        int n = grid.query( x, y, hits );
+        GComponent ret = null;
+
+        for( int i = 0; i < n && ret == null; i++ ) {
+            if( hits.mLayers[i] < minLayer ) {
+                break;
+            }
+            GComponent child = hits.mComps[i];
+            long p = childPoint( child, x, y );
+            int cx = originX( p );
+            int cy = originY( p );
+            switch( mode ) {
+            case HIT_ANY:
+                ret = child.componentAt( cx, cy );
+                break;
+            case HIT_DISPLAYED:
+                ret = child.displayedComponentAt( cx, cy );
+                break;
+            default:
+                ret = child.mouseFocusableComponentAt( cx, cy );
+                break;
+            }
+        }
+
+        hits.clear( n );
+        if( confined ) {
+            mHits = hits;
+        } else {
+            synchronized( this ) {
+                mHits = hits;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return true iff tree is confined to the dispatch thread and the panel's lock need not be taken.
+     */
+    final boolean confined() {
+        GDispatcher d = mDispatcher;
+        return d instanceof EventQueue && ((EventQueue)d).confined();
+    }
+
+    /**
+     * @return current snapshot of children.
+     */
+    ChildArray childArray() {
+        return mChildArray;
+    }
+
+    /**
+     * @return layer of each child, in child order, or null if panel has no layers.
+     *         Must hold lock.
+     */
+    int[] childLayers() {
+        return null;
+    }
+
+    /**
+     * Publishes new snapshot of children. Must hold lock, and must be called
+     * after every change to the child list.
+     */
+    void publishChildren() {
+        int n = mChildren.size();
+        mChildArray = n == 0 ? ChildArray.EMPTY :
+                               new ChildArray( mChildren.toArray( new GComponent[n] ), childLayers() );
+    }
+
+
+    /**
+     * Called before this component is moved, resized or hidden. Invalidates
+     * layers of cached ancestors and, if the dispatcher tracks damage, marks
+     * the area currently covered by this component for repainting.
+     */
+    private void damageParent() {
+        GDispatcher d = mDispatcher;
+        if( d == null || !mDisplayed ) {
+            return;
+        }
+        GComponent parent = mParent;
+        invalidateCache( parent );
+        if( tracksDamage() ) {
+            // Fire directly instead of calling parent.repaint() to avoid
+            // acquiring the parent's lock while holding this one.
+            d.firePaint( parent != null ? parent : this );
+        }
+    }
+
+
+    /**
+     * @return true iff dispatcher repaints areas left by moved, hidden and removed components.
+     */
+    private boolean tracksDamage() {
+        GDispatcher d = mDispatcher;
+        return d instanceof EventQueue && ((EventQueue)d).trackDamage();
+    }
+
+
+    /**
+     * Marks area currently covered by this component for repainting.
+     * This repaints the parent, as the panel does not know what lies
+     * underneath it.
+     */
+    private void repaintParent() {
+        GDispatcher d = mDispatcher;
+        if( d == null || !mDisplayed ) {
+            return;
+        }
+        GComponent parent = mParent;
+        invalidateCache( parent );
+        // Fire directly instead of calling parent.repaint() to avoid
+        // acquiring the parent's lock while holding this one.
+        d.firePaint( parent != null ? parent : this );
+    }
+
+
+    /**
+     * Paints subtree by compositing its layer, rendering the layer first if it is invalid.
+     *
+     * @return false if panel could not be cached and should be painted directly.
+     */
+    private boolean paintCached( DrawEnv g ) {
+        PaintContext pc = PaintContext.current();
+        if( pc == null || pc.mLayers == null || !mDisplayed ) {
+            return false;
+        }
+
+        Rect b = g.mWorkRect;
+        getAbsoluteBounds( b );
+        final int x = b.x0;
+        final int y = b.y0;
+        final int w = b.width();
+        final int h = b.height();
+        if( w <= 0 || h <= 0 ) {
+            return false;
+        }
+
+        PaintLayer layer = pc.mLayers.layer( g, this, w, h );
+        if( layer == null ) {
+            return false;
+        }
+
+        // Layer is drawn directly, so batched primitives must be drawn first.
+        PaintBatch batch = pc.mBatch;
+        if( batch != null ) {
+            pc.mDrawCalls += batch.flush( g );
+        }
+
+        boolean valid = mCacheValid;
+        mCacheValid = true;
+        if( layer.size( w, h ) || !valid ) {
+            renderLayer( g, pc, layer, b );
+        }
+        pc.mDrawCalls++;
+
+        Composite c = mComposite;
+        if( c == null ) {
+            if( batch != null ) {
+                b = g.mWorkRect;
+                getAbsoluteBounds( b );
+                batch.view( g, b, pc.paintClip() );
+                batch.applyView( g );
+            }
+            // Same view that prepareView() provides.
+            g.mProj.setOrtho( 0, w, 0, h, -1, 1 );
+            g.mView.identity();
+            layer.composite( g, 0, 0, w, h, 1f );
+            return true;
+        }
+
+        // Transformed layer may extend outside this panel, so draw in absolute
+        // coordinates over the area being painted.
+        Rect viewport = g.mContextViewport;
+        Rect clip = pc.paintClip();
+        if( clip == null ) {
+            clip = viewport;
+        }
+        int cw = clip.width();
+        int ch = clip.height();
+        if( cw <= 0 || ch <= 0 ) {
+            return true;
+        }
+        g.mViewport.apply( clip.x0 - viewport.x0, clip.y0 - viewport.y0, cw, ch );
+        g.mScissorTest.apply( true, clip.x0 - viewport.x0, clip.y0 - viewport.y0, cw, ch );
+        g.mProj.setOrtho( clip.x0, clip.x1, clip.y0, clip.y1, -1, 1 );
+        g.mView.identity();
+
+        float x0 = x + c.mTx;
+        float y0 = y + c.mTy;
+        layer.composite( g, x0, y0, x0 + c.mSx * w, y0 + c.mSy * h, c.mAlpha );
+        return true;
+    }
+
+
+    private void renderLayer( DrawEnv g, PaintContext pc, PaintLayer layer, Rect absBounds ) {
+        final int w = absBounds.width();
+        final int h = absBounds.height();
+
+        // Offset context viewport so that this panel is painted at origin of layer.
+        Rect viewport = g.mContextViewport;
+        int vx0 = viewport.x0;
+        int vy0 = viewport.y0;
+        int vx1 = viewport.x1;
+        int vy1 = viewport.y1;
+        viewport.set( absBounds );
+
+        layer.pushDraw( g );
+        g.mViewport.push();
+        g.mScissorTest.push();
+        pc.pushRootClip( absBounds );
+
+        try {
+            g.mViewport.apply( 0, 0, w, h );
+            g.mScissorTest.apply( true, 0, 0, w, h );
+            g.mGl.glClearColor( 0, 0, 0, 0 );
+            g.mGl.glClear( GL_COLOR_BUFFER_BIT );
+            g.mProj.setOrtho( 0, w, 0, h, -1, 1 );
+            g.mView.identity();
+            PaintBatch batch = pc.mBatch;
+            if( batch != null ) {
+                batch.view( g, absBounds, null );
+            }
+            paintTree( g );
+            if( batch != null ) {
+                pc.mDrawCalls += batch.flush( g );
+            }
+        } finally {
+            if( pc.mBatch != null ) {
+                pc.mBatch.clear();
+            }
+            pc.popClip();
+            g.mScissorTest.pop();
+            g.mViewport.pop();
+            layer.popDraw( g );
+            viewport.x0 = vx0;
+            viewport.y0 = vy0;
+            viewport.x1 = vx1;
+            viewport.y1 = vy1;
+        }
+    }
+
+    /**
+     * Invalidates layers of all cached panels from {@code comp} up to the root.
+     */
+    private static void invalidateCache( GComponent comp ) {
+        while( comp instanceof GPanel ) {
+            GPanel p = (GPanel)comp;
+            if( p.usesLayer() ) {
+                p.mCacheValid = false;
+            }
+            comp = p.mParent;
+        }
+    }
+
+
+    /**
+     * @return true iff panel is painted through a layer.
+     */
+    boolean usesLayer() {
+        return mCached || mComposite != null;
+    }
+
+
+    private void setComposite( float tx, float ty, float sx, float sy, float alpha ) {
+        if( !( sx > 0f && sy > 0f ) ) {
+            throw new IllegalArgumentException( "Scale must be positive." );
+        }
+
+        Composite prev = mComposite;
+        Composite next = null;
+        if( tx != 0f || ty != 0f || sx != 1f || sy != 1f || alpha != 1f ) {
+            next = new Composite( tx, ty, sx, sy, alpha );
+        }
+        if( prev == null ? next == null : prev.equals( next ) ) {
+            return;
+        }
+        if( prev == null ) {
+            mCacheValid = false;
+        }
+
+        mComposite = next;
+        // Only the area covered in the parent changes.
+        repaintParent();
+
+        GComponent parent = mParent;
+        if( parent instanceof GPanel && ((GPanel)parent).mHitGrid != null ) {
+            Rect r = new Rect();
+            hitBounds( this, r );
+            ((GPanel)parent).childBoundsChanged( this, r.x0, r.y0, r.width(), r.height() );
+        }
+    }
+
+    /**
+     * Maps a point from a parent's coordinates into a child's, undoing the
+     * child's composite transform.
+     *
+     * @return point packed with {@link #packOrigin}.
+     */
+    static long childPoint( GComponent child, int x, int y ) {
+        x -= child.x();
+        y -= child.y();
+        if( child instanceof GPanel ) {
+            Composite c = ((GPanel)child).mComposite;
+            if( c != null ) {
+                x = (int)Math.floor( ( x - c.mTx ) / c.mSx );
+                y = (int)Math.floor( ( y - c.mTy ) / c.mSy );
+            }
+        }
+        return packOrigin( x, y );
+    }
+
+    /**
+     * Maps a point from absolute coordinates into a component's, undoing the
+     * composite transforms of the component and its ancestors.
+     *
+     * @param work Rect that may be overwritten.
+     * @return point packed with {@link #packOrigin}.
+     */
+    static long localPoint( GComponent comp, int x, int y, Rect work ) {
+        boolean composited = false;
+        for( GComponent c = comp; c instanceof GPanel; c = c.parent() ) {
+            if( ((GPanel)c).mComposite != null ) {
+                composited = true;
+                break;
+            }
+        }
+        if( !composited ) {
+            comp.getAbsoluteBounds( work );
+            return packOrigin( x - work.x0, y - work.y0 );
+        }
+        return mappedPoint( comp, x, y );
+    }
+
+    /**
+     * Finds the area in absolute coordinates where a component is drawn,
+     * taking composite transforms of the component and its ancestors into account.
+     */
+    static void paintedBounds( GComponent comp, Rect out ) {
+        GPanel top = null;
+        for( GComponent c = comp; c instanceof GPanel; c = c.parent() ) {
+            if( ((GPanel)c).mComposite != null ) {
+                top = (GPanel)c;
+            }
+        }
+        if( top == null ) {
+            comp.getAbsoluteBounds( out );
+            return;
+        }
+
+        // Everything below top is drawn within top's layer.
+        Composite c = top.mComposite;
+        top.getAbsoluteBounds( out );
+        if( c != null ) {
+            c.transform( out );
+        }
+    }
+
+
+    private static long mappedPoint( GComponent comp, int x, int y ) {
+        GComponent parent = comp.parent();
+        if( parent == null ) {
+            return childPoint( comp, x, y );
+        }
+        long p = mappedPoint( parent, x, y );
+        return childPoint( comp, originX( p ), originY( p ) );
+    }
+
+    /**
+     * Gets the bounds a child covers in its parent, including any composite transform.
+     */
+    private static void hitBounds( GComponent child, Rect out ) {
+        child.getBounds( out );
+        if( child instanceof GPanel ) {
+            Composite c = ((GPanel)child).mComposite;
+            if( c != null ) {
+                c.transform( out );
+            }
+        }
+    }
+
+
+    private void readBounds( Rect out ) {
+        out.x0 = mX;
+        out.y0 = mY;
+        out.x1 = mX + mW;
+        out.y1 = mY + mH;
+    }
+
+
+    /**
+     * Brings cached absolute bounds up to date if this panel or any ancestor
+     * has moved since they were computed. Takes time proportional to depth.
+     * Checks the cache without locking, and only takes this panel's lock
+     * while the cache is stale.
+     *
+     * @return sequence number of valid cache. Callers must re-check {@link #mAbsSeq}
+     *         after reading {@link #mAbsOrigin} and retry if it has changed.
+     */
+    private long validAbsoluteSeq() {
+        // Read before mParent, so a parent change is seen with its generation.
+        long gen          = mBoundsGen;
+        GComponent parent = mParent;
+        long parentSeq    = 0;
+        long parentOrigin = 0;
+
+        if( parent instanceof GPanel ) {
+            GPanel p = (GPanel)parent;
+            do {
+                parentSeq    = p.validAbsoluteSeq();
+                parentOrigin = p.mAbsOrigin;
+            } while( p.mAbsSeq != parentSeq );
+        } else if( parent != null ) {
+            // Other components have no sequence, so always recompute.
+            Rect r = new Rect();
+            parent.getAbsoluteBounds( r );
+            parentSeq    = -1;
+            parentOrigin = packOrigin( r.x0, r.y0 );
+        }
+
+        long seq = mAbsSeq;
+        if( ( seq & 1 ) == 0 &&
+            parentSeq != -1 &&
+            parent    == mAbsParent &&
+            parentSeq == mAbsParentSeq &&
+            gen       == mAbsBoundsGen &&
+            seq       == mAbsSeq )
+        {
+            return seq;
+        }
+
+        if( confined() ) {
+            return updateAbsolute( parent, parentSeq, parentOrigin );
+        }
+        synchronized( this ) {
+            return updateAbsolute( parent, parentSeq, parentOrigin );
+        }
+    }
+
+
+    private long updateAbsolute( GComponent parent, long parentSeq, long parentOrigin ) {
+        long seq = mAbsSeq;
+        if( parentSeq  != -1 &&
+            parent     == mAbsParent &&
+            parentSeq  == mAbsParentSeq &&
+            mBoundsGen == mAbsBoundsGen )
+        {
+            return seq;
+        }
+
+        mAbsSeq       = seq + 1;
+        mAbsOrigin    = packOrigin( originX( parentOrigin ) + mX, originY( parentOrigin ) + mY );
+        mAbsW         = mW;
+        mAbsH         = mH;
+        mAbsParent    = parent;
+        mAbsParentSeq = parentSeq;
+        mAbsBoundsGen = mBoundsGen;
+        mAbsSeq       = seq + 2;
+        return seq + 2;
+    }
+
+
+    private static long packOrigin( int x, int y ) {
+        return (long)x << 32 | ( y & 0xFFFFFFFFL );
+    }
+
+
+    static int originX( long origin ) {
+        return (int)( origin >> 32 );
+    }
+
+
+    static int originY( long origin ) {
+        return (int)origin;
+    }
+
+
+    /**
+     * Adds to count of components needing ancestor events in this subtree and in
+     * every ancestor's subtree. Does not take any locks.
+     */
+    private void addTreeAncestorListeners( int delta ) {
+        GComponent c = this;
+        while( c instanceof GPanel ) {
+            GPanel p = (GPanel)c;
+            TREE_ANCESTOR_LISTENERS.addAndGet( p, delta );
+            c = p.mParent;
+        }
+    }
+
+
+    private static int treeAncestorListeners( GComponent c ) {
+        // Components other than GPanels are not counted, so assume they need events.
+        return c instanceof GPanel ? ((GPanel)c).mTreeAncestorListeners : 1;
+    }
+
+
+    private static boolean needsAncestorEvents( GComponent c ) {
+        return !( c instanceof GPanel ) || ((GPanel)c).mTreeAncestorListeners != 0;
+    }
+
+
+    private void fireMoved( GComponent source ) {
+        if( mDispatcher != null ) {
+            if( source == this ) {
+                if( mComponentCaster != null ) {
+                    GComponentEvent e = new GComponentEvent( this, GComponentEvent.COMPONENT_MOVED );
+                    mDispatcher.fireComponentEvent( e );
+                }
+            } else if( mAncestorCaster != null ) {
+                GAncestorEvent e = new GAncestorEvent( this, GAncestorEvent.ANCESTOR_MOVED, source );
+                mDispatcher.fireAncestorEvent( e );
+            }
+        }
+    }
+
+
+    private void fireResized( GComponent source ) {
+        if( mDispatcher != null ) {
+            if( source == this ) {
+                if( mComponentCaster != null ) {
+                    GComponentEvent e = new GComponentEvent( this, GComponentEvent.COMPONENT_RESIZED );
+                    mDispatcher.fireComponentEvent( e );
+                }
+            } else if( mAncestorCaster != null ) {
+                GAncestorEvent e = new GAncestorEvent( this, GAncestorEvent.ANCESTOR_RESIZED, source );
+                mDispatcher.fireAncestorEvent( e );
+            }
+        }
+    }
+
+
+    private GLayout takeLayout() {
+        if( confined() ) {
+            mNeedsLayout = false;
+            return mLayout;
+        }
+        synchronized( this ) {
+            mNeedsLayout = false;
+            return mLayout;
+        }
+    }
+
+    /**
+     * @return true iff {@code comp} records itself into batches through {@link #paintBatched}
+     *         when it has no paint listeners.
+     */
+    static boolean paintsBatched( GComponent comp ) {
+        return PAINTS_BATCHED.get( comp.getClass() );
+    }
+
+
+    /**
+     * @return true iff {@code comp} may be painted while a PaintBatch is installed.
+     *         Other components must be painted with the batch flushed and removed.
+     */
+    static boolean paintsTreeBatched( GComponent comp ) {
+        return PAINTS_TREE_BATCHED.get( comp.getClass() );
+    }
+
+
+    /**
+     * @return most derived class in hierarchy of {@code clazz} that declares the given
+     *         method, or null if none does.
+     */
+    private static Class<?> declaringClass( Class<?> clazz, String name, Class<?>... params ) {
+        for( Class<?> c = clazz; c != null; c = c.getSuperclass() ) {
+            try {
+                c.getDeclaredMethod( name, params );
+                return c;
+            } catch( NoSuchMethodException ignored ) {}
+        }
+        return null;
+    }
+
+
+    /**
+     * @return false if not displayed.
+     */
+    private boolean paintSelf( DrawEnv g ) {
+        if( !mDisplayed ) {
+            return false;
+        }
+        mNeedsPaint = false;
+        PaintContext pc = PaintContext.current();
+        if( pc == null ) {
+            paintComponent( g );
+            return true;
+        }
+
+        PaintBatch batch = pc.mBatch;
+        if( batch == null ) {
+            if( mPaintCaster != null || getClass() != GPanel.class ) {
+                pc.mDrawCalls++;
+            }
+            paintComponent( g );
+        } else if( mPaintCaster == null && paintsBatched( this ) && paintBatched( g, batch ) ) {
+            // Recorded into batch.
+        } else {
+            // Painted directly, so batched primitives must be drawn first.
+            pc.mDrawCalls += batch.flush( g ) + 1;
+            batch.applyView( g );
+            pc.mBatch = null;
+            try {
+                paintComponent( g );
+            } finally {
+                pc.mBatch = batch;
+            }
+        }
+        return true;
+    }
+
+
+    private boolean updateDisplayed() {
+        if( confined() ) {
+            return updateDisplayed( mDispatcher );
+        }
+        synchronized( this ) {
+            return updateDisplayed( mDispatcher );
+        }
     }
 
 
@@ -1047,4 +2220,91 @@ public class GPanel implements GComponent {
         return getFont();
     }
 
+
+
+    /**
+     * Immutable composite transform and opacity.
+     */
+    private static final class Composite {
+
+        final float mTx;
+        final float mTy;
+        final float mSx;
+        final float mSy;
+        final float mAlpha;
+
+        Composite( float tx, float ty, float sx, float sy, float alpha ) {
+            mTx    = tx;
+            mTy    = ty;
+            mSx    = sx;
+            mSy    = sy;
+            mAlpha = alpha;
+        }
+
+        /**
+         * Transforms bounds of panel in place, rounding outward. The minimum
+         * corner of {@code r} is taken as the panel's origin.
+         */
+        void transform( Rect r ) {
+            float x0 = r.x0 + mTx;
+            float y0 = r.y0 + mTy;
+            float x1 = x0 + mSx * ( r.x1 - r.x0 );
+            float y1 = y0 + mSy * ( r.y1 - r.y0 );
+            r.x0 = (int)Math.floor( x0 );
+            r.y0 = (int)Math.floor( y0 );
+            r.x1 = (int)Math.ceil( x1 );
+            r.y1 = (int)Math.ceil( y1 );
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if( !( obj instanceof Composite ) ) {
+                return false;
+            }
+            Composite c = (Composite)obj;
+            return mTx == c.mTx && mTy == c.mTy && mSx == c.mSx && mSy == c.mSy && mAlpha == c.mAlpha;
+        }
+
+        @Override
+        public int hashCode() {
+            return Float.floatToIntBits( mTx ) ^ 31 * Float.floatToIntBits( mTy ) ^
+                   961 * Float.floatToIntBits( mSx ) ^ 29791 * Float.floatToIntBits( mSy ) ^
+                   Float.floatToIntBits( mAlpha );
+        }
+
+    }
+
+
+    /**
+     * Immutable snapshot of a panel's children, with optional layers.
+     */
+    static final class ChildArray extends AbstractList<GComponent> implements RandomAccess {
+
+        static final ChildArray EMPTY = new ChildArray( new GComponent[0], new int[0] );
+
+        final GComponent[] mItems;
+        final int[] mLayers;
+
+        ChildArray( GComponent[] items, int[] optLayers ) {
+            mItems  = items;
+            mLayers = optLayers;
+        }
+
+        @Override
+        public GComponent get( int idx ) {
+            return mItems[idx];
+        }
+
+        @Override
+        public int size() {
+            return mItems.length;
+        }
+
+        @Override
+        public Object[] toArray() {
+            return mItems.clone();
+        }
+
+    }
+
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Measurements of a GEventController's event queue. Metrics are collected
+ * only while enabled with {@link GEventController#metricsEnabled(boolean)}.
+ * <p>
+ * Wait time is measured from when an event is queued to when it begins
+ * dispatch, and service time is the time spent dispatching it. Times are
+ * in nanoseconds. Metrics may be read from any thread.
+ *
+ * @author Philip DeCamp
+ */
+public final class GQueueMetrics {
+
+    public static enum CallType {
+        PAINT,
+        LAYOUT,
+        RUNNABLE,
+        CALLABLE,
+        PROPERTY_CHANGE,
+        COMPONENT_EVENT,
+        ANCESTOR_EVENT,
+        FOCUS,
+        INPUT_ROOT
+    }
+
+
+    private final EventQueue   mQueue;
+    private final GHistogram[] mWait;
+    private final GHistogram[] mService;
+    private final LongAdder    mPoolHits   = new LongAdder();
+    private final LongAdder    mPoolMisses = new LongAdder();
+
+
+    GQueueMetrics( EventQueue queue ) {
+        mQueue = queue;
+        int n = CallType.values().length;
+        mWait    = new GHistogram[n];
+        mService = new GHistogram[n];
+        for( int i = 0; i < n; i++ ) {
+            mWait[i]    = new GHistogram();
+            mService[i] = new GHistogram();
+        }
+    }
+
+    /**
+     * @return number of paint events queued. At most 1.
+     */
+    public int paintDepth() {
+        return mQueue.depth( EventQueue.PRIORITY_REPAINT );
+    }
+
+    /**
+     * @return number of layout events queued. At most 1.
+     */
+    public int layoutDepth() {
+        return mQueue.depth( EventQueue.PRIORITY_LAYOUT );
+    }
+
+    /**
+     * @return number of general events queued, across all lanes.
+     */
+    public int generalDepth() {
+        return mQueue.backlog();
+    }
+
+
+    public GHistogram waitTime( CallType type ) {
+        return mWait[type.ordinal()];
+    }
+
+
+    public GHistogram serviceTime( CallType type ) {
+        return mService[type.ordinal()];
+    }
+
+    /**
+     * @return number of times a queue item was taken from the pool.
+     */
+    public long poolHits() {
+        return mPoolHits.sum();
+    }
+
+    /**
+     * @return number of times a queue item had to be allocated.
+     */
+    public long poolMisses() {
+        return mPoolMisses.sum();
+    }
+
+    /**
+     * Clears all histograms and counters. Should be called on the dispatch thread.
+     */
+    public void reset() {
+        for( int i = 0; i < mWait.length; i++ ) {
+            mWait[i].reset();
+            mService[i].reset();
+        }
+        mPoolHits.reset();
+        mPoolMisses.reset();
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append( "depth  paint: " ).append( paintDepth() )
+         .append( "  layout: " ).append( layoutDepth() )
+         .append( "  general: " ).append( generalDepth() ).append( '\n' );
+        s.append( "pool  hits: " ).append( poolHits() )
+         .append( "  misses: " ).append( poolMisses() ).append( '\n' );
+        for( CallType t: CallType.values() ) {
+            GHistogram service = mService[t.ordinal()];
+            if( service.count() == 0 ) {
+                continue;
+            }
+            s.append( t ).append( '\n' );
+            s.append( "  wait     " ).append( mWait[t.ordinal()] ).append( '\n' );
+            s.append( "  service  " ).append( service ).append( '\n' );
+        }
+        return s.toString();
+    }
+
+
+    void recordPool( boolean hit ) {
+        if( hit ) {
+            mPoolHits.increment();
+        } else {
+            mPoolMisses.increment();
+        }
+    }
+
+
+    void recordDispatch( CallType type, boolean timed, long enqueueNanos, long startNanos, long stopNanos ) {
+        int i = type.ordinal();
+        if( timed ) {
+            mWait[i].record( startNanos - enqueueNanos );
+        }
+        mService[i].record( stopNanos - startNanos );
+    }
+
+}
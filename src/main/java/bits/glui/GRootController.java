@@ -50,8 +50,10 @@ public final class GRootController {
     private final GEventController mCont;
     private final InitNode         mInit;
     private final DrawEnv          mDrawEnv;
+    private final AwtEventTranslator mTranslator;
 
     private Animator mAnimator = null;
+    private volatile long mEventBudget = 0;
 
 
     private GRootController( GLCapabilities glc ) {
@@ -62,7 +64,7 @@ public final class GRootController {
         mDrawEnv = new DrawEnv();
 
         mCanvas.addGLEventListener( mHandler );
-        new AwtEventTranslator( mCanvas, mCont.humanInputController() );
+        mTranslator = new AwtEventTranslator( mCanvas, mCont.humanInputController(), mCont );
     }
 
 
@@ -106,6 +108,24 @@ public final class GRootController {
     }
 
 
+    /**
+     * @return controller that currently receives input from the canvas.
+     */
+    public GHumanInputController getHumanInputController() {
+        return mTranslator.controller();
+    }
+
+    /**
+     * Replaces the controller that receives input from the canvas, such as with
+     * a {@link GInputRecorder} that wraps {@code eventController().humanInputController()}.
+     *
+     * @param cont New controller, or null to restore the default.
+     */
+    public void setHumanInputController( GHumanInputController cont ) {
+        mTranslator.controller( cont != null ? cont : mCont.humanInputController() );
+    }
+
+
     public void setAnimator( Animator anim ) {
         synchronized( this ) {
             if( mAnimator != null ) {
@@ -192,6 +212,26 @@ public final class GRootController {
     }
 
 
+    /**
+     * @return maximum time spent processing general events each frame, in nanoseconds,
+     *         or 0 if unlimited.
+     */
+    public long eventBudget() {
+        return mEventBudget;
+    }
+
+    /**
+     * Limits time spent processing general events each frame. Events that do not fit in
+     * the budget are processed in the next frame.
+     *
+     * @param nanos Time allowed each frame, in nanoseconds, or 0 for unlimited.
+     * @see GEventController#processEvents(long)
+     */
+    public void eventBudget( long nanos ) {
+        mEventBudget = Math.max( 0, nanos );
+    }
+
+
     public void setErrorCallback( ErrorCallback err ) {
         mHandler.setErrorCallback( err );
     }
@@ -203,11 +243,23 @@ public final class GRootController {
 
 
     public void generateUpdates( GLAutoDrawable gld, Rect optContextViewport ) {
+        // Buffers must be swapped here to know when a frame is presented.
+        mInit.manualSwap( mCont.inputLatencyEnabled() );
         mDrawEnv.init( gld, optContextViewport );
         mDrawEnv.checkErr();
         mInit.push( mDrawEnv );
-        mCont.processAll( mDrawEnv );
+        long budget = mEventBudget;
+        if( budget > 0 ) {
+            mCont.processAll( mDrawEnv, budget );
+        } else {
+            mCont.processAll( mDrawEnv );
+        }
         mInit.pop( mDrawEnv );
+
+        if( mInit.manualSwap() ) {
+            gld.swapBuffers();
+            mCont.framePresented();
+        }
     }
 
 
@@ -223,6 +275,7 @@ public final class GRootController {
         private int     mDoubleBuffered = 0; //-1 false, 0 unknown, 1 true
         private boolean mAutoFlush      = true;
         private boolean mAutoSwap       = true;
+        private boolean mManualSwap     = false;
         private boolean mDoAutoFlush    = false;
 
 
@@ -249,14 +302,25 @@ public final class GRootController {
 
         public void autoSwap( boolean autoSwap ) {
             mAutoSwap = autoSwap;
+            updateSwapMode();
+            updateAutoFlush();
+        }
 
-            if( mDoubleBuffered >= 0 ) {
-                mCanvas.setAutoSwapBufferMode( autoSwap );
-            } else {
-                mCanvas.setAutoSwapBufferMode( false );
-            }
+        /**
+         * @return true iff buffers are double-buffered and auto swap is enabled,
+         *         but buffers are swapped by GRootController instead of by the canvas.
+         */
+        boolean manualSwap() {
+            return mManualSwap && mAutoSwap && mDoubleBuffered == 1;
+        }
 
-            updateAutoFlush();
+
+        void manualSwap( boolean manualSwap ) {
+            if( manualSwap == mManualSwap ) {
+                return;
+            }
+            mManualSwap = manualSwap;
+            updateSwapMode();
         }
 
 
@@ -296,7 +360,7 @@ public final class GRootController {
         public void init( DrawEnv g ) {
             if( g.mGld.getChosenGLCapabilities().getDoubleBuffered() ) {
                 mDoubleBuffered = 1;
-                mCanvas.setAutoSwapBufferMode( mAutoSwap );
+                updateSwapMode();
                 mDrawBuffer = GL_BACK;
             } else {
                 mDoubleBuffered = -1;
@@ -348,6 +412,11 @@ public final class GRootController {
         }
 
 
+        private void updateSwapMode() {
+            mCanvas.setAutoSwapBufferMode( mDoubleBuffered >= 0 && mAutoSwap && !mManualSwap );
+        }
+
+
         private void updateAutoFlush() {
             mDoAutoFlush = mAutoFlush && !(mAutoFlush && mDoubleBuffered == 1);
         }
@@ -378,6 +447,7 @@ public final class GRootController {
         @Override
         public void dispose( GLAutoDrawable gld ) {
             //TODO: Complete disposal path?
+            mCont.dispose( mDrawEnv );
             mDrawEnv.dispose( gld );
         }
 
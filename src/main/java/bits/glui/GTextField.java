@@ -83,54 +83,70 @@ public class GTextField extends GPanel {
         final int h = height();
         final Vec4 v = d.mWorkVec4;
 
-        s.config( true, false, false );
         if( getBackground( v ) ) {
-            s.color( v );
-            s.beginQuads();
-            s.vert( 0, 0 );
-            s.vert( w, 0 );
-            s.vert( w, h );
-            s.vert( 0, h );
-            s.end();
+            ShapeRenderer.fillRect( d, v, 0, 0, w, h );
         }
 
         getForeground( v );
+        s.config( true, false, false );
         s.color( v );
         FontTexture font = d.fontManager().getFontTexture( getFont(), GLContext.getCurrent() );
 
         float yy = Math.round( 0.5f * ( h - font.getAscent() + font.getDescent() ) );
         font.beginRenderChars( d );
         font.renderChars( d, Math.round( font.getHeight() * 0.2f ), yy, 0, mDrawText );
+        font.endRenderChars( d );
+        getForeground( v );
 
-        int tw;
-        if( mDrawText.length() >= mMaxLength ) {
-            tw = (int)font.getCharsWidth( mDrawText.toCharArray(), 0, mMaxLength - 1 );
-        }else{
-            tw = (int)font.getCharsWidth( mDrawText );
+        if( mHasFocus ) {
+            int tw = caretX( font );
+            v.w = 0.3f;
+            ShapeRenderer.fillRect( d, v, tw + 5, 3, tw + 10, h - 3 );
+            getForeground( v );
         }
 
-        font.endRenderChars( d );
-        s.config( true, false, false );
-        getForeground( v );
+        ShapeRenderer.strokeRect( d, v, 1, 1, w - 1, h - 1 );
+    }
+
+
+    @Override
+    boolean paintBatched( DrawEnv d, PaintBatch batch ) {
+        final int w = width();
+        final int h = height();
+        final Vec4 v = d.mWorkVec4;
 
+        if( getBackground( v ) ) {
+            batch.color( v );
+            batch.fillRect( 0, 0, w, h );
+        }
+
+        // Cursor and border are drawn before text, unlike paintComponent(). They
+        // only overlap the transparent margins of the glyph quads, and drawing
+        // them first lets the text join the batch's font group.
+        getForeground( v );
+        FontTexture font = d.fontManager().getFontTexture( getFont(), GLContext.getCurrent() );
         if( mHasFocus ) {
-            s.color( v.x, v.y, v.z, 0.3f );
-            s.beginQuads();
-            s.vert( tw + 5, 3 );
-            s.vert( tw + 10, 3 );
-            s.vert( tw + 10, h - 3 );
-            s.vert( tw + 5, h - 3 );
-            s.end();
+            int tw = caretX( font );
+            batch.color( v.x, v.y, v.z, 0.3f );
+            batch.fillRect( tw + 5, 3, tw + 10, h - 3 );
         }
 
-        s.color( v );
-        d.mLineWidth.apply( 1f );
-        s.beginLineLoop();
-        s.vert( 1, 1 );
-        s.vert( w - 1, 1 );
-        s.vert( w - 1, h - 1 );
-        s.vert( 1, h - 1 );
-        s.end();
+        batch.color( v );
+        batch.strokeRect( 1, 1, w - 1, h - 1 );
+
+        float yy = Math.round( 0.5f * ( h - font.getAscent() + font.getDescent() ) );
+        batch.text( font, Math.round( font.getHeight() * 0.2f ), yy, mDrawText );
+        return true;
+    }
+
+    /**
+     * @return width of text before the caret.
+     */
+    private int caretX( FontTexture font ) {
+        if( mDrawText.length() >= mMaxLength ) {
+            return (int)font.getCharsWidth( mDrawText.toCharArray(), 0, mMaxLength - 1 );
+        }
+        return (int)font.getCharsWidth( mDrawText );
     }
     
     
@@ -101,4 +101,12 @@ public class GToggleButton extends GButton implements GSelectable {
         paintLabel( d, background, foreground, offX, offY );
     }
 
+
+    @Override
+    boolean paintBatched( DrawEnv d, PaintBatch batch ) {
+        // paintLabel() records into the installed batch.
+        paintComponent( d );
+        return true;
+    }
+
 }
@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import bits.draw3d.*;
+import bits.draw3d.model.DrawVert;
+import bits.draw3d.shaders.BasicShaderConfig;
+import bits.draw3d.shaders.BasicShaders;
+import bits.draw3d.text.FontTexture;
+import bits.math3d.Vec3;
+import bits.math3d.Vec4;
+
+import static com.jogamp.opengl.GL2ES2.*;
+
+
+/**
+ * Holds the glyph geometry of label text in static vertex buffers, so that
+ * labels whose text has not changed are drawn with one draw call and
+ * without generating glyph quads on the CPU. Each run holds the quads of
+ * its text with the baseline starting at the origin, and is drawn
+ * translated to where the label places its text. Runs hold no color: glyphs
+ * are tinted when drawn, so a run is rebuilt only when its text or font changes.
+ * <p>
+ * Runs of labels that are no longer displayed are released on {@link #sweep},
+ * which the controller calls only after a component in its tree is hidden.
+ * All methods must be called on the GL thread.
+ *
+ * @author Philip DeCamp
+ * @see GLabel
+ */
+final class GlyphRunCache {
+
+    private static final String VERT_SHADER =
+        "#version 330\n" +
+        "\n" +
+        "uniform mat4 PROJ_VIEW_MAT;\n" +
+        "\n" +
+        "layout( location = 0 ) in vec4 inVert;\n" +
+        "layout( location = 1 ) in vec4 inTex0;\n" +
+        "\n" +
+        "smooth out vec4 tex0;\n" +
+        "\n" +
+        "void main() {\n" +
+        "    tex0 = inTex0;\n" +
+        "    gl_Position = PROJ_VIEW_MAT * inVert;\n" +
+        "}\n";
+
+    private static final String FRAG_SHADER =
+        "#version 330\n" +
+        "\n" +
+        "uniform sampler2D TEX_UNIT0;\n" +
+        "uniform vec4 TINT;\n" +
+        "\n" +
+        "smooth in vec4 tex0;\n" +
+        "\n" +
+        "out vec4 fragColor;\n" +
+        "\n" +
+        "// Samples as the DrawStream text shader does.\n" +
+        "vec4 sampleMipmap( sampler2D unit, in vec2 tex ) {\n" +
+        "    vec2 size = textureSize( unit, 0 );\n" +
+        "    vec2 dx = dFdx( tex ) * size;\n" +
+        "    vec2 dy = dFdy( tex ) * size;\n" +
+        "    float level = max( dot( dx, dx ), dot( dy, dy ) );\n" +
+        "    level = 0.5 * log2( level );\n" +
+        "    return textureLod( unit, tex.st, level );\n" +
+        "}\n" +
+        "\n" +
+        "void main() {\n" +
+        "    fragColor = TINT * sampleMipmap( TEX_UNIT0, tex0.st );\n" +
+        "    if( fragColor.a <= 0.0 ) {\n" +
+        "        discard;\n" +
+        "    }\n" +
+        "}\n";
+
+
+    private final Map<GLabel, Run> mRuns = new HashMap<GLabel, Run>();
+    private final GlyphCapture     mCapture = new GlyphCapture();
+
+    private final BoWriter<DrawVert> mWriter;
+
+    private AutoloadProgram mProgram   = null;
+    private int             mTintLoc   = -1;
+    private ByteBuffer      mBuf       = null;
+    private int             mBuilds    = 0;
+    private boolean         mChecked   = false;
+    private boolean         mSupported = false;
+
+
+    GlyphRunCache() {
+        // Position and texture coordinates only.
+        BasicShaderConfig config = new BasicShaderConfig();
+        config.geomMode( GL_TRIANGLES );
+        config.color( false );
+        config.texComponentNum( 4 );
+        mWriter = BasicShaders.createVertWriter( config );
+    }
+
+
+    /**
+     * @return true iff the context of {@code d} can run the shaders of this
+     *         cache, which require OpenGL 3.3.
+     */
+    public boolean isSupported( DrawEnv d ) {
+        if( !mChecked ) {
+            mSupported = ShapeRenderer.isSupported( d.mGl );
+            mChecked   = true;
+        }
+        return mSupported;
+    }
+
+    /**
+     * Draws text in the given color using the run cached for label. Caller must have
+     * set the view as for {@link FontTexture#renderChars(DrawEnv, float, float, float, CharSequence)}.
+     */
+    public void draw( DrawEnv d, GLabel label, FontTexture font, Vec4 color, float x, float y, String text ) {
+        Run run = update( label, font, text );
+        if( run.mVertNum == 0 ) {
+            return;
+        }
+        if( mProgram == null ) {
+            mProgram = new AutoloadProgram();
+            mProgram.addShader( d.mShaderMan.loadSource( GL_VERTEX_SHADER, VERT_SHADER ) );
+            mProgram.addShader( d.mShaderMan.loadSource( GL_FRAGMENT_SHADER, FRAG_SHADER ) );
+            mProgram.init( d );
+            mTintLoc = d.mGl.glGetUniformLocation( mProgram.id(), "TINT" );
+        }
+
+        d.mBlend.push();
+        d.mBlend.apply( true );
+        d.mView.push();
+        d.mView.translate( x, y, 0 );
+        font.bind( d );
+        mProgram.bind( d );
+        d.mGl.glUniform4f( mTintLoc, color.x, color.y, color.z, color.w );
+        run.mVao.bind( d );
+        run.mVbo.bind( d );
+        d.mGl.glDrawArrays( GL_TRIANGLES, 0, run.mVertNum );
+        run.mVao.unbind( d );
+        mProgram.unbind( d );
+        font.unbind( d );
+        d.mView.pop();
+        d.mBlend.pop();
+    }
+
+    /**
+     * @return number of runs built or rebuilt since this cache was created.
+     */
+    public int builds() {
+        return mBuilds;
+    }
+
+    /**
+     * Releases runs of labels that are not displayed.
+     */
+    public void sweep( DrawEnv d ) {
+        if( mRuns.isEmpty() ) {
+            return;
+        }
+        Iterator<Map.Entry<GLabel, Run>> iter = mRuns.entrySet().iterator();
+        while( iter.hasNext() ) {
+            Map.Entry<GLabel, Run> e = iter.next();
+            if( !e.getKey().isDisplayed() ) {
+                iter.remove();
+                e.getValue().dispose( d );
+            }
+        }
+    }
+
+
+    public void dispose( DrawEnv d ) {
+        for( Run run: mRuns.values() ) {
+            run.dispose( d );
+        }
+        mRuns.clear();
+        if( mProgram != null ) {
+            mProgram.dispose( d );
+            mProgram = null;
+            mTintLoc = -1;
+        }
+    }
+
+
+
+    /**
+     * Retrieves the run for label, rebuilding it if the text or font differ
+     * from when it was built. Does not require GL; geometry is uploaded when
+     * the run is next drawn.
+     */
+    Run update( GLabel label, FontTexture font, String text ) {
+        Run run = mRuns.get( label );
+        if( run == null ) {
+            run = new Run();
+            mWriter.attributes( run.mVao );
+            mRuns.put( label, run );
+        }
+        if( !run.matches( font, text ) ) {
+            build( run, font, text );
+        }
+        return run;
+    }
+
+
+
+    private void build( Run run, FontTexture font, String text ) {
+        mBuilds++;
+        GlyphCapture cap = mCapture;
+        cap.mNum = 0;
+        font.renderChars( cap.mEnv, 0, 0, 0, text );
+
+        BoWriter<DrawVert> writer = mWriter;
+        int quadNum = cap.mNum / 4;
+        int bytes   = quadNum * 6 * writer.bytesPerElem();
+        if( mBuf == null || mBuf.capacity() < bytes ) {
+            mBuf = DrawUtil.alloc( Math.max( bytes, 4096 ) );
+        }
+
+        ByteBuffer buf = mBuf;
+        buf.clear();
+        DrawVert v = cap.mVert;
+        float[] q = cap.mQuads;
+        for( int i = 0; i < quadNum; i++ ) {
+            // Quads are lower-left, lower-right, upper-right, upper-left.
+            int p = i * 16;
+            writeVert( writer, v, q, p,      buf );
+            writeVert( writer, v, q, p +  4, buf );
+            writeVert( writer, v, q, p +  8, buf );
+            writeVert( writer, v, q, p,      buf );
+            writeVert( writer, v, q, p +  8, buf );
+            writeVert( writer, v, q, p + 12, buf );
+        }
+        buf.flip();
+
+        run.mFont  = font;
+        run.mText  = text;
+        run.mVertNum = quadNum * 6;
+        if( run.mVertNum > 0 ) {
+            // Uploaded on next bind, which follows immediately.
+            run.mVbo.buffer( buf );
+        }
+    }
+
+
+    private static void writeVert( BoWriter<DrawVert> writer, DrawVert v, float[] q, int p, ByteBuffer out ) {
+        v.mPos.x = q[p];
+        v.mPos.y = q[p+1];
+        v.mTex[0] = q[p+2];
+        v.mTex[1] = q[p+3];
+        writer.write( v, out );
+    }
+
+
+
+    static final class Run {
+        final Bo   mVbo   = Bo.createArrayBuffer( GL_STATIC_DRAW );
+        final Vao  mVao   = new Vao( mVbo, null );
+
+        FontTexture mFont    = null;
+        String      mText    = null;
+        int         mVertNum = 0;
+
+        boolean matches( FontTexture font, String text ) {
+            return font == mFont && ( text == mText || text.equals( mText ) );
+        }
+
+        void dispose( DrawEnv d ) {
+            mVao.dispose( d );
+            mVbo.dispose( d );
+        }
+    }
+
+    /**
+     * Receives the glyph quads that FontTexture writes to a DrawStream.
+     */
+    private static final class GlyphCapture extends DrawStream {
+
+        final DrawEnv mEnv = new DrawEnv() {
+            @Override
+            public DrawStream drawStream() {
+                return GlyphCapture.this;
+            }
+        };
+
+        final DrawVert mVert = new DrawVert( new Vec3(), new float[]{ 0, 0, 0, 1 }, new Vec3(), new Vec4() );
+
+        // x, y, s, t for each vertex.
+        float[] mQuads = new float[16 * 32];
+        int     mNum   = 0;
+
+        private float mS;
+        private float mT;
+
+        GlyphCapture() {
+            super( 1024 );
+        }
+
+        @Override
+        public void tex( float s, float t, float r, float q ) {
+            mS = s;
+            mT = t;
+        }
+
+        @Override
+        public void vert( float x, float y, float z ) {
+            int p = mNum * 4;
+            if( p + 4 > mQuads.length ) {
+                mQuads = Arrays.copyOf( mQuads, mQuads.length * 2 );
+            }
+            mQuads[p  ] = x;
+            mQuads[p+1] = y;
+            mQuads[p+2] = mS;
+            mQuads[p+3] = mT;
+            mNum++;
+        }
+    }
+
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.*;
+
+
+/**
+ * Uniform grid over the area of a container, used to find the children that
+ * may contain a point without visiting every child. Each cell holds the
+ * children whose bounds overlap it, ordered bottom to top by layer and then
+ * insertion order, which is the paint order of GPanel and GLayeredPanel.
+ * Children that cover too many cells, and children whose bounds are not
+ * tracked, are kept in a separate list that is checked for every query.
+ * <p>
+ * Queries return candidates only; callers must still test each one.
+ * The grid has its own lock and never calls out while holding it, so
+ * children may update it while holding their own locks.
+ *
+ * @author Philip DeCamp
+ */
+final class HitGrid {
+
+    static final int DEFAULT_CELL_SIZE = 64;
+
+    private static final int MAX_CELLS = 1 << 16;
+    private static final int MAX_SPAN  = 64;
+
+    private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare( Entry a, Entry b ) {
+            if( a.mLayer != b.mLayer ) {
+                return a.mLayer < b.mLayer ? -1 : 1;
+            }
+            return a.mSeq < b.mSeq ? -1 : ( a.mSeq == b.mSeq ? 0 : 1 );
+        }
+    };
+
+
+    private final int mCellSize;
+    private final Map<GComponent,Entry> mEntries = new IdentityHashMap<GComponent,Entry>();
+    private final List<Entry> mWide = new ArrayList<Entry>();
+
+    private int mCell;
+    private int mCols;
+    private int mRows;
+    private Cell[] mCells;
+    private long mNextSeq = 0;
+
+
+    HitGrid( int cellSize, int w, int h ) {
+        mCellSize = Math.max( 1, cellSize );
+        layoutCells( w, h );
+    }
+
+
+    public int cellSize() {
+        return mCellSize;
+    }
+
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Adds a child. Children added later are above children added earlier in the same layer.
+     */
+    public synchronized void add( GComponent comp, int layer, int x, int y, int w, int h ) {
+        if( mEntries.containsKey( comp ) ) {
+            return;
+        }
+        Entry e = new Entry( comp, layer, mNextSeq++ );
+        mEntries.put( comp, e );
+        e.setBounds( x, y, w, h );
+        place( e );
+    }
+
+    /**
+     * Adds a child whose bounds are not tracked. The child is a candidate for
+     * every query, in its place by layer and insertion order, and is ignored
+     * by {@link #update}.
+     */
+    public synchronized void add( GComponent comp, int layer ) {
+        if( mEntries.containsKey( comp ) ) {
+            return;
+        }
+        Entry e = new Entry( comp, layer, mNextSeq++ );
+        e.mUntracked = true;
+        mEntries.put( comp, e );
+        place( e );
+    }
+
+
+    public synchronized void update( GComponent comp, int x, int y, int w, int h ) {
+        Entry e = mEntries.get( comp );
+        if( e == null || e.mUntracked ) {
+            return;
+        }
+
+        e.setBounds( x, y, w, h );
+        if( e.mInCells && !e.mWide ) {
+            int cx0 = cellX( x );
+            int cy0 = cellY( y );
+            int cx1 = cellX( x + w - 1 );
+            int cy1 = cellY( y + h - 1 );
+            if( cx0 == e.mCx0 && cy0 == e.mCy0 && cx1 == e.mCx1 && cy1 == e.mCy1 && overlapsGrid( e ) ) {
+                return;
+            }
+        }
+
+        unplace( e );
+        place( e );
+    }
+
+
+    public synchronized void remove( GComponent comp ) {
+        Entry e = mEntries.remove( comp );
+        if( e != null ) {
+            unplace( e );
+        }
+    }
+
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mWide.clear();
+        Arrays.fill( mCells, null );
+    }
+
+    /**
+     * Must be called when the container is resized.
+     */
+    public synchronized void resize( int w, int h ) {
+        int cell = mCell;
+        int cols = mCols;
+        int rows = mRows;
+        layoutCells( w, h );
+        if( cell == mCell && cols == mCols && rows == mRows ) {
+            return;
+        }
+
+        Entry[] all = mEntries.values().toArray( new Entry[mEntries.size()] );
+        Arrays.sort( all, ORDER );
+        mWide.clear();
+        for( Entry e: all ) {
+            place( e );
+        }
+    }
+
+    /**
+     * Finds children that may contain a point.
+     *
+     * @param x   X-coord in container space.
+     * @param y   Y-coord in container space.
+     * @param out Receives candidates, topmost first.
+     * @return number of candidates.
+     */
+    public synchronized int query( int x, int y, Result out ) {
+        List<Entry> a = null;
+        if( x >= 0 && y >= 0 ) {
+            int cx = x / mCell;
+            int cy = y / mCell;
+            if( cx < mCols && cy < mRows ) {
+                Cell c = mCells[ cy * mCols + cx ];
+                a = c == null ? null : c.mEntries;
+            }
+        }
+
+        List<Entry> b = mWide;
+        int ia = a == null ? 0 : a.size();
+        int ib = b.size();
+        out.ensureCapacity( ia + ib );
+
+        // Merge, topmost first.
+        int n = 0;
+        while( ia > 0 || ib > 0 ) {
+            Entry e;
+            if( ib == 0 || ia > 0 && ORDER.compare( a.get( ia - 1 ), b.get( ib - 1 ) ) > 0 ) {
+                e = a.get( --ia );
+            } else {
+                e = b.get( --ib );
+            }
+            out.mComps[n]  = e.mComp;
+            out.mLayers[n] = e.mLayer;
+            n++;
+        }
+
+        return n;
+    }
+
+
+
+    private void layoutCells( int w, int h ) {
+        w = Math.max( 1, w );
+        h = Math.max( 1, h );
+        int cell = mCellSize;
+        long cols;
+        long rows;
+
+        while( true ) {
+            cols = ( w + cell - 1L ) / cell;
+            rows = ( h + cell - 1L ) / cell;
+            if( cols * rows <= MAX_CELLS ) {
+                break;
+            }
+            cell *= 2;
+        }
+
+        mCell = cell;
+        mCols = (int)cols;
+        mRows = (int)rows;
+        mCells = new Cell[mCols * mRows];
+    }
+
+
+    private void place( Entry e ) {
+        e.mWide    = false;
+        e.mInCells = false;
+        if( e.mUntracked ) {
+            e.mWide = true;
+            insert( mWide, e );
+            return;
+        }
+        if( !overlapsGrid( e ) ) {
+            return;
+        }
+
+        int cx0 = cellX( e.mX );
+        int cy0 = cellY( e.mY );
+        int cx1 = cellX( e.mX + e.mW - 1 );
+        int cy1 = cellY( e.mY + e.mH - 1 );
+
+        if( ( cx1 - cx0 + 1L ) * ( cy1 - cy0 + 1L ) > MAX_SPAN ) {
+            e.mWide = true;
+            insert( mWide, e );
+            return;
+        }
+
+        e.mInCells = true;
+        e.mCx0 = cx0;
+        e.mCy0 = cy0;
+        e.mCx1 = cx1;
+        e.mCy1 = cy1;
+        for( int cy = cy0; cy <= cy1; cy++ ) {
+            for( int cx = cx0; cx <= cx1; cx++ ) {
+                int idx = cy * mCols + cx;
+                Cell c = mCells[idx];
+                if( c == null ) {
+                    c = new Cell();
+                    mCells[idx] = c;
+                }
+                insert( c.mEntries, e );
+            }
+        }
+    }
+
+
+    private void unplace( Entry e ) {
+        if( e.mWide ) {
+            delete( mWide, e );
+        } else if( e.mInCells ) {
+            for( int cy = e.mCy0; cy <= e.mCy1; cy++ ) {
+                for( int cx = e.mCx0; cx <= e.mCx1; cx++ ) {
+                    Cell c = mCells[ cy * mCols + cx ];
+                    if( c != null ) {
+                        delete( c.mEntries, e );
+                    }
+                }
+            }
+        }
+        e.mWide    = false;
+        e.mInCells = false;
+    }
+
+    /**
+     * Children that lie entirely outside the container can never be hit,
+     * as the container tests points against its own bounds first.
+     */
+    private boolean overlapsGrid( Entry e ) {
+        long span = (long)mCell;
+        return e.mW > 0 &&
+               e.mH > 0 &&
+               e.mX + (long)e.mW > 0 &&
+               e.mY + (long)e.mH > 0 &&
+               e.mX < mCols * span &&
+               e.mY < mRows * span;
+    }
+
+
+    private int cellX( int x ) {
+        return Math.max( 0, Math.min( mCols - 1, Math.floorDiv( x, mCell ) ) );
+    }
+
+
+    private int cellY( int y ) {
+        return Math.max( 0, Math.min( mRows - 1, Math.floorDiv( y, mCell ) ) );
+    }
+
+
+    private static void insert( List<Entry> list, Entry e ) {
+        // Most insertions are new children, which go on top.
+        int n = list.size();
+        if( n == 0 || ORDER.compare( list.get( n - 1 ), e ) < 0 ) {
+            list.add( e );
+            return;
+        }
+        int idx = Collections.binarySearch( list, e, ORDER );
+        if( idx < 0 ) {
+            list.add( -idx - 1, e );
+        }
+    }
+
+
+    private static void delete( List<Entry> list, Entry e ) {
+        int idx = Collections.binarySearch( list, e, ORDER );
+        if( idx >= 0 ) {
+            list.remove( idx );
+        }
+    }
+
+
+
+    static final class Result {
+        GComponent[] mComps  = new GComponent[16];
+        int[]        mLayers = new int[16];
+
+        void ensureCapacity( int n ) {
+            if( n > mComps.length ) {
+                int cap = Math.max( n, mComps.length * 2 );
+                mComps  = new GComponent[cap];
+                mLayers = new int[cap];
+            }
+        }
+
+        /**
+         * Releases references to candidates.
+         */
+        void clear( int n ) {
+            Arrays.fill( mComps, 0, n, null );
+        }
+    }
+
+
+    private static final class Entry {
+        final GComponent mComp;
+        final int  mLayer;
+        final long mSeq;
+
+        int mX;
+        int mY;
+        int mW;
+        int mH;
+
+        int mCx0;
+        int mCy0;
+        int mCx1;
+        int mCy1;
+        boolean mWide;
+        boolean mInCells;
+        boolean mUntracked;
+
+        Entry( GComponent comp, int layer, long seq ) {
+            mComp  = comp;
+            mLayer = layer;
+            mSeq   = seq;
+        }
+
+        void setBounds( int x, int y, int w, int h ) {
+            mX = x;
+            mY = y;
+            mW = w;
+            mH = h;
+        }
+    }
+
+
+    /**
+     * Entries that overlap one cell, bottommost first.
+     */
+    private static final class Cell {
+        final List<Entry> mEntries = new ArrayList<Entry>( 4 );
+    }
+
+}
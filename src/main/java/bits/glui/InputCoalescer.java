@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.awt.Component;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+
+/**
+ * Sits in front of an EventProcessor and, when enabled, merges high-rate input
+ * between frames. Consecutive timed mouse moves with the same modifiers collapse
+ * into the latest one, and consecutive timed wheel events of the same scroll type
+ * and modifiers have their rotations summed. Any other input first flushes the
+ * pending event, so the relative order of presses, releases, enters, exits and
+ * keys is preserved. Pending input is also flushed at the start of each frame,
+ * and a frame is requested whenever input is held.
+ * <p>
+ * Held events return false, as they have not yet been processed.
+ * Batches are processed under a single lock acquisition.
+ *
+ * @author Philip DeCamp
+ */
+class InputCoalescer implements GHumanInputController {
+
+    private static final int NONE  = 0;
+    private static final int MOVE  = 1;
+    private static final int WHEEL = 2;
+
+
+    private final EventProcessor mTarget;
+    private final Component mWakeComp;
+    private volatile boolean mEnabled = false;
+
+    private int  mPending = NONE;
+    private long mMicros;
+    private int  mMods;
+    private int  mA;
+    private int  mB;
+    private int  mC;
+
+
+    InputCoalescer( EventProcessor target, Component optWakeComp ) {
+        mTarget   = target;
+        mWakeComp = optWakeComp;
+    }
+
+
+    public boolean enabled() {
+        return mEnabled;
+    }
+
+
+    public void enabled( boolean enable ) {
+        mEnabled = enable;
+        if( !enable ) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends any pending input to target.
+     */
+    public synchronized void flush() {
+        int pending = mPending;
+        if( pending == NONE ) {
+            return;
+        }
+        mPending = NONE;
+
+        if( pending == MOVE ) {
+            mTarget.mouseMoved( mMicros, mMods, mA, mB );
+        } else {
+            mTarget.mouseWheelMoved( mMicros, mMods, mA, mB, mC );
+        }
+    }
+
+
+
+    @Override
+    public boolean mouseMoved( long micros, int mods, int x, int y ) {
+        if( !mEnabled ) {
+            return mTarget.mouseMoved( micros, mods, x, y );
+        }
+
+        synchronized( this ) {
+            if( mPending != MOVE || mMods != mods ) {
+                flush();
+                mPending = MOVE;
+                mMods    = mods;
+                wake();
+            } else {
+                merged( GInputRecord.MOUSE_MOVED );
+            }
+            mMicros = micros;
+            mA      = x;
+            mB      = y;
+            return false;
+        }
+    }
+
+    @Override
+    public boolean mouseWheelMoved( long micros, int mods, int scrollType, int scrollAmount, int wheelRotation ) {
+        if( !mEnabled ) {
+            return mTarget.mouseWheelMoved( micros, mods, scrollType, scrollAmount, wheelRotation );
+        }
+
+        synchronized( this ) {
+            if( mPending == WHEEL && mMods == mods && mA == scrollType && mB == scrollAmount ) {
+                mMicros = micros;
+                mC += wheelRotation;
+                merged( GInputRecord.MOUSE_WHEEL_MOVED );
+                return false;
+            }
+
+            flush();
+            mPending = WHEEL;
+            mMicros  = micros;
+            mMods    = mods;
+            mA       = scrollType;
+            mB       = scrollAmount;
+            mC       = wheelRotation;
+            wake();
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized boolean keyPressed( int keyCode, char keyChar, int keyLoc ) {
+        flush();
+        return mTarget.keyPressed( keyCode, keyChar, keyLoc );
+    }
+
+    @Override
+    public synchronized boolean keyPressed( long micros, int mods, int keyCode, char keyChar, int keyLoc ) {
+        flush();
+        return mTarget.keyPressed( micros, mods, keyCode, keyChar, keyLoc );
+    }
+
+    @Override
+    public synchronized boolean keyReleased( int keyCode, char keyChar, int keyLoc ) {
+        flush();
+        return mTarget.keyReleased( keyCode, keyChar, keyLoc );
+    }
+
+    @Override
+    public synchronized boolean keyReleased( long micros, int mods, int keyCode, char keyChar, int keyLoc ) {
+        flush();
+        return mTarget.keyReleased( micros, mods, keyCode, keyChar, keyLoc );
+    }
+
+    @Override
+    public synchronized boolean keyTyped( int keyCode, char keyChar, int keyLoc ) {
+        flush();
+        return mTarget.keyTyped( keyCode, keyChar, keyLoc );
+    }
+
+    @Override
+    public synchronized boolean keyTyped( long micros, int mods, int keyCode, char keyChar, int keyLoc ) {
+        flush();
+        return mTarget.keyTyped( micros, mods, keyCode, keyChar, keyLoc );
+    }
+
+    @Override
+    public synchronized boolean mousePressed( int button ) {
+        flush();
+        return mTarget.mousePressed( button );
+    }
+
+    @Override
+    public synchronized boolean mousePressed( long micros, int mods, int button, boolean triggerPopup ) {
+        flush();
+        return mTarget.mousePressed( micros, mods, button, triggerPopup );
+    }
+
+    @Override
+    public synchronized boolean mouseReleased( int button, boolean genClick ) {
+        flush();
+        return mTarget.mouseReleased( button, genClick );
+    }
+
+    @Override
+    public synchronized boolean mouseReleased( long micros, int mods, int button, boolean triggerPopup, boolean genClick ) {
+        flush();
+        return mTarget.mouseReleased( micros, mods, button, triggerPopup, genClick );
+    }
+
+    @Override
+    public synchronized boolean mouseEntered( int x, int y ) {
+        flush();
+        return mTarget.mouseEntered( x, y );
+    }
+
+    @Override
+    public synchronized boolean mouseEntered( long micros, int mods, int x, int y ) {
+        flush();
+        return mTarget.mouseEntered( micros, mods, x, y );
+    }
+
+    @Override
+    public synchronized boolean mouseExited() {
+        flush();
+        return mTarget.mouseExited();
+    }
+
+    @Override
+    public synchronized boolean mouseExited( long micros, int mods ) {
+        flush();
+        return mTarget.mouseExited( micros, mods );
+    }
+
+    @Override
+    public synchronized boolean mouseMoved( int x, int y ) {
+        flush();
+        return mTarget.mouseMoved( x, y );
+    }
+
+    @Override
+    public synchronized boolean mouseWheelMoved( int scrollType, int scrollAmount, int wheelRotation ) {
+        flush();
+        return mTarget.mouseWheelMoved( scrollType, scrollAmount, wheelRotation );
+    }
+
+
+    @Override
+    public int processRecords( GInputRecord[] recs, int off, int len, BitSet optConsumed ) {
+        if( !mEnabled ) {
+            synchronized( this ) {
+                flush();
+                return mTarget.processRecords( recs, off, len, optConsumed );
+            }
+        }
+        synchronized( this ) {
+            return GHumanInputController.super.processRecords( recs, off, len, optConsumed );
+        }
+    }
+
+    @Override
+    public int processRecords( ByteBuffer buf, BitSet optConsumed ) {
+        if( !mEnabled ) {
+            synchronized( this ) {
+                flush();
+                return mTarget.processRecords( buf, optConsumed );
+            }
+        }
+        synchronized( this ) {
+            return GHumanInputController.super.processRecords( buf, optConsumed );
+        }
+    }
+
+
+    private void merged( int inputType ) {
+        GInputLatency lat = mTarget.latency();
+        if( lat != null ) {
+            lat.merged( inputType );
+        }
+    }
+
+
+    private void wake() {
+        if( mWakeComp != null ) {
+            mWakeComp.repaint();
+        }
+    }
+
+}
@@ -0,0 +1,515 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import bits.glui.event.*;
+
+
+/**
+ * Source of input events for EventProcessor. When enabled, events are taken
+ * from a small free list and returned to it after dispatch, so that input
+ * can be processed without allocation. Events are only in use for the duration
+ * of a dispatch, but dispatches may nest, so the lists grow as needed.
+ * <p>
+ * In debug mode, released events are marked expired and never reused, so that any
+ * listener that keeps a reference fails with an IllegalStateException on next access.
+ * <p>
+ * Must only be used from the dispatch thread.
+ *
+ * @author Philip DeCamp
+ */
+final class InputEventPool {
+
+    private static final int MAX_FREE = 8;
+
+    private volatile boolean mEnabled = false;
+    private volatile boolean mDebug   = false;
+
+    private final PooledMouseEvent[] mMouse = new PooledMouseEvent[MAX_FREE];
+    private final PooledWheelEvent[] mWheel = new PooledWheelEvent[MAX_FREE];
+    private final PooledKeyEvent[]   mKey   = new PooledKeyEvent[MAX_FREE];
+    private int mMouseCount = 0;
+    private int mWheelCount = 0;
+    private int mKeyCount   = 0;
+
+
+    public boolean enabled() {
+        return mEnabled;
+    }
+
+
+    public void enabled( boolean enable ) {
+        mEnabled = enable;
+    }
+
+
+    public boolean debug() {
+        return mDebug;
+    }
+
+
+    public void debug( boolean debug ) {
+        mDebug = debug;
+    }
+
+
+    public GMouseEvent mouseEvent( GComponent source,
+                                   int id,
+                                   long micros,
+                                   int mods,
+                                   int x,
+                                   int y,
+                                   int clickCount,
+                                   boolean trigger,
+                                   int button )
+    {
+        if( !mEnabled ) {
+            return new GMouseEvent( source, id, micros, mods, x, y, clickCount, trigger, button );
+        }
+        PooledMouseEvent e = mMouseCount > 0 ? mMouse[--mMouseCount] : new PooledMouseEvent();
+        e.set( source, id, micros, mods, x, y, clickCount, trigger, button );
+        return e;
+    }
+
+
+    public GMouseWheelEvent wheelEvent( GComponent source,
+                                        long micros,
+                                        int mods,
+                                        int x,
+                                        int y,
+                                        int clickCount,
+                                        int scrollType,
+                                        int scrollAmount,
+                                        int wheelRotation )
+    {
+        if( !mEnabled ) {
+            return new GMouseWheelEvent( source,
+                                         GMouseEvent.MOUSE_WHEEL,
+                                         micros,
+                                         mods,
+                                         x,
+                                         y,
+                                         clickCount,
+                                         false,
+                                         scrollType,
+                                         scrollAmount,
+                                         wheelRotation );
+        }
+        PooledWheelEvent e = mWheelCount > 0 ? mWheel[--mWheelCount] : new PooledWheelEvent();
+        e.set( source, micros, mods, x, y, clickCount, scrollType, scrollAmount, wheelRotation );
+        return e;
+    }
+
+
+    public GKeyEvent keyEvent( GComponent source,
+                               int id,
+                               long micros,
+                               int mods,
+                               int keyCode,
+                               char keyChar,
+                               int keyLoc )
+    {
+        if( !mEnabled ) {
+            return new GKeyEvent( source, id, micros, mods, keyCode, keyChar, keyLoc );
+        }
+        PooledKeyEvent e = mKeyCount > 0 ? mKey[--mKeyCount] : new PooledKeyEvent();
+        e.set( source, id, micros, mods, keyCode, keyChar, keyLoc );
+        return e;
+    }
+
+    /**
+     * Returns event to pool after dispatch. Events not created by the pool are ignored.
+     */
+    public void release( GInputEvent e ) {
+        boolean debug = mDebug;
+
+        if( e instanceof PooledMouseEvent ) {
+            PooledMouseEvent p = (PooledMouseEvent)e;
+            p.release();
+            if( !debug && mMouseCount < MAX_FREE ) {
+                mMouse[mMouseCount++] = p;
+            }
+        } else if( e instanceof PooledWheelEvent ) {
+            PooledWheelEvent p = (PooledWheelEvent)e;
+            p.release();
+            if( !debug && mWheelCount < MAX_FREE ) {
+                mWheel[mWheelCount++] = p;
+            }
+        } else if( e instanceof PooledKeyEvent ) {
+            PooledKeyEvent p = (PooledKeyEvent)e;
+            p.release();
+            if( !debug && mKeyCount < MAX_FREE ) {
+                mKey[mKeyCount++] = p;
+            }
+        }
+    }
+
+
+
+    private static void checkLive( boolean expired ) {
+        if( expired ) {
+            throw new IllegalStateException( "Event used after dispatch. Listeners must copy events they retain." );
+        }
+    }
+
+    /*
+     * Pooled events hold their own mutable state and override every accessor of the
+     * public event classes, which remain immutable and pay no expiry check.
+     */
+
+    private static final class PooledMouseEvent extends GMouseEvent {
+
+        private GComponent mSource;
+        private int        mId;
+        private long       mMicros;
+        private int        mMods;
+        private int        mX;
+        private int        mY;
+        private int        mClickCount;
+        private boolean    mTrigger;
+        private int        mButton;
+        private boolean    mConsumed;
+        private boolean    mExpired;
+
+        PooledMouseEvent() {
+            super( null, 0, 0, 0, 0, 0, 0, false, NOBUTTON );
+        }
+
+        void set( GComponent source,
+                  int id,
+                  long micros,
+                  int mods,
+                  int x,
+                  int y,
+                  int clickCount,
+                  boolean trigger,
+                  int button )
+        {
+            mSource     = source;
+            mId         = id;
+            mMicros     = micros;
+            mMods       = mods;
+            mX          = x;
+            mY          = y;
+            mClickCount = clickCount;
+            mTrigger    = trigger;
+            mButton     = button;
+            mConsumed   = false;
+            mExpired    = false;
+        }
+
+        void release() {
+            mSource  = null;
+            mExpired = true;
+        }
+
+        @Override
+        public Object source() {
+            checkLive( mExpired );
+            return mSource;
+        }
+
+        @Override
+        public int id() {
+            checkLive( mExpired );
+            return mId;
+        }
+
+        @Override
+        public long getTimestampMicros() {
+            checkLive( mExpired );
+            return mMicros;
+        }
+
+        @Override
+        public int getModifiers() {
+            checkLive( mExpired );
+            return mMods;
+        }
+
+        @Override
+        public void consume() {
+            checkLive( mExpired );
+            mConsumed = true;
+        }
+
+        @Override
+        public boolean isConsumed() {
+            checkLive( mExpired );
+            return mConsumed;
+        }
+
+        @Override
+        public int getButton() {
+            checkLive( mExpired );
+            return mButton;
+        }
+
+        @Override
+        public int getClickCount() {
+            checkLive( mExpired );
+            return mClickCount;
+        }
+
+        @Override
+        public int getX() {
+            checkLive( mExpired );
+            return mX;
+        }
+
+        @Override
+        public int getY() {
+            checkLive( mExpired );
+            return mY;
+        }
+
+        @Override
+        public boolean isPopupTrigger() {
+            checkLive( mExpired );
+            return mTrigger;
+        }
+
+        @Override
+        public void translatePoint( int x, int y ) {
+            checkLive( mExpired );
+            mX += x;
+            mY += y;
+        }
+
+    }
+
+
+    private static final class PooledWheelEvent extends GMouseWheelEvent {
+
+        private GComponent mSource;
+        private long       mMicros;
+        private int        mMods;
+        private int        mX;
+        private int        mY;
+        private int        mClickCount;
+        private int        mScrollType;
+        private int        mScrollAmount;
+        private int        mWheelRotation;
+        private boolean    mConsumed;
+        private boolean    mExpired;
+
+        PooledWheelEvent() {
+            super( null, MOUSE_WHEEL, 0, 0, 0, 0, 0, false, 0, 0, 0 );
+        }
+
+        void set( GComponent source,
+                  long micros,
+                  int mods,
+                  int x,
+                  int y,
+                  int clickCount,
+                  int scrollType,
+                  int scrollAmount,
+                  int wheelRotation )
+        {
+            mSource        = source;
+            mMicros        = micros;
+            mMods          = mods;
+            mX             = x;
+            mY             = y;
+            mClickCount    = clickCount;
+            mScrollType    = scrollType;
+            mScrollAmount  = scrollAmount;
+            mWheelRotation = wheelRotation;
+            mConsumed      = false;
+            mExpired       = false;
+        }
+
+        void release() {
+            mSource  = null;
+            mExpired = true;
+        }
+
+        @Override
+        public Object source() {
+            checkLive( mExpired );
+            return mSource;
+        }
+
+        @Override
+        public int id() {
+            checkLive( mExpired );
+            return MOUSE_WHEEL;
+        }
+
+        @Override
+        public long getTimestampMicros() {
+            checkLive( mExpired );
+            return mMicros;
+        }
+
+        @Override
+        public int getModifiers() {
+            checkLive( mExpired );
+            return mMods;
+        }
+
+        @Override
+        public void consume() {
+            checkLive( mExpired );
+            mConsumed = true;
+        }
+
+        @Override
+        public boolean isConsumed() {
+            checkLive( mExpired );
+            return mConsumed;
+        }
+
+        @Override
+        public int getButton() {
+            checkLive( mExpired );
+            return NOBUTTON;
+        }
+
+        @Override
+        public int getClickCount() {
+            checkLive( mExpired );
+            return mClickCount;
+        }
+
+        @Override
+        public int getX() {
+            checkLive( mExpired );
+            return mX;
+        }
+
+        @Override
+        public int getY() {
+            checkLive( mExpired );
+            return mY;
+        }
+
+        @Override
+        public boolean isPopupTrigger() {
+            checkLive( mExpired );
+            return false;
+        }
+
+        @Override
+        public void translatePoint( int x, int y ) {
+            checkLive( mExpired );
+            mX += x;
+            mY += y;
+        }
+
+        @Override
+        public int getScrollType() {
+            checkLive( mExpired );
+            return mScrollType;
+        }
+
+        @Override
+        public int getScrollAmount() {
+            checkLive( mExpired );
+            return mScrollAmount;
+        }
+
+        @Override
+        public int getWheelRotation() {
+            checkLive( mExpired );
+            return mWheelRotation;
+        }
+
+    }
+
+
+    private static final class PooledKeyEvent extends GKeyEvent {
+
+        private GComponent mSource;
+        private int        mId;
+        private long       mMicros;
+        private int        mMods;
+        private int        mKeyCode;
+        private char       mKeyChar;
+        private int        mKeyLoc;
+        private boolean    mConsumed;
+        private boolean    mExpired;
+
+        PooledKeyEvent() {
+            super( null, 0, 0, 0, 0, CHAR_UNDEFINED, KEY_LOCATION_UNKNOWN );
+        }
+
+        void set( GComponent source, int id, long micros, int mods, int keyCode, char keyChar, int keyLoc ) {
+            mSource   = source;
+            mId       = id;
+            mMicros   = micros;
+            mMods     = mods;
+            mKeyCode  = keyCode;
+            mKeyChar  = keyChar;
+            mKeyLoc   = keyLoc;
+            mConsumed = false;
+            mExpired  = false;
+        }
+
+        void release() {
+            mSource  = null;
+            mExpired = true;
+        }
+
+        @Override
+        public Object source() {
+            checkLive( mExpired );
+            return mSource;
+        }
+
+        @Override
+        public int id() {
+            checkLive( mExpired );
+            return mId;
+        }
+
+        @Override
+        public long getTimestampMicros() {
+            checkLive( mExpired );
+            return mMicros;
+        }
+
+        @Override
+        public int getModifiers() {
+            checkLive( mExpired );
+            return mMods;
+        }
+
+        @Override
+        public void consume() {
+            checkLive( mExpired );
+            mConsumed = true;
+        }
+
+        @Override
+        public boolean isConsumed() {
+            checkLive( mExpired );
+            return mConsumed;
+        }
+
+        @Override
+        public int getKeyCode() {
+            checkLive( mExpired );
+            return mKeyCode;
+        }
+
+        @Override
+        public char getKeyChar() {
+            checkLive( mExpired );
+            return mKeyChar;
+        }
+
+        @Override
+        public int getKeyLocation() {
+            checkLive( mExpired );
+            return mKeyLoc;
+        }
+
+    }
+
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.awt.Component;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Sits in front of the input chain and, when enabled, hands input from the
+ * thread that produces it (usually the AWT event thread) to the dispatch thread
+ * through a single-producer, single-consumer ring of preallocated GInputRecords.
+ * The producer only writes a slot and publishes its index; the dispatch thread
+ * drains the ring at the start of each frame. All input is then dispatched on
+ * the dispatch thread, and neither side takes a lock.
+ * <p>
+ * Queued input returns false, as it has not yet been processed. Input must
+ * only be produced by one thread at a time, and the producer never waits on
+ * the dispatch thread. If the ring is full, mouse motion and wheel input is
+ * dropped and counted, as later motion supersedes it. Presses, releases, key
+ * input and crossings are never dropped: they are placed on an unbounded
+ * overflow list instead, and drained in the order they were produced along
+ * with the ring, so press and release pairs stay intact under load.
+ * A frame is requested whenever input is queued.
+ *
+ * @author Philip DeCamp
+ */
+class InputRing implements GHumanInputController {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+
+    private final GHumanInputController mTarget;
+    private final Component mWakeComp;
+    private volatile boolean mEnabled = false;
+
+    private final GInputRecord[] mSlots;
+    // Sequence number of the record in each slot.
+    private final long[] mSeqs;
+    private final int mMask;
+    private final ConcurrentLinkedQueue<Pending> mOverflow = new ConcurrentLinkedQueue<Pending>();
+
+    // Next index to read. Written only by consumer.
+    private final AtomicLong mHead = new AtomicLong( 0 );
+    // Next index to write. Written only by producer.
+    private final AtomicLong mTail = new AtomicLong( 0 );
+    // Sequence number of the next record. Written only by producer, after the record is published.
+    private final AtomicLong mPublished = new AtomicLong( 0 );
+    private final AtomicLong mDropped = new AtomicLong( 0 );
+
+
+    InputRing( GHumanInputController target, Component optWakeComp ) {
+        this( target, optWakeComp, DEFAULT_CAPACITY );
+    }
+
+
+    InputRing( GHumanInputController target, Component optWakeComp, int capacity ) {
+        if( capacity <= 0 || Integer.bitCount( capacity ) != 1 ) {
+            throw new IllegalArgumentException( "Capacity must be a power of two: " + capacity );
+        }
+        mTarget   = target;
+        mWakeComp = optWakeComp;
+        mSlots    = new GInputRecord[capacity];
+        mSeqs     = new long[capacity];
+        mMask     = capacity - 1;
+        for( int i = 0; i < capacity; i++ ) {
+            mSlots[i] = new GInputRecord();
+        }
+    }
+
+
+    public boolean enabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Must be called on the dispatch thread. Disabling drains any queued input.
+     */
+    public void enabled( boolean enable ) {
+        mEnabled = enable;
+        if( !enable ) {
+            drain();
+        }
+    }
+
+    /**
+     * @return number of motion and wheel inputs dropped because the ring was full.
+     */
+    public long dropped() {
+        return mDropped.get();
+    }
+
+    /**
+     * Sends all queued input to target. Must be called on the dispatch thread.
+     *
+     * @return number of records drained.
+     */
+    public int drain() {
+        // Every record numbered below limit is visible in the ring or the overflow list.
+        final long limit = mPublished.get();
+        final long tail  = mTail.get();
+        long head = mHead.get();
+        if( head == tail && mOverflow.isEmpty() ) {
+            return 0;
+        }
+
+        final GInputRecord[] slots = mSlots;
+        final long[] seqs = mSeqs;
+        int num = 0;
+        try {
+            while( true ) {
+                Pending p = mOverflow.peek();
+                if( p != null && p.mSeq >= limit ) {
+                    p = null;
+                }
+                if( head < tail && ( p == null || seqs[(int)head & mMask] < p.mSeq ) ) {
+                    // Advance first so the slot is released even if a listener throws.
+                    head++;
+                    num++;
+                    slots[(int)( head - 1 ) & mMask].dispatch( mTarget );
+                } else if( p != null ) {
+                    mOverflow.poll();
+                    num++;
+                    p.mRecord.dispatch( mTarget );
+                } else {
+                    break;
+                }
+            }
+        } finally {
+            mHead.lazySet( head );
+        }
+        return num;
+    }
+
+
+
+    @Override
+    public boolean keyPressed( int keyCode, char keyChar, int keyLoc ) {
+        if( !mEnabled ) {
+            return mTarget.keyPressed( keyCode, keyChar, keyLoc );
+        }
+        return offer( GInputRecord.KEY_PRESSED | GInputRecord.FLAG_UNTIMED, 0, 0L, keyCode, keyChar, keyLoc, 0 );
+    }
+
+    @Override
+    public boolean keyPressed( long micros, int mods, int keyCode, char keyChar, int keyLoc ) {
+        if( !mEnabled ) {
+            return mTarget.keyPressed( micros, mods, keyCode, keyChar, keyLoc );
+        }
+        return offer( GInputRecord.KEY_PRESSED, mods, micros, keyCode, keyChar, keyLoc, 0 );
+    }
+
+    @Override
+    public boolean keyReleased( int keyCode, char keyChar, int keyLoc ) {
+        if( !mEnabled ) {
+            return mTarget.keyReleased( keyCode, keyChar, keyLoc );
+        }
+        return offer( GInputRecord.KEY_RELEASED | GInputRecord.FLAG_UNTIMED, 0, 0L, keyCode, keyChar, keyLoc, 0 );
+    }
+
+    @Override
+    public boolean keyReleased( long micros, int mods, int keyCode, char keyChar, int keyLoc ) {
+        if( !mEnabled ) {
+            return mTarget.keyReleased( micros, mods, keyCode, keyChar, keyLoc );
+        }
+        return offer( GInputRecord.KEY_RELEASED, mods, micros, keyCode, keyChar, keyLoc, 0 );
+    }
+
+    @Override
+    public boolean keyTyped( int keyCode, char keyChar, int keyLoc ) {
+        if( !mEnabled ) {
+            return mTarget.keyTyped( keyCode, keyChar, keyLoc );
+        }
+        return offer( GInputRecord.KEY_TYPED | GInputRecord.FLAG_UNTIMED, 0, 0L, keyCode, keyChar, keyLoc, 0 );
+    }
+
+    @Override
+    public boolean keyTyped( long micros, int mods, int keyCode, char keyChar, int keyLoc ) {
+        if( !mEnabled ) {
+            return mTarget.keyTyped( micros, mods, keyCode, keyChar, keyLoc );
+        }
+        return offer( GInputRecord.KEY_TYPED, mods, micros, keyCode, keyChar, keyLoc, 0 );
+    }
+
+    @Override
+    public boolean mousePressed( int button ) {
+        if( !mEnabled ) {
+            return mTarget.mousePressed( button );
+        }
+        return offer( GInputRecord.MOUSE_PRESSED | GInputRecord.FLAG_UNTIMED, 0, 0L, button, 0, 0, 0 );
+    }
+
+    @Override
+    public boolean mousePressed( long micros, int mods, int button, boolean triggerPopup ) {
+        if( !mEnabled ) {
+            return mTarget.mousePressed( micros, mods, button, triggerPopup );
+        }
+        return offer( GInputRecord.MOUSE_PRESSED, mods, micros, button, triggerPopup ? 1 : 0, 0, 0 );
+    }
+
+    @Override
+    public boolean mouseReleased( int button, boolean genClick ) {
+        if( !mEnabled ) {
+            return mTarget.mouseReleased( button, genClick );
+        }
+        return offer( GInputRecord.MOUSE_RELEASED | GInputRecord.FLAG_UNTIMED, 0, 0L, button, 0, genClick ? 1 : 0, 0 );
+    }
+
+    @Override
+    public boolean mouseReleased( long micros, int mods, int button, boolean triggerPopup, boolean genClick ) {
+        if( !mEnabled ) {
+            return mTarget.mouseReleased( micros, mods, button, triggerPopup, genClick );
+        }
+        return offer( GInputRecord.MOUSE_RELEASED, mods, micros, button, triggerPopup ? 1 : 0, genClick ? 1 : 0, 0 );
+    }
+
+    @Override
+    public boolean mouseEntered( int x, int y ) {
+        if( !mEnabled ) {
+            return mTarget.mouseEntered( x, y );
+        }
+        return offer( GInputRecord.MOUSE_ENTERED | GInputRecord.FLAG_UNTIMED, 0, 0L, x, y, 0, 0 );
+    }
+
+    @Override
+    public boolean mouseEntered( long micros, int mods, int x, int y ) {
+        if( !mEnabled ) {
+            return mTarget.mouseEntered( micros, mods, x, y );
+        }
+        return offer( GInputRecord.MOUSE_ENTERED, mods, micros, x, y, 0, 0 );
+    }
+
+    @Override
+    public boolean mouseExited() {
+        if( !mEnabled ) {
+            return mTarget.mouseExited();
+        }
+        return offer( GInputRecord.MOUSE_EXITED | GInputRecord.FLAG_UNTIMED, 0, 0L, 0, 0, 0, 0 );
+    }
+
+    @Override
+    public boolean mouseExited( long micros, int mods ) {
+        if( !mEnabled ) {
+            return mTarget.mouseExited( micros, mods );
+        }
+        return offer( GInputRecord.MOUSE_EXITED, mods, micros, 0, 0, 0, 0 );
+    }
+
+    @Override
+    public boolean mouseMoved( int x, int y ) {
+        if( !mEnabled ) {
+            return mTarget.mouseMoved( x, y );
+        }
+        return offer( GInputRecord.MOUSE_MOVED | GInputRecord.FLAG_UNTIMED, 0, 0L, x, y, 0, 0 );
+    }
+
+    @Override
+    public boolean mouseMoved( long micros, int mods, int x, int y ) {
+        if( !mEnabled ) {
+            return mTarget.mouseMoved( micros, mods, x, y );
+        }
+        return offer( GInputRecord.MOUSE_MOVED, mods, micros, x, y, 0, 0 );
+    }
+
+    @Override
+    public boolean mouseWheelMoved( int scrollType, int scrollAmount, int wheelRotation ) {
+        if( !mEnabled ) {
+            return mTarget.mouseWheelMoved( scrollType, scrollAmount, wheelRotation );
+        }
+        return offer( GInputRecord.MOUSE_WHEEL_MOVED | GInputRecord.FLAG_UNTIMED, 0, 0L, scrollType, scrollAmount, wheelRotation, 0 );
+    }
+
+    @Override
+    public boolean mouseWheelMoved( long micros, int mods, int scrollType, int scrollAmount, int wheelRotation ) {
+        if( !mEnabled ) {
+            return mTarget.mouseWheelMoved( micros, mods, scrollType, scrollAmount, wheelRotation );
+        }
+        return offer( GInputRecord.MOUSE_WHEEL_MOVED, mods, micros, scrollType, scrollAmount, wheelRotation, 0 );
+    }
+
+
+    @Override
+    public int processRecords( GInputRecord[] recs, int off, int len, BitSet optConsumed ) {
+        if( !mEnabled ) {
+            return mTarget.processRecords( recs, off, len, optConsumed );
+        }
+        return GHumanInputController.super.processRecords( recs, off, len, optConsumed );
+    }
+
+    @Override
+    public int processRecords( ByteBuffer buf, BitSet optConsumed ) {
+        if( !mEnabled ) {
+            return mTarget.processRecords( buf, optConsumed );
+        }
+        return GHumanInputController.super.processRecords( buf, optConsumed );
+    }
+
+
+    private boolean offer( int type, int mods, long micros, int a, int b, int c, int d ) {
+        final long seq  = mPublished.get();
+        final long tail = mTail.get();
+        final long head = mHead.get();
+        if( tail - head > mMask ) {
+            int base = type & GInputRecord.TYPE_MASK;
+            if( base == GInputRecord.MOUSE_MOVED || base == GInputRecord.MOUSE_WHEEL_MOVED ) {
+                mDropped.incrementAndGet();
+                wake();
+                return false;
+            }
+            mOverflow.offer( new Pending( seq, new GInputRecord().set( type, mods, micros, a, b, c, d ) ) );
+        } else {
+            int idx = (int)tail & mMask;
+            mSlots[idx].set( type, mods, micros, a, b, c, d );
+            mSeqs[idx] = seq;
+            // Ordered store publishes slot contents before the new tail.
+            mTail.lazySet( tail + 1 );
+        }
+        mPublished.lazySet( seq + 1 );
+        // Always wake: the consumer may have read the tail before this record was published.
+        wake();
+        return false;
+    }
+
+
+    private void wake() {
+        if( mWakeComp != null ) {
+            mWakeComp.repaint();
+        }
+    }
+
+
+
+    private static final class Pending {
+        final long mSeq;
+        final GInputRecord mRecord;
+
+        Pending( long seq, GInputRecord record ) {
+            mSeq    = seq;
+            mRecord = record;
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import bits.draw3d.DrawEnv;
+
+
+/**
+ * Holds the PaintLayers of cached and composited panels, in least-recently-painted
+ * order. When the layers together exceed the memory budget, the least recently
+ * painted layers are released. Panels whose layers are released simply
+ * render into a new layer the next time they are painted.
+ * <p>
+ * Layers used during the current frame are never released to make room, as
+ * they may be the render target of an enclosing cached panel, and because
+ * evicting them would only force them to be rendered again on every frame.
+ * If a layer does not fit without releasing them, no layer is provided and
+ * the panel is painted directly for that frame.
+ * <p>
+ * All methods except {@link #budget} must be called on the GL thread.
+ *
+ * @author Philip DeCamp
+ * @see GPanel#setCached(boolean)
+ */
+final class LayerCache {
+
+    private static final long DEFAULT_BUDGET = 64L << 20;
+
+
+    private final Map<GPanel, Entry> mEntries = new LinkedHashMap<GPanel, Entry>( 16, 0.75f, true );
+
+    private volatile long mBudget = DEFAULT_BUDGET;
+    private volatile long mBytes  = 0;
+    private int mFrame = 0;
+
+
+    /**
+     * @return maximum bytes of GPU memory used by layers.
+     */
+    public long budget() {
+        return mBudget;
+    }
+
+    /**
+     * Takes effect on next frame. May be called from any thread.
+     */
+    public void budget( long bytes ) {
+        mBudget = Math.max( 0, bytes );
+    }
+
+    /**
+     * @return bytes of GPU memory currently used by layers.
+     */
+    public long bytes() {
+        return mBytes;
+    }
+
+    /**
+     * Must be called before each frame is painted.
+     */
+    public void beginFrame() {
+        mFrame++;
+    }
+
+    /**
+     * Retrieves layer for panel, evicting least recently used layers if needed
+     * to stay within budget. Caller must size the returned layer to {@code w, h}.
+     *
+     * @return layer for panel, or null if a layer of the requested size does not fit in the
+     *         budget alongside the layers already used this frame.
+     */
+    public PaintLayer layer( DrawEnv d, GPanel panel, int w, int h ) {
+        final long need = 4L * w * h;
+        Entry e = mEntries.get( panel );
+        long bytes = mBytes - ( e == null ? 0 : e.mBytes );
+
+        if( need > mBudget ) {
+            if( e != null ) {
+                release( d, panel );
+            }
+            return null;
+        }
+
+        if( bytes + need > mBudget ) {
+            Iterator<Map.Entry<GPanel, Entry>> iter = mEntries.entrySet().iterator();
+            while( bytes + need > mBudget && iter.hasNext() ) {
+                Map.Entry<GPanel, Entry> me = iter.next();
+                Entry victim = me.getValue();
+                if( victim.mFrame == mFrame ) {
+                    // Entries are in least-recently-used order, so all remaining entries are in use.
+                    break;
+                }
+                if( me.getKey() == panel ) {
+                    continue;
+                }
+                iter.remove();
+                victim.mLayer.dispose( d );
+                bytes -= victim.mBytes;
+            }
+            if( bytes + need > mBudget ) {
+                mBytes = bytes + ( e == null ? 0 : e.mBytes );
+                if( e != null ) {
+                    release( d, panel );
+                }
+                return null;
+            }
+        }
+
+        if( e == null ) {
+            e = new Entry();
+            mEntries.put( panel, e );
+        }
+        e.mBytes = need;
+        e.mFrame = mFrame;
+        mBytes   = bytes + need;
+        return e.mLayer;
+    }
+
+    /**
+     * Releases layers of panels that no longer use layers or are not displayed.
+     */
+    public void sweep( DrawEnv d ) {
+        if( mEntries.isEmpty() ) {
+            return;
+        }
+        long bytes = mBytes;
+        Iterator<Map.Entry<GPanel, Entry>> iter = mEntries.entrySet().iterator();
+        while( iter.hasNext() ) {
+            Map.Entry<GPanel, Entry> me = iter.next();
+            GPanel p = me.getKey();
+            if( !p.usesLayer() || !p.isDisplayed() ) {
+                Entry e = me.getValue();
+                iter.remove();
+                e.mLayer.dispose( d );
+                bytes -= e.mBytes;
+            }
+        }
+        mBytes = bytes;
+    }
+
+
+    public void release( DrawEnv d, GPanel panel ) {
+        Entry e = mEntries.remove( panel );
+        if( e != null ) {
+            e.mLayer.dispose( d );
+            mBytes -= e.mBytes;
+        }
+    }
+
+
+    public void dispose( DrawEnv d ) {
+        for( Entry e: mEntries.values() ) {
+            e.mLayer.dispose( d );
+        }
+        mEntries.clear();
+        mBytes = 0;
+    }
+
+
+
+    private static final class Entry {
+        final PaintLayer mLayer = new PaintLayer();
+        long mBytes = 0;
+        int  mFrame = 0;
+    }
+
+}
@@ -0,0 +1,804 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import bits.draw3d.DrawEnv;
+import bits.draw3d.DrawStream;
+import bits.draw3d.Rect;
+import bits.draw3d.text.FontTexture;
+import bits.math3d.Vec4;
+
+
+/**
+ * Records the quads, lines and glyphs painted by components during a frame,
+ * and draws them with as few draw calls as possible. Each primitive is given
+ * in the coordinates of the component being painted, as set by {@link #view},
+ * and is clipped on the CPU to that component's clip, so components need not
+ * change the viewport or scissor between draws.
+ * <p>
+ * Primitives are grouped by material: shapes, untextured triangles, or glyphs
+ * of one font. Shapes are filled or outlined rectangles, optionally rounded,
+ * that are drawn by a {@link ShapeRenderer} as one instanced draw per group,
+ * so the chrome of all components usually costs one draw call. Without
+ * OpenGL 3.3, shapes are drawn as triangles, without rounded corners.
+ * Each call, such as one run of text, is a command that joins the most recent
+ * group with the same material, unless a later group holds a command that
+ * overlaps it, in which case it starts a new group. Overlapping commands are
+ * therefore drawn in the order painted, while commands that do not overlap
+ * may be reordered. Overlap is tested against each quad or polygon bounds
+ * of a command, such as each glyph, rather than against its total bounds.
+ * <p>
+ * Axis-aligned lines are drawn as one pixel wide shapes, and other lines as
+ * one pixel wide triangles. Anything not drawn through the
+ * batch must call {@link #flush} first. All methods must be called on the GL thread.
+ *
+ * @author Philip DeCamp
+ */
+final class PaintBatch {
+
+    private static final int CELL_SHIFT = 6;
+    // x, y, s, t, r, g, b, a
+    private static final int STRIDE = 8;
+
+    // Material of groups holding ShapeRenderer instances rather than vertices.
+    private static final Object SHAPES = new Object();
+
+    private final List<Group> mGroups = new ArrayList<Group>();
+    private int mGroupNum = 0;
+
+    // Material of each group that is last with that material.
+    private Object[] mMaterials    = new Object[4];
+    private int[]    mMaterialLast = new int[4];
+    private int      mMaterialNum  = 0;
+
+    // Bounds of each recorded region, and group of command that holds it.
+    private float[] mRegionBounds = new float[256 * 4];
+    private int[]   mRegionGroup  = new int[256];
+    private int     mRegionNum    = 0;
+
+    // Each grid cell heads a list of nodes referring to the regions that
+    // touch the cell. Cells are valid only when their stamp matches.
+    private int   mGridX0    = 0;
+    private int   mGridY0    = 0;
+    private int   mGridCols  = 0;
+    private int   mGridRows  = 0;
+    private int[] mCellHead  = new int[0];
+    private int[] mCellStamp = new int[0];
+    private int   mStamp     = 1;
+    private int[] mNodeRegion = new int[256];
+    private int[] mNodeNext  = new int[256];
+    private int   mNodeNum   = 0;
+
+    // Absolute origin and clip of component being painted.
+    private int mX  = 0;
+    private int mY  = 0;
+    private int mW  = 0;
+    private int mH  = 0;
+    private int mCx0 = 0;
+    private int mCy0 = 0;
+    private int mCx1 = 0;
+    private int mCy1 = 0;
+
+    private final float[] mColor = { 1, 1, 1, 1 };
+    private final float[] mPoly  = new float[32];
+    private final float[] mPoly2 = new float[32];
+
+    // Vertices of command being recorded. Regions of command are recorded
+    // ahead of mRegionNum until command is ended.
+    private float[] mStage       = new float[STRIDE * 6 * 32];
+    private int     mStageSize   = 0;
+    private int     mStageRegion = 0;
+
+    private final GlyphRecorder mGlyphs = new GlyphRecorder( this );
+    private final ShapeRenderer mShapes;
+
+
+    PaintBatch() {
+        this( new ShapeRenderer() );
+    }
+
+
+    PaintBatch( ShapeRenderer shapes ) {
+        mShapes = shapes;
+    }
+
+
+    /**
+     * @return batch that the component being painted on this thread should
+     *         paint into, or null if it should paint directly.
+     */
+    static PaintBatch current() {
+        PaintContext pc = PaintContext.current();
+        return pc == null ? null : pc.mBatch;
+    }
+
+
+    /**
+     * Sets the component being painted.
+     *
+     * @param absBounds Absolute bounds of component.
+     * @param absClip   Absolute clip of component, or null if only clipped to its bounds.
+     */
+    public void view( DrawEnv d, Rect absBounds, Rect absClip ) {
+        if( mGroupNum == 0 ) {
+            resetGrid( d.mContextViewport );
+        }
+        mX = absBounds.x0;
+        mY = absBounds.y0;
+        mW = absBounds.width();
+        mH = absBounds.height();
+        if( absClip == null ) {
+            mCx0 = absBounds.x0;
+            mCy0 = absBounds.y0;
+            mCx1 = absBounds.x1;
+            mCy1 = absBounds.y1;
+        } else {
+            mCx0 = Math.max( absBounds.x0, absClip.x0 );
+            mCy0 = Math.max( absBounds.y0, absClip.y0 );
+            mCx1 = Math.max( mCx0, Math.min( absBounds.x1, absClip.x1 ) );
+            mCy1 = Math.max( mCy0, Math.min( absBounds.y1, absClip.y1 ) );
+        }
+    }
+
+    /**
+     * Applies the view of the component being painted to GL, as
+     * {@link GPanel#prepareView} does, for components that do not use the batch.
+     */
+    public void applyView( DrawEnv d ) {
+        Rect viewport = d.mContextViewport;
+        d.mProj.setOrtho( 0, mW, 0, mH, -1, 1 );
+        d.mView.identity();
+        d.mViewport.apply( mX - viewport.x0, mY - viewport.y0, mW, mH );
+        d.mScissorTest.apply( true, mCx0 - viewport.x0, mCy0 - viewport.y0, mCx1 - mCx0, mCy1 - mCy0 );
+    }
+
+
+    public void color( Vec4 v ) {
+        color( v.x, v.y, v.z, v.w );
+    }
+
+
+    public void color( float r, float g, float b, float a ) {
+        mColor[0] = r;
+        mColor[1] = g;
+        mColor[2] = b;
+        mColor[3] = a;
+    }
+
+
+    public void fillRect( float x0, float y0, float x1, float y1 ) {
+        fillRoundRect( x0, y0, x1, y1, 0 );
+    }
+
+    /**
+     * Outlines a rectangle with one pixel lines, as a line loop through
+     * its corners would.
+     */
+    public void strokeRect( float x0, float y0, float x1, float y1 ) {
+        strokeRoundRect( x0, y0, x1 + 1, y1 + 1, 0, 1 );
+    }
+
+
+    public void fillRoundRect( float x0, float y0, float x1, float y1, float radius ) {
+        beginCommand();
+        stageShape( x0 + mX, y0 + mY, x1 + mX, y1 + mY, radius, 0 );
+        endCommand( SHAPES );
+    }
+
+    /**
+     * Draws a border of the given width inside the given bounds.
+     */
+    public void strokeRoundRect( float x0, float y0, float x1, float y1, float radius, float width ) {
+        if( width <= 0 ) {
+            return;
+        }
+        beginCommand();
+        stageShape( x0 + mX, y0 + mY, x1 + mX, y1 + mY, radius, width );
+        endCommand( SHAPES );
+    }
+
+    /**
+     * Draws a one pixel wide line.
+     */
+    public void line( float x0, float y0, float x1, float y1 ) {
+        x0 += mX;
+        y0 += mY;
+        x1 += mX;
+        y1 += mY;
+        beginCommand();
+
+        if( y0 == y1 ) {
+            stageShape( Math.min( x0, x1 ), y0, Math.max( x0, x1 ) + 1, y0 + 1, 0, 0 );
+            endCommand( SHAPES );
+            return;
+        }
+        if( x0 == x1 ) {
+            stageShape( x0, Math.min( y0, y1 ), x0 + 1, Math.max( y0, y1 ) + 1, 0, 0 );
+            endCommand( SHAPES );
+            return;
+        }
+
+        float dx  = x1 - x0;
+        float dy  = y1 - y0;
+        float len = (float)Math.sqrt( dx * dx + dy * dy );
+        float nx  = -dy / len * 0.5f;
+        float ny  =  dx / len * 0.5f;
+        float[] p = mPoly;
+        p[0] = x0 + nx; p[1] = y0 + ny;
+        p[2] = x1 + nx; p[3] = y1 + ny;
+        p[4] = x1 - nx; p[5] = y1 - ny;
+        p[6] = x0 - nx; p[7] = y0 - ny;
+        stagePolygon( 4 );
+        endCommand( null );
+    }
+
+    /**
+     * Draws text with baseline starting at {@code x, y}.
+     */
+    public void text( FontTexture font, float x, float y, CharSequence text ) {
+        if( text.length() == 0 ) {
+            return;
+        }
+        beginCommand();
+        mGlyphs.mCount = 0;
+        font.renderChars( mGlyphs.mEnv, x + mX, y + mY, 0, text );
+        endCommand( font );
+    }
+
+    /**
+     * @return number of draw calls the next flush will make.
+     */
+    public int groups() {
+        return mGroupNum;
+    }
+
+    /**
+     * Draws all recorded primitives.
+     *
+     * @return number of draw calls made.
+     */
+    public int flush( DrawEnv d ) {
+        final int groupNum = mGroupNum;
+        if( groupNum == 0 ) {
+            return 0;
+        }
+
+        Rect viewport = d.mContextViewport;
+        d.mViewport.apply( 0, 0, viewport.width(), viewport.height() );
+        d.mScissorTest.apply( true, 0, 0, viewport.width(), viewport.height() );
+        d.mProj.setOrtho( viewport.x0, viewport.x1, viewport.y0, viewport.y1, -1, 1 );
+        d.mView.identity();
+
+        DrawStream s = d.drawStream();
+        boolean instanced = mShapes.isSupported( d );
+        try {
+            for( int i = 0; i < groupNum; i++ ) {
+                Group g = mGroups.get( i );
+                if( g.mMaterial == SHAPES ) {
+                    if( instanced ) {
+                        mShapes.draw( d, g.mVerts, g.mSize / ShapeRenderer.STRIDE );
+                    } else {
+                        drawShapeTris( s, g.mVerts, g.mSize );
+                    }
+                    continue;
+                }
+
+                FontTexture font = (FontTexture)g.mMaterial;
+                if( font != null ) {
+                    font.bind( d );
+                    s.config( true, true, false );
+                } else {
+                    s.config( true, false, false );
+                }
+
+                float[] v = g.mVerts;
+                int len   = g.mSize;
+                s.beginTris();
+                for( int j = 0; j < len; j += STRIDE ) {
+                    s.color( v[j+4], v[j+5], v[j+6], v[j+7] );
+                    s.tex( v[j+2], v[j+3] );
+                    s.vert( v[j], v[j+1] );
+                }
+                s.end();
+
+                if( font != null ) {
+                    font.unbind( d );
+                }
+            }
+        } finally {
+            clear();
+        }
+        return groupNum;
+    }
+
+    /**
+     * Discards recorded primitives.
+     */
+    public void clear() {
+        for( int i = 0; i < mGroupNum; i++ ) {
+            Group g = mGroups.get( i );
+            g.mMaterial = null;
+            g.mSize     = 0;
+        }
+        mGroupNum = 0;
+        Arrays.fill( mMaterials, 0, mMaterialNum, null );
+        mMaterialNum = 0;
+        mRegionNum   = 0;
+        mNodeNum     = 0;
+        mStamp++;
+    }
+
+    /**
+     * Discards recorded primitives and releases GL resources.
+     */
+    public void dispose( DrawEnv d ) {
+        clear();
+        mShapes.dispose( d );
+    }
+
+
+
+    /**
+     * Draws ShapeRenderer instances as triangles, with square corners, for
+     * contexts that cannot run ShapeRenderer.
+     */
+    private static void drawShapeTris( DrawStream s, float[] v, int len ) {
+        s.config( true, false, false );
+        s.beginTris();
+        for( int j = 0; j < len; j += ShapeRenderer.STRIDE ) {
+            float x0 = v[j  ];
+            float y0 = v[j+1];
+            float x1 = v[j+2];
+            float y1 = v[j+3];
+            float cx0 = v[j+4];
+            float cy0 = v[j+5];
+            float cx1 = v[j+6];
+            float cy1 = v[j+7];
+            float w  = v[j+13];
+            s.color( v[j+8], v[j+9], v[j+10], v[j+11] );
+            if( w <= 0 || 2 * w >= Math.min( x1 - x0, y1 - y0 ) ) {
+                clippedQuad( s, x0, y0, x1, y1, cx0, cy0, cx1, cy1 );
+            } else {
+                clippedQuad( s, x0, y0, x1, y0 + w, cx0, cy0, cx1, cy1 );
+                clippedQuad( s, x0, y1 - w, x1, y1, cx0, cy0, cx1, cy1 );
+                clippedQuad( s, x0, y0 + w, x0 + w, y1 - w, cx0, cy0, cx1, cy1 );
+                clippedQuad( s, x1 - w, y0 + w, x1, y1 - w, cx0, cy0, cx1, cy1 );
+            }
+        }
+        s.end();
+    }
+
+
+    private static void clippedQuad( DrawStream s,
+                                     float x0, float y0, float x1, float y1,
+                                     float cx0, float cy0, float cx1, float cy1 )
+    {
+        ShapeRenderer.quad( s,
+                            Math.max( x0, cx0 ),
+                            Math.max( y0, cy0 ),
+                            Math.min( x1, cx1 ),
+                            Math.min( y1, cy1 ) );
+    }
+
+
+    private void beginCommand() {
+        mStageSize   = 0;
+        mStageRegion = mRegionNum;
+    }
+
+    /**
+     * Moves staged vertices into the group the command belongs to.
+     */
+    private void endCommand( Object material ) {
+        if( mStageSize == 0 ) {
+            return;
+        }
+        Group g = group( material );
+        float[] v = g.reserve( mStageSize );
+        System.arraycopy( mStage, 0, v, g.mSize, mStageSize );
+        g.mSize += mStageSize;
+    }
+
+    /**
+     * Stages a textured, axis-aligned quad in absolute coordinates, clipped to the current clip.
+     */
+    private void stageRect( float x0, float y0, float x1, float y1, float s0, float t0, float s1, float t1 ) {
+        float cx0 = x0 < mCx0 ? mCx0 : x0;
+        float cy0 = y0 < mCy0 ? mCy0 : y0;
+        float cx1 = x1 > mCx1 ? mCx1 : x1;
+        float cy1 = y1 > mCy1 ? mCy1 : y1;
+        if( cx0 >= cx1 || cy0 >= cy1 ) {
+            return;
+        }
+
+        if( cx0 != x0 || cy0 != y0 || cx1 != x1 || cy1 != y1 ) {
+            float ds = ( s1 - s0 ) / ( x1 - x0 );
+            float dt = ( t1 - t0 ) / ( y1 - y0 );
+            float ns0 = s0 + ( cx0 - x0 ) * ds;
+            float ns1 = s0 + ( cx1 - x0 ) * ds;
+            float nt0 = t0 + ( cy0 - y0 ) * dt;
+            float nt1 = t0 + ( cy1 - y0 ) * dt;
+            s0 = ns0;
+            s1 = ns1;
+            t0 = nt0;
+            t1 = nt1;
+        }
+
+        float[] v = reserveStage( 6 * STRIDE );
+        int n = mStageSize;
+        n = put( v, n, cx0, cy0, s0, t0 );
+        n = put( v, n, cx1, cy0, s1, t0 );
+        n = put( v, n, cx1, cy1, s1, t1 );
+        n = put( v, n, cx0, cy0, s0, t0 );
+        n = put( v, n, cx1, cy1, s1, t1 );
+        n = put( v, n, cx0, cy1, s0, t1 );
+        mStageSize = n;
+        stageRegion( cx0, cy0, cx1, cy1 );
+    }
+
+    /**
+     * Stages a ShapeRenderer instance in absolute coordinates, clipped to the current clip.
+     *
+     * @param width Border width, or 0 to fill.
+     */
+    private void stageShape( float x0, float y0, float x1, float y1, float radius, float width ) {
+        if( x0 >= x1 || y0 >= y1 ) {
+            return;
+        }
+        // Shapes may cover one pixel beyond their bounds when antialiased.
+        float ex0 = Math.max( x0 - 1, mCx0 );
+        float ey0 = Math.max( y0 - 1, mCy0 );
+        float ex1 = Math.min( x1 + 1, mCx1 );
+        float ey1 = Math.min( y1 + 1, mCy1 );
+        if( ex0 >= ex1 || ey0 >= ey1 ) {
+            return;
+        }
+
+        float[] v = reserveStage( ShapeRenderer.STRIDE );
+        int n = mStageSize;
+        v[n   ] = x0;
+        v[n+ 1] = y0;
+        v[n+ 2] = x1;
+        v[n+ 3] = y1;
+        v[n+ 4] = mCx0;
+        v[n+ 5] = mCy0;
+        v[n+ 6] = mCx1;
+        v[n+ 7] = mCy1;
+        v[n+ 8] = mColor[0];
+        v[n+ 9] = mColor[1];
+        v[n+10] = mColor[2];
+        v[n+11] = mColor[3];
+        v[n+12] = radius;
+        v[n+13] = width;
+        mStageSize = n + ShapeRenderer.STRIDE;
+
+        // Borders are recorded as four bands so that they do not overlap what they enclose.
+        float t = Math.max( width, radius ) + 1;
+        if( width <= 0 || 2 * t >= Math.min( x1 - x0, y1 - y0 ) ) {
+            stageRegion( ex0, ey0, ex1, ey1 );
+        } else {
+            stageRegion( ex0, ey0, ex1, Math.min( y0 + t, ey1 ) );
+            stageRegion( ex0, Math.max( y1 - t, ey0 ), ex1, ey1 );
+            stageRegion( ex0, ey0, Math.min( x0 + t, ex1 ), ey1 );
+            stageRegion( Math.max( x1 - t, ex0 ), ey0, ex1, ey1 );
+        }
+    }
+
+    /**
+     * Stages an untextured convex polygon from {@link #mPoly}, in absolute
+     * coordinates, clipped to the current clip.
+     */
+    private void stagePolygon( int n ) {
+        float[] a = mPoly;
+        float[] b = mPoly2;
+        n = clipEdge( a, n, b, 0, mCx0,  1 );
+        n = clipEdge( b, n, a, 0, mCx1, -1 );
+        n = clipEdge( a, n, b, 1, mCy0,  1 );
+        n = clipEdge( b, n, a, 1, mCy1, -1 );
+        if( n < 3 ) {
+            return;
+        }
+
+        float[] v = reserveStage( ( n - 2 ) * 3 * STRIDE );
+        int pos = mStageSize;
+        for( int i = 1; i < n - 1; i++ ) {
+            pos = put( v, pos, a[0], a[1], 0, 0 );
+            pos = put( v, pos, a[i*2], a[i*2+1], 0, 0 );
+            pos = put( v, pos, a[i*2+2], a[i*2+3], 0, 0 );
+        }
+        mStageSize = pos;
+
+        float x0 = a[0];
+        float y0 = a[1];
+        float x1 = x0;
+        float y1 = y0;
+        for( int i = 1; i < n; i++ ) {
+            x0 = Math.min( x0, a[i*2] );
+            x1 = Math.max( x1, a[i*2] );
+            y0 = Math.min( y0, a[i*2+1] );
+            y1 = Math.max( y1, a[i*2+1] );
+        }
+        stageRegion( x0, y0, x1, y1 );
+    }
+
+    /**
+     * Clips polygon against one edge of the clip rect.
+     *
+     * @param axis 0 for x, 1 for y.
+     * @param sign 1 to keep points at or above {@code bound}, -1 to keep points at or below.
+     * @return number of points in output.
+     */
+    private static int clipEdge( float[] in, int n, float[] out, int axis, float bound, int sign ) {
+        int m = 0;
+        for( int i = 0; i < n; i++ ) {
+            int j = ( i + 1 ) % n;
+            float ai = ( in[i*2+axis] - bound ) * sign;
+            float aj = ( in[j*2+axis] - bound ) * sign;
+            if( ai >= 0 ) {
+                out[m*2  ] = in[i*2  ];
+                out[m*2+1] = in[i*2+1];
+                m++;
+            }
+            if( ( ai >= 0 ) != ( aj >= 0 ) ) {
+                float t = ai / ( ai - aj );
+                out[m*2  ] = in[i*2  ] + ( in[j*2  ] - in[i*2  ] ) * t;
+                out[m*2+1] = in[i*2+1] + ( in[j*2+1] - in[i*2+1] ) * t;
+                m++;
+            }
+        }
+        return m;
+    }
+
+
+    private float[] reserveStage( int n ) {
+        if( mStageSize + n > mStage.length ) {
+            mStage = Arrays.copyOf( mStage, Math.max( mStageSize + n, mStage.length * 2 ) );
+        }
+        return mStage;
+    }
+
+
+    private void stageRegion( float x0, float y0, float x1, float y1 ) {
+        if( x0 >= x1 || y0 >= y1 ) {
+            return;
+        }
+        int n = mStageRegion++;
+        if( n == mRegionGroup.length ) {
+            mRegionGroup  = Arrays.copyOf( mRegionGroup, n * 2 );
+            mRegionBounds = Arrays.copyOf( mRegionBounds, n * 8 );
+        }
+        mRegionBounds[n*4  ] = x0;
+        mRegionBounds[n*4+1] = y0;
+        mRegionBounds[n*4+2] = x1;
+        mRegionBounds[n*4+3] = y1;
+    }
+
+
+    private int put( float[] v, int n, float x, float y, float s, float t ) {
+        v[n  ] = x;
+        v[n+1] = y;
+        v[n+2] = s;
+        v[n+3] = t;
+        v[n+4] = mColor[0];
+        v[n+5] = mColor[1];
+        v[n+6] = mColor[2];
+        v[n+7] = mColor[3];
+        return n + STRIDE;
+    }
+
+    /**
+     * Finds the group the staged command should be added to, and records
+     * the regions of the command.
+     */
+    private Group group( Object material ) {
+        final int start = mRegionNum;
+        final int end   = mStageRegion;
+
+        // Most recent group that overlaps a region of command.
+        int floor = -1;
+        for( int k = start; k < end; k++ ) {
+            floor = Math.max( floor, overlap( k, floor ) );
+        }
+
+        int m = 0;
+        while( m < mMaterialNum && mMaterials[m] != material ) {
+            m++;
+        }
+
+        int idx;
+        if( m < mMaterialNum && mMaterialLast[m] >= floor ) {
+            idx = mMaterialLast[m];
+        } else {
+            idx = mGroupNum++;
+            if( idx == mGroups.size() ) {
+                mGroups.add( new Group() );
+            }
+            mGroups.get( idx ).mMaterial = material;
+            if( m == mMaterialNum ) {
+                if( m == mMaterials.length ) {
+                    mMaterials    = Arrays.copyOf( mMaterials, m * 2 );
+                    mMaterialLast = Arrays.copyOf( mMaterialLast, m * 2 );
+                }
+                mMaterials[m] = material;
+                mMaterialNum++;
+            }
+            mMaterialLast[m] = idx;
+        }
+
+        for( int k = start; k < end; k++ ) {
+            mRegionGroup[k] = idx;
+            addRegion( k );
+        }
+        mRegionNum = end;
+        return mGroups.get( idx );
+    }
+
+    /**
+     * @return most recent group above {@code floor} with a recorded region
+     *         that overlaps the given region, or {@code floor} if none.
+     */
+    private int overlap( int region, int floor ) {
+        final float[] b = mRegionBounds;
+        final float x0 = b[region*4  ];
+        final float y0 = b[region*4+1];
+        final float x1 = b[region*4+2];
+        final float y1 = b[region*4+3];
+        final int c0 = cellCol( x0 );
+        final int c1 = cellCol( x1 );
+        final int r0 = cellRow( y0 );
+        final int r1 = cellRow( y1 );
+
+        for( int r = r0; r <= r1; r++ ) {
+            int cell = r * mGridCols + c0;
+            for( int c = c0; c <= c1; c++, cell++ ) {
+                if( mCellStamp[cell] != mStamp ) {
+                    continue;
+                }
+                for( int node = mCellHead[cell]; node >= 0; node = mNodeNext[node] ) {
+                    int k = mNodeRegion[node];
+                    int i = k * 4;
+                    if( mRegionGroup[k] > floor &&
+                        b[i  ] < x1 && b[i+2] > x0 &&
+                        b[i+1] < y1 && b[i+3] > y0 )
+                    {
+                        floor = mRegionGroup[k];
+                    }
+                }
+            }
+        }
+        return floor;
+    }
+
+
+    private void addRegion( int region ) {
+        final float[] b = mRegionBounds;
+        final int c0 = cellCol( b[region*4  ] );
+        final int c1 = cellCol( b[region*4+2] );
+        final int r0 = cellRow( b[region*4+1] );
+        final int r1 = cellRow( b[region*4+3] );
+
+        int need = mNodeNum + ( c1 - c0 + 1 ) * ( r1 - r0 + 1 );
+        if( need > mNodeRegion.length ) {
+            int len     = Math.max( need, mNodeRegion.length * 2 );
+            mNodeRegion = Arrays.copyOf( mNodeRegion, len );
+            mNodeNext   = Arrays.copyOf( mNodeNext, len );
+        }
+        for( int r = r0; r <= r1; r++ ) {
+            int cell = r * mGridCols + c0;
+            for( int c = c0; c <= c1; c++, cell++ ) {
+                int node = mNodeNum++;
+                mNodeRegion[node] = region;
+                mNodeNext[node]   = mCellStamp[cell] == mStamp ? mCellHead[cell] : -1;
+                mCellHead[cell]   = node;
+                mCellStamp[cell]  = mStamp;
+            }
+        }
+    }
+
+
+    private void resetGrid( Rect area ) {
+        mGridX0   = area.x0;
+        mGridY0   = area.y0;
+        mGridCols = Math.max( 1, ( area.width()  >> CELL_SHIFT ) + 1 );
+        mGridRows = Math.max( 1, ( area.height() >> CELL_SHIFT ) + 1 );
+        int n = mGridCols * mGridRows;
+        if( mCellHead.length < n ) {
+            mCellHead  = new int[n];
+            mCellStamp = new int[n];
+            mStamp     = 1;
+        }
+    }
+
+
+    private int cellCol( float x ) {
+        int c = ( (int)Math.floor( x ) - mGridX0 ) >> CELL_SHIFT;
+        return c < 0 ? 0 : c >= mGridCols ? mGridCols - 1 : c;
+    }
+
+
+    private int cellRow( float y ) {
+        int r = ( (int)Math.floor( y ) - mGridY0 ) >> CELL_SHIFT;
+        return r < 0 ? 0 : r >= mGridRows ? mGridRows - 1 : r;
+    }
+
+
+
+    private static final class Group {
+        Object  mMaterial = null;
+        float[] mVerts    = new float[STRIDE * 6 * 16];
+        int     mSize     = 0;
+
+        float[] reserve( int n ) {
+            if( mSize + n > mVerts.length ) {
+                mVerts = Arrays.copyOf( mVerts, Math.max( mSize + n, mVerts.length * 2 ) );
+            }
+            return mVerts;
+        }
+    }
+
+    /**
+     * Receives the glyph quads that FontTexture writes to a DrawStream
+     * and stages them in the batch.
+     */
+    private static final class GlyphRecorder extends DrawStream {
+
+        final PaintBatch mBatch;
+        final DrawEnv mEnv = new DrawEnv() {
+            @Override
+            public DrawStream drawStream() {
+                return GlyphRecorder.this;
+            }
+        };
+
+        int mCount = 0;
+
+        private float mS;
+        private float mT;
+        private final float[] mQuad = new float[8];
+
+        GlyphRecorder( PaintBatch batch ) {
+            super( 1024 );
+            mBatch = batch;
+        }
+
+        @Override
+        public void tex( float s, float t, float r, float q ) {
+            mS = s;
+            mT = t;
+        }
+
+        @Override
+        public void vert( float x, float y, float z ) {
+            // FontTexture writes lower-left, lower-right, upper-right, upper-left.
+            float[] q = mQuad;
+            switch( mCount++ & 3 ) {
+            case 0:
+                q[0] = x;
+                q[1] = y;
+                q[2] = mS;
+                q[3] = mT;
+                break;
+            case 2:
+                q[4] = x;
+                q[5] = y;
+                q[6] = mS;
+                q[7] = mT;
+                break;
+            case 3:
+                mBatch.stageRect( q[0], q[1], q[4], q[5], q[2], q[3], q[6], q[7] );
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+}
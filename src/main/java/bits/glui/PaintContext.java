@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.Arrays;
+
+import bits.draw3d.Rect;
+
+
+/**
+ * Per-frame paint state that is shared by every component in a paint pass.
+ * GEventController installs a context on the painting thread for the
+ * duration of {@link GEventController#processPaint}; components retrieve it
+ * with {@link #current()}, which returns null when painting outside a
+ * controller.
+ * <p>
+ * The context also tracks the effective clip while painting: the intersection
+ * of the damage clip and the absolute bounds of every panel whose children are
+ * being painted. Children outside the effective clip are culled, along with
+ * their subtrees. The effective clip is only used for culling: children that
+ * are painted are scissored to the {@link #paintClip()}, so children that
+ * partly overflow their parents are drawn in full.
+ *
+ * @author Philip DeCamp
+ */
+final class PaintContext {
+
+    private static final ThreadLocal<PaintContext> CURRENT = new ThreadLocal<PaintContext>();
+
+
+    static PaintContext current() {
+        return CURRENT.get();
+    }
+
+
+    static PaintContext install( PaintContext context ) {
+        PaintContext prev = CURRENT.get();
+        CURRENT.set( context );
+        return prev;
+    }
+
+
+    /**
+     * Area being repainted, in absolute coordinates. Components outside the
+     * clip may be skipped. Null when the entire tree is being painted.
+     */
+    Rect mClip = null;
+
+    /**
+     * Layers for cached panels. Null if panels should not be cached.
+     */
+    LayerCache mLayers = null;
+
+    /**
+     * Glyph geometry of labels. Null if labels should generate glyphs each paint.
+     */
+    GlyphRunCache mGlyphRuns = null;
+
+    /**
+     * Batch that components should paint into. Null if components should paint directly.
+     */
+    PaintBatch mBatch = null;
+
+    /** Number of components painted by their parents since last reset. */
+    int mPainted = 0;
+    /** Number of child subtrees culled since last reset. */
+    int mCulled  = 0;
+    /**
+     * Number of draw calls since last reset. Components that paint directly
+     * are counted as one draw call each.
+     */
+    int mDrawCalls = 0;
+
+    private Rect[] mClipStack = new Rect[16];
+    // Index of the nearest root clip at or below each stack entry, or -1.
+    private int[]  mRootStack = new int[16];
+    private int    mClipDepth = 0;
+
+
+    void resetCounts() {
+        mPainted   = 0;
+        mCulled    = 0;
+        mDrawCalls = 0;
+    }
+
+    /**
+     * Pushes the bounds of a panel whose children are about to be painted.
+     *
+     * @param absBounds Absolute bounds of panel.
+     * @return new effective clip, in absolute coordinates. May be empty. Must not be modified.
+     */
+    Rect pushClip( Rect absBounds ) {
+        Rect r = nextClip();
+        Rect parent = mClipDepth > 0 ? mClipStack[mClipDepth - 1] : mClip;
+        if( parent == null ) {
+            r.set( absBounds );
+        } else {
+            // Rect.intersect() does not handle rects that start before parent.
+            r.x0 = Math.max( absBounds.x0, parent.x0 );
+            r.y0 = Math.max( absBounds.y0, parent.y0 );
+            r.x1 = Math.max( r.x0, Math.min( absBounds.x1, parent.x1 ) );
+            r.y1 = Math.max( r.y0, Math.min( absBounds.y1, parent.y1 ) );
+        }
+        mRootStack[mClipDepth] = mClipDepth > 0 ? mRootStack[mClipDepth - 1] : -1;
+        mClipDepth++;
+        return r;
+    }
+
+
+    /**
+     * Pushes the bounds of a panel that is being painted on its own, such as
+     * into a cached layer, without intersecting the clips of its ancestors.
+     *
+     * @param absBounds Absolute bounds of panel.
+     */
+    void pushRootClip( Rect absBounds ) {
+        nextClip().set( absBounds );
+        mRootStack[mClipDepth] = mClipDepth;
+        mClipDepth++;
+    }
+
+
+    void popClip() {
+        mClipDepth--;
+    }
+
+    /**
+     * @return current effective clip in absolute coordinates, or {@link #mClip}
+     *         if no panel is painting its children.
+     */
+    Rect clip() {
+        return mClipDepth > 0 ? mClipStack[mClipDepth - 1] : mClip;
+    }
+
+    /**
+     * @return area components may currently draw in, in absolute coordinates:
+     *         the bounds of the panel being painted into a layer, if any, or else
+     *         {@link #mClip}. Unlike {@link #clip()}, does not include the bounds
+     *         of ancestors.
+     */
+    Rect paintClip() {
+        int root = mClipDepth > 0 ? mRootStack[mClipDepth - 1] : -1;
+        return root >= 0 ? mClipStack[root] : mClip;
+    }
+
+
+    private Rect nextClip() {
+        if( mClipDepth == mClipStack.length ) {
+            mClipStack = Arrays.copyOf( mClipStack, mClipDepth * 2 );
+            mRootStack = Arrays.copyOf( mRootStack, mClipDepth * 2 );
+        }
+        Rect r = mClipStack[mClipDepth];
+        if( r == null ) {
+            r = new Rect();
+            mClipStack[mClipDepth] = r;
+        }
+        return r;
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import bits.draw3d.DrawEnv;
+import bits.draw3d.DrawStream;
+import bits.draw3d.Texture2;
+import bits.draw3d.nodes.FramebufferNode;
+
+import static com.jogamp.opengl.GL2GL3.*;
+
+
+/**
+ * Offscreen RGBA color buffer that components can be painted into and
+ * later composited onto the current framebuffer. Contents are stored
+ * with premultiplied alpha, which is what the default GUI blend function
+ * produces when painting onto a buffer cleared to zero.
+ * <p>
+ * All methods must be called on the GL thread.
+ *
+ * @author Philip DeCamp
+ */
+final class PaintLayer {
+
+    private final Texture2        mTex = new Texture2();
+    private final FramebufferNode mFbo = new FramebufferNode();
+
+    private int mWidth  = -1;
+    private int mHeight = -1;
+
+
+    PaintLayer() {
+        mTex.format( GL_RGBA8, GL_RGBA, GL_UNSIGNED_BYTE );
+        // Linear, so that layers composited with fractional offsets or scales
+        // move smoothly. Identical to nearest when drawn at pixel alignment.
+        mTex.param( GL_TEXTURE_MIN_FILTER, GL_LINEAR );
+        mTex.param( GL_TEXTURE_MAG_FILTER, GL_LINEAR );
+        mTex.param( GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE );
+        mTex.param( GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE );
+        mFbo.attach( GL_COLOR_ATTACHMENT0, mTex );
+    }
+
+
+    public int width() {
+        return mWidth;
+    }
+
+
+    public int height() {
+        return mHeight;
+    }
+
+    /**
+     * @return true iff layer was reallocated and contents are undefined.
+     */
+    public boolean size( int w, int h ) {
+        if( w == mWidth && h == mHeight ) {
+            return false;
+        }
+        mWidth  = w;
+        mHeight = h;
+        mFbo.size( w, h );
+        return true;
+    }
+
+
+    public void pushDraw( DrawEnv d ) {
+        mFbo.pushDraw( d );
+    }
+
+
+    public void popDraw( DrawEnv d ) {
+        mFbo.popDraw( d );
+    }
+
+    /**
+     * Draws the entire layer as a quad in the current view.
+     *
+     * @param alpha Opacity to apply to layer.
+     */
+    public void composite( DrawEnv d, float x0, float y0, float x1, float y1, float alpha ) {
+        d.mBlend.push();
+        d.mBlend.apply( true, GL_ONE, GL_ONE_MINUS_SRC_ALPHA );
+        mTex.bind( d, 0 );
+
+        DrawStream s = d.drawStream();
+        s.config( true, true, false );
+        s.beginQuads();
+        s.color( alpha, alpha, alpha, alpha );
+        s.tex( 0, 0 );
+        s.vert( x0, y0 );
+        s.tex( 1, 0 );
+        s.vert( x1, y0 );
+        s.tex( 1, 1 );
+        s.vert( x1, y1 );
+        s.tex( 0, 1 );
+        s.vert( x0, y1 );
+        s.end();
+
+        mTex.unbind( d, 0 );
+        d.mBlend.pop();
+    }
+
+    /**
+     * Releases GL resources. Layer may not be used afterward.
+     */
+    public void dispose( DrawEnv d ) {
+        mFbo.dispose( d );
+        mWidth  = -1;
+        mHeight = -1;
+    }
+
+}
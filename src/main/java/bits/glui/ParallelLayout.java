@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Lays out a component tree on a ForkJoinPool. Each GPanel is laid out by its
+ * own GLayout first, and then the subtrees of its children are laid out in
+ * parallel. Components that are not GPanels, or that override
+ * {@link GPanel#treeProcessLayout()}, have their subtree laid out serially.
+ * <p>
+ * Layouts, and overrides of {@code treeProcessLayout()}, run on the worker
+ * threads of the pool rather than the dispatch thread. Component and ancestor
+ * events fired during layout are queued, so their listeners still run on the
+ * dispatch thread. The calling thread blocks until the entire tree is done, so
+ * all bounds and flags written during layout are visible to it afterward.
+ *
+ * @author Philip DeCamp
+ */
+final class ParallelLayout {
+
+    private static final ClassValue<Boolean> SPLITTABLE = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue( Class<?> clazz ) {
+            try {
+                return clazz.getMethod( "treeProcessLayout" ).getDeclaringClass() == GPanel.class;
+            } catch( NoSuchMethodException ex ) {
+                return false;
+            }
+        }
+    };
+
+
+    static void run( ForkJoinPool pool, GComponent root ) {
+        pool.invoke( new Task( root ) );
+    }
+
+
+    private static final class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final GComponent mComp;
+
+        Task( GComponent comp ) {
+            mComp = comp;
+        }
+
+        @Override
+        protected void compute() {
+            GComponent comp = mComp;
+            if( !( comp instanceof GPanel ) || !SPLITTABLE.get( comp.getClass() ) ) {
+                comp.treeProcessLayout();
+                return;
+            }
+
+            GComponent[] children = ((GPanel)comp).layoutSelf();
+            switch( children.length ) {
+            case 0:
+                return;
+            case 1:
+                new Task( children[0] ).compute();
+                return;
+            default:
+                Task[] tasks = new Task[children.length];
+                for( int i = 0; i < tasks.length; i++ ) {
+                    tasks[i] = new Task( children[i] );
+                }
+                invokeAll( tasks );
+            }
+        }
+    }
+
+}
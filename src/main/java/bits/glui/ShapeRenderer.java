@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.nio.ByteBuffer;
+
+import bits.draw3d.AutoloadProgram;
+import bits.draw3d.Bo;
+import bits.draw3d.DrawEnv;
+import bits.draw3d.DrawStream;
+import bits.draw3d.DrawUtil;
+import bits.math3d.Vec4;
+import com.jogamp.common.util.VersionNumber;
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.GLContext;
+
+import static com.jogamp.opengl.GL3.*;
+
+
+/**
+ * Draws filled and outlined rectangles, optionally with rounded corners, with
+ * one instanced draw call. Each shape is one instance, and coverage is computed
+ * per fragment from the shape's signed distance, so edges are antialiased
+ * without multisampling and borders of any width need no line state.
+ * <p>
+ * Each instance is {@link #STRIDE} floats:
+ * <pre>
+ *   x0, y0, x1, y1       Shape bounds.
+ *   cx0, cy0, cx1, cy1   Clip bounds. Shape is not drawn outside clip.
+ *   r, g, b, a           Color.
+ *   radius               Corner radius.
+ *   width                Border width, or 0 to fill.
+ * </pre>
+ * Coordinates are transformed by the current projection and view, which
+ * must map one unit to one pixel for antialiasing to be one pixel wide.
+ * <p>
+ * The shaders and instanced drawing require OpenGL 3.3. Callers must check
+ * {@link #isSupported(DrawEnv)} and draw shapes as triangles otherwise.
+ * Only batches draw with this renderer, since one draw call per shape would
+ * cost more than drawing triangles. Components that paint directly draw their
+ * shapes as triangles through the static methods of this class.
+ * All methods must be called on the GL thread.
+ *
+ * @author Philip DeCamp
+ */
+final class ShapeRenderer {
+
+    static final int STRIDE = 14;
+
+    private static final VersionNumber GL_3_3 = new VersionNumber( 3, 3, 0 );
+
+    private static final String VERT_SHADER =
+        "#version 330\n" +
+        "\n" +
+        "uniform mat4 PROJ_VIEW_MAT;\n" +
+        "\n" +
+        "layout( location = 0 ) in vec4 inRect;\n" +
+        "layout( location = 1 ) in vec4 inClip;\n" +
+        "layout( location = 2 ) in vec4 inColor;\n" +
+        "layout( location = 3 ) in vec2 inShape;\n" +
+        "\n" +
+        "smooth out vec2 pos;\n" +
+        "flat out vec4 rect;\n" +
+        "flat out vec4 color;\n" +
+        "flat out vec2 shape;\n" +
+        "\n" +
+        "void main() {\n" +
+        "    // Triangle strip over the shape, one pixel larger for antialiasing and clipped.\n" +
+        "    vec2 corner = vec2( gl_VertexID & 1, gl_VertexID >> 1 );\n" +
+        "    vec2 p = mix( inRect.xy - 1.0, inRect.zw + 1.0, corner );\n" +
+        "    p = clamp( p, inClip.xy, inClip.zw );\n" +
+        "    pos   = p;\n" +
+        "    rect  = inRect;\n" +
+        "    color = inColor;\n" +
+        "    shape = inShape;\n" +
+        "    gl_Position = PROJ_VIEW_MAT * vec4( p, 0.0, 1.0 );\n" +
+        "}\n";
+
+    private static final String FRAG_SHADER =
+        "#version 330\n" +
+        "\n" +
+        "smooth in vec2 pos;\n" +
+        "flat in vec4 rect;\n" +
+        "flat in vec4 color;\n" +
+        "flat in vec2 shape;\n" +
+        "\n" +
+        "out vec4 fragColor;\n" +
+        "\n" +
+        "void main() {\n" +
+        "    vec2 halfSize = 0.5 * ( rect.zw - rect.xy );\n" +
+        "    float r = min( shape.x, min( halfSize.x, halfSize.y ) );\n" +
+        "    vec2 q = abs( pos - 0.5 * ( rect.xy + rect.zw ) ) - halfSize + r;\n" +
+        "    float dist = length( max( q, 0.0 ) ) + min( max( q.x, q.y ), 0.0 ) - r;\n" +
+        "    float a = clamp( 0.5 - dist, 0.0, 1.0 );\n" +
+        "    if( shape.y > 0.0 ) {\n" +
+        "        a *= clamp( 0.5 + dist + shape.y, 0.0, 1.0 );\n" +
+        "    }\n" +
+        "    fragColor = vec4( color.rgb, color.a * a );\n" +
+        "    if( fragColor.a <= 0.0 ) {\n" +
+        "        discard;\n" +
+        "    }\n" +
+        "}\n";
+
+
+    private final Bo    mVbo = Bo.createArrayBuffer( GL_STREAM_DRAW );
+    private final int[] mVao = { 0 };
+
+    private AutoloadProgram mProgram   = null;
+    private ByteBuffer      mBuf       = null;
+    private boolean         mChecked   = false;
+    private boolean         mSupported = false;
+
+
+    /**
+     * @return true iff context provides OpenGL 3.3 or later.
+     */
+    static boolean isSupported( GL gl ) {
+        GLContext context = gl.getContext();
+        return context != null && context.getGLVersionNumber().compareTo( GL_3_3 ) >= 0;
+    }
+
+    /**
+     * Fills a rectangle with triangles in the coordinates of the current view.
+     */
+    static void fillRect( DrawEnv d, Vec4 color, float x0, float y0, float x1, float y1 ) {
+        DrawStream s = d.drawStream();
+        s.config( true, false, false );
+        s.color( color );
+        s.beginTris();
+        quad( s, x0, y0, x1, y1 );
+        s.end();
+    }
+
+    /**
+     * Outlines a rectangle with one pixel lines in the coordinates of the current
+     * view, as a line loop through its corners would, with triangles.
+     */
+    static void strokeRect( DrawEnv d, Vec4 color, float x0, float y0, float x1, float y1 ) {
+        DrawStream s = d.drawStream();
+        s.config( true, false, false );
+        s.color( color );
+        s.beginTris();
+        quad( s, x0, y0, x1 + 1, y0 + 1 );
+        quad( s, x0, y1, x1 + 1, y1 + 1 );
+        quad( s, x0, y0 + 1, x0 + 1, y1 );
+        quad( s, x1, y0 + 1, x1 + 1, y1 );
+        s.end();
+    }
+
+    /**
+     * Draws a one pixel wide line with triangles in the coordinates of the current view.
+     */
+    static void line( DrawEnv d, Vec4 color, float x0, float y0, float x1, float y1 ) {
+        if( x0 == x1 || y0 == y1 ) {
+            fillRect( d, color, Math.min( x0, x1 ), Math.min( y0, y1 ), Math.max( x0, x1 ) + 1, Math.max( y0, y1 ) + 1 );
+            return;
+        }
+        float dx  = x1 - x0;
+        float dy  = y1 - y0;
+        float len = (float)Math.sqrt( dx * dx + dy * dy );
+        float nx  = -dy / len * 0.5f;
+        float ny  =  dx / len * 0.5f;
+
+        DrawStream s = d.drawStream();
+        s.config( true, false, false );
+        s.color( color );
+        s.beginTris();
+        s.vert( x0 + nx, y0 + ny );
+        s.vert( x1 + nx, y1 + ny );
+        s.vert( x1 - nx, y1 - ny );
+        s.vert( x0 + nx, y0 + ny );
+        s.vert( x1 - nx, y1 - ny );
+        s.vert( x0 - nx, y0 - ny );
+        s.end();
+    }
+
+    /**
+     * Writes two triangles covering a rectangle.
+     */
+    static void quad( DrawStream s, float x0, float y0, float x1, float y1 ) {
+        if( x0 >= x1 || y0 >= y1 ) {
+            return;
+        }
+        s.vert( x0, y0 );
+        s.vert( x1, y0 );
+        s.vert( x1, y1 );
+        s.vert( x0, y0 );
+        s.vert( x1, y1 );
+        s.vert( x0, y1 );
+    }
+
+
+    /**
+     * @return true iff the context of {@code d} can run this renderer.
+     */
+    public boolean isSupported( DrawEnv d ) {
+        if( !mChecked ) {
+            mSupported = isSupported( d.mGl );
+            mChecked   = true;
+        }
+        return mSupported;
+    }
+
+    /**
+     * @param inst  Instance data.
+     * @param count Number of instances.
+     */
+    public void draw( DrawEnv d, float[] inst, int count ) {
+        if( count <= 0 ) {
+            return;
+        }
+
+        final GL3 gl = d.mGl;
+        int bytes = count * STRIDE * 4;
+        if( mBuf == null || mBuf.capacity() < bytes ) {
+            mBuf = DrawUtil.alloc( Math.max( bytes, mBuf == null ? 16 * 1024 : mBuf.capacity() * 2 ) );
+        }
+        mBuf.clear();
+        mBuf.asFloatBuffer().put( inst, 0, count * STRIDE );
+        mBuf.limit( bytes );
+        mVbo.buffer( mBuf );
+
+        if( mProgram == null ) {
+            mProgram = new AutoloadProgram();
+            mProgram.addShader( d.mShaderMan.loadSource( GL_VERTEX_SHADER, VERT_SHADER ) );
+            mProgram.addShader( d.mShaderMan.loadSource( GL_FRAGMENT_SHADER, FRAG_SHADER ) );
+            mProgram.init( d );
+        }
+
+        d.mBlend.push();
+        d.mBlend.apply( true );
+        mProgram.bind( d );
+        if( mVao[0] == 0 ) {
+            gl.glGenVertexArrays( 1, mVao, 0 );
+            gl.glBindVertexArray( mVao[0] );
+            mVbo.bind( d );
+            attribute( gl, 0, 4, 0 );
+            attribute( gl, 1, 4, 4 );
+            attribute( gl, 2, 4, 8 );
+            attribute( gl, 3, 2, 12 );
+        } else {
+            gl.glBindVertexArray( mVao[0] );
+            mVbo.bind( d );
+        }
+        gl.glDrawArraysInstanced( GL_TRIANGLE_STRIP, 0, 4, count );
+        gl.glBindVertexArray( 0 );
+        mVbo.unbind( d );
+        mProgram.unbind( d );
+        d.mBlend.pop();
+    }
+
+
+    public void dispose( DrawEnv d ) {
+        mChecked = false;
+        if( mVao[0] != 0 ) {
+            d.mGl.glDeleteVertexArrays( 1, mVao, 0 );
+            mVao[0] = 0;
+        }
+        mVbo.dispose( d );
+        if( mProgram != null ) {
+            mProgram.dispose( d );
+            mProgram = null;
+        }
+    }
+
+
+    private static void attribute( GL3 gl, int loc, int size, int offset ) {
+        gl.glEnableVertexAttribArray( loc );
+        gl.glVertexAttribPointer( loc, size, GL_FLOAT, false, STRIDE * 4, offset * 4 );
+        gl.glVertexAttribDivisor( loc, 1 );
+    }
+
+}
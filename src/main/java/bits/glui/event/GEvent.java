@@ -7,6 +7,10 @@
 package bits.glui.event;
 
 /**
+ * Events may be reused after dispatch if pooled input events are enabled on
+ * the event controller. Listeners that keep a reference to an input event
+ * past the end of the listener method must keep a copy instead.
+ *
  * @author decamp
  */
 public class GEvent {
@@ -51,22 +51,22 @@ public abstract class GInputEvent extends GEvent {
 
 
     public boolean isShiftDown() {
-        return (mModifiers & SHIFT_DOWN_MASK) != 0;
+        return (getModifiers() & SHIFT_DOWN_MASK) != 0;
     }
 
 
     public boolean isControlDown() {
-        return (mModifiers & CTRL_DOWN_MASK) != 0;
+        return (getModifiers() & CTRL_DOWN_MASK) != 0;
     }
 
 
     public boolean isAltDown() {
-        return (mModifiers & ALT_DOWN_MASK) != 0;
+        return (getModifiers() & ALT_DOWN_MASK) != 0;
     }
 
 
     public boolean isMetaDown() {
-        return (mModifiers & META_DOWN_MASK) != 0;
+        return (getModifiers() & META_DOWN_MASK) != 0;
     }
 
     @Override
@@ -247,6 +247,19 @@ public class GKeyEvent extends GInputEvent {
         mKeyChar     = keyChar;
         mKeyLocation = keyLocation;
     }
+
+    /**
+     * Copy constructor, for listeners that need to keep an event.
+     */
+    public GKeyEvent( GKeyEvent copy ) {
+        this( (GComponent)copy.source(),
+              copy.id(),
+              copy.getTimestampMicros(),
+              copy.getModifiers(),
+              copy.getKeyCode(),
+              copy.getKeyChar(),
+              copy.getKeyLocation() );
+    }
     
     
     
@@ -266,7 +279,7 @@ public class GKeyEvent extends GInputEvent {
 
     
     public boolean isActionKey() {
-        switch ( mKeyCode ) {
+        switch ( getKeyCode() ) {
         case VK_HOME:
         case VK_END:
         case VK_PAGE_UP:
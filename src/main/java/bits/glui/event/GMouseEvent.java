@@ -56,6 +56,21 @@ public class GMouseEvent extends GInputEvent {
         mButton = button;
     }
 
+    /**
+     * Copy constructor, for listeners that need to keep an event.
+     */
+    public GMouseEvent( GMouseEvent copy ) {
+        this( (GComponent)copy.source(),
+              copy.id(),
+              copy.getTimestampMicros(),
+              copy.getModifiers(),
+              copy.getX(),
+              copy.getY(),
+              copy.getClickCount(),
+              copy.isPopupTrigger(),
+              copy.getButton() );
+    }
+
 
     public int getButton() {
         return mButton;
@@ -44,6 +44,23 @@ public class GMouseWheelEvent extends GMouseEvent {
         mScrollAmount = scrollAmount;
         mWheelRotation = wheelRotation;
     }
+
+    /**
+     * Copy constructor, for listeners that need to keep an event.
+     */
+    public GMouseWheelEvent( GMouseWheelEvent copy ) {
+        this( (GComponent)copy.source(),
+              copy.id(),
+              copy.getTimestampMicros(),
+              copy.getModifiers(),
+              copy.getX(),
+              copy.getY(),
+              copy.getClickCount(),
+              copy.isPopupTrigger(),
+              copy.getScrollType(),
+              copy.getScrollAmount(),
+              copy.getWheelRotation() );
+    }
     
     
     
@@ -63,7 +80,7 @@ public class GMouseWheelEvent extends GMouseEvent {
     
     
     public int getUnitsToScroll() {
-        return mScrollAmount * mWheelRotation;
+        return getScrollAmount() * getWheelRotation();
     }
     
 
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Compares dispatching input one record at a time, as the default
+ * {@link GHumanInputController#processRecords} does, against the batched
+ * implementation of the GEventController input chain. Both process events
+ * after every batch. Also checks that both deliver the same number of events.
+ *
+ * Usage: BatchInputBench [journal|-] [batch] [trials]
+ *
+ * @author Philip DeCamp
+ */
+public class BatchInputBench {
+
+    public static void main( String[] args ) throws Exception {
+        File file;
+        if( args.length > 0 && !args[0].equals( "-" ) ) {
+            file = new File( args[0] );
+        } else {
+            file = File.createTempFile( "glui", ".journal" );
+            file.deleteOnExit();
+            InputReplayBench.synthesize( file, 200000 );
+        }
+        int batch  = args.length > 1 ? Integer.parseInt( args[1] ) : 256;
+        int trials = args.length > 2 ? Integer.parseInt( args[2] ) : 5;
+
+        GInputPlayer player = new GInputPlayer( file );
+        int num = player.recordCount();
+        ByteBuffer buf = ByteBuffer.allocateDirect( num * GInputRecord.BYTES ).order( ByteOrder.LITTLE_ENDIAN );
+        GInputRecord[] recs = new GInputRecord[num];
+        for( int i = 0; i < num; i++ ) {
+            recs[i] = new GInputRecord();
+            player.next( recs[i] );
+            recs[i].write( buf );
+        }
+        player.close();
+        buf.flip();
+
+        System.out.println( "records: " + num + "   batch: " + batch );
+        for( int t = 0; t < trials; t++ ) {
+            AtomicLong singleCount = new AtomicLong();
+            GEventController cont = InputReplayBench.createController( singleCount );
+            GHumanInputController input = cont.humanInputController();
+            long t0 = System.nanoTime();
+            for( int i = 0; i < num; i += batch ) {
+                int end = Math.min( num, i + batch );
+                for( int j = i; j < end; j++ ) {
+                    recs[j].dispatch( input );
+                }
+                cont.processEvents();
+            }
+            long t1 = System.nanoTime();
+
+            AtomicLong batchCount = new AtomicLong();
+            cont  = InputReplayBench.createController( batchCount );
+            input = cont.humanInputController();
+            ByteBuffer b = buf.duplicate().order( ByteOrder.LITTLE_ENDIAN );
+            long t2 = System.nanoTime();
+            for( int i = 0; i < num; i += batch ) {
+                int end = Math.min( num, i + batch );
+                b.limit( end * GInputRecord.BYTES );
+                input.processRecords( b, null );
+                cont.processEvents();
+            }
+            long t3 = System.nanoTime();
+
+            if( singleCount.get() != batchCount.get() ) {
+                throw new IllegalStateException( "Failed: " + singleCount.get() + " events per record, " +
+                                                 batchCount.get() + " batched" );
+            }
+
+            double a = num / ( ( t1 - t0 ) / 1000000.0 );
+            double c = num / ( ( t3 - t2 ) / 1000000.0 );
+            System.out.format( "trial %d   single %8.0f krecords/s   batched %8.0f krecords/s   ratio %.2f%n",
+                               t, a, c, c / a );
+        }
+        System.out.println( "event count check passed" );
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import bits.draw3d.DrawEnv;
+import bits.draw3d.Rect;
+
+
+/**
+ * Paints a grid of labels, buttons, check boxes and text fields into a
+ * PaintBatch, without GL, and reports the time to record each frame and the
+ * number of draw calls the batch would make. Unbatched, each label makes two
+ * draw calls and each check box or text field several more. Also checks that
+ * overlapping components split batches so they are drawn in order.
+ *
+ * Usage: BatchPaintBench [components] [frames] [trials]
+ *
+ * @author Philip DeCamp
+ */
+public class BatchPaintBench {
+
+    private static final int W = 1920;
+    private static final int H = 1080;
+
+
+    public static void main( String[] args ) {
+        int size   = args.length > 0 ? Integer.parseInt( args[0] ) : 2000;
+        int frames = args.length > 1 ? Integer.parseInt( args[1] ) : 100;
+        int trials = args.length > 2 ? Integer.parseInt( args[2] ) : 5;
+
+        GEventController cont = new GEventController( null, null );
+        GLayeredPanel root = cont.pane();
+        root.setBounds( 0, 0, W, H );
+        int cols = 40;
+        int cw   = W / cols;
+        int ch   = 20;
+        for( int i = 0; i < size; i++ ) {
+            GPanel p;
+            switch( i % 4 ) {
+            case 0:
+                p = new GButton( "b" + i );
+                break;
+            case 1:
+                p = new GCheckBox( "c" + i );
+                break;
+            case 2:
+                p = new GTextField( 16, "t" + i );
+                break;
+            default:
+                p = new GLabel( "label " + i );
+                break;
+            }
+            p.setBackground( 0.2f, 0.2f, 0.2f, 1f );
+            p.setBounds( i % cols * cw, i / cols % ( H / ch ) * ch, cw, ch );
+            root.addChild( p );
+        }
+        cont.processEvents();
+
+        DrawEnv d = new DrawEnv();
+        d.mContextViewport.set( new Rect( 0, 0, W, H ) );
+        PaintBatch batch = new PaintBatch();
+        PaintContext pc  = new PaintContext();
+        pc.mBatch = batch;
+
+        System.out.println( "components: " + size );
+        for( int i = 0; i < trials; i++ ) {
+            int groups = 0;
+            long t0 = System.nanoTime();
+            for( int f = 0; f < frames; f++ ) {
+                groups = record( root, d, pc, batch );
+            }
+            long t1 = System.nanoTime();
+            System.out.format( "trial %d   %8.0f us/frame   draw calls: %d%n",
+                               i, ( t1 - t0 ) / 1000.0 / frames, groups );
+        }
+
+        checkOverlap();
+        System.out.println( "overlap check passed" );
+    }
+
+
+    static int record( GComponent root, DrawEnv d, PaintContext pc, PaintBatch batch ) {
+        PaintContext prev = PaintContext.install( pc );
+        try {
+            Rect r = new Rect();
+            root.getAbsoluteBounds( r );
+            batch.view( d, r, null );
+            root.processPaint( d );
+            return batch.groups();
+        } finally {
+            batch.clear();
+            PaintContext.install( prev );
+        }
+    }
+
+
+    static void checkOverlap() {
+        DrawEnv d = new DrawEnv();
+        d.mContextViewport.set( new Rect( 0, 0, W, H ) );
+        PaintBatch batch = new PaintBatch();
+
+        // Fills, borders and axis-aligned lines are shapes, and share one group.
+        for( int i = 0; i < 10; i++ ) {
+            batch.view( d, new Rect( i * 100, 0, i * 100 + 50, 50 ), null );
+            batch.fillRect( 0, 0, 50, 50 );
+            batch.fillRoundRect( 5, 5, 45, 45, 4 );
+            batch.strokeRect( 1, 1, 49, 49 );
+            batch.line( 0, 10, 50, 10 );
+        }
+        check( batch.groups() == 1, "shapes in one group: " + batch.groups() );
+
+        // Diagonal lines are triangles, and overlapping shapes after them start a new group.
+        batch.clear();
+        for( int i = 0; i < 10; i++ ) {
+            batch.view( d, new Rect( i * 100, 0, i * 100 + 50, 50 ), null );
+            batch.fillRect( 0, 0, 50, 50 );
+            batch.line( 0, 0, 50, 50 );
+        }
+        check( batch.groups() == 2, "disjoint fills and lines in two groups: " + batch.groups() );
+        batch.fillRect( 10, 10, 20, 20 );
+        check( batch.groups() == 3, "fill over line" );
+
+        // Borders do not overlap what they enclose.
+        batch.clear();
+        batch.view( d, new Rect( 0, 0, 100, 100 ), null );
+        batch.line( 20, 20, 80, 80 );
+        batch.strokeRect( 0, 0, 99, 99 );
+        batch.line( 30, 70, 70, 30 );
+        check( batch.groups() == 2, "line inside border: " + batch.groups() );
+
+        // Quads clipped away entirely add nothing.
+        batch.clear();
+        batch.view( d, new Rect( 0, 0, 50, 50 ), new Rect( 100, 100, 200, 200 ) );
+        batch.fillRect( 0, 0, 50, 50 );
+        check( batch.groups() == 0, "clipped quad" );
+    }
+
+
+    private static void check( boolean cond, String msg ) {
+        if( !cond ) {
+            throw new IllegalStateException( "Failed: " + msg );
+        }
+    }
+
+}
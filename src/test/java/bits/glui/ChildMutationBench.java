@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import bits.draw3d.Rect;
+
+
+/**
+ * Runs a painter thread and a mutator thread on the same tree at once.
+ * The painter repeatedly walks the tree as paintChildren() does, checking
+ * display state and absolute bounds of each child, and hit-tests random
+ * points. The mutator adds, removes and moves children of the same panels.
+ * Reports throughput of each and fails if any traversal throws.
+ *
+ * Usage: ChildMutationBench [panels] [children per panel] [millis per trial] [trials]
+ *
+ * @author Philip DeCamp
+ */
+public class ChildMutationBench {
+
+    private static final int W = 1920;
+    private static final int H = 1080;
+
+
+    public static void main( String[] args ) throws Exception {
+        int panels   = args.length > 0 ? Integer.parseInt( args[0] ) : 20;
+        int children = args.length > 1 ? Integer.parseInt( args[1] ) : 50;
+        long millis  = args.length > 2 ? Long.parseLong( args[2] ) : 1000;
+        int trials   = args.length > 3 ? Integer.parseInt( args[3] ) : 5;
+
+        System.out.println( "panels: " + panels + "  children/panel: " + children );
+        for( int i = 0; i < trials; i++ ) {
+            run( i, panels, children, millis );
+        }
+    }
+
+
+    static void run( int trial, int panelNum, int childNum, long millis ) throws Exception {
+        GEventController cont = new GEventController( null, null );
+        GLayeredPanel root = cont.pane();
+        root.setBounds( 0, 0, W, H );
+
+        final GPanel[] panels = new GPanel[panelNum];
+        Random rand = new Random( trial );
+        for( int i = 0; i < panelNum; i++ ) {
+            panels[i] = new GPanel();
+            panels[i].setBounds( rand.nextInt( W / 2 ), rand.nextInt( H / 2 ), W / 2, H / 2 );
+            root.addChild( panels[i] );
+            for( int j = 0; j < childNum; j++ ) {
+                panels[i].addChild( createChild( rand ) );
+            }
+        }
+        cont.processEvents();
+
+        final AtomicBoolean stop = new AtomicBoolean( false );
+        final long[] paints      = { 0 };
+        final long[] mutations   = { 0 };
+        final Throwable[] error  = { null };
+
+        Thread painter = new Thread( "painter" ) {
+            public void run() {
+                Rect work = new Rect();
+                Random r  = new Random( 1 );
+                try {
+                    while( !stop.get() ) {
+                        walk( root, work );
+                        root.componentAt( r.nextInt( W ), r.nextInt( H ) );
+                        paints[0]++;
+                    }
+                } catch( Throwable t ) {
+                    error[0] = t;
+                }
+            }
+        };
+
+        Thread mutator = new Thread( "mutator" ) {
+            public void run() {
+                Random r = new Random( 2 );
+                try {
+                    while( !stop.get() ) {
+                        GPanel p = panels[r.nextInt( panels.length )];
+                        List<GComponent> kids = p.children();
+                        switch( r.nextInt( 3 ) ) {
+                        case 0:
+                            p.addChild( createChild( r ) );
+                            break;
+                        case 1:
+                            if( !kids.isEmpty() ) {
+                                p.removeChild( kids.get( r.nextInt( kids.size() ) ) );
+                            }
+                            break;
+                        default:
+                            if( !kids.isEmpty() ) {
+                                kids.get( r.nextInt( kids.size() ) ).setPosition( r.nextInt( W / 2 ), r.nextInt( H / 2 ) );
+                            }
+                            break;
+                        }
+                        mutations[0]++;
+                    }
+                } catch( Throwable t ) {
+                    error[0] = t;
+                }
+            }
+        };
+
+        painter.start();
+        mutator.start();
+        Thread.sleep( millis );
+        stop.set( true );
+        painter.join();
+        mutator.join();
+
+        if( error[0] != null ) {
+            throw new RuntimeException( "Traversal failed on trial " + trial, error[0] );
+        }
+
+        System.out.format( "trial %d   paints: %8.0f /s   mutations: %9.0f /s%n",
+                           trial,
+                           paints[0] * 1000.0 / millis,
+                           mutations[0] * 1000.0 / millis );
+    }
+
+    /**
+     * Same traversal as paintChildren(), without GL.
+     */
+    static void walk( GComponent comp, Rect work ) {
+        for( GComponent c: comp.children() ) {
+            if( c.isDisplayed() ) {
+                c.getAbsoluteBounds( work );
+                walk( c, work );
+            }
+        }
+    }
+
+
+    private static GPanel createChild( Random rand ) {
+        GPanel p = new GPanel();
+        p.setBounds( rand.nextInt( W / 2 ), rand.nextInt( H / 2 ), 20 + rand.nextInt( 100 ), 20 + rand.nextInt( 100 ) );
+        return p;
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import bits.glui.event.*;
+
+
+/**
+ * Slides a panel with many descendants across the screen, either by moving
+ * it with setPosition() or by changing its composite transform, and measures
+ * the time to dispatch each frame's events. Descendants have ancestor and
+ * component listeners, and the panel has a layout, so that moving it causes
+ * the usual propagation. Also checks that composite animation fires no events,
+ * and that hit-testing and mouse event coordinates honor the transform.
+ *
+ * Usage: CompositeAnimationBench [descendants] [frames] [trials]
+ *
+ * @author Philip DeCamp
+ */
+public class CompositeAnimationBench {
+
+    public static void main( String[] args ) {
+        int size   = args.length > 0 ? Integer.parseInt( args[0] ) : 2000;
+        int frames = args.length > 1 ? Integer.parseInt( args[1] ) : 500;
+        int trials = args.length > 2 ? Integer.parseInt( args[2] ) : 5;
+
+        System.out.println( "descendants: " + size );
+        for( int i = 0; i < trials; i++ ) {
+            double a = run( size, frames, false );
+            double b = run( size, frames, true );
+            System.out.format( "trial %d   setPosition %8.2f us/frame   composite %8.2f us/frame   ratio %.1f%n",
+                               i, a / 1000.0, b / 1000.0, a / b );
+        }
+
+        checkHits();
+        System.out.println( "hit test check passed" );
+    }
+
+
+    static double run( int size, int frames, boolean composite ) {
+        GEventController cont = new GEventController( null, null );
+        GLayeredPanel root = cont.pane();
+        root.setBounds( 0, 0, 1920, 1080 );
+
+        GPanel slider = new GPanel();
+        slider.setBounds( 0, 0, 400, 300 );
+        slider.setLayout( new GLayout() {
+            public void layoutPane( GComponent pane ) {}
+        } );
+        root.addChild( slider );
+
+        final int[] events = { 0 };
+        GAncestorListener ancestor = new GAncestorListener() {
+            public void ancestorMoved( GAncestorEvent e ) {
+                events[0]++;
+            }
+            public void ancestorResized( GAncestorEvent e ) {}
+            public void ancestorChanged( GAncestorEvent e ) {}
+        };
+        GComponentAdapter comp = new GComponentAdapter() {
+            public void componentMoved( GComponentEvent e ) {
+                events[0]++;
+            }
+        };
+        slider.addComponentListener( comp );
+
+        List<GPanel> all = new ArrayList<GPanel>();
+        GPanel parent = slider;
+        for( int i = 0; i < size; i++ ) {
+            GPanel p = new GPanel();
+            p.setBounds( i % 40 * 10, i / 40 % 30 * 10, 10, 10 );
+            if( i % 50 == 0 ) {
+                slider.addChild( p );
+                parent = p;
+            } else {
+                parent.addChild( p );
+            }
+            p.addAncestorListener( ancestor );
+            all.add( p );
+        }
+        cont.processEvents();
+        events[0] = 0;
+
+        long t0 = System.nanoTime();
+        for( int f = 0; f < frames; f++ ) {
+            int x = f % 1000;
+            if( composite ) {
+                slider.setCompositeTransform( x, 0f, 1f, 1f );
+                slider.setCompositeOpacity( ( f % 100 ) / 100f );
+            } else {
+                slider.setPosition( x, 0 );
+            }
+            cont.processEvents();
+        }
+        long t1 = System.nanoTime();
+
+        if( composite && events[0] != 0 ) {
+            throw new IllegalStateException( "Composite animation fired " + events[0] + " events." );
+        }
+        if( !composite && events[0] == 0 ) {
+            throw new IllegalStateException( "Moving panel fired no events." );
+        }
+        return ( t1 - t0 ) / (double)frames;
+    }
+
+
+    static void checkHits() {
+        GEventController cont = new GEventController( null, null );
+        GLayeredPanel root = cont.pane();
+        root.setBounds( 0, 0, 1920, 1080 );
+
+        GPanel panel = new GPanel();
+        panel.setBounds( 100, 100, 200, 200 );
+        root.addChild( panel );
+        GPanel child = new GPanel();
+        child.setBounds( 50, 50, 20, 20 );
+        panel.addChild( child );
+
+        final int[] pos = { Integer.MIN_VALUE, Integer.MIN_VALUE };
+        child.addMouseMotionListener( new GMouseMotionListener() {
+            public void mouseMoved( GMouseEvent e ) {
+                pos[0] = e.getX();
+                pos[1] = e.getY();
+            }
+            public void mouseDragged( GMouseEvent e ) {}
+        } );
+
+        panel.setCompositeTransform( 300, 0, 2, 2 );
+        cont.processEvents();
+
+        // Child is drawn at 100 + 300 + 2 * 50 = 500 and is 40 pixels wide.
+        for( int i = 0; i < 2; i++ ) {
+            if( i == 1 ) {
+                root.setHitIndex( true );
+            }
+            check( root.componentAt( 510, 210 ) == child, "transformed child" );
+            check( root.componentAt( 160, 160 ) == root, "untransformed position" );
+            check( root.componentAt( 450, 210 ) == panel, "transformed panel" );
+        }
+
+        cont.humanInputController().mouseEntered( 0, 0 );
+        cont.humanInputController().mouseMoved( 510, 230 );
+        cont.processEvents();
+        check( pos[0] == 5 && pos[1] == 15, "mouse event coordinates " + pos[0] + ", " + pos[1] );
+    }
+
+
+    private static void check( boolean cond, String msg ) {
+        if( !cond ) {
+            throw new IllegalStateException( "Failed: " + msg );
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.List;
+
+import bits.draw3d.Rect;
+
+
+/**
+ * Compares layout and paint traversal of a large tree with and without
+ * thread confinement. Each frame moves the root's children, which propagates
+ * ancestor events down the tree, lays out every panel, and then walks the tree
+ * as paintChildren() does. Confinement checks are enabled in a final pass to
+ * verify that all access happens on the dispatch thread.
+ *
+ * Usage: ConfinedTreeBench [fanout] [depth] [frames] [trials]
+ *
+ * @author Philip DeCamp
+ */
+public class ConfinedTreeBench {
+
+    public static void main( String[] args ) {
+        int fanout = args.length > 0 ? Integer.parseInt( args[0] ) : 8;
+        int depth  = args.length > 1 ? Integer.parseInt( args[1] ) : 4;
+        int frames = args.length > 2 ? Integer.parseInt( args[2] ) : 100;
+        int trials = args.length > 3 ? Integer.parseInt( args[3] ) : 5;
+
+        GEventController locked   = createTree( fanout, depth );
+        GEventController confined = createTree( fanout, depth );
+        confined.confineTree( true );
+
+        System.out.println( "panels: " + count( locked.pane() ) );
+        for( int i = 0; i < trials; i++ ) {
+            double a = run( locked, frames );
+            double b = run( confined, frames );
+            System.out.format( "trial %d   locked %8.0f us/frame   confined %8.0f us/frame   ratio %.2f%n",
+                               i, a / 1000.0, b / 1000.0, a / b );
+        }
+
+        confined.checkConfinement( true );
+        run( confined, 1 );
+        System.out.println( "confinement check passed" );
+    }
+
+
+    static GEventController createTree( int fanout, int depth ) {
+        GEventController cont = new GEventController( null, null );
+        GLayeredPanel root = cont.pane();
+        root.setBounds( 0, 0, 1920, 1080 );
+        fill( root, fanout, depth );
+        cont.processEvents();
+        return cont;
+    }
+
+
+    static double run( GEventController cont, int frames ) {
+        GLayeredPanel root = cont.pane();
+        Rect work = new Rect();
+        long t0 = System.nanoTime();
+        for( int f = 0; f < frames; f++ ) {
+            int off = f & 1;
+            for( GComponent c: root.children() ) {
+                c.setPosition( off, off );
+                c.applyLayout();
+            }
+            cont.processEvents();
+            walk( root, work );
+        }
+        return ( System.nanoTime() - t0 ) / (double)frames;
+    }
+
+    /**
+     * Same traversal as paintChildren(), without GL.
+     */
+    static void walk( GComponent comp, Rect work ) {
+        for( GComponent c: comp.children() ) {
+            if( c.isDisplayed() ) {
+                c.getAbsoluteBounds( work );
+                walk( c, work );
+            }
+        }
+    }
+
+
+    private static void fill( GComponent parent, int fanout, int depth ) {
+        if( depth == 0 ) {
+            return;
+        }
+        parent.setLayout( GRID );
+        for( int i = 0; i < fanout; i++ ) {
+            GPanel p = new GPanel();
+            parent.addChild( p );
+            fill( p, fanout, depth - 1 );
+        }
+    }
+
+
+    private static int count( GComponent comp ) {
+        int n = 1;
+        for( GComponent c: comp.children() ) {
+            n += count( c );
+        }
+        return n;
+    }
+
+
+    private static final GLayout GRID = new GLayout() {
+        public void layoutPane( GComponent pane ) {
+            List<GComponent> kids = pane.children();
+            int n = kids.size();
+            if( n == 0 ) {
+                return;
+            }
+            int w = Math.max( 1, pane.width() / n );
+            for( int i = 0; i < n; i++ ) {
+                kids.get( i ).setBounds( i * w, 0, w, pane.height() );
+            }
+        }
+    };
+
+}
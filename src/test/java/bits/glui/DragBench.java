@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.*;
+
+import bits.draw3d.Rect;
+import bits.glui.event.*;
+
+
+/**
+ * Drags a container with many descendants, of which only some have ancestor
+ * listeners, and reads the absolute bounds of one leaf after each move. Checks
+ * that every listener is notified and that absolute bounds are correct.
+ *
+ * Usage: DragBench [descendants] [moves] [trials]
+ *
+ * @author Philip DeCamp
+ */
+public class DragBench {
+
+    public static void main( String[] args ) {
+        int size   = args.length > 0 ? Integer.parseInt( args[0] ) : 10000;
+        int moves  = args.length > 1 ? Integer.parseInt( args[1] ) : 2000;
+        int trials = args.length > 2 ? Integer.parseInt( args[2] ) : 5;
+
+        System.out.println( "descendants: " + size );
+        int[] listenerCounts = { 0, 10, size };
+        for( int i = 0; i < trials; i++ ) {
+            System.out.format( "trial %d", i );
+            for( int n: listenerCounts ) {
+                System.out.format( "   %5d listeners: %8.2f us/move", n, run( size, n, moves ) / 1000.0 );
+            }
+            System.out.println();
+        }
+    }
+
+
+    static double run( int size, int listenerNum, int moves ) {
+        GEventController cont = new GEventController( null, null );
+        GLayeredPanel root = cont.pane();
+        root.setBounds( 0, 0, 1920, 1080 );
+
+        GPanel container = new GPanel();
+        container.setBounds( 0, 0, 800, 600 );
+        root.addChild( container );
+
+        List<GPanel> all = new ArrayList<GPanel>();
+        GPanel parent = container;
+        Random rand = new Random( 0 );
+        for( int i = 0; i < size; i++ ) {
+            GPanel p = new GPanel();
+            p.setBounds( rand.nextInt( 10 ), rand.nextInt( 10 ), 10, 10 );
+            // Mostly wide, with some depth.
+            if( i % 100 == 0 ) {
+                container.addChild( p );
+                parent = p;
+            } else {
+                parent.addChild( p );
+            }
+            all.add( p );
+        }
+
+        final Set<GComponent> received = new HashSet<GComponent>();
+        GAncestorListener listener = new GAncestorListener() {
+            public void ancestorMoved( GAncestorEvent e ) {
+                received.add( e.source() );
+            }
+            public void ancestorResized( GAncestorEvent e ) {}
+            public void ancestorChanged( GAncestorEvent e ) {}
+        };
+        for( int i = 0; i < listenerNum; i++ ) {
+            all.get( (int)( (long)i * size / listenerNum ) ).addAncestorListener( listener );
+        }
+        cont.processEvents();
+        received.clear();
+
+        GPanel leaf = all.get( all.size() - 1 );
+        Rect work = new Rect();
+        long t0 = System.nanoTime();
+        for( int i = 0; i < moves; i++ ) {
+            container.setPosition( i & 63, i & 31 );
+            leaf.getAbsoluteBounds( work );
+        }
+        long t1 = System.nanoTime();
+        cont.processEvents();
+
+        if( received.size() != listenerNum ) {
+            throw new IllegalStateException( "Expected " + listenerNum + " listeners notified, got " + received.size() );
+        }
+        int ex = 0;
+        int ey = 0;
+        for( GComponent c = leaf; c != null; c = c.parent() ) {
+            ex += c.x();
+            ey += c.y();
+        }
+        if( work.x0 != ex || work.y0 != ey ) {
+            throw new IllegalStateException( "Wrong absolute bounds: " + work );
+        }
+
+        return ( t1 - t0 ) / (double)moves;
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Contention benchmark comparing the lock-free EventQueue against the
+ * monitor-based SynchronizedEventQueue. Several producer threads fire a mix
+ * of runnables, repaints and layouts while a single consumer drains the queue,
+ * as the GL thread would.
+ *
+ * Usage: EventQueueBench [producers] [eventsPerProducer] [trials]
+ *
+ * @author Philip DeCamp
+ */
+public class EventQueueBench {
+
+    public static void main( String[] args ) throws Exception {
+        int producers = args.length > 0 ? Integer.parseInt( args[0] ) : 4;
+        int events    = args.length > 1 ? Integer.parseInt( args[1] ) : 500000;
+        int trials    = args.length > 2 ? Integer.parseInt( args[2] ) : 5;
+
+        System.out.println( "producers: " + producers + "  events/producer: " + events );
+        for( int i = 0; i < trials; i++ ) {
+            double sync = run( false, producers, events );
+            double free = run( true, producers, events );
+            System.out.format( "trial %d   synchronized: %8.0f kops/s   lock-free: %8.0f kops/s   ratio: %.2f%n",
+                               i, sync, free, free / sync );
+        }
+    }
+
+
+    static double run( boolean lockFree, final int producers, final int events ) throws Exception {
+        final GLayeredPanel root = new GLayeredPanel();
+        final Target target      = lockFree ? new LockFreeTarget( root ) : new SyncTarget( root );
+        final GPanel[] panels    = new GPanel[producers];
+        for( int i = 0; i < producers; i++ ) {
+            panels[i] = new GPanel();
+            root.addChild( panels[i] );
+        }
+
+        final EventProcessor proc = new EventProcessor( null, root, new GKeyboardFocusManager( root, null ) );
+        final AtomicLong ran      = new AtomicLong( 0 );
+        final long expected       = (long)producers * events;
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final Thread[] threads    = new Thread[producers];
+
+        final Runnable task = new Runnable() {
+            public void run() {
+                ran.incrementAndGet();
+            }
+        };
+
+        for( int i = 0; i < producers; i++ ) {
+            final GPanel panel = panels[i];
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch( InterruptedException ignored ) {}
+
+                    for( int j = 0; j < events; j++ ) {
+                        target.fireRunnable( task );
+                        if( ( j & 0x7 ) == 0 ) {
+                            target.firePaint( panel );
+                            target.fireLayout( panel );
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        long t0 = System.nanoTime();
+        start.countDown();
+        while( ran.get() < expected ) {
+            target.processAllEvents( proc );
+        }
+        long t1 = System.nanoTime();
+
+        for( Thread t: threads ) {
+            t.join();
+        }
+
+        return expected / ( ( t1 - t0 ) / 1000000.0 );
+    }
+
+
+    private static interface Target {
+        void fireRunnable( Runnable r );
+        void firePaint( GComponent source );
+        void fireLayout( GComponent source );
+        boolean processAllEvents( EventProcessor proc );
+    }
+
+
+    private static final class SyncTarget implements Target {
+        final SynchronizedEventQueue mQueue;
+
+        SyncTarget( GComponent root ) {
+            mQueue = new SynchronizedEventQueue( root, null );
+        }
+
+        public void fireRunnable( Runnable r ) {
+            mQueue.fireRunnable( r );
+        }
+
+        public void firePaint( GComponent source ) {
+            mQueue.firePaint( source );
+        }
+
+        public void fireLayout( GComponent source ) {
+            mQueue.fireLayout( source );
+        }
+
+        public boolean processAllEvents( EventProcessor proc ) {
+            return mQueue.processAllEvents( proc );
+        }
+    }
+
+
+    private static final class LockFreeTarget implements Target {
+        final EventQueue mQueue;
+
+        LockFreeTarget( GComponent root ) {
+            mQueue = new EventQueue( root, null );
+        }
+
+        public void fireRunnable( Runnable r ) {
+            mQueue.fireRunnable( r );
+        }
+
+        public void firePaint( GComponent source ) {
+            mQueue.firePaint( source );
+        }
+
+        public void fireLayout( GComponent source ) {
+            mQueue.fireLayout( source );
+        }
+
+        public boolean processAllEvents( EventProcessor proc ) {
+            return mQueue.processAllEvents( proc );
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.awt.Font;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import bits.draw3d.BoWriter;
+import bits.draw3d.DrawEnv;
+import bits.draw3d.DrawStream;
+import bits.draw3d.DrawUtil;
+import bits.draw3d.model.DrawVert;
+import bits.draw3d.shaders.BasicShaderConfig;
+import bits.draw3d.shaders.BasicShaders;
+import bits.draw3d.text.FontTexture;
+import bits.math3d.Vec3;
+import bits.math3d.Vec4;
+
+
+/**
+ * Compares the CPU cost per frame of generating and serializing the glyph
+ * quads of many labels, as painting them through a DrawStream does, against
+ * looking up their cached glyph runs, without GL. A small fraction of labels
+ * change text each frame. Also checks that runs are rebuilt only when text
+ * or font change, and not when color changes.
+ *
+ * Usage: GlyphRunBench [labels] [frames] [trials]
+ *
+ * @author Philip DeCamp
+ */
+public class GlyphRunBench {
+
+    public static void main( String[] args ) {
+        int size   = args.length > 0 ? Integer.parseInt( args[0] ) : 2000;
+        int frames = args.length > 1 ? Integer.parseInt( args[1] ) : 200;
+        int trials = args.length > 2 ? Integer.parseInt( args[2] ) : 5;
+
+        DrawEnv d = new DrawEnv();
+        List<GLabel> labels = new ArrayList<GLabel>();
+        for( int i = 0; i < size; i++ ) {
+            labels.add( i % 2 == 0 ? new GLabel( "label number " + i ) : new GButton( "button " + i ) );
+        }
+
+        // Serializes vertices as DrawStream does, without uploading them.
+        BasicShaderConfig config = new BasicShaderConfig();
+        config.color( true );
+        config.texComponentNum( 4 );
+        final BoWriter<DrawVert> writer = BasicShaders.createVertWriter( config );
+        final ByteBuffer buf = DrawUtil.alloc( 64 * 1024 );
+        final DrawVert vert  = new DrawVert( new Vec3(), new float[4], new Vec3(), new Vec4( 1, 1, 1, 1 ) );
+        final DrawStream stream = new DrawStream( 1024 ) {
+            @Override
+            public void tex( float s, float t, float r, float q ) {
+                vert.mTex[0] = s;
+                vert.mTex[1] = t;
+            }
+            @Override
+            public void vert( float x, float y, float z ) {
+                vert.mPos.x = x;
+                vert.mPos.y = y;
+                writer.write( vert, buf );
+            }
+        };
+        DrawEnv streamEnv = new DrawEnv() {
+            @Override
+            public DrawStream drawStream() {
+                return stream;
+            }
+        };
+
+        GlyphRunCache cache = new GlyphRunCache();
+
+        System.out.println( "labels: " + size );
+        for( int t = 0; t < trials; t++ ) {
+            long t0 = System.nanoTime();
+            for( int f = 0; f < frames; f++ ) {
+                for( int i = 0; i < size; i++ ) {
+                    GLabel label = labels.get( i );
+                    FontTexture font = d.fontManager().getFontTexture( label.getFont() );
+                    buf.clear();
+                    font.renderChars( streamEnv, 0, 0, 0, label.text() );
+                }
+                changeText( labels, f );
+            }
+            long t1 = System.nanoTime();
+            for( int f = 0; f < frames; f++ ) {
+                for( int i = 0; i < size; i++ ) {
+                    GLabel label = labels.get( i );
+                    FontTexture font = d.fontManager().getFontTexture( label.getFont() );
+                    cache.update( label, font, label.text() );
+                }
+                changeText( labels, f );
+            }
+            long t2 = System.nanoTime();
+
+            double a = ( t1 - t0 ) / 1000.0 / frames;
+            double b = ( t2 - t1 ) / 1000.0 / frames;
+            System.out.format( "trial %d   generate %8.1f us/frame   cached %8.1f us/frame   ratio %.1f%n",
+                               t, a, b, a / b );
+        }
+
+        checkRebuilds( d );
+        System.out.println( "rebuild check passed" );
+    }
+
+
+    static void changeText( List<GLabel> labels, int frame ) {
+        for( int i = frame % 100; i < labels.size(); i += 100 ) {
+            labels.get( i ).text( "changed " + frame );
+        }
+    }
+
+
+    static void checkRebuilds( DrawEnv d ) {
+        GlyphRunCache cache = new GlyphRunCache();
+        GLabel label = new GLabel( "abc" );
+        FontTexture font = d.fontManager().getFontTexture( label.getFont() );
+
+        GlyphRunCache.Run run = cache.update( label, font, label.text() );
+        check( cache.builds() == 1 && run.mVertNum == 18, "first build " + run.mVertNum );
+        cache.update( label, font, new String( "abc" ) );
+        check( cache.builds() == 1, "equal text" );
+
+        label.text( "abcd" );
+        run = cache.update( label, font, label.text() );
+        check( cache.builds() == 2 && run.mVertNum == 24, "changed text" );
+
+        // Color is applied as a tint when drawn, so runs do not depend on it.
+        label.setForeground( 1, 0, 0, 0.5f );
+        cache.update( label, font, label.text() );
+        check( cache.builds() == 2, "changed color" );
+
+        label.setFont( new Font( "SansSerif", Font.BOLD, 20 ) );
+        cache.update( label, d.fontManager().getFontTexture( label.getFont() ), label.text() );
+        check( cache.builds() == 3, "changed font" );
+
+        cache.update( new GLabel( "abcd" ), font, "abcd" );
+        check( cache.builds() == 4, "separate label" );
+    }
+
+
+    private static void check( boolean cond, String msg ) {
+        if( !cond ) {
+            throw new IllegalStateException( "Failed: " + msg );
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.util.Random;
+
+import bits.glui.event.*;
+
+
+/**
+ * Compares mouse hit-testing on a large grid of tiles with and without
+ * the spatial hit index, and checks that both give the same answers,
+ * including after tiles are moved and with overlapping layers.
+ *
+ * Usage: HitIndexBench [tiles per side] [queries]
+ *
+ * @author Philip DeCamp
+ */
+public class HitIndexBench {
+
+    private static final int W = 1920;
+    private static final int H = 1080;
+
+
+    public static void main( String[] args ) {
+        int side    = args.length > 0 ? Integer.parseInt( args[0] ) : 100;
+        int queries = args.length > 1 ? Integer.parseInt( args[1] ) : 200000;
+
+        GLayeredPanel linear  = createTiles( side );
+        GLayeredPanel indexed = createTiles( side );
+        indexed.setHitIndex( true );
+
+        Random rand = new Random( 1 );
+        shuffle( linear, indexed, rand );
+        // Force index to rebuild.
+        indexed.setSize( W / 3, H / 3 );
+        indexed.setSize( W, H );
+        check( linear, indexed, queries, rand );
+
+        System.out.println( "tiles: " + linear.children().size() );
+        for( int trial = 0; trial < 5; trial++ ) {
+            double a = time( linear, queries, new Random( trial ) );
+            double b = time( indexed, queries, new Random( trial ) );
+            System.out.format( "trial %d   linear %8.0f ns/query   indexed %6.0f ns/query%n", trial, a, b );
+        }
+    }
+
+
+    static GLayeredPanel createTiles( int side ) {
+        GEventController cont = new GEventController( null, null );
+        GLayeredPanel root = cont.pane();
+        root.setBounds( 0, 0, W, H );
+
+        GLayeredPanel pane = new GLayeredPanel();
+        pane.setBounds( 0, 0, W, H );
+        root.addChild( pane );
+
+        GMouseAdapter listener = new GMouseAdapter();
+        Random rand = new Random( 0 );
+        for( int y = 0; y < side; y++ ) {
+            for( int x = 0; x < side; x++ ) {
+                GPanel p = new GPanel();
+                p.setBounds( x * W / side, y * H / side, W / side + 2, H / side + 2 );
+                if( rand.nextInt( 4 ) != 0 ) {
+                    p.addMouseListener( listener );
+                }
+                pane.addChild( p );
+            }
+        }
+
+        // Overlay with a few large children in an upper layer.
+        for( int i = 0; i < 4; i++ ) {
+            GPanel p = new GPanel();
+            p.setBounds( rand.nextInt( W ), rand.nextInt( H ), W / 3, H / 3 );
+            pane.addChild( 1, p );
+        }
+
+        cont.processEvents();
+        return pane;
+    }
+
+    /**
+     * Applies the same random moves to both panes.
+     */
+    static void shuffle( GPanel a, GPanel b, Random rand ) {
+        int n = a.children().size();
+        for( int i = 0; i < n / 10; i++ ) {
+            int idx = rand.nextInt( n );
+            int x   = rand.nextInt( W + 200 ) - 100;
+            int y   = rand.nextInt( H + 200 ) - 100;
+            int w   = 1 + rand.nextInt( 200 );
+            int h   = 1 + rand.nextInt( 200 );
+            a.children().get( idx ).setBounds( x, y, w, h );
+            b.children().get( idx ).setBounds( x, y, w, h );
+        }
+    }
+
+
+    static void check( GPanel linear, GPanel indexed, int queries, Random rand ) {
+        for( int i = 0; i < queries; i++ ) {
+            int x = rand.nextInt( W );
+            int y = rand.nextInt( H );
+            int ia = indexOf( linear, linear.mouseFocusableComponentAt( x, y ) );
+            int ib = indexOf( indexed, indexed.mouseFocusableComponentAt( x, y ) );
+            int ca = indexOf( linear, linear.componentAt( x, y ) );
+            int cb = indexOf( indexed, indexed.componentAt( x, y ) );
+            if( ia != ib || ca != cb ) {
+                throw new IllegalStateException( "Mismatch at " + x + ", " + y + ": " + ia + " " + ib + " " + ca + " " + cb );
+            }
+        }
+    }
+
+
+    static double time( GPanel pane, int queries, Random rand ) {
+        int hits = 0;
+        long t0 = System.nanoTime();
+        for( int i = 0; i < queries; i++ ) {
+            if( pane.mouseFocusableComponentAt( rand.nextInt( W ), rand.nextInt( H ) ) != null ) {
+                hits++;
+            }
+        }
+        long t1 = System.nanoTime();
+        if( hits < 0 ) {
+            System.out.println();
+        }
+        return ( t1 - t0 ) / (double)queries;
+    }
+
+
+    private static int indexOf( GPanel pane, GComponent c ) {
+        return c == pane ? -2 : pane.children().indexOf( c );
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bits.glui.event.*;
+
+
+/**
+ * Replays an input journal at maximum speed into a headless GEventController
+ * and reports dispatch throughput. If no journal is given, a synthetic session
+ * of mouse movement, clicks and typing is recorded first. If "pool" is given,
+ * input events are pooled. Bytes allocated by the replay thread are also reported.
+ *
+ * Usage: InputReplayBench [journal|-] [trials] [pool]
+ *
+ * @author Philip DeCamp
+ */
+public class InputReplayBench {
+
+    private static final int W = 1920;
+    private static final int H = 1080;
+
+
+    public static void main( String[] args ) throws Exception {
+        File file;
+        if( args.length > 0 && !args[0].equals( "-" ) ) {
+            file = new File( args[0] );
+        } else {
+            file = File.createTempFile( "glui", ".journal" );
+            file.deleteOnExit();
+            synthesize( file, 500000 );
+        }
+        int trials = args.length > 1 ? Integer.parseInt( args[1] ) : 5;
+        boolean pool = args.length > 2 && args[2].equals( "pool" );
+
+        GInputPlayer player = new GInputPlayer( file );
+        System.out.println( "records: " + player.recordCount() );
+
+        for( int i = 0; i < trials; i++ ) {
+            AtomicLong received = new AtomicLong();
+            GEventController cont = createController( received );
+            cont.poolInputEvents( pool );
+            player.position( 0 );
+
+            long b0 = allocatedBytes();
+            long t0 = System.nanoTime();
+            int n = player.play( cont, false );
+            long t1 = System.nanoTime();
+            long b1 = allocatedBytes();
+
+            System.out.format( "trial %d   %8.0f krecords/s   %6.1f bytes/record   events received: %d%n",
+                               i, n / ( ( t1 - t0 ) / 1000000.0 ), (double)( b1 - b0 ) / n, received.get() );
+        }
+
+        player.close();
+    }
+
+
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if( bean instanceof com.sun.management.ThreadMXBean ) {
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes( Thread.currentThread().getId() );
+        }
+        return 0;
+    }
+
+
+    static GEventController createController( final AtomicLong received ) {
+        GEventController cont = new GEventController( null, null );
+        GLayeredPanel root = cont.pane();
+        root.setBounds( 0, 0, W, H );
+
+        GMouseAdapter counter = new GMouseAdapter() {
+            @Override
+            public void mousePressed( GMouseEvent e ) {
+                received.incrementAndGet();
+            }
+
+            @Override
+            public void mouseMoved( GMouseEvent e ) {
+                received.incrementAndGet();
+            }
+        };
+
+        GKeyAdapter keys = new GKeyAdapter() {
+            @Override
+            public void keyTyped( GKeyEvent e ) {
+                received.incrementAndGet();
+            }
+        };
+
+        int cols = 16;
+        int rows = 12;
+        for( int y = 0; y < rows; y++ ) {
+            for( int x = 0; x < cols; x++ ) {
+                GPanel p = new GPanel();
+                p.setBounds( x * W / cols, y * H / rows, W / cols, H / rows );
+                p.addMouseListener( counter );
+                p.addMouseMotionListener( counter );
+                p.addKeyListener( keys );
+                root.addChild( p );
+            }
+        }
+
+        cont.processEvents();
+        return cont;
+    }
+
+
+    static void synthesize( File file, int count ) throws Exception {
+        AtomicLong ignored = new AtomicLong();
+        GEventController cont = createController( ignored );
+        GInputRecorder rec = new GInputRecorder( file, cont.humanInputController() );
+        Random rand = new Random( 0 );
+        long micros = 0;
+        int x = W / 2;
+        int y = H / 2;
+
+        rec.mouseEntered( micros, 0, x, y );
+        for( int i = 0; i < count; i++ ) {
+            micros += 4000 + rand.nextInt( 8000 );
+            int r = rand.nextInt( 100 );
+            if( r < 90 ) {
+                x = Math.max( 0, Math.min( W - 1, x + rand.nextInt( 41 ) - 20 ) );
+                y = Math.max( 0, Math.min( H - 1, y + rand.nextInt( 41 ) - 20 ) );
+                rec.mouseMoved( micros, 0, x, y );
+            } else if( r < 95 ) {
+                rec.mousePressed( micros, 0, 1, false );
+                rec.mouseReleased( micros + 50000, 0, 1, false, true );
+            } else {
+                char c = (char)( 'a' + rand.nextInt( 26 ) );
+                rec.keyPressed( micros, 0, c - 'a' + 65, c, 1 );
+                rec.keyTyped( micros, 0, 0, c, 0 );
+                rec.keyReleased( micros + 30000, 0, c - 'a' + 65, c, 1 );
+            }
+            cont.processEvents();
+        }
+        rec.mouseExited( micros, 0 );
+        rec.close();
+    }
+
+}
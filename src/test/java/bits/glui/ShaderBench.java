@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import java.nio.ByteBuffer;
+
+import bits.draw3d.DrawEnv;
+import bits.draw3d.DrawUtil;
+import com.jogamp.opengl.*;
+
+import static com.jogamp.opengl.GL.*;
+
+
+/**
+ * Paints a grid of labels, buttons, check boxes and text fields into an
+ * offscreen OpenGL 3.3 drawable, directly, through a batch drawn with the
+ * instanced shape shaders, and with cached glyph runs, and reports the time
+ * per frame of each. Reads back each image and checks that component
+ * backgrounds are filled with their color in every mode, and that the batched
+ * and glyph run images match the directly painted one, so that the GLSL 330
+ * shaders of ShapeRenderer and GlyphRunCache compile, link and draw.
+ *
+ * Usage: ShaderBench [components] [frames] [trials]
+ *
+ * @author Philip DeCamp
+ */
+public class ShaderBench {
+
+    private static final int W = 1280;
+    private static final int H = 720;
+
+    private static final int CW = 64;
+    private static final int CH = 20;
+
+    // Channel difference above which two pixels count as different.
+    private static final int TOLERANCE = 8;
+
+
+    public static void main( String[] args ) throws Exception {
+        final int size   = args.length > 0 ? Integer.parseInt( args[0] ) : 600;
+        final int frames = args.length > 1 ? Integer.parseInt( args[1] ) : 100;
+        final int trials = args.length > 2 ? Integer.parseInt( args[2] ) : 3;
+
+        GLProfile profile = GLProfile.get( GLProfile.GL3 );
+        GLCapabilities caps = new GLCapabilities( profile );
+        caps.setDoubleBuffered( false );
+        caps.setOnscreen( false );
+        GLOffscreenAutoDrawable gld = GLDrawableFactory.getFactory( profile )
+                                                       .createOffscreenAutoDrawable( null, caps, null, W, H );
+
+        final GEventController cont = new GEventController( null, null );
+        final DrawEnv d = new DrawEnv();
+        build( cont.pane(), size );
+
+        final RuntimeException[] err = { null };
+        gld.addGLEventListener( new GLEventListener() {
+            public void init( GLAutoDrawable gld ) {}
+
+            public void dispose( GLAutoDrawable gld ) {
+                cont.dispose( d );
+                d.dispose( gld );
+            }
+
+            public void reshape( GLAutoDrawable gld, int x, int y, int w, int h ) {}
+
+            public void display( GLAutoDrawable gld ) {
+                try {
+                    run( gld, cont, d, size, frames, trials );
+                } catch( RuntimeException ex ) {
+                    err[0] = ex;
+                }
+            }
+        } );
+
+        gld.display();
+        gld.destroy();
+        if( err[0] != null ) {
+            throw err[0];
+        }
+    }
+
+
+    static void run( GLAutoDrawable gld, GEventController cont, DrawEnv d, int size, int frames, int trials ) {
+        d.init( gld, null );
+        System.out.println( "GL: " + d.mGl.getContext().getGLVersion() );
+        if( !ShapeRenderer.isSupported( d.mGl ) ) {
+            System.out.println( "OpenGL 3.3 not available; shaders not exercised." );
+            return;
+        }
+        System.out.println( "components: " + size );
+
+        cont.processEvents();
+        ByteBuffer direct  = DrawUtil.alloc( W * H * 4 );
+        ByteBuffer batched = DrawUtil.alloc( W * H * 4 );
+        ByteBuffer runs    = DrawUtil.alloc( W * H * 4 );
+
+        for( int t = 0; t < trials; t++ ) {
+            cont.batchPaint( false );
+            cont.cacheGlyphRuns( false );
+            time( "direct    ", cont, d, frames, t );
+            cont.batchPaint( true );
+            time( "batched   ", cont, d, frames, t );
+            cont.batchPaint( false );
+            cont.cacheGlyphRuns( true );
+            time( "glyph runs", cont, d, frames, t );
+        }
+
+        cont.batchPaint( false );
+        cont.cacheGlyphRuns( false );
+        render( cont, d, direct );
+        cont.batchPaint( true );
+        render( cont, d, batched );
+        cont.batchPaint( false );
+        cont.cacheGlyphRuns( true );
+        render( cont, d, runs );
+        d.checkErr();
+
+        checkBackgrounds( direct, size, "direct" );
+        checkBackgrounds( batched, size, "batched" );
+        checkBackgrounds( runs, size, "glyph runs" );
+        report( "batched", direct, batched );
+        report( "glyph runs", direct, runs );
+        System.out.println( "shader checks passed" );
+    }
+
+
+    static void build( GLayeredPanel root, int size ) {
+        root.setBounds( 0, 0, W, H );
+        int cols = W / CW;
+        for( int i = 0; i < size; i++ ) {
+            GPanel p;
+            switch( i % 4 ) {
+            case 0:
+                p = new GButton( "b" + i );
+                break;
+            case 1:
+                p = new GCheckBox( "c" + i );
+                break;
+            case 2:
+                p = new GTextField( 16, "t" + i );
+                break;
+            default:
+                p = new GLabel( "label " + i );
+                break;
+            }
+            p.setBackground( 0.2f, 0.4f, 0.6f, 1f );
+            p.setBounds( i % cols * CW, i / cols % ( H / CH ) * CH, CW, CH );
+            root.addChild( p );
+        }
+    }
+
+
+    static void time( String name, GEventController cont, DrawEnv d, int frames, int trial ) {
+        GL3 gl = d.mGl;
+        paint( cont, d );
+        gl.glFinish();
+        long t0 = System.nanoTime();
+        for( int f = 0; f < frames; f++ ) {
+            paint( cont, d );
+        }
+        gl.glFinish();
+        long t1 = System.nanoTime();
+        System.out.format( "trial %d   %s   %8.0f us/frame   draw calls: %d%n",
+                           trial, name, ( t1 - t0 ) / 1000.0 / frames, cont.drawCallsLastFrame() );
+    }
+
+
+    static void paint( GEventController cont, DrawEnv d ) {
+        GL3 gl = d.mGl;
+        gl.glClearColor( 0, 0, 0, 0 );
+        gl.glClear( GL_COLOR_BUFFER_BIT );
+        cont.processPaint( d );
+    }
+
+
+    static void render( GEventController cont, DrawEnv d, ByteBuffer out ) {
+        paint( cont, d );
+        out.clear();
+        d.mGl.glPixelStorei( GL_PACK_ALIGNMENT, 1 );
+        d.mGl.glReadPixels( 0, 0, W, H, GL_RGBA, GL_UNSIGNED_BYTE, out );
+    }
+
+
+    /**
+     * Checks a pixel near the right edge of each component, where no component
+     * draws text or borders, against the background color.
+     */
+    static void checkBackgrounds( ByteBuffer img, int size, String name ) {
+        int cols = W / CW;
+        int rows = H / CH;
+        for( int i = 0; i < Math.min( size, cols * rows ); i++ ) {
+            int x = i % cols * CW + CW - 4;
+            int y = i / cols * CH + 4;
+            int p = ( y * W + x ) * 4;
+            check( near( img.get( p     ) & 0xFF, 51  ) &&
+                   near( img.get( p + 1 ) & 0xFF, 102 ) &&
+                   near( img.get( p + 2 ) & 0xFF, 153 ),
+                   name + " background of component " + i + " at " + x + ", " + y );
+        }
+    }
+
+
+    static void report( String name, ByteBuffer a, ByteBuffer b ) {
+        int diff = 0;
+        int max  = 0;
+        for( int i = 0; i < W * H * 4; i += 4 ) {
+            int m = 0;
+            for( int c = 0; c < 4; c++ ) {
+                m = Math.max( m, Math.abs( ( a.get( i + c ) & 0xFF ) - ( b.get( i + c ) & 0xFF ) ) );
+            }
+            max = Math.max( max, m );
+            if( m > TOLERANCE ) {
+                diff++;
+            }
+        }
+        System.out.format( "%s vs direct: %d pixels differ, max channel difference %d%n", name, diff, max );
+        // Antialiased shape edges and diagonal lines may differ slightly from triangles.
+        check( diff < W * H / 100, name + " image differs from direct image in " + diff + " pixels" );
+    }
+
+
+    private static boolean near( int a, int b ) {
+        return Math.abs( a - b ) <= TOLERANCE;
+    }
+
+
+    private static void check( boolean cond, String msg ) {
+        if( !cond ) {
+            throw new IllegalStateException( "Failed: " + msg );
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import bits.draw3d.Rect;
+
+
+/**
+ * Tests the cached absolute origins of GPanel.
+ *
+ * @author Philip DeCamp
+ */
+public class TestAbsoluteBounds {
+
+    @Test
+    public void testMoveAndReparent() {
+        GPanel root = new GPanel();
+        GPanel a    = new GPanel();
+        GPanel b    = new GPanel();
+        GPanel c    = new GPanel();
+        root.setBounds( 5, 7, 500, 500 );
+        a.setBounds( 10, 20, 200, 200 );
+        b.setBounds( 3, 4, 100, 100 );
+        c.setBounds( 1, 2, 10, 10 );
+        root.addChild( a );
+        a.addChild( b );
+        b.addChild( c );
+
+        assertBounds( c, 19, 33, 10, 10 );
+        assertBounds( c, 19, 33, 10, 10 );
+
+        // Moving an ancestor moves descendants.
+        a.setBounds( 30, 40, 200, 200 );
+        assertBounds( c, 39, 53, 10, 10 );
+        assertBounds( b, 38, 51, 100, 100 );
+
+        root.setBounds( 0, 0, 500, 500 );
+        assertBounds( c, 34, 46, 10, 10 );
+
+        // Resizing changes size only.
+        c.setBounds( 1, 2, 20, 30 );
+        assertBounds( c, 34, 46, 20, 30 );
+
+        // Reparenting uses new ancestors.
+        a.removeChild( b );
+        root.addChild( b );
+        assertBounds( c, 4, 6, 20, 30 );
+
+        a.setBounds( 100, 100, 200, 200 );
+        assertBounds( c, 4, 6, 20, 30 );
+
+        // Detached panels are relative to themselves.
+        root.removeChild( b );
+        assertBounds( c, 4, 6, 20, 30 );
+        assertBounds( b, 3, 4, 100, 100 );
+    }
+
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        final GPanel root = new GPanel();
+        final GPanel a    = new GPanel();
+        final GPanel b    = new GPanel();
+        root.addChild( a );
+        a.addChild( b );
+        b.setBounds( 1, 1, 10, 10 );
+
+        final int moves = 20000;
+        final AtomicInteger done = new AtomicInteger( 0 );
+        final AtomicReference<String> error = new AtomicReference<String>();
+
+        Thread writer = new Thread() {
+            public void run() {
+                for( int i = 0; i < moves; i++ ) {
+                    if( ( i & 1 ) == 0 ) {
+                        a.setBounds( 100, 200, 50, 50 );
+                    } else {
+                        a.setBounds( 300, 400, 50, 50 );
+                    }
+                }
+                done.set( 1 );
+            }
+        };
+
+        Thread[] readers = new Thread[2];
+        for( int i = 0; i < readers.length; i++ ) {
+            readers[i] = new Thread() {
+                public void run() {
+                    Rect r = new Rect();
+                    while( done.get() == 0 ) {
+                        b.getAbsoluteBounds( r );
+                        // Origin must match one position of a, never a mix of both.
+                        boolean first  = r.x0 == 101 && r.y0 == 201;
+                        boolean second = r.x0 == 301 && r.y0 == 401;
+                        boolean start  = r.x0 == 1 && r.y0 == 1;
+                        if( !first && !second && !start || r.width() != 10 || r.height() != 10 ) {
+                            error.compareAndSet( null, r.toString() );
+                        }
+                    }
+                }
+            };
+            readers[i].start();
+        }
+
+        writer.start();
+        writer.join();
+        for( Thread t: readers ) {
+            t.join();
+        }
+
+        assertNull( error.get() );
+        assertBounds( b, 301, 401, 10, 10 );
+    }
+
+
+    @Test
+    public void testSizeMatchesOrigin() throws Exception {
+        final GPanel root = new GPanel();
+        final GPanel a    = new GPanel();
+        root.addChild( a );
+
+        final int changes = 20000;
+        final AtomicInteger done = new AtomicInteger( 0 );
+        final AtomicReference<String> error = new AtomicReference<String>();
+
+        Thread writer = new Thread() {
+            public void run() {
+                for( int i = 0; i < changes; i++ ) {
+                    if( ( i & 1 ) == 0 ) {
+                        a.setBounds( 10, 10, 30, 30 );
+                    } else {
+                        a.setBounds( 20, 20, 50, 50 );
+                    }
+                }
+                done.set( 1 );
+            }
+        };
+
+        Thread reader = new Thread() {
+            public void run() {
+                Rect r = new Rect();
+                while( done.get() == 0 ) {
+                    a.getAbsoluteBounds( r );
+                    // Size must belong to the same bounds as origin.
+                    boolean first  = r.x0 == 10 && r.x1 == 40 && r.y0 == 10 && r.y1 == 40;
+                    boolean second = r.x0 == 20 && r.x1 == 70 && r.y0 == 20 && r.y1 == 70;
+                    boolean start  = r.x0 == 0  && r.x1 == 1  && r.y0 == 0  && r.y1 == 1;
+                    if( !first && !second && !start ) {
+                        error.compareAndSet( null, r.toString() );
+                    }
+                }
+            }
+        };
+
+        reader.start();
+        writer.start();
+        writer.join();
+        reader.join();
+
+        assertNull( error.get() );
+        assertBounds( a, 20, 20, 50, 50 );
+    }
+
+
+    @Test
+    public void testValidCacheDoesNotLock() throws Exception {
+        final GPanel root = new GPanel();
+        final GPanel a    = new GPanel();
+        final GPanel b    = new GPanel();
+        root.addChild( a );
+        a.addChild( b );
+        a.setBounds( 10, 20, 100, 100 );
+        b.setBounds( 1, 2, 10, 10 );
+        assertBounds( b, 11, 22, 10, 10 );
+
+        final Rect r = new Rect();
+        Thread reader = new Thread() {
+            public void run() {
+                b.getAbsoluteBounds( r );
+            }
+        };
+
+        // Valid caches are read without taking any panel's lock.
+        synchronized( root ) {
+            synchronized( a ) {
+                synchronized( b ) {
+                    reader.start();
+                    reader.join( 10000 );
+                    assertFalse( reader.isAlive() );
+                }
+            }
+        }
+        assertEquals( new Rect( 11, 22, 21, 32 ), r );
+    }
+
+
+    private static void assertBounds( GPanel p, int x, int y, int w, int h ) {
+        Rect r = new Rect();
+        p.getAbsoluteBounds( r );
+        assertEquals( x, r.x0 );
+        assertEquals( y, r.y0 );
+        assertEquals( x + w, r.x1 );
+        assertEquals( y + h, r.y1 );
+        assertEquals( r, p.getAbsoluteBounds() );
+    }
+
+}
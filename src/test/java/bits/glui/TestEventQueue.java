@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import static org.junit.Assert.*;
+
+import java.awt.Component;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import bits.glui.event.GComponentAdapter;
+import bits.glui.event.GComponentEvent;
+
+
+/**
+ * @author Philip DeCamp
+ */
+public class TestEventQueue {
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final int producers = 4;
+        final int events    = 20000;
+
+        GLayeredPanel root = new GLayeredPanel();
+        final EventQueue queue = new EventQueue( root, null );
+        EventProcessor proc    = new EventProcessor( null, root, new GKeyboardFocusManager( root, null ) );
+
+        // Only accessed by consumer, which is this thread.
+        final int[] next     = new int[producers];
+        final int[] disorder = { 0 };
+        final CountDownLatch start = new CountDownLatch( 1 );
+        Thread[] threads = new Thread[producers];
+
+        for( int i = 0; i < producers; i++ ) {
+            final int p = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch( InterruptedException ignored ) {}
+
+                    for( int j = 0; j < events; j++ ) {
+                        final int seq = j;
+                        queue.fireRunnable( new Runnable() {
+                            public void run() {
+                                if( next[p] != seq ) {
+                                    disorder[0]++;
+                                }
+                                next[p]++;
+                            }
+                        } );
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        start.countDown();
+        long deadline = System.currentTimeMillis() + 30000;
+        while( total( next ) < producers * events && System.currentTimeMillis() < deadline ) {
+            queue.processAllEvents( proc );
+        }
+        for( Thread t: threads ) {
+            t.join();
+        }
+        queue.processAllEvents( proc );
+
+        for( int i = 0; i < producers; i++ ) {
+            assertEquals( events, next[i] );
+        }
+        assertEquals( 0, disorder[0] );
+        assertFalse( queue.processAllEvents( proc ) );
+    }
+
+
+    @Test
+    public void testCoalescePerSource() {
+        GLayeredPanel root = new GLayeredPanel();
+        EventQueue queue   = new EventQueue( root, null );
+        EventProcessor proc = new EventProcessor( null, root, new GKeyboardFocusManager( root, null ) );
+
+        final List<Object> log = new ArrayList<Object>();
+        GPanel a = new GPanel();
+        GPanel b = new GPanel();
+        a.addComponentListener( new Recorder( log ) );
+        b.addComponentListener( new Recorder( log ) );
+
+        GComponentEvent lastA = null;
+        GComponentEvent lastB = null;
+        for( int i = 0; i < 50; i++ ) {
+            lastA = new GComponentEvent( a, GComponentEvent.COMPONENT_MOVED );
+            lastB = new GComponentEvent( b, GComponentEvent.COMPONENT_MOVED );
+            queue.fireComponentEvent( lastA );
+            queue.fireComponentEvent( lastB );
+        }
+        GComponentEvent resized = new GComponentEvent( a, GComponentEvent.COMPONENT_RESIZED );
+        queue.fireComponentEvent( resized );
+        queue.processAllEvents( proc );
+
+        // One event per source and id, carrying the most recent payload.
+        assertEquals( 3, log.size() );
+        assertSame( lastA, log.get( 0 ) );
+        assertSame( lastB, log.get( 1 ) );
+        assertSame( resized, log.get( 2 ) );
+
+        // Coalesced event keeps the queue position of the first.
+        log.clear();
+        GComponentEvent first  = new GComponentEvent( a, GComponentEvent.COMPONENT_MOVED );
+        GComponentEvent second = new GComponentEvent( a, GComponentEvent.COMPONENT_MOVED );
+        queue.fireComponentEvent( first );
+        queue.fireRunnable( new Marker( log ) );
+        queue.fireComponentEvent( second );
+        queue.processAllEvents( proc );
+
+        assertEquals( 2, log.size() );
+        assertSame( second, log.get( 0 ) );
+        assertTrue( log.get( 1 ) instanceof Marker );
+
+        // Events fired after dispatch are queued again.
+        log.clear();
+        GComponentEvent third = new GComponentEvent( a, GComponentEvent.COMPONENT_MOVED );
+        queue.fireComponentEvent( third );
+        queue.processAllEvents( proc );
+        assertEquals( 1, log.size() );
+        assertSame( third, log.get( 0 ) );
+    }
+
+
+    @Test
+    public void testDamageOnlyWhenTracked() {
+        final int[] repaints = { 0 };
+        Component canvas = new Component() {
+            @Override
+            public void repaint() {
+                repaints[0]++;
+            }
+        };
+
+        GLayeredPanel root  = new GLayeredPanel();
+        EventQueue queue    = new EventQueue( root, canvas );
+        EventProcessor proc = new EventProcessor( null, root, new GKeyboardFocusManager( root, null ) );
+        root.treeProcessParentChanged( queue, null );
+        root.setBounds( 0, 0, 100, 100 );
+
+        GPanel a = new GPanel();
+        GPanel b = new GPanel();
+        root.addChild( a );
+        root.addChild( b );
+        queue.processAllEvents( proc );
+        repaints[0] = 0;
+
+        // Moving, hiding and removing do not repaint by default.
+        List<GComponent> damage = new ArrayList<GComponent>();
+        a.setBounds( 10, 10, 20, 20 );
+        b.setVisible( false );
+        root.removeChild( b );
+        queue.processAllEvents( proc );
+        assertEquals( 0, repaints[0] );
+        assertFalse( queue.drainDamage( damage ) );
+        assertTrue( damage.isEmpty() );
+
+        // With damage tracked, each repaints the parent.
+        queue.trackDamage( true );
+        b.setVisible( true );
+        root.addChild( b );
+        queue.processAllEvents( proc );
+        queue.drainDamage( damage );
+        damage.clear();
+        repaints[0] = 0;
+
+        a.setBounds( 30, 30, 20, 20 );
+        assertEquals( 1, repaints[0] );
+        b.setVisible( false );
+        assertEquals( 2, repaints[0] );
+        root.removeChild( b );
+        assertTrue( root.needsRepaint() );
+
+        queue.drainDamage( damage );
+        assertFalse( damage.isEmpty() );
+        for( GComponent c: damage ) {
+            assertSame( root, c );
+        }
+    }
+
+
+    @Test
+    public void testBudgetWithoutRepaintComponent() {
+        GLayeredPanel root  = new GLayeredPanel();
+        EventQueue queue    = new EventQueue( root, null );
+        EventProcessor proc = new EventProcessor( null, root, new GKeyboardFocusManager( root, null ) );
+
+        final int[] count = { 0 };
+        Runnable slow = new Runnable() {
+            public void run() {
+                count[0]++;
+                long t = System.nanoTime();
+                while( System.nanoTime() - t < 1000000L ) {}
+            }
+        };
+
+        // Events within budget request nothing more.
+        queue.fireRunnable( slow );
+        assertEquals( 0, queue.processEvents( proc, 1000000000L ) );
+        assertEquals( 0, queue.depth( EventQueue.PRIORITY_REPAINT ) );
+
+        // Leftover events queue a paint, so callers see that another frame is needed.
+        for( int i = 0; i < 20; i++ ) {
+            queue.fireRunnable( slow );
+        }
+        int left = queue.processEvents( proc, 1L );
+        assertTrue( left > 0 );
+        assertEquals( 1, queue.depth( EventQueue.PRIORITY_REPAINT ) );
+
+        // Ignoring repaints does not strand leftover events.
+        queue.ignoreRepaints( true );
+        while( left > 0 ) {
+            left = queue.processEvents( proc, 1L );
+            assertEquals( left > 0 ? 1 : 0, queue.depth( EventQueue.PRIORITY_REPAINT ) );
+        }
+        assertEquals( 21, count[0] );
+        assertFalse( queue.processAllEvents( proc ) );
+    }
+
+
+    private static int total( int[] arr ) {
+        int sum = 0;
+        for( int v: arr ) {
+            sum += v;
+        }
+        return sum;
+    }
+
+
+    private static final class Recorder extends GComponentAdapter {
+        final List<Object> mLog;
+
+        Recorder( List<Object> log ) {
+            mLog = log;
+        }
+
+        @Override
+        public void componentMoved( GComponentEvent e ) {
+            mLog.add( e );
+        }
+
+        @Override
+        public void componentResized( GComponentEvent e ) {
+            mLog.add( e );
+        }
+    }
+
+
+    private static final class Marker implements Runnable {
+        final List<Object> mLog;
+
+        Marker( List<Object> log ) {
+            mLog = log;
+        }
+
+        public void run() {
+            mLog.add( this );
+        }
+    }
+
+}
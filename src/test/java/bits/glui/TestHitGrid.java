@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import org.junit.Test;
+
+import bits.draw3d.Rect;
+
+
+/**
+ * Compares HitGrid queries, and the hit index of panels, against a brute
+ * force search over random additions, moves and removals.
+ *
+ * @author Philip DeCamp
+ */
+public class TestHitGrid {
+
+    private static final int NUM = 300;
+
+    @Test
+    public void testRandomOps() {
+        int w = 640;
+        int h = 480;
+        Random rand = new Random( 3 );
+        HitGrid grid = new HitGrid( 32, w, h );
+        Model model  = new Model();
+
+        for( int i = 0; i < 4000; i++ ) {
+            GComponent comp = model.mComps[ rand.nextInt( NUM ) ];
+            Box box = model.mBoxes.get( comp );
+            int op  = rand.nextInt( 4 );
+
+            if( box == null ) {
+                box = randomBox( rand, rand.nextInt( 3 ), w, h );
+                box.mSeq = model.mNextSeq++;
+                model.mBoxes.put( comp, box );
+                grid.add( comp, box.mLayer, box.mX, box.mY, box.mW, box.mH );
+            } else if( op == 0 ) {
+                model.mBoxes.remove( comp );
+                grid.remove( comp );
+            } else {
+                Box b = randomBox( rand, box.mLayer, w, h );
+                box.mX = b.mX;
+                box.mY = b.mY;
+                box.mW = b.mW;
+                box.mH = b.mH;
+                grid.update( comp, box.mX, box.mY, box.mW, box.mH );
+            }
+
+            if( i % 200 == 0 ) {
+                assertEquals( model.mBoxes.size(), grid.size() );
+                checkQueries( rand, grid, model, w, h );
+            }
+        }
+
+        w = 1000;
+        h = 200;
+        grid.resize( w, h );
+        checkQueries( rand, grid, model, w, h );
+
+        grid.clear();
+        assertEquals( 0, grid.size() );
+        assertEquals( 0, grid.query( 10, 10, new HitGrid.Result() ) );
+    }
+
+
+    @Test
+    public void testOrder() {
+        HitGrid grid = new HitGrid( 16, 100, 100 );
+        GPanel low  = new GPanel();
+        GPanel mid  = new GPanel();
+        GPanel high = new GPanel();
+        GPanel wide = new GPanel();
+
+        // Added out of paint order.
+        grid.add( high, 1, 0, 0, 20, 20 );
+        grid.add( low, 0, 0, 0, 20, 20 );
+        grid.add( wide, 0, -1000, -1000, 5000, 5000 );
+        grid.add( mid, 0, 10, 10, 20, 20 );
+
+        HitGrid.Result out = new HitGrid.Result();
+        int n = grid.query( 15, 15, out );
+        assertEquals( 4, n );
+        assertSame( high, out.mComps[0] );
+        assertSame( mid,  out.mComps[1] );
+        assertSame( wide, out.mComps[2] );
+        assertSame( low,  out.mComps[3] );
+        assertEquals( 1, out.mLayers[0] );
+        assertEquals( 0, out.mLayers[3] );
+
+        // Moving does not change order. Removed children are not returned.
+        grid.update( low, 5, 5, 20, 20 );
+        grid.remove( mid );
+        n = grid.query( 15, 15, out );
+        assertEquals( 3, n );
+        assertSame( high, out.mComps[0] );
+        assertSame( wide, out.mComps[1] );
+        assertSame( low,  out.mComps[2] );
+
+        // Children entirely outside the container are never candidates.
+        grid.update( high, 200, 200, 20, 20 );
+        n = grid.query( 15, 15, out );
+        assertEquals( 2, n );
+    }
+
+
+    @Test
+    public void testUntracked() {
+        HitGrid grid = new HitGrid( 16, 100, 100 );
+        GPanel low   = new GPanel();
+        GPanel high  = new GPanel();
+        GPanel loose = new GPanel();
+
+        grid.add( low, 0, 0, 0, 20, 20 );
+        grid.add( loose, 0 );
+        grid.add( high, 1, 0, 0, 20, 20 );
+
+        // Untracked children are candidates everywhere, in order, and ignore updates.
+        grid.update( loose, 500, 500, 1, 1 );
+        HitGrid.Result out = new HitGrid.Result();
+        assertEquals( 3, grid.query( 5, 5, out ) );
+        assertSame( high,  out.mComps[0] );
+        assertSame( loose, out.mComps[1] );
+        assertSame( low,   out.mComps[2] );
+        assertEquals( 1, grid.query( 90, 90, out ) );
+        assertSame( loose, out.mComps[0] );
+
+        grid.resize( 300, 300 );
+        assertEquals( 1, grid.query( 290, 290, out ) );
+        grid.remove( loose );
+        assertEquals( 0, grid.query( 90, 90, out ) );
+    }
+
+
+    @Test
+    public void testPanelMatchesLinear() {
+        Random rand = new Random( 5 );
+        GLayeredPanel root = new GLayeredPanel();
+        root.setBounds( 0, 0, 400, 300 );
+        root.setHitIndex( 32 );
+
+        List<GComponent> comps = new ArrayList<GComponent>();
+        for( int i = 0; i < 1000; i++ ) {
+            int op = rand.nextInt( 4 );
+            if( comps.isEmpty() || op == 0 ) {
+                // Children that are not GPanels cannot report moves.
+                GPanel p = new GPanel();
+                GComponent c = rand.nextBoolean() ? p : wrap( p );
+                c.setBounds( rand.nextInt( 400 ), rand.nextInt( 300 ), rand.nextInt( 80 ), rand.nextInt( 80 ) );
+                root.addChild( rand.nextInt( 3 ), c );
+                comps.add( c );
+            } else if( op == 1 ) {
+                root.removeChild( comps.remove( rand.nextInt( comps.size() ) ) );
+            } else {
+                GComponent c = comps.get( rand.nextInt( comps.size() ) );
+                c.setBounds( rand.nextInt( 400 ), rand.nextInt( 300 ), rand.nextInt( 80 ), rand.nextInt( 80 ) );
+            }
+
+            if( i % 50 == 0 ) {
+                for( int j = 0; j < 100; j++ ) {
+                    int x = rand.nextInt( 400 );
+                    int y = rand.nextInt( 300 );
+                    assertSame( linearComponentAt( root, x, y ), root.componentAt( x, y ) );
+                }
+            }
+        }
+    }
+
+
+    private static GComponent linearComponentAt( GPanel panel, int x, int y ) {
+        List<GComponent> children = panel.children();
+        Rect r = new Rect();
+        for( int i = children.size() - 1; i >= 0; i-- ) {
+            GComponent c = children.get( i );
+            c.getBounds( r );
+            GComponent ret = c.componentAt( x - r.x0, y - r.y0 );
+            if( ret != null ) {
+                return ret;
+            }
+        }
+        return panel;
+    }
+
+    /**
+     * @return component that forwards every call to a panel but is not a GPanel.
+     */
+    private static GComponent wrap( final GPanel panel ) {
+        return (GComponent)Proxy.newProxyInstance(
+                GComponent.class.getClassLoader(),
+                new Class<?>[]{ GComponent.class },
+                new InvocationHandler() {
+                    public Object invoke( Object proxy, Method m, Object[] args ) throws Throwable {
+                        if( m.getName().equals( "equals" ) ) {
+                            return proxy == args[0];
+                        }
+                        if( m.getName().equals( "hashCode" ) ) {
+                            return System.identityHashCode( proxy );
+                        }
+                        try {
+                            return m.invoke( panel, args );
+                        } catch( InvocationTargetException ex ) {
+                            throw ex.getCause();
+                        }
+                    }
+                } );
+    }
+
+
+    private static void checkQueries( Random rand, HitGrid grid, Model model, int w, int h ) {
+        HitGrid.Result out = new HitGrid.Result();
+        for( int i = 0; i < 300; i++ ) {
+            int x = rand.nextInt( w );
+            int y = rand.nextInt( h );
+            int n = grid.query( x, y, out );
+
+            Set<GComponent> seen = new HashSet<GComponent>();
+            List<GComponent> hits = new ArrayList<GComponent>();
+            for( int j = 0; j < n; j++ ) {
+                GComponent c = out.mComps[j];
+                assertTrue( "duplicate candidate", seen.add( c ) );
+                Box box = model.mBoxes.get( c );
+                assertNotNull( "removed child returned", box );
+                assertEquals( box.mLayer, out.mLayers[j] );
+                if( box.contains( x, y ) ) {
+                    hits.add( c );
+                }
+            }
+            assertEquals( model.hits( x, y ), hits );
+        }
+    }
+
+
+    private static Box randomBox( Random rand, int layer, int w, int h ) {
+        Box b = new Box();
+        b.mLayer = layer;
+        if( rand.nextInt( 20 ) == 0 ) {
+            // Covers many cells.
+            b.mX = rand.nextInt( w ) - w / 2;
+            b.mY = rand.nextInt( h ) - h / 2;
+            b.mW = w / 2 + rand.nextInt( w );
+            b.mH = h / 2 + rand.nextInt( h );
+        } else {
+            b.mX = rand.nextInt( w + 40 ) - 20;
+            b.mY = rand.nextInt( h + 40 ) - 20;
+            b.mW = rand.nextInt( 60 );
+            b.mH = rand.nextInt( 60 );
+        }
+        return b;
+    }
+
+
+    private static final class Box {
+        int  mLayer;
+        long mSeq;
+        int  mX;
+        int  mY;
+        int  mW;
+        int  mH;
+
+        boolean contains( int x, int y ) {
+            return x >= mX && y >= mY && x < mX + mW && y < mY + mH;
+        }
+    }
+
+
+    private static final class Model {
+        final GComponent[] mComps = new GComponent[NUM];
+        final Map<GComponent,Box> mBoxes = new IdentityHashMap<GComponent,Box>();
+        long mNextSeq = 0;
+
+        Model() {
+            for( int i = 0; i < NUM; i++ ) {
+                mComps[i] = new GPanel();
+            }
+        }
+
+        /**
+         * @return children containing point, topmost first.
+         */
+        List<GComponent> hits( int x, int y ) {
+            List<Map.Entry<GComponent,Box>> list = new ArrayList<Map.Entry<GComponent,Box>>();
+            for( Map.Entry<GComponent,Box> e: mBoxes.entrySet() ) {
+                if( e.getValue().contains( x, y ) ) {
+                    list.add( e );
+                }
+            }
+            Collections.sort( list, new Comparator<Map.Entry<GComponent,Box>>() {
+                public int compare( Map.Entry<GComponent,Box> a, Map.Entry<GComponent,Box> b ) {
+                    Box ba = a.getValue();
+                    Box bb = b.getValue();
+                    if( ba.mLayer != bb.mLayer ) {
+                        return ba.mLayer > bb.mLayer ? -1 : 1;
+                    }
+                    return ba.mSeq > bb.mSeq ? -1 : ( ba.mSeq == bb.mSeq ? 0 : 1 );
+                }
+            } );
+            List<GComponent> ret = new ArrayList<GComponent>();
+            for( Map.Entry<GComponent,Box> e: list ) {
+                ret.add( e.getKey() );
+            }
+            return ret;
+        }
+    }
+
+}
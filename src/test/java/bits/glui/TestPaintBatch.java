@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import static org.junit.Assert.*;
+
+import java.awt.Font;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bits.draw3d.DrawEnv;
+import bits.draw3d.Rect;
+import bits.draw3d.text.FontTexture;
+import bits.math3d.Vec4;
+
+
+/**
+ * Tests how PaintBatch groups commands. Commands may only join an earlier group
+ * of the same material if no group after it overlaps them, so every overlap
+ * that would be reordered must start a new group. Also tests which components
+ * record themselves into batches.
+ *
+ * @author Philip DeCamp
+ */
+public class TestPaintBatch {
+
+    private DrawEnv    mEnv;
+    private PaintBatch mBatch;
+
+    @Before
+    public void setUp() {
+        mEnv = new DrawEnv();
+        mEnv.mContextViewport.set( new Rect( 0, 0, 1000, 1000 ) );
+        mBatch = new PaintBatch();
+    }
+
+
+    @Test
+    public void testDisjointCommandsMerge() {
+        // Fills, borders and axis-aligned lines are shapes. Diagonal lines are triangles.
+        for( int i = 0; i < 10; i++ ) {
+            view( i * 100, 0, 50, 50 );
+            mBatch.fillRect( 0, 0, 50, 50 );
+            mBatch.strokeRect( 1, 1, 49, 49 );
+            mBatch.line( 0, 10, 50, 10 );
+            mBatch.line( 0, 0, 50, 50 );
+        }
+        assertEquals( 2, mBatch.groups() );
+    }
+
+
+    @Test
+    public void testOverlapKeepsOrder() {
+        view( 0, 0, 100, 100 );
+        mBatch.fillRect( 0, 0, 50, 50 );
+        mBatch.line( 0, 0, 50, 50 );
+        assertEquals( 2, mBatch.groups() );
+
+        // Fill over line must be drawn after it.
+        mBatch.fillRect( 20, 20, 30, 30 );
+        assertEquals( 3, mBatch.groups() );
+
+        // Line over that fill must be drawn after it, not with the first line.
+        mBatch.line( 22, 22, 28, 28 );
+        assertEquals( 4, mBatch.groups() );
+
+        // Fill away from everything joins the most recent shape group.
+        mBatch.fillRect( 80, 0, 90, 10 );
+        assertEquals( 4, mBatch.groups() );
+    }
+
+
+    @Test
+    public void testBorderDoesNotCoverInterior() {
+        view( 0, 0, 100, 100 );
+        mBatch.line( 20, 20, 80, 80 );
+        mBatch.strokeRect( 0, 0, 99, 99 );
+        mBatch.line( 30, 70, 70, 30 );
+        assertEquals( 2, mBatch.groups() );
+
+        // A fill covers its interior. The fill joins the border's group, after
+        // the lines, so only the line drawn over it starts a new group.
+        mBatch.fillRect( 0, 0, 100, 100 );
+        assertEquals( 2, mBatch.groups() );
+        mBatch.line( 30, 30, 70, 70 );
+        assertEquals( 3, mBatch.groups() );
+    }
+
+
+    @Test
+    public void testTextOverlap() {
+        FontTexture font = mEnv.fontManager().getFontTexture( new Font( "SansSerif", Font.PLAIN, 12 ) );
+
+        // Background, then text on top, for separate components: two groups.
+        for( int i = 0; i < 5; i++ ) {
+            view( 0, i * 40, 200, 30 );
+            mBatch.fillRect( 0, 0, 200, 30 );
+            mBatch.text( font, 5, 10, "label " + i );
+        }
+        assertEquals( 2, mBatch.groups() );
+
+        // Shape over text starts a new group.
+        view( 0, 0, 200, 30 );
+        mBatch.fillRect( 0, 0, 200, 30 );
+        assertEquals( 3, mBatch.groups() );
+
+        // Empty text records nothing.
+        mBatch.text( font, 5, 10, "" );
+        assertEquals( 3, mBatch.groups() );
+    }
+
+
+    @Test
+    public void testClip() {
+        mBatch.view( mEnv, new Rect( 0, 0, 50, 50 ), new Rect( 100, 100, 200, 200 ) );
+        mBatch.fillRect( 0, 0, 50, 50 );
+        mBatch.line( 0, 0, 50, 50 );
+        assertEquals( 0, mBatch.groups() );
+
+        // Primitives clipped to their component do not overlap neighbours.
+        view( 60, 60, 50, 50 );
+        mBatch.fillRect( 0, 0, 50, 50 );
+        view( 0, 0, 50, 50 );
+        mBatch.line( 0, 0, 100, 100 );
+        view( 60, 60, 50, 50 );
+        mBatch.fillRect( 10, 10, 40, 40 );
+        assertEquals( 2, mBatch.groups() );
+
+        mBatch.clear();
+        assertEquals( 0, mBatch.groups() );
+    }
+
+
+    @Test
+    public void testPaintHooks() {
+        assertTrue( GPanel.paintsBatched( new GPanel() ) );
+        assertTrue( GPanel.paintsBatched( new GLayeredPanel() ) );
+        assertTrue( GPanel.paintsBatched( new GLabel( "a" ) ) );
+        assertTrue( GPanel.paintsBatched( new GButton( "a" ) ) );
+        assertTrue( GPanel.paintsBatched( new GToggleButton( "a" ) ) );
+        assertTrue( GPanel.paintsBatched( new GCheckBox( "a" ) ) );
+        assertTrue( GPanel.paintsBatched( new GTextField( 8, "a" ) ) );
+
+        // Subclasses that do not change how they paint are still batched.
+        assertTrue( GPanel.paintsBatched( new GButton( "a" ) {} ) );
+
+        // Subclasses that change how they paint, by any signature, are painted directly.
+        assertFalse( GPanel.paintsBatched( new GPanel() {
+            @Override
+            protected void paintComponent( DrawEnv d ) {}
+        } ) );
+        assertFalse( GPanel.paintsBatched( new GLabel( "a" ) {
+            @Override
+            public void paintComponent( DrawEnv d ) {}
+        } ) );
+        assertFalse( GPanel.paintsBatched( new GButton( "a" ) {
+            @Override
+            protected void paintLabel( DrawEnv d, Vec4 back, Vec4 fore, int x, int y ) {}
+        } ) );
+        assertFalse( GPanel.paintsBatched( new GCheckBox( "a" ) {
+            @Override
+            public void paintComponent( DrawEnv d ) {}
+        } ) );
+
+        // Overloads are ignored.
+        assertTrue( GPanel.paintsBatched( new GLabel( "a" ) {
+            @SuppressWarnings( "unused" )
+            public void paintComponent( DrawEnv d, int extra ) {}
+        } ) );
+
+        // Subclasses that change how their children are painted paint their trees directly.
+        assertTrue( GPanel.paintsTreeBatched( new GLayeredPanel() ) );
+        assertFalse( GPanel.paintsTreeBatched( new GPanel() {
+            @Override
+            protected void paintChildren( DrawEnv d ) {}
+        } ) );
+    }
+
+
+    private void view( int x, int y, int w, int h ) {
+        mBatch.view( mEnv, new Rect( x, y, x + w, y + h ), null );
+    }
+
+}
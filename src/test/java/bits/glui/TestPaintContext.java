@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+
+package bits.glui;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import bits.draw3d.Rect;
+
+
+/**
+ * Tests the clips PaintContext tracks while painting: the effective clip used
+ * to cull children, and the paint clip children are scissored to.
+ *
+ * @author Philip DeCamp
+ */
+public class TestPaintContext {
+
+    @Test
+    public void testClips() {
+        PaintContext pc = new PaintContext();
+        assertNull( pc.clip() );
+        assertNull( pc.paintClip() );
+
+        // Effective clip narrows with each panel. Paint clip does not.
+        pc.pushClip( new Rect( 0, 0, 100, 100 ) );
+        pc.pushClip( new Rect( 50, 50, 200, 200 ) );
+        assertEquals( new Rect( 50, 50, 100, 100 ), pc.clip() );
+        assertNull( pc.paintClip() );
+
+        // Panels painted into layers limit both.
+        pc.pushRootClip( new Rect( 60, 60, 300, 300 ) );
+        assertEquals( new Rect( 60, 60, 300, 300 ), pc.clip() );
+        assertEquals( new Rect( 60, 60, 300, 300 ), pc.paintClip() );
+        pc.pushClip( new Rect( 0, 0, 80, 80 ) );
+        assertEquals( new Rect( 60, 60, 80, 80 ), pc.clip() );
+        assertEquals( new Rect( 60, 60, 300, 300 ), pc.paintClip() );
+
+        pc.popClip();
+        pc.popClip();
+        assertNull( pc.paintClip() );
+        pc.popClip();
+        pc.popClip();
+
+        // Damage clip limits both.
+        pc.mClip = new Rect( 10, 10, 20, 20 );
+        pc.pushClip( new Rect( 0, 0, 15, 15 ) );
+        assertEquals( new Rect( 10, 10, 15, 15 ), pc.clip() );
+        assertSame( pc.mClip, pc.paintClip() );
+        pc.popClip();
+        assertSame( pc.mClip, pc.clip() );
+    }
+
+
+    @Test
+    public void testDeepStack() {
+        PaintContext pc = new PaintContext();
+        for( int i = 0; i < 40; i++ ) {
+            if( i == 30 ) {
+                pc.pushRootClip( new Rect( i, i, 1000, 1000 ) );
+            } else {
+                pc.pushClip( new Rect( i, i, 1000, 1000 ) );
+            }
+        }
+        assertEquals( new Rect( 39, 39, 1000, 1000 ), pc.clip() );
+        assertEquals( new Rect( 30, 30, 1000, 1000 ), pc.paintClip() );
+        for( int i = 0; i < 10; i++ ) {
+            pc.popClip();
+        }
+        assertEquals( new Rect( 29, 29, 1000, 1000 ), pc.clip() );
+        assertNull( pc.paintClip() );
+    }
+
+}